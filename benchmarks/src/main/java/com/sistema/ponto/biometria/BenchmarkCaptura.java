@@ -0,0 +1,137 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.driver.DriverSensor;
+import com.sistema.ponto.biometria.persistencia.ArquivoBruto;
+import com.sistema.ponto.biometria.persistencia.CodificadorPng;
+import com.sistema.ponto.biometria.processamento.AnalisadorQuadro;
+import com.sistema.ponto.biometria.processamento.EstatisticasQuadro;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trabalho executado por quadro no caminho de captura atual
+ * (GerenciadorDigital.threadCaptura e LeitorSimples.iniciarVisualizacaoContinua).
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkCaptura {
+
+    @Param({QuadrosReferencia.VAZIO, QuadrosReferencia.PARCIAL, QuadrosReferencia.COMPLETO})
+    public String quadro;
+
+    private byte[] buffer;
+    private BufferedImage imagem;
+    private final AnalisadorQuadro analisador = new AnalisadorQuadro();
+    private final EstatisticasQuadro estatisticas = new EstatisticasQuadro();
+    private final byte[] parametro = {0x18, 0x01, 0x00, 0x00};
+    private final CodificadorPng codificadorPng = new CodificadorPng();
+    private final ByteArrayOutputStream saidaArquivo = new ByteArrayOutputStream(128 * 1024);
+
+    @Setup
+    public void preparar() {
+        buffer = QuadrosReferencia.criar(quadro);
+        imagem = GerenciadorDigital.converterParaImagem(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA);
+    }
+
+    /**
+     * Antes: varredura de presença seguida de calcularQualidade (duas passadas).
+     */
+    @Benchmark
+    public int legadoPresencaEQualidade() {
+        int escuros = CapturaLegada.contarPixelsEscuros(buffer);
+        if (escuros > 1000) {
+            return CapturaLegada.calcularQualidade(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA);
+        }
+        return -escuros;
+    }
+
+    @Benchmark
+    public int legadoPresencaPixelsEscuros() {
+        return CapturaLegada.contarPixelsEscuros(buffer);
+    }
+
+    @Benchmark
+    public int legadoCalcularQualidade() {
+        return CapturaLegada.calcularQualidade(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA);
+    }
+
+    /**
+     * Depois: kernel fundido com histograma, gradientes e variância por bloco.
+     */
+    @Benchmark
+    public int analisarQuadro() {
+        analisador.analisar(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA, estatisticas);
+        return estatisticas.temDedo() ? estatisticas.getQualidade() : -estatisticas.getPixelsEscuros();
+    }
+
+    @Benchmark
+    public BufferedImage converterParaBufferedImage() {
+        return GerenciadorDigital.converterParaImagem(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA);
+    }
+
+    /**
+     * Mesmo caminho do preview: getScaledInstance é preguiçoso, o custo real
+     * aparece quando o ImageIcon espera a imagem ficar pronta.
+     */
+    @Benchmark
+    public ImageIcon escalarPreviewSmooth() {
+        return new ImageIcon(imagem.getScaledInstance(300, 300, Image.SCALE_SMOOTH));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int codificarPng() throws IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream(64 * 1024);
+        ImageIO.write(imagem, "png", saida);
+        return saida.size();
+    }
+
+    /**
+     * Codificador usado pelo ServicoPersistencia: deflate nível 1, buffers reaproveitados.
+     */
+    @Benchmark
+    public int codificarPngNivelRapido() throws IOException {
+        saidaArquivo.reset();
+        codificadorPng.codificar(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA, saidaArquivo);
+        return saidaArquivo.size();
+    }
+
+    @Benchmark
+    public int codificarBruto() throws IOException {
+        saidaArquivo.reset();
+        ArquivoBruto.escrever(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA, 0L, saidaArquivo);
+        return saidaArquivo.size();
+    }
+
+    @TearDown
+    public void encerrar() {
+        codificadorPng.fechar();
+    }
+
+    @Benchmark
+    public int byteArrayToInt() {
+        return DriverSensor.byteArrayToInt(parametro);
+    }
+}
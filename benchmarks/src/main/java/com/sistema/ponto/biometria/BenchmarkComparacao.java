@@ -0,0 +1,85 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.comparacao.ComparadorMinucias;
+import com.sistema.ponto.biometria.comparacao.ExtratorMinucias;
+import com.sistema.ponto.biometria.comparacao.TemplateMinucias;
+import com.sistema.ponto.biometria.driver.SimuladorSensor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extração de minúcias de um quadro completo e comparação 1:1 em Java (mesmo
+ * dedo e dedos diferentes). Os scores são impressos no setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkComparacao {
+
+    private byte[] quadro;
+    private TemplateMinucias referencia;
+    private TemplateMinucias mesmoDedo;
+    private TemplateMinucias outroDedo;
+    private final ExtratorMinucias extrator = new ExtratorMinucias();
+    private final ComparadorMinucias comparador = new ComparadorMinucias();
+
+    @Setup
+    public void preparar() {
+        quadro = QuadrosReferencia.criar(QuadrosReferencia.COMPLETO);
+
+        SimuladorSensor simulador = new SimuladorSensor();
+        simulador.setModoManual(true);
+        simulador.setTempoContatoMs(0);
+        simulador.init();
+        long handle = simulador.openDevice(0);
+        byte[] captura = new byte[QuadrosReferencia.LARGURA * QuadrosReferencia.ALTURA];
+        simulador.colocarDedo(0, 3);
+        referencia = capturar(simulador, handle, captura, 1);
+        mesmoDedo = capturar(simulador, handle, captura, 4);
+        simulador.retirarDedo(0);
+        simulador.colocarDedo(0, 7);
+        outroDedo = capturar(simulador, handle, captura, 1);
+        simulador.closeDevice(handle);
+        simulador.terminate();
+
+        System.out.printf("%n%s | mesmo dedo %d (%d pares) | outro dedo %d (%d pares)%n", referencia,
+            comparador.comparar(referencia, mesmoDedo), comparador.contarPares(referencia, mesmoDedo),
+            comparador.comparar(referencia, outroDedo), comparador.contarPares(referencia, outroDedo));
+    }
+
+    private TemplateMinucias capturar(SimuladorSensor simulador, long handle, byte[] captura, int quadros) {
+        // Quadros seguidos do mesmo dedo variam em posição, pressão e ruído
+        for (int i = 0; i < quadros; i++) {
+            simulador.acquireFingerprintImage(handle, captura);
+        }
+        return extrator.extrair(captura, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA);
+    }
+
+    @Benchmark
+    public TemplateMinucias extrair() {
+        return extrator.extrair(quadro, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA);
+    }
+
+    @Benchmark
+    public int compararMesmoDedo() {
+        return comparador.comparar(referencia, mesmoDedo);
+    }
+
+    @Benchmark
+    public int compararOutroDedo() {
+        return comparador.comparar(referencia, outroDedo);
+    }
+}
@@ -0,0 +1,76 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.captura.FilaSpsc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passagem de quadros entre duas threads: a fila SPSC do pipeline contra a
+ * ArrayBlockingQueue (um lock para as duas pontas). Um produtor e um consumidor
+ * por grupo, fila pequena como no pipeline de captura.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkFilaSpsc {
+
+    private static final Object ELEMENTO = new Object();
+    private static final int CAPACIDADE = 4;
+
+    private FilaSpsc<Object> fila;
+    private ArrayBlockingQueue<Object> filaBloqueante;
+
+    @Setup
+    public void preparar() {
+        fila = new FilaSpsc<>(CAPACIDADE, FilaSpsc.Politica.DESCARTAR_MAIS_ANTIGO, null);
+        filaBloqueante = new ArrayBlockingQueue<>(CAPACIDADE);
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public void spscOferecer() throws InterruptedException {
+        fila.oferecer(ELEMENTO);
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public Object spscRetirar() {
+        return fila.retirar();
+    }
+
+    @Benchmark
+    @Group("bloqueante")
+    @GroupThreads(1)
+    public boolean bloqueanteOferecer() {
+        // Mesmo comportamento de descarte: se cheia, tira o mais antigo
+        while (!filaBloqueante.offer(ELEMENTO)) {
+            filaBloqueante.poll();
+        }
+        return true;
+    }
+
+    @Benchmark
+    @Group("bloqueante")
+    @GroupThreads(1)
+    public Object bloqueanteRetirar() {
+        return filaBloqueante.poll();
+    }
+}
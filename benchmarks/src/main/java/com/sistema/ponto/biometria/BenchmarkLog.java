@@ -0,0 +1,55 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.log.DespachanteLog;
+import com.sistema.ponto.log.Log;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo de uma chamada de log na thread de captura: abaixo do nível ativo
+ * (as mensagens por quadro em produção), suprimida pelo limite por segundo e
+ * publicada no anel. Console e arquivo desligados para medir só quem registra.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Dponto.log.console=false", "-Dponto.log.pasta="})
+public class BenchmarkLog {
+
+    private Log log;
+    private int valor;
+
+    @Setup
+    public void preparar() {
+        log = Log.para(BenchmarkLog.class);
+    }
+
+    @Benchmark
+    public void desativado() {
+        log.depuracao("Pixels escuros encontrados: {}", ++valor);
+    }
+
+    @Benchmark
+    public void suprimido() {
+        DespachanteLog.getInstance().setLimitePorSegundo(20);
+        log.info("Resultado da captura: {}", ++valor);
+    }
+
+    @Benchmark
+    public void publicado() {
+        DespachanteLog.getInstance().setLimitePorSegundo(Integer.MAX_VALUE);
+        log.info("Resultado da captura: {}", ++valor);
+    }
+}
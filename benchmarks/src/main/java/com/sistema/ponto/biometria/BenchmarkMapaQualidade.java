@@ -0,0 +1,79 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.processamento.AnalisadorBlocos;
+import com.sistema.ponto.biometria.processamento.AnalisadorQuadro;
+import com.sistema.ponto.biometria.processamento.EstatisticasQuadro;
+import com.sistema.ponto.biometria.processamento.MapaQualidade;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapa de qualidade por bloco ({@link AnalisadorBlocos}) com cada número de
+ * threads, ao lado da qualidade global do {@link AnalisadorQuadro} que ele
+ * substitui na análise. SampleTime dá o p99 por quadro; o ganho com mais
+ * threads só aparece numa máquina com esse número de núcleos livres.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkMapaQualidade {
+
+    @Param({QuadrosReferencia.PARCIAL, QuadrosReferencia.COMPLETO})
+    public String quadro;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private byte[] buffer;
+    private AnalisadorBlocos analisadorBlocos;
+    private final MapaQualidade mapa = new MapaQualidade();
+    private final AnalisadorQuadro analisador = new AnalisadorQuadro();
+    private final EstatisticasQuadro estatisticas = new EstatisticasQuadro();
+
+    @Setup
+    public void preparar() {
+        buffer = QuadrosReferencia.criar(quadro);
+        analisadorBlocos = new AnalisadorBlocos(threads);
+    }
+
+    @TearDown
+    public void encerrar() {
+        analisadorBlocos.encerrar();
+    }
+
+    @Benchmark
+    public int mapaQualidade() {
+        return analisadorBlocos.analisar(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA, mapa)
+            .getPontuacao();
+    }
+
+    /**
+     * Análise completa de um quadro com dedo no pipeline: presença e depois o mapa.
+     */
+    @Benchmark
+    public int analisarComMapa() {
+        analisador.analisar(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA, estatisticas);
+        return mapaQualidade();
+    }
+
+    @Benchmark
+    public int qualidadeGlobal() {
+        analisador.analisar(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA, estatisticas);
+        return estatisticas.getQualidade();
+    }
+}
@@ -0,0 +1,73 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.metricas.Contador;
+import com.sistema.ponto.metricas.Histograma;
+import com.sistema.ponto.metricas.RegistroMetricas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo das métricas no caminho de cada quadro. {@link #quadro()} faz o mesmo
+ * que o pipeline de captura acrescenta por quadro com dedo: contador de
+ * quadros, latência de aquisição, qualidade e tempo dos listeners (precisa
+ * ficar abaixo de 1 µs).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkMetricas {
+
+    private Contador contador;
+    private Histograma latencia;
+    private Histograma qualidade;
+    private Histograma listeners;
+    private long valor;
+
+    @Setup
+    public void preparar() {
+        RegistroMetricas registro = RegistroMetricas.getInstance();
+        contador = registro.contador("bench_quadros_total", "bench");
+        latencia = registro.histogramaTempo("bench_aquisicao_segundos", "bench");
+        qualidade = registro.histograma("bench_qualidade", "bench", 1);
+        listeners = registro.histogramaTempo("bench_listeners_segundos", "bench");
+    }
+
+    @Benchmark
+    public void contador() {
+        contador.incrementar();
+    }
+
+    @Benchmark
+    public void histograma() {
+        // Latências de ~0,3 a ~5 ms, como as do SDK
+        valor = (valor + 7919) & 0x3FFFFF;
+        latencia.registrar(300_000 + valor);
+    }
+
+    @Benchmark
+    public void quadro() {
+        valor = (valor + 7919) & 0x3FFFFF;
+        latencia.registrar(300_000 + valor);
+        contador.incrementar();
+        qualidade.registrar(valor & 0x7F);
+        listeners.registrar(valor >> 6);
+    }
+
+    @Benchmark
+    public String exportarPrometheus() {
+        return RegistroMetricas.getInstance().exportarPrometheus();
+    }
+}
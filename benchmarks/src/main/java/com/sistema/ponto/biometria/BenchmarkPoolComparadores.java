@@ -0,0 +1,149 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.comparacao.ExtratorMinucias;
+import com.sistema.ponto.biometria.comparacao.TemplateMinucias;
+import com.sistema.ponto.biometria.driver.SimuladorSensor;
+import com.sistema.ponto.biometria.galeria.GerenciadorGaleria;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identificação 1:N e verificação 1:1 pela galeria com cada tamanho de pool de
+ * bancos. Throughput e SampleTime (percentis p50/p99 no relatório do JMH).
+ * Galeria: {@link #QUANTIDADE_SDK} templates do simulador e
+ * {@link #QUANTIDADE_JAVA} templates Java de dedos sintéticos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkPoolComparadores {
+
+    static final int QUANTIDADE_SDK = 20000;
+    static final int QUANTIDADE_JAVA = 1000;
+    static final int DEDOS_JAVA = 200;
+
+    private static final int FID_JAVA = 1_000_000;
+
+    @Param({"1", "2", "4", "8"})
+    public int tamanhoPool;
+
+    private GerenciadorGaleria galeria;
+    private byte[][] sondasSdk;
+    private byte[][] sondasJava;
+
+    @Setup
+    public void preparar() throws IOException {
+        System.setProperty(GerenciadorGaleria.PROPRIEDADE_PASTA,
+            Files.createTempDirectory("galeria-bench").toString());
+        if (!LeitorBiometrico.getInstance().inicializar()) {
+            throw new IllegalStateException("Leitor simulado não inicializou");
+        }
+        galeria = GerenciadorGaleria.getInstance();
+        galeria.aguardarCarga(10_000);
+        galeria.setOrdenacaoAtiva(false);
+        galeria.setTamanhoPool(tamanhoPool);
+
+        sondasSdk = new byte[64][];
+        for (int fid = 0; fid < QUANTIDADE_SDK; fid++) {
+            galeria.adicionar(fid, templateSimulador(fid, 1));
+        }
+        for (int i = 0; i < sondasSdk.length; i++) {
+            sondasSdk[i] = templateSimulador(i * (QUANTIDADE_SDK / sondasSdk.length), 2);
+        }
+
+        // Cada dedo entra na galeria várias vezes (capturas diferentes)
+        SimuladorSensor simulador = new SimuladorSensor();
+        simulador.setModoManual(true);
+        simulador.setTempoContatoMs(0);
+        simulador.init();
+        long handle = simulador.openDevice(0);
+        ExtratorMinucias extrator = new ExtratorMinucias();
+        byte[] captura = new byte[QuadrosReferencia.LARGURA * QuadrosReferencia.ALTURA];
+        sondasJava = new byte[16][];
+        int porDedo = QUANTIDADE_JAVA / DEDOS_JAVA;
+        for (int dedo = 0; dedo < DEDOS_JAVA; dedo++) {
+            simulador.colocarDedo(0, dedo);
+            for (int i = 0; i <= porDedo; i++) {
+                simulador.acquireFingerprintImage(handle, captura);
+                TemplateMinucias template = extrator.extrair(captura, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA);
+                if (i < porDedo) {
+                    galeria.adicionar(FID_JAVA + dedo * porDedo + i, template.serializar());
+                } else if (dedo < sondasJava.length) {
+                    sondasJava[dedo] = template.serializar();
+                }
+            }
+            simulador.retirarDedo(0);
+        }
+        simulador.closeDevice(handle);
+        simulador.terminate();
+        // Esvazia o diário agora para a consolidação não rodar durante a medição
+        galeria.salvarSnapshot();
+        System.out.printf("%npool %d | %d templates na galeria%n", galeria.getTamanhoPool(), galeria.getQuantidade());
+    }
+
+    private static byte[] templateSimulador(int dedo, int nonce) {
+        byte[] template = new byte[2048];
+        template[0] = 'S';
+        template[1] = 'I';
+        template[2] = 'M';
+        template[3] = 'T';
+        escreverInt(template, 4, dedo);
+        escreverInt(template, 8, nonce);
+        return template;
+    }
+
+    private static void escreverInt(byte[] destino, int posicao, int valor) {
+        destino[posicao] = (byte) valor;
+        destino[posicao + 1] = (byte) (valor >> 8);
+        destino[posicao + 2] = (byte) (valor >> 16);
+        destino[posicao + 3] = (byte) (valor >> 24);
+    }
+
+    @TearDown
+    public void encerrar() {
+        galeria.encerrar();
+    }
+
+    @Benchmark
+    public int identificarSdk() {
+        return galeria.identificar(sondasSdk[ThreadLocalRandom.current().nextInt(sondasSdk.length)], null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int identificarSdkConcorrente() {
+        return galeria.identificar(sondasSdk[ThreadLocalRandom.current().nextInt(sondasSdk.length)], null);
+    }
+
+    @Benchmark
+    public int identificarJava() {
+        return galeria.identificar(sondasJava[ThreadLocalRandom.current().nextInt(sondasJava.length)], null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int verificarSdkConcorrente() {
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        return galeria.comparar(sondasSdk[aleatorio.nextInt(sondasSdk.length)],
+            sondasSdk[aleatorio.nextInt(sondasSdk.length)]);
+    }
+}
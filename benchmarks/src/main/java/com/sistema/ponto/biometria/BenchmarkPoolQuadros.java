@@ -0,0 +1,79 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.captura.PoolQuadros;
+import com.sistema.ponto.biometria.captura.Quadro;
+import com.sistema.ponto.biometria.driver.SimuladorSensor;
+import com.sistema.ponto.biometria.processamento.AnalisadorQuadro;
+import com.sistema.ponto.biometria.processamento.EstatisticasQuadro;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Laço de captura em regime: com o pool, gc.alloc.rate.norm deve ficar em ~0 B/op;
+ * o caminho antigo aloca uma BufferedImage por quadro.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkPoolQuadros {
+
+    private SimuladorSensor simulador;
+    private long handle;
+    private PoolQuadros pool;
+    private byte[] buffer;
+    private final AnalisadorQuadro analisador = new AnalisadorQuadro();
+    private final EstatisticasQuadro estatisticas = new EstatisticasQuadro();
+    private long sequencia;
+
+    @Setup
+    public void preparar() {
+        simulador = new SimuladorSensor();
+        simulador.setModoManual(true);
+        simulador.setTempoContatoMs(0);
+        simulador.init();
+        handle = simulador.openDevice(0);
+        simulador.colocarDedo(0, 1);
+        pool = new PoolQuadros(QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA);
+        buffer = new byte[QuadrosReferencia.LARGURA * QuadrosReferencia.ALTURA];
+    }
+
+    @TearDown
+    public void encerrar() {
+        simulador.terminate();
+    }
+
+    @Benchmark
+    public int cicloComPool() {
+        Quadro quadro = pool.emprestar();
+        try {
+            simulador.acquireFingerprintImage(handle, quadro.getPixels());
+            analisador.analisar(quadro.getPixels(), quadro.getLargura(), quadro.getAltura(), estatisticas);
+            quadro.marcar(++sequencia, System.nanoTime());
+            return estatisticas.getQualidade();
+        } finally {
+            quadro.devolver();
+        }
+    }
+
+    @Benchmark
+    public BufferedImage cicloLegado() {
+        simulador.acquireFingerprintImage(handle, buffer);
+        analisador.analisar(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA, estatisticas);
+        return GerenciadorDigital.converterParaImagem(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA);
+    }
+}
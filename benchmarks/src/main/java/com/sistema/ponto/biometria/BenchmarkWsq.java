@@ -0,0 +1,108 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.persistencia.CodificadorPng;
+import com.sistema.ponto.biometria.wsq.CodificadorWsq;
+import com.sistema.ponto.biometria.wsq.DecodificadorWsq;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WSQ contra o caminho PNG atual (ImageIO e o CodificadorPng do serviço de
+ * gravação). Os tamanhos dos arquivos e o PSNR do WSQ são impressos no setup,
+ * já que o JMH só mede tempo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkWsq {
+
+    @Param({QuadrosReferencia.PARCIAL, QuadrosReferencia.COMPLETO})
+    public String quadro;
+
+    @Param({"0.75", "2.25"})
+    public float taxa;
+
+    private byte[] buffer;
+    private BufferedImage imagem;
+    private byte[] arquivoWsq;
+    private CodificadorWsq codificadorWsq;
+    private final DecodificadorWsq decodificadorWsq = new DecodificadorWsq();
+    private final CodificadorPng codificadorPng = new CodificadorPng();
+    private final ByteArrayOutputStream saidaArquivo = new ByteArrayOutputStream(128 * 1024);
+
+    @Setup
+    public void preparar() throws IOException {
+        buffer = QuadrosReferencia.criar(quadro);
+        imagem = GerenciadorDigital.converterParaImagem(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA);
+        codificadorWsq = new CodificadorWsq(taxa);
+        arquivoWsq = codificadorWsq.codificar(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA);
+
+        int bruto = buffer.length;
+        int png = codificarPng();
+        int pngRapido = codificarPngNivelRapido();
+        byte[] reconstruida = ((DataBufferByte) decodificarWsq().getRaster().getDataBuffer()).getData();
+        System.out.printf("%n[%s, %.2f bpp] bruto %d B | PNG ImageIO %d B | PNG nível 1 %d B | WSQ %d B (%.1f:1, PSNR %.1f dB)%n",
+            quadro, taxa, bruto, png, pngRapido, arquivoWsq.length,
+            bruto / (double) arquivoWsq.length, psnr(buffer, reconstruida));
+    }
+
+    @Benchmark
+    public int codificarPng() throws IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream(64 * 1024);
+        ImageIO.write(imagem, "png", saida);
+        return saida.size();
+    }
+
+    @Benchmark
+    public int codificarPngNivelRapido() throws IOException {
+        saidaArquivo.reset();
+        codificadorPng.codificar(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA, saidaArquivo);
+        return saidaArquivo.size();
+    }
+
+    @Benchmark
+    public int codificarWsq() throws IOException {
+        saidaArquivo.reset();
+        return codificadorWsq.codificar(buffer, QuadrosReferencia.LARGURA, QuadrosReferencia.ALTURA, saidaArquivo);
+    }
+
+    @Benchmark
+    public BufferedImage decodificarWsq() throws IOException {
+        return decodificadorWsq.decodificar(arquivoWsq);
+    }
+
+    @TearDown
+    public void encerrar() {
+        codificadorPng.fechar();
+    }
+
+    private static double psnr(byte[] original, byte[] reconstruida) {
+        double erro = 0;
+        for (int i = 0; i < original.length; i++) {
+            double d = (original[i] & 0xFF) - (reconstruida[i] & 0xFF);
+            erro += d * d;
+        }
+        erro /= original.length;
+        return erro == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / erro);
+    }
+}
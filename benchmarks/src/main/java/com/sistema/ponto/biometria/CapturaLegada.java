@@ -0,0 +1,49 @@
+package com.sistema.ponto.biometria;
+
+/**
+ * Cópia das duas varreduras que o GerenciadorDigital.threadCaptura fazia antes do
+ * kernel fundido (AnalisadorQuadro). Mantida apenas como referência "antes" nos benchmarks.
+ */
+final class CapturaLegada {
+
+    private CapturaLegada() {
+    }
+
+    static int contarPixelsEscuros(byte[] imagem) {
+        int pixelsEscuros = 0;
+        for (byte b : imagem) {
+            if ((b & 0xFF) < 128) {
+                pixelsEscuros++;
+                if (pixelsEscuros > 1000) {
+                    break;
+                }
+            }
+        }
+        return pixelsEscuros;
+    }
+
+    static int calcularQualidade(byte[] imagem, int largura, int altura) {
+        int pixelsEscuros = 0;
+        int somaContraste = 0;
+        int totalPixels = largura * altura;
+
+        for (int i = 0; i < totalPixels; i++) {
+            int pixel = imagem[i] & 0xFF;
+            if (pixel < 128) {
+                pixelsEscuros++;
+            }
+            if (i < totalPixels - 1) {
+                int nextPixel = imagem[i + 1] & 0xFF;
+                somaContraste += Math.abs(pixel - nextPixel);
+            }
+        }
+
+        double percentualEscuro = (pixelsEscuros * 100.0) / totalPixels;
+        double percentualContraste = (somaContraste * 100.0) / (totalPixels * 255);
+
+        int pontuacaoEscuro = (int) ((percentualEscuro > 15 ? 40 : (percentualEscuro * 40 / 15)));
+        int pontuacaoContraste = (int) ((percentualContraste > 30 ? 60 : (percentualContraste * 60 / 30)));
+
+        return Math.min(100, pontuacaoEscuro + pontuacaoContraste);
+    }
+}
@@ -0,0 +1,24 @@
+package com.sistema.ponto.biometria;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Executa os benchmarks reportando ns/op, throughput e taxa de alocação (profiler gc).
+ * Aceita os mesmos argumentos do JMH, ex.: {@code java -jar benchmarks.jar BenchmarkCaptura -p quadro=completo}.
+ */
+public class ExecutarBenchmarks {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions linhaDeComando = new CommandLineOptions(args);
+        OptionsBuilder opcoes = new OptionsBuilder();
+        opcoes.parent(linhaDeComando);
+        opcoes.addProfiler(GCProfiler.class);
+        opcoes.jvmArgsAppend("-Djava.awt.headless=true", "-Dponto.sensor.driver=simulador");
+        new Runner(opcoes.build()).run();
+    }
+}
@@ -0,0 +1,42 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.driver.DriverSensor;
+import com.sistema.ponto.biometria.driver.SimuladorSensor;
+
+/**
+ * Quadros de referência com as dimensões do ZK4500 (280x360), gerados pelo
+ * simulador com semente fixa para que todas as execuções usem os mesmos dados.
+ */
+public final class QuadrosReferencia {
+
+    public static final String VAZIO = "vazio";
+    public static final String PARCIAL = "parcial";
+    public static final String COMPLETO = "completo";
+
+    public static final int LARGURA = SimuladorSensor.LARGURA_ZK4500;
+    public static final int ALTURA = SimuladorSensor.ALTURA_ZK4500;
+
+    private QuadrosReferencia() {
+    }
+
+    public static byte[] criar(String tipo) {
+        SimuladorSensor simulador = new SimuladorSensor();
+        simulador.setModoManual(true);
+        // Contato muito lento mantém o dedo parcialmente apoiado no quadro "parcial"
+        simulador.setTempoContatoMs(PARCIAL.equals(tipo) ? 1_000_000 : 0);
+        simulador.init();
+        long handle = simulador.openDevice(0);
+        if (!VAZIO.equals(tipo)) {
+            simulador.colocarDedo(0, 3);
+        }
+
+        byte[] quadro = new byte[LARGURA * ALTURA];
+        int ret = simulador.acquireFingerprintImage(handle, quadro);
+        simulador.closeDevice(handle);
+        simulador.terminate();
+        if (ret != DriverSensor.ZKFP_ERR_OK) {
+            throw new IllegalStateException("Falha ao gerar quadro de referência: " + ret);
+        }
+        return quadro;
+    }
+}
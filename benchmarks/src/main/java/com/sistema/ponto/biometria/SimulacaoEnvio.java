@@ -0,0 +1,303 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.envio.ServicoEnvio;
+import com.sistema.ponto.metricas.Histograma;
+import com.sistema.ponto.metricas.RegistroMetricas;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Simulação do envio ao sistema web contra um servidor HTTP local, com
+ * latência, queda da rede e queda do processo:
+ * <ol>
+ *   <li>vazão: produtores simultâneos batendo ponto, com batidas por segundo,
+ *       latência ponta a ponta (gravação até confirmação) e tamanho dos lotes;</li>
+ *   <li>rede fora do ar (503) no meio da carga e depois de volta;</li>
+ *   <li>processo morto (destroyForcibly) no meio da gravação: tudo o que o
+ *       filho viu gravado tem de chegar depois da reabertura.</li>
+ * </ol>
+ * Falha (código 1) se alguma batida gravada não chegar ao servidor.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.sistema.ponto.biometria.SimulacaoEnvio
+ * </pre>
+ */
+public class SimulacaoEnvio {
+
+    private static final int PRODUTORES = 8;
+    private static final int BATIDAS_POR_PRODUTOR = 2500;
+    private static final long LATENCIA_SERVIDOR_MS = 20;
+    private static final long ESPERA_ENVIO_MS = 120_000;
+
+    private static final Pattern CHAVE = Pattern.compile("\"chave\":\"([^\"]+)\"");
+
+    /** Sistema web de mentira: guarda as chaves recebidas e conta as repetidas. */
+    static final class ServidorStub {
+        final Set<String> chaves = ConcurrentHashMap.newKeySet();
+        final AtomicLong repetidas = new AtomicLong();
+        final AtomicLong requisicoes = new AtomicLong();
+        final AtomicLong recusadas = new AtomicLong();
+        volatile boolean foraDoAr;
+        final HttpServer servidor;
+
+        ServidorStub() throws IOException {
+            servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            servidor.createContext("/batidas", this::atender);
+            servidor.setExecutor(Executors.newFixedThreadPool(16));
+            servidor.start();
+        }
+
+        URL getUrl() throws IOException {
+            return new URL("http://127.0.0.1:" + servidor.getAddress().getPort() + "/batidas");
+        }
+
+        private void atender(HttpExchange troca) throws IOException {
+            byte[] corpo = lerTudo(troca.getRequestBody());
+            requisicoes.incrementAndGet();
+            try {
+                Thread.sleep(LATENCIA_SERVIDOR_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (foraDoAr) {
+                recusadas.incrementAndGet();
+                troca.getResponseHeaders().add("Retry-After", "1");
+                troca.sendResponseHeaders(503, -1);
+                troca.close();
+                return;
+            }
+            Matcher chave = CHAVE.matcher(new String(corpo, StandardCharsets.UTF_8));
+            while (chave.find()) {
+                if (!chaves.add(chave.group(1))) {
+                    repetidas.incrementAndGet();
+                }
+            }
+            troca.sendResponseHeaders(204, -1);
+            troca.close();
+        }
+
+        void parar() {
+            servidor.stop(0);
+            ((java.util.concurrent.ExecutorService) servidor.getExecutor()).shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("filho")) {
+            executarFilho(args[1], args[2]);
+            return;
+        }
+        ServidorStub stub = new ServidorStub();
+        boolean ok = true;
+        try {
+            ok &= simularVazao(stub);
+            ok &= simularQuedaRede(stub);
+            ok &= simularQuedaProcesso(stub);
+        } finally {
+            stub.parar();
+        }
+        System.out.println(ok ? "OK: todas as batidas gravadas chegaram" : "FALHA: batidas perdidas");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean simularVazao(ServidorStub stub) throws Exception {
+        System.out.println("== Vazão: " + PRODUTORES + " produtores x " + BATIDAS_POR_PRODUTOR + " batidas, servidor com "
+            + LATENCIA_SERVIDOR_MS + " ms ==");
+        Path pasta = Files.createTempDirectory("spool-vazao");
+        ServicoEnvio servico = new ServicoEnvio(pasta, stub.getUrl());
+        servico.iniciar();
+        zerarHistogramas();
+        long fsyncsAntes = contador("ponto_envio_fsync_total");
+        long lotesAntes = contador("ponto_envio_lotes_total");
+        long requisicoesAntes = stub.requisicoes.get();
+
+        long inicio = System.nanoTime();
+        produzir(servico, PRODUTORES, BATIDAS_POR_PRODUTOR);
+        long gravado = System.nanoTime();
+        boolean entregue = servico.aguardarEnvio(ESPERA_ENVIO_MS);
+        long fim = System.nanoTime();
+
+        long total = (long) PRODUTORES * BATIDAS_POR_PRODUTOR;
+        long lotes = contador("ponto_envio_lotes_total") - lotesAntes;
+        System.out.printf("Gravação: %.0f batidas/s (%d fsyncs, %.1f batidas por fsync)%n",
+            total / segundos(gravado - inicio), contador("ponto_envio_fsync_total") - fsyncsAntes,
+            total / (double) Math.max(1, contador("ponto_envio_fsync_total") - fsyncsAntes));
+        System.out.printf("Entrega: %.0f batidas/s, %d lotes (%.1f por lote), %d requisições%n",
+            total / segundos(fim - inicio), lotes, total / (double) Math.max(1, lotes),
+            stub.requisicoes.get() - requisicoesAntes);
+        imprimirLatencia();
+        String id = servico.getSpool().getId();
+        servico.parar(1000);
+        return conferir(stub, id, total, entregue);
+    }
+
+    private static boolean simularQuedaRede(ServidorStub stub) throws Exception {
+        System.out.println("== Rede fora do ar por 3 s no meio da carga ==");
+        Path pasta = Files.createTempDirectory("spool-rede");
+        ServicoEnvio servico = new ServicoEnvio(pasta, stub.getUrl());
+        servico.iniciar();
+        zerarHistogramas();
+        long recusadasAntes = stub.recusadas.get();
+
+        Thread queda = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+                stub.foraDoAr = true;
+                Thread.sleep(3000);
+                stub.foraDoAr = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        queda.start();
+        long inicio = System.nanoTime();
+        long total = 0;
+        // Batidas espalhadas por ~4 s, atravessando a queda
+        while (System.nanoTime() - inicio < 4_000_000_000L) {
+            produzir(servico, 2, 50);
+            total += 100;
+            Thread.sleep(20);
+        }
+        queda.join();
+        System.out.println("Pendentes ao fim da carga: " + servico.getPendentes());
+        boolean entregue = servico.aguardarEnvio(ESPERA_ENVIO_MS);
+        System.out.printf("Tudo entregue %.1f s depois do início (%d respostas 503)%n",
+            segundos(System.nanoTime() - inicio), stub.recusadas.get() - recusadasAntes);
+        imprimirLatencia();
+        String id = servico.getSpool().getId();
+        servico.parar(1000);
+        return conferir(stub, id, total, entregue);
+    }
+
+    private static boolean simularQuedaProcesso(ServidorStub stub) throws Exception {
+        System.out.println("== Processo morto no meio da gravação ==");
+        Path pasta = Files.createTempDirectory("spool-queda");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process filho = new ProcessBuilder(java, "-Dponto.log.console=false", "-Dponto.log.pasta=",
+            "-cp", System.getProperty("java.class.path"), SimulacaoEnvio.class.getName(),
+            "filho", pasta.toString(), stub.getUrl().toString())
+            .redirectErrorStream(true).start();
+
+        // O filho imprime cada sequência depois que gravar() voltou (fsync feito)
+        long ultimaDuravel = 0;
+        long inicio = System.nanoTime();
+        BufferedReader saida = new BufferedReader(new InputStreamReader(filho.getInputStream(), StandardCharsets.UTF_8));
+        String linha;
+        while ((linha = saida.readLine()) != null) {
+            if (linha.matches("\\d+")) {
+                ultimaDuravel = Long.parseLong(linha);
+            }
+            if (System.nanoTime() - inicio > 1_500_000_000L) {
+                break;
+            }
+        }
+        filho.destroyForcibly();
+        filho.waitFor();
+        String id = new String(Files.readAllBytes(pasta.resolve("envio.id")), StandardCharsets.UTF_8).trim();
+        int antesReabrir = contar(stub, id, ultimaDuravel);
+        System.out.println("Filho morto com " + ultimaDuravel + " batidas duráveis, " + antesReabrir
+            + " já entregues");
+
+        long repetidasAntes = stub.repetidas.get();
+        ServicoEnvio servico = new ServicoEnvio(pasta, stub.getUrl());
+        servico.iniciar();
+        boolean entregue = servico.aguardarEnvio(ESPERA_ENVIO_MS);
+        System.out.println("Reenviadas depois da reabertura; " + (stub.repetidas.get() - repetidasAntes)
+            + " repetidas descartadas pela chave");
+        servico.parar(1000);
+        return conferir(stub, id, ultimaDuravel, entregue);
+    }
+
+    private static void executarFilho(String pasta, String url) throws Exception {
+        ServicoEnvio servico = new ServicoEnvio(Paths.get(pasta), new URL(url));
+        servico.iniciar();
+        for (int i = 0; ; i++) {
+            long sequencia = servico.registrarBatida(i, "filho", 90);
+            System.out.println(sequencia);
+        }
+    }
+
+    private static void produzir(ServicoEnvio servico, int produtores, int batidas) throws InterruptedException {
+        CountDownLatch fim = new CountDownLatch(produtores);
+        for (int p = 0; p < produtores; p++) {
+            int dispositivo = p;
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < batidas; i++) {
+                        servico.registrarBatida(i, "leitor-" + dispositivo, 90);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    fim.countDown();
+                }
+            }).start();
+        }
+        fim.await();
+    }
+
+    private static boolean conferir(ServidorStub stub, String id, long total, boolean entregue) {
+        int recebidas = contar(stub, id, total);
+        boolean ok = entregue && recebidas == total;
+        System.out.println((ok ? "ok" : "FALHA") + ": " + recebidas + "/" + total + " batidas recebidas");
+        return ok;
+    }
+
+    private static int contar(ServidorStub stub, String id, long total) {
+        int recebidas = 0;
+        for (long s = 1; s <= total; s++) {
+            if (stub.chaves.contains(id + "-" + s)) {
+                recebidas++;
+            }
+        }
+        return recebidas;
+    }
+
+    private static void zerarHistogramas() {
+        ((Histograma) RegistroMetricas.getInstance().getMetrica("ponto_envio_latencia_segundos")).zerar();
+        ((Histograma) RegistroMetricas.getInstance().getMetrica("ponto_envio_lote_registros")).zerar();
+    }
+
+    private static void imprimirLatencia() {
+        Histograma latencia = (Histograma) RegistroMetricas.getInstance().getMetrica("ponto_envio_latencia_segundos");
+        System.out.printf("Latência ponta a ponta: p50 %.1f ms, p99 %.1f ms, máx %.1f ms%n",
+            latencia.getP50() * 1000, latencia.getP99() * 1000, latencia.getMaximo() * 1000);
+    }
+
+    private static long contador(String nome) {
+        return ((com.sistema.ponto.metricas.Contador) RegistroMetricas.getInstance().getMetrica(nome)).getValor();
+    }
+
+    private static double segundos(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static byte[] lerTudo(InputStream entrada) throws IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int lidos;
+        while ((lidos = entrada.read(buffer)) >= 0) {
+            saida.write(buffer, 0, lidos);
+        }
+        return saida.toByteArray();
+    }
+}
@@ -0,0 +1,148 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.comparacao.ExtratorMinucias;
+import com.sistema.ponto.biometria.driver.SimuladorSensor;
+import com.sistema.ponto.biometria.galeria.GerenciadorGaleria;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Pré-filtro de candidatos da galeria Java: cadastra {@link #DEDOS} dedos do
+ * {@link SimuladorSensor} e identifica, com o filtro ligado e desligado, duas
+ * sondas genuínas por dedo (a segunda girada até ±15° e deslocada até ±10 px)
+ * e {@link #IMPOSTORES} dedos fora da galeria. Mostra a latência medida por
+ * identificação em cada modo, a penetração (fração da galeria comparada) e
+ * confere que os dois modos devolvem as mesmas identidades.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.sistema.ponto.biometria.SimulacaoFiltroCandidatos [dedos] [impostores]
+ * </pre>
+ */
+public class SimulacaoFiltroCandidatos {
+
+    private static final int DEDOS = 400;
+    private static final int IMPOSTORES = 120;
+    private static final int RODADAS = 2;
+    private static final double GIRO_MAXIMO_GRAUS = 15;
+    private static final int DESLOCAMENTO_MAXIMO = 10;
+    // Fundo do sensor sem dedo
+    private static final byte FUNDO = (byte) 250;
+
+    public static void main(String[] args) throws Exception {
+        int dedos = args.length > 0 ? Integer.parseInt(args[0]) : DEDOS;
+        int impostores = args.length > 1 ? Integer.parseInt(args[1]) : IMPOSTORES;
+        System.setProperty("ponto.log.nivel", "AVISO");
+        System.setProperty(GerenciadorGaleria.PROPRIEDADE_PASTA,
+            Files.createTempDirectory("galeria-filtro").toString());
+
+        GerenciadorGaleria galeria = GerenciadorGaleria.getInstance();
+        galeria.aguardarCarga(10_000);
+        // Só a galeria inteira: os prioritários esconderiam o efeito do filtro
+        galeria.setOrdenacaoAtiva(false);
+
+        SimuladorSensor simulador = new SimuladorSensor();
+        simulador.setModoManual(true);
+        simulador.setTempoContatoMs(0);
+        simulador.init();
+        long handle = simulador.openDevice(0);
+        ExtratorMinucias extrator = new ExtratorMinucias();
+        int largura = QuadrosReferencia.LARGURA;
+        int altura = QuadrosReferencia.ALTURA;
+        byte[] captura = new byte[largura * altura];
+        Random aleatorio = new Random(7);
+
+        List<byte[]> sondas = new ArrayList<>();
+        List<Integer> esperados = new ArrayList<>();
+        for (int dedo = 0; dedo < dedos + impostores; dedo++) {
+            boolean cadastrado = dedo < dedos;
+            simulador.colocarDedo(0, dedo);
+            for (int k = 0; k < (cadastrado ? 3 : 2); k++) {
+                // Quadros diferentes da mesma colocação
+                for (int q = 1 + aleatorio.nextInt(6); q > 0; q--) {
+                    simulador.acquireFingerprintImage(handle, captura);
+                }
+                byte[] imagem = k == 2
+                    ? girar(captura, largura, altura, (aleatorio.nextDouble() * 2 - 1) * GIRO_MAXIMO_GRAUS,
+                        deslocamento(aleatorio), deslocamento(aleatorio))
+                    : captura;
+                byte[] template = extrator.extrair(imagem, largura, altura).serializar();
+                if (cadastrado && k == 0) {
+                    galeria.adicionar(dedo, template);
+                } else {
+                    sondas.add(template);
+                    esperados.add(cadastrado ? dedo : -1);
+                }
+            }
+            simulador.retirarDedo(0);
+        }
+        System.out.printf("Galeria %d dedos, %d sondas (%d de impostores)%n",
+            galeria.getQuantidade(), sondas.size(), impostores * 2);
+
+        int[][] resultados = new int[2][sondas.size()];
+        long[] tempos = new long[2];
+        double[] penetracao = new double[2];
+        // A primeira rodada só aquece o JIT
+        for (int rodada = 0; rodada < RODADAS; rodada++) {
+            for (int modo = 1; modo >= 0; modo--) {
+                galeria.setFiltroCandidatos(modo == 1);
+                galeria.zerarMetricasIdentificacao();
+                long inicio = System.nanoTime();
+                for (int i = 0; i < sondas.size(); i++) {
+                    resultados[modo][i] = galeria.identificar(sondas.get(i), null);
+                }
+                tempos[modo] = System.nanoTime() - inicio;
+                penetracao[modo] = galeria.getTaxaPenetracao();
+            }
+        }
+
+        int diferentes = 0;
+        int[] erros = new int[2];
+        for (int i = 0; i < sondas.size(); i++) {
+            if (resultados[0][i] != resultados[1][i]) {
+                diferentes++;
+            }
+            for (int modo = 0; modo < 2; modo++) {
+                if (resultados[modo][i] != esperados.get(i)) {
+                    erros[modo]++;
+                }
+            }
+        }
+        System.out.printf("%-10s %-18s %-12s %-8s%n", "filtro", "ms/identificação", "penetração", "erros");
+        for (int modo = 1; modo >= 0; modo--) {
+            System.out.printf("%-10s %-18.3f %-12.3f %-8d%n", modo == 1 ? "ligado" : "desligado",
+                tempos[modo] / 1e6 / sondas.size(), penetracao[modo], erros[modo]);
+        }
+        System.out.printf("Aceleração medida %.2fx (1/penetração %.2fx); identidades diferentes %d%n",
+            tempos[0] / (double) tempos[1], penetracao[1] > 0 ? 1 / penetracao[1] : 1.0, diferentes);
+        galeria.encerrar();
+        System.out.println(diferentes == 0 ? "OK" : "FALHOU");
+        System.exit(diferentes == 0 ? 0 : 1);
+    }
+
+    private static int deslocamento(Random aleatorio) {
+        return aleatorio.nextInt(2 * DESLOCAMENTO_MAXIMO + 1) - DESLOCAMENTO_MAXIMO;
+    }
+
+    /**
+     * Gira a imagem em torno do centro e a desloca; o que sai do quadro vira fundo.
+     */
+    private static byte[] girar(byte[] imagem, int largura, int altura, double graus, int dx, int dy) {
+        byte[] saida = new byte[imagem.length];
+        double radianos = Math.toRadians(graus);
+        double cos = Math.cos(radianos);
+        double sen = Math.sin(radianos);
+        for (int y = 0; y < altura; y++) {
+            for (int x = 0; x < largura; x++) {
+                double xc = x - largura / 2.0 - dx;
+                double yc = y - altura / 2.0 - dy;
+                int xo = (int) Math.round(cos * xc + sen * yc + largura / 2.0);
+                int yo = (int) Math.round(-sen * xc + cos * yc + altura / 2.0);
+                saida[y * largura + x] = xo < 0 || yo < 0 || xo >= largura || yo >= altura
+                    ? FUNDO : imagem[yo * largura + xo];
+            }
+        }
+        return saida;
+    }
+}
@@ -0,0 +1,138 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.driver.FabricaDriver;
+import com.sistema.ponto.biometria.driver.SimuladorSensor;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+/**
+ * {@link GerenciadorLeitores} com três leitores simulados: desconecta o do
+ * meio da lista do SDK (os seguintes mudam de índice), liga-o de novo no fim
+ * da lista e faz o mesmo com o principal. Confere depois de cada passo que
+ * nenhum leitor físico ficou aberto duas vezes, que cada número de leitor
+ * continua com o mesmo serial e que a presença do dedo chega com o número
+ * certo.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.sistema.ponto.biometria.SimulacaoLeitores
+ * </pre>
+ */
+public class SimulacaoLeitores {
+
+    private static final int LEITORES = 3;
+    private static final long ESPERA_MS = 15000;
+
+    private static SimuladorSensor simulador;
+    private static GerenciadorLeitores gerenciador;
+    private static final List<String> eventos = new CopyOnWriteArrayList<>();
+    private static int falhas;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("ponto.log.nivel", "AVISO");
+        simulador = new SimuladorSensor();
+        simulador.setModoManual(true);
+        simulador.setLatencia(30, 20);
+        simulador.setQuantidadeDispositivos(LEITORES);
+        FabricaDriver.setDriver(simulador);
+
+        gerenciador = GerenciadorLeitores.getInstance();
+        gerenciador.adicionarListener(new GerenciadorLeitores.EventoListener() {
+            @Override
+            public void onLeitorConectado(int dispositivo) {
+                eventos.add("conectado " + dispositivo);
+            }
+
+            @Override
+            public void onLeitorDesconectado(int dispositivo) {
+                eventos.add("desconectado " + dispositivo);
+            }
+
+            @Override
+            public void onPresencaAlterada(int dispositivo, boolean temDedo) {
+                if (temDedo) {
+                    eventos.add("dedo " + dispositivo);
+                }
+            }
+        });
+        if (!gerenciador.iniciar()) {
+            System.out.println("Falha ao iniciar os leitores");
+            System.exit(1);
+        }
+        conferir("início", LEITORES);
+
+        int meio = simulador.desconectarDispositivo(1);
+        aguardar("leitor " + meio + " fechado", () -> gerenciador.getLeitor(meio) == null);
+        Thread.sleep(2 * GerenciadorLeitores.INTERVALO_VERIFICACAO_MS);
+        conferir("leitor do meio desconectado", LEITORES - 1);
+        // O leitor 2 agora tem índice 1 no SDK
+        dedo(2);
+
+        simulador.conectarDispositivo(meio);
+        aguardar("leitor " + meio + " reaberto", () -> gerenciador.getLeitor(meio) != null);
+        conferir("leitor do meio de volta", LEITORES);
+        dedo(meio);
+
+        int principal = simulador.desconectarDispositivo(0);
+        aguardar("principal fechado", () -> gerenciador.getLeitor(principal) == null);
+        simulador.conectarDispositivo(principal);
+        aguardar("principal reaberto", () -> gerenciador.getLeitor(principal) != null);
+        conferir("principal de volta", LEITORES);
+        LeitorDispositivo reaberto = gerenciador.getLeitor(principal);
+        verificar(reaberto.isPrincipal()
+                && reaberto.getHandle() == LeitorBiometrico.getInstance().getDeviceHandle(),
+            "principal usa o handle do LeitorBiometrico");
+        dedo(principal);
+
+        System.out.println("Eventos: " + eventos);
+        gerenciador.encerrar();
+        System.out.println(falhas == 0 ? "OK" : falhas + " verificação(ões) falharam");
+        System.exit(falhas == 0 ? 0 : 1);
+    }
+
+    /**
+     * Cada leitor aberto com o serial do seu número e um só handle no simulador.
+     */
+    private static void conferir(String passo, int esperados) {
+        List<LeitorDispositivo> abertos = gerenciador.getLeitores();
+        StringBuilder descricao = new StringBuilder();
+        for (LeitorDispositivo aberto : abertos) {
+            int numero = aberto.getDispositivo();
+            descricao.append(' ').append(numero).append('=').append(aberto.getSerial());
+            verificar(aberto.getSerial().equals(SimuladorSensor.serial(numero)),
+                passo + ": leitor " + numero + " com o serial " + aberto.getSerial());
+            verificar(simulador.getHandlesAbertos(numero) == 1,
+                passo + ": leitor " + numero + " com " + simulador.getHandlesAbertos(numero) + " handles");
+        }
+        verificar(abertos.size() == esperados, passo + ": " + abertos.size() + " leitores abertos");
+        System.out.printf("%-28s%s%n", passo, descricao);
+    }
+
+    private static void dedo(int numero) throws InterruptedException {
+        eventos.removeIf(e -> e.startsWith("dedo"));
+        simulador.colocarDedo(numero, numero);
+        aguardar("dedo no leitor " + numero, () -> eventos.contains("dedo " + numero));
+        verificar(eventos.stream().filter(e -> e.startsWith("dedo")).allMatch(e -> e.equals("dedo " + numero)),
+            "dedo no leitor " + numero + " chegou só com o número dele");
+        simulador.retirarDedo(numero);
+        Thread.sleep(300);
+    }
+
+    private static void aguardar(String descricao, BooleanSupplier condicao) throws InterruptedException {
+        long limite = System.currentTimeMillis() + ESPERA_MS;
+        while (!condicao.getAsBoolean()) {
+            if (System.currentTimeMillis() > limite) {
+                verificar(false, "tempo esgotado: " + descricao);
+                return;
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private static void verificar(boolean condicao, String descricao) {
+        if (!condicao) {
+            falhas++;
+            System.out.println("FALHOU: " + descricao);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.comparacao.ExtratorMinucias;
+import com.sistema.ponto.biometria.driver.SimuladorSensor;
+import com.sistema.ponto.biometria.galeria.GerenciadorGaleria;
+
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Ordem de busca da galeria ({@code OrdemBusca}): cadastra {@link #FUNCIONARIOS}
+ * funcionários, {@link #NO_TURNO} com turno 08:00-17:00 e o resto noturno, e
+ * com o relógio fixado às 07:55 e às 17:55 identifica os do turno e
+ * {@link #FORA_DO_TURNO} noturnos, em ordem embaralhada. Compara a latência
+ * com a ordenação desligada e ligada e mostra a taxa de acerto nos
+ * prioritários (recentes e turno). No fim recadastra o fid 0 com outro dedo e
+ * confere que o dedo antigo não é mais aceito pelos recentes.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.sistema.ponto.biometria.SimulacaoOrdemBusca [funcionarios] [noTurno] [foraDoTurno]
+ * </pre>
+ */
+public class SimulacaoOrdemBusca {
+
+    private static final int FUNCIONARIOS = 1500;
+    private static final int NO_TURNO = 150;
+    private static final int FORA_DO_TURNO = 40;
+    // Dedo que substitui o do fid 0 no recadastro, fora da galeria
+    private static final int DEDO_RECADASTRO = 99_999;
+    private static final LocalDateTime[] MARCACOES = {
+        LocalDateTime.of(2026, 10, 19, 7, 55),
+        LocalDateTime.of(2026, 10, 19, 17, 55),
+    };
+
+    public static void main(String[] args) throws Exception {
+        int funcionarios = args.length > 0 ? Integer.parseInt(args[0]) : FUNCIONARIOS;
+        int noTurno = args.length > 1 ? Integer.parseInt(args[1]) : NO_TURNO;
+        int foraDoTurno = args.length > 2 ? Integer.parseInt(args[2]) : FORA_DO_TURNO;
+        int identificados = Math.min(funcionarios, noTurno + foraDoTurno);
+        System.setProperty("ponto.log.nivel", "AVISO");
+        System.setProperty(GerenciadorGaleria.PROPRIEDADE_PASTA,
+            Files.createTempDirectory("galeria-ordem").toString());
+
+        GerenciadorGaleria galeria = GerenciadorGaleria.getInstance();
+        galeria.aguardarCarga(10_000);
+
+        SimuladorSensor simulador = new SimuladorSensor();
+        simulador.setModoManual(true);
+        simulador.setTempoContatoMs(0);
+        simulador.init();
+        long handle = simulador.openDevice(0);
+        ExtratorMinucias extrator = new ExtratorMinucias();
+        int largura = QuadrosReferencia.LARGURA;
+        int altura = QuadrosReferencia.ALTURA;
+        byte[] captura = new byte[largura * altura];
+        Random aleatorio = new Random(3);
+
+        // Uma sonda por marcação para cada funcionário identificado
+        byte[][][] sondas = new byte[identificados][MARCACOES.length][];
+        for (int fid = 0; fid < funcionarios; fid++) {
+            simulador.colocarDedo(0, fid);
+            simulador.acquireFingerprintImage(handle, captura);
+            galeria.adicionar(fid, extrator.extrair(captura, largura, altura).serializar());
+            if (fid < identificados) {
+                for (int k = 0; k < MARCACOES.length; k++) {
+                    for (int q = 1 + aleatorio.nextInt(5); q > 0; q--) {
+                        simulador.acquireFingerprintImage(handle, captura);
+                    }
+                    sondas[fid][k] = extrator.extrair(captura, largura, altura).serializar();
+                }
+            }
+            simulador.retirarDedo(0);
+            if (fid < noTurno) {
+                galeria.definirTurno(fid, LocalTime.of(8, 0), LocalTime.of(17, 0));
+            } else {
+                galeria.definirTurno(fid, LocalTime.of(22, 0), LocalTime.of(6, 0));
+            }
+        }
+        System.out.printf("Galeria %d funcionários, %d identificados por marcação (%d no turno)%n",
+            galeria.getQuantidade(), identificados, Math.min(noTurno, identificados));
+
+        int erros = 0;
+        double[] latencia = new double[2];
+        for (int modo = 0; modo < 2; modo++) {
+            galeria.setOrdenacaoAtiva(modo == 1);
+            galeria.zerarMetricasOrdenacao();
+            long inicio = System.nanoTime();
+            for (int k = 0; k < MARCACOES.length; k++) {
+                galeria.setRelogio(Clock.fixed(MARCACOES[k].atZone(ZoneId.systemDefault()).toInstant(),
+                    ZoneId.systemDefault()));
+                List<Integer> ordem = new ArrayList<>();
+                for (int fid = 0; fid < identificados; fid++) {
+                    ordem.add(fid);
+                }
+                Collections.shuffle(ordem, new Random(k));
+                for (int fid : ordem) {
+                    if (galeria.identificar(sondas[fid][k], null) != fid) {
+                        erros++;
+                    }
+                }
+            }
+            latencia[modo] = (System.nanoTime() - inicio) / 1e6 / (MARCACOES.length * identificados);
+        }
+        System.out.printf("Ordenação desligada %.2f ms/identificação, ligada %.2f ms (%.2fx); erros %d%n",
+            latencia[0], latencia[1], latencia[0] / latencia[1], erros);
+        System.out.printf("Acerto nos prioritários %.1f%% (recentes %d, turno %d), %.1f comparações prioritárias%n",
+            galeria.getTaxaAcertoPrioritarios() * 100, galeria.getAcertosRecentes(), galeria.getAcertosTurno(),
+            galeria.getComparacoesPrioritariasMedias());
+        System.out.printf("Latência média: acerto %.2f ms, queda para a galeria %.2f ms%n",
+            galeria.getLatenciaMediaAcertoMs(), galeria.getLatenciaMediaQuedaMs());
+
+        // Recadastro: o fid 0 é recente e passa a ter outro dedo
+        simulador.colocarDedo(0, DEDO_RECADASTRO);
+        simulador.acquireFingerprintImage(handle, captura);
+        galeria.adicionar(0, extrator.extrair(captura, largura, altura).serializar());
+        int antigo = galeria.identificar(sondas[0][MARCACOES.length - 1], null);
+        simulador.acquireFingerprintImage(handle, captura);
+        int novo = galeria.identificar(extrator.extrair(captura, largura, altura).serializar(), null);
+        simulador.retirarDedo(0);
+        System.out.printf("Após recadastro do fid 0: dedo antigo -> %d, dedo novo -> %d%n", antigo, novo);
+        galeria.encerrar();
+
+        boolean ok = erros == 0 && antigo != 0 && novo == 0;
+        System.out.println(ok ? "OK" : "FALHOU");
+        System.exit(ok ? 0 : 1);
+    }
+}
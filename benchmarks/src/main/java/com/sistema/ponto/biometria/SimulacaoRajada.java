@@ -0,0 +1,100 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.captura.CapturaRajada;
+import com.sistema.ponto.biometria.driver.FabricaDriver;
+import com.sistema.ponto.biometria.driver.SimuladorSensor;
+
+import java.util.Arrays;
+
+/**
+ * Captura em rajada com o {@link SimuladorSensor}: o dedo é colocado e a
+ * rajada pedida em seguida, como no clique em "Capturar". Para cada qualidade
+ * alvo mostra quadros por batida, tempo até aceitar (chegada do dedo até o
+ * quadro aceito), quantas batidas terminaram pelo alvo e a qualidade gravada,
+ * comparando com o quadro que estaria na tela num clique feito
+ * {@link #CLIQUE_MS} ms depois de colocar o dedo.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.sistema.ponto.biometria.SimulacaoRajada
+ * </pre>
+ */
+public class SimulacaoRajada {
+
+    private static final int BATIDAS = 30;
+    private static final long CLIQUE_MS = 150;
+    private static final long PRAZO_MS = 1500;
+    private static final int[] ALVOS = {40, 45, 50, 55, 101};
+    // ZK4500 em alta velocidade: um quadro a cada 30-50 ms
+    private static final long LATENCIA_SENSOR_MS = 30;
+    private static final long VARIACAO_SENSOR_MS = 20;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("ponto.log.nivel", "AVISO");
+        System.setProperty(GerenciadorDigital.PROPRIEDADE_VIVACIDADE, "false");
+        SimuladorSensor simulador = new SimuladorSensor();
+        simulador.setModoManual(true);
+        simulador.setLatencia(LATENCIA_SENSOR_MS, VARIACAO_SENSOR_MS);
+        FabricaDriver.setDriver(simulador);
+
+        GerenciadorDigital gerenciador = GerenciadorDigital.getInstance();
+        if (!gerenciador.iniciarCaptura()) {
+            System.out.println("Falha ao iniciar a captura");
+            System.exit(1);
+        }
+        CapturaRajada rajada = gerenciador.getRajada();
+        rajada.setPrazoMs(PRAZO_MS);
+
+        int[] clique = new int[BATIDAS];
+        for (int b = 0; b < BATIDAS; b++) {
+            simulador.colocarDedo(0, b % 10);
+            Thread.sleep(CLIQUE_MS);
+            clique[b] = Math.max(0, gerenciador.getQualidadeDigital());
+            retirar(simulador);
+        }
+        System.out.printf("Clique %d ms após o dedo (sem rajada): qualidade %s%n", CLIQUE_MS, faixa(clique));
+        System.out.printf("%-6s %-8s %-22s %-28s %-22s%n", "alvo", "no alvo", "quadros/batida",
+            "aceite ms (p50/p90/máx)", "qualidade gravada");
+
+        for (int alvo : ALVOS) {
+            rajada.setQualidadeAlvo(alvo);
+            int noAlvo = 0;
+            int[] quadros = new int[BATIDAS];
+            long[] aceite = new long[BATIDAS];
+            int[] qualidade = new int[BATIDAS];
+            for (int b = 0; b < BATIDAS; b++) {
+                simulador.colocarDedo(0, b % 10);
+                CapturaRajada.Resultado resultado = gerenciador.capturarRajada();
+                if (resultado.getTermino() == CapturaRajada.Termino.ALVO) {
+                    noAlvo++;
+                }
+                quadros[b] = resultado.getQuadrosAvaliados();
+                aceite[b] = resultado.getTempoAceiteNanos() / 1_000_000L;
+                qualidade[b] = resultado.getMelhorQualidade();
+                retirar(simulador);
+            }
+            Arrays.sort(aceite);
+            System.out.printf("%-6s %-8s %-22s %-28s %-22s%n", alvo > 100 ? "-" : String.valueOf(alvo),
+                noAlvo + "/" + BATIDAS, faixa(quadros),
+                String.format("%d / %d / %d", aceite[BATIDAS / 2], aceite[BATIDAS * 9 / 10], aceite[BATIDAS - 1]),
+                faixa(qualidade));
+        }
+        gerenciador.encerrar();
+        System.exit(0);
+    }
+
+    private static void retirar(SimuladorSensor simulador) throws InterruptedException {
+        simulador.retirarDedo(0);
+        Thread.sleep(200);
+    }
+
+    private static String faixa(int[] valores) {
+        int minimo = Integer.MAX_VALUE;
+        int maximo = Integer.MIN_VALUE;
+        long soma = 0;
+        for (int v : valores) {
+            minimo = Math.min(minimo, v);
+            maximo = Math.max(maximo, v);
+            soma += v;
+        }
+        return String.format("%d / %.1f / %d", minimo, soma / (double) valores.length, maximo);
+    }
+}
@@ -0,0 +1,254 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.captura.EstagioVivacidade;
+import com.sistema.ponto.biometria.captura.PipelineCaptura;
+import com.sistema.ponto.biometria.driver.FabricaDriver;
+import com.sistema.ponto.biometria.driver.SimuladorSensor;
+import com.sistema.ponto.biometria.processamento.AnalisadorQuadro;
+import com.sistema.ponto.biometria.processamento.AnalisadorVivacidade;
+import com.sistema.ponto.biometria.processamento.EstatisticasQuadro;
+import com.sistema.ponto.metricas.Histograma;
+import com.sistema.ponto.metricas.RegistroMetricas;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Vivacidade com o {@link SimuladorSensor} alternando dedos vivos e réplicas
+ * ({@link SimuladorSensor#setDedoArtificial(boolean)}):
+ * <ol>
+ *   <li>calibração: medidas do {@link AnalisadorVivacidade} por colocação,
+ *       para cada classe, e taxas de detecção e de falso alarme no limiar padrão;</li>
+ *   <li>ponta a ponta pelo {@link GerenciadorDigital}: quantas réplicas viram
+ *       qualidade -1 no listener, tempo até o veredito contra o prazo e tempo
+ *       de cada etapa;</li>
+ *   <li>a mesma carga num processo com {@code -Dponto.vivacidade=false}, para
+ *       comparar a latência da publicação (chegada do quadro até os listeners).</li>
+ * </ol>
+ * Falha (código 1) se algum veredito sair depois do prazo ou se a publicação
+ * ficar mais lenta com a vivacidade ligada.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.sistema.ponto.biometria.SimulacaoVivacidade
+ * </pre>
+ */
+public class SimulacaoVivacidade {
+
+    private static final int COLOCACOES_CALIBRACAO = 40;
+    private static final int COLOCACOES = 30;
+    private static final long TEMPO_DEDO_MS = 600;
+    private static final long TEMPO_SEM_DEDO_MS = 300;
+    // ZK4500 em alta velocidade: um quadro a cada 30-50 ms
+    private static final long LATENCIA_SENSOR_MS = 30;
+    private static final long VARIACAO_SENSOR_MS = 20;
+    // Linhas do log do filho (os vereditos já aparecem no resumo)
+    private static final Pattern LINHA_LOG = Pattern.compile("\\d{4}-\\d{2}-\\d{2} ");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].equals("filho")) {
+            executarFilho();
+            return;
+        }
+        calibrar();
+        String comVivacidade = executarProcesso(true);
+        String semVivacidade = executarProcesso(false);
+        double p99Com = Double.parseDouble(comVivacidade.trim());
+        double p99Sem = Double.parseDouble(semVivacidade.trim());
+        System.out.printf("Publicação p99: %.2f ms com vivacidade, %.2f ms sem%n", p99Com, p99Sem);
+        // Folga de 2 ms para o ruído de escalonamento de uma máquina de um núcleo
+        boolean ok = p99Com >= 0 && p99Com <= p99Sem + 2.0;
+        System.out.println(ok ? "OK" : "FALHA");
+        System.exit(ok ? 0 : 1);
+    }
+
+    // ---------------------------------------------------------------------
+    // Calibração
+    // ---------------------------------------------------------------------
+
+    private static void calibrar() throws InterruptedException {
+        System.out.println("== Calibração: " + COLOCACOES_CALIBRACAO + " colocações de cada classe ==");
+        SimuladorSensor simulador = new SimuladorSensor();
+        simulador.setModoManual(true);
+        simulador.setLatencia(LATENCIA_SENSOR_MS, VARIACAO_SENSOR_MS);
+        simulador.init();
+        long handle = simulador.openDevice(0);
+        int largura = SimuladorSensor.LARGURA_ZK4500;
+        int altura = SimuladorSensor.ALTURA_ZK4500;
+        byte[] imagem = new byte[largura * altura];
+        AnalisadorQuadro presenca = new AnalisadorQuadro();
+        EstatisticasQuadro estatisticas = new EstatisticasQuadro();
+        AnalisadorVivacidade analisador = new AnalisadorVivacidade();
+
+        for (boolean artificial : new boolean[] {false, true}) {
+            simulador.setDedoArtificial(artificial);
+            float[][] medidas = new float[5][COLOCACOES_CALIBRACAO];
+            int suspeitas = 0;
+            for (int c = 0; c < COLOCACOES_CALIBRACAO; c++) {
+                simulador.colocarDedo(0, c % 10);
+                analisador.reiniciar();
+                long inicio = 0;
+                long ultimo = 0;
+                while (analisador.getQuadros() < EstagioVivacidade.QUADROS_VEREDITO) {
+                    simulador.acquireFingerprintImage(handle, imagem);
+                    long agora = System.nanoTime();
+                    presenca.analisar(imagem, largura, altura, estatisticas);
+                    if (!estatisticas.temDedo()) {
+                        continue;
+                    }
+                    if (inicio == 0) {
+                        inicio = agora;
+                    }
+                    if (agora - inicio >= TimeUnit.MILLISECONDS.toNanos(EstagioVivacidade.PRAZO_PADRAO_MS)) {
+                        break;
+                    }
+                    if (ultimo != 0 && agora - ultimo < TimeUnit.MILLISECONDS.toNanos(EstagioVivacidade.INTERVALO_MINIMO_MS)) {
+                        continue;
+                    }
+                    ultimo = agora;
+                    analisador.marcarBlocos(imagem, largura, altura);
+                    analisador.medirDeformacao();
+                    analisador.medirContraste(imagem);
+                    analisador.medirTextura(imagem);
+                }
+                simulador.retirarDedo(0);
+                medidas[0][c] = analisador.getTextura();
+                medidas[1][c] = analisador.getContraste();
+                medidas[2][c] = analisador.getCrescimento();
+                medidas[3][c] = analisador.getMovimento();
+                medidas[4][c] = analisador.getPontuacao();
+                if (analisador.getPontuacao() < EstagioVivacidade.LIMIAR_PADRAO) {
+                    suspeitas++;
+                }
+                Thread.sleep(50);
+            }
+            System.out.println(artificial ? "Réplica:" : "Dedo vivo:");
+            String[] nomes = {"textura", "contraste", "crescimento", "movimento", "pontuação"};
+            for (int m = 0; m < nomes.length; m++) {
+                System.out.printf("  %-12s %s%n", nomes[m], faixa(medidas[m]));
+            }
+            System.out.printf("  suspeitas no limiar %.2f: %d/%d (%s)%n", EstagioVivacidade.LIMIAR_PADRAO,
+                suspeitas, COLOCACOES_CALIBRACAO, artificial ? "detecção" : "falso alarme");
+        }
+        simulador.closeDevice(handle);
+        simulador.terminate();
+    }
+
+    private static String faixa(float[] valores) {
+        float minimo = Float.MAX_VALUE;
+        float maximo = -Float.MAX_VALUE;
+        double soma = 0;
+        for (float v : valores) {
+            minimo = Math.min(minimo, v);
+            maximo = Math.max(maximo, v);
+            soma += v;
+        }
+        return String.format("mín %7.3f  média %7.3f  máx %7.3f", minimo, soma / valores.length, maximo);
+    }
+
+    // ---------------------------------------------------------------------
+    // Ponta a ponta
+    // ---------------------------------------------------------------------
+
+    private static String executarProcesso(boolean vivacidade) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> comando = new ArrayList<>();
+        comando.add(java);
+        comando.add("-Djava.awt.headless=true");
+        comando.add("-D" + GerenciadorDigital.PROPRIEDADE_VIVACIDADE + "=" + vivacidade);
+        comando.add("-Dponto.log.nivel=INFO");
+        comando.add("-cp");
+        comando.add(System.getProperty("java.class.path"));
+        comando.add(SimulacaoVivacidade.class.getName());
+        comando.add("filho");
+        Process processo = new ProcessBuilder(comando).redirectErrorStream(true).start();
+        String resultado = null;
+        try (BufferedReader leitor = new BufferedReader(
+                new InputStreamReader(processo.getInputStream(), StandardCharsets.UTF_8))) {
+            String linha;
+            while ((linha = leitor.readLine()) != null) {
+                if (linha.startsWith("p99=")) {
+                    resultado = linha.substring(4);
+                } else if (!LINHA_LOG.matcher(linha).lookingAt()) {
+                    System.out.println(linha);
+                }
+            }
+        }
+        processo.waitFor();
+        return resultado == null ? "-1" : resultado;
+    }
+
+    private static void executarFilho() throws Exception {
+        boolean vivacidade = Boolean.parseBoolean(System.getProperty(GerenciadorDigital.PROPRIEDADE_VIVACIDADE, "true"));
+        System.out.println("== Ponta a ponta, vivacidade " + (vivacidade ? "ligada" : "desligada") + ": "
+            + COLOCACOES + " colocações alternando vivo e réplica ==");
+        SimuladorSensor simulador = new SimuladorSensor();
+        simulador.setModoManual(true);
+        simulador.setLatencia(LATENCIA_SENSOR_MS, VARIACAO_SENSOR_MS);
+        FabricaDriver.setDriver(simulador);
+
+        GerenciadorDigital gerenciador = GerenciadorDigital.getInstance();
+        Histograma publicacao = RegistroMetricas.getInstance().histogramaTempo(
+            "simulacao_publicacao_segundos", "Quadro adquirido até o listener");
+        AtomicInteger sinaisSuspeita = new AtomicInteger();
+        gerenciador.setQualidadeListener((qualidade, mensagem) -> {
+            if (qualidade == -1) {
+                sinaisSuspeita.incrementAndGet();
+            }
+        });
+        gerenciador.setQuadroListener(quadro -> {
+            publicacao.registrarDesde(quadro.getInstanteNanos());
+            quadro.devolver();
+        });
+        if (!gerenciador.iniciarCaptura()) {
+            System.out.println("Falha ao iniciar a captura");
+            System.exit(1);
+        }
+
+        int detectadas = 0;
+        int falsosAlarmes = 0;
+        for (int c = 0; c < COLOCACOES; c++) {
+            boolean artificial = c % 2 == 1;
+            simulador.setDedoArtificial(artificial);
+            sinaisSuspeita.set(0);
+            simulador.colocarDedo(0, c % 10);
+            Thread.sleep(TEMPO_DEDO_MS);
+            simulador.retirarDedo(0);
+            Thread.sleep(TEMPO_SEM_DEDO_MS);
+            if (sinaisSuspeita.get() > 0) {
+                if (artificial) {
+                    detectadas++;
+                } else {
+                    falsosAlarmes++;
+                }
+            }
+        }
+
+        PipelineCaptura pipeline = gerenciador.getPipeline();
+        System.out.printf("Réplicas com qualidade -1: %d/%d, dedos vivos com qualidade -1: %d/%d%n",
+            detectadas, COLOCACOES / 2, falsosAlarmes, COLOCACOES / 2);
+        System.out.printf("Publicação (quadro adquirido até o listener): p50 %.2f ms, p99 %.2f ms, máx %.2f ms%n",
+            publicacao.getP50() * 1e3, publicacao.getP99() * 1e3, publicacao.getMaximo() * 1e3);
+        System.out.println(pipeline.resumo());
+        EstagioVivacidade estagio = gerenciador.getVivacidade();
+        boolean noPrazo = true;
+        if (estagio != null) {
+            System.out.println(estagio.resumo());
+            for (String etapa : new String[] {"deformacao", "contraste", "textura"}) {
+                Histograma h = (Histograma) RegistroMetricas.getInstance()
+                    .getMetrica("ponto_vivacidade_" + etapa + "_segundos");
+                System.out.printf("  %-10s p50 %.3f ms, p99 %.3f ms por quadro%n", etapa,
+                    h.getP50() * 1e3, h.getP99() * 1e3);
+            }
+            noPrazo = estagio.getPrazosEsgotados() == 0;
+        }
+        gerenciador.encerrar();
+        System.out.println("p99=" + (noPrazo ? String.valueOf(publicacao.getP99() * 1e3) : "-1"));
+        System.exit(0);
+    }
+}
@@ -0,0 +1,77 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.captura.PoolQuadros;
+import com.sistema.ponto.biometria.captura.Quadro;
+import com.sistema.ponto.biometria.driver.SimuladorSensor;
+import com.sistema.ponto.biometria.processamento.AnalisadorQuadro;
+import com.sistema.ponto.biometria.processamento.EstatisticasQuadro;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Verificação de alocação do laço de captura em regime.
+ * Mede os bytes alocados pela thread (com.sun.management.ThreadMXBean) durante
+ * milhares de ciclos emprestar/capturar/analisar/devolver e falha se houver qualquer alocação.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.sistema.ponto.biometria.VerificarAlocacao
+ * </pre>
+ */
+public class VerificarAlocacao {
+
+    private static final int AQUECIMENTO = 20_000;
+    private static final int CICLOS = 5_000;
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long idThread = Thread.currentThread().getId();
+
+        SimuladorSensor simulador = new SimuladorSensor();
+        simulador.setModoManual(true);
+        simulador.setTempoContatoMs(0);
+        simulador.setDimensoes(64, 80);
+        simulador.init();
+        long handle = simulador.openDevice(0);
+        simulador.colocarDedo(0, 2);
+
+        PoolQuadros pool = new PoolQuadros(64, 80);
+        AnalisadorQuadro analisador = new AnalisadorQuadro();
+        EstatisticasQuadro estatisticas = new EstatisticasQuadro();
+
+        // Aquecimento: deixa o JIT compilar o laço
+        executar(simulador, handle, pool, analisador, estatisticas, AQUECIMENTO);
+
+        long antes = threads.getThreadAllocatedBytes(idThread);
+        long soma = executar(simulador, handle, pool, analisador, estatisticas, CICLOS);
+        long depois = threads.getThreadAllocatedBytes(idThread);
+        // Descontamos a própria chamada de medição, que pode alocar alguns bytes
+        long calibracao = threads.getThreadAllocatedBytes(idThread) - depois;
+        long alocados = Math.max(0, depois - antes - calibracao);
+
+        System.out.println("Ciclos: " + CICLOS + " (soma " + soma + ")");
+        System.out.println("Bytes alocados no laço: " + alocados);
+        System.out.println("Quadros livres no pool: " + pool.getLivres() + "/" + pool.getTamanho());
+        if (alocados > 0 || pool.getLivres() != pool.getTamanho()) {
+            System.out.println("FALHA: o laço de captura em regime alocou memória ou perdeu quadros");
+            System.exit(1);
+        }
+        System.out.println("OK: laço de captura sem alocação");
+    }
+
+    private static long executar(SimuladorSensor simulador, long handle, PoolQuadros pool,
+                                 AnalisadorQuadro analisador, EstatisticasQuadro estatisticas, int ciclos) {
+        long soma = 0;
+        for (int i = 0; i < ciclos; i++) {
+            Quadro quadro = pool.emprestar();
+            try {
+                simulador.acquireFingerprintImage(handle, quadro.getPixels());
+                analisador.analisar(quadro.getPixels(), quadro.getLargura(), quadro.getAltura(), estatisticas);
+                quadro.marcar(i, System.nanoTime());
+                soma += estatisticas.getQualidade();
+            } finally {
+                quadro.devolver();
+            }
+        }
+        return soma;
+    }
+}
@@ -0,0 +1,10 @@
+@echo off
+echo === Iniciando Servico de Ponto (sem interface) ===
+echo.
+
+:: Heap pequeno: o servico so captura, compara e envia; o JIT completo fica ativo
+:: porque a extracao e a comparacao rodam sem parar
+java -Xms16m -Xmx64m -XX:+UseSerialGC -Djava.awt.headless=true -Djava.library.path="lib/dll/sdk" -cp "target/sistema-de-ponto-1.0-SNAPSHOT-jar-with-dependencies.jar;lib/ZKFingerReader.jar" com.ponto.SistemaPontoApplication ponto.properties
+
+echo.
+echo === Servico Finalizado ===
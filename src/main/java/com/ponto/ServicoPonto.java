@@ -0,0 +1,356 @@
+package com.ponto;
+
+import com.ponto.config.WebSocketConfig;
+import com.ponto.websocket.BiometriaWebSocket;
+import com.sistema.ponto.biometria.GerenciadorDigital;
+import com.sistema.ponto.biometria.GerenciadorLeitores;
+import com.sistema.ponto.biometria.LeitorBiometrico;
+import com.sistema.ponto.biometria.LeitorDispositivo;
+import com.sistema.ponto.biometria.captura.CapturaRajada;
+import com.sistema.ponto.biometria.captura.Quadro;
+import com.sistema.ponto.biometria.galeria.GerenciadorGaleria;
+import com.sistema.ponto.envio.ServicoEnvio;
+import com.sistema.ponto.log.DespachanteLog;
+import com.sistema.ponto.log.Log;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * O serviço de captura sem interface: {@link GerenciadorDigital} (captura,
+ * qualidade e comparação), {@link BiometriaWebSocket} para o painel web e
+ * {@link ServicoEnvio} para o sistema web, cada um configurado pelas suas
+ * propriedades {@code ponto.*}. Com {@code ponto.leitores=multiplos} a captura
+ * fica com o {@link GerenciadorLeitores} (todos os leitores conectados, com o
+ * número do leitor em cada evento do painel) em vez do {@link GerenciadorDigital}.
+ * <p>
+ * Cada colocação do dedo é identificada uma vez na galeria: com um leitor, pelo
+ * melhor quadro da rajada depois do veredito de vivacidade; com vários, pelo
+ * template do primeiro quadro bom de cada leitor. Um funcionário identificado
+ * vira {@link ServicoEnvio#registrarBatida}; uma digital boa que não está na
+ * galeria vai como {@link ServicoEnvio#registrarCaptura} para conferência no
+ * sistema web. Os templates saem da imagem, então a identificação precisa de
+ * {@code ponto.comparador=java}.
+ * <p>
+ * {@link #parar()} pode ser chamado de qualquer thread (gancho de
+ * encerramento, sinal do sistema) e mais de uma vez: para a captura, libera o
+ * leitor e o SDK, e deixa o spool de envio consistente.
+ */
+public class ServicoPonto {
+
+    private static final Log log = Log.para(ServicoPonto.class);
+
+    private static final long ESPERA_ENVIO_MS = 5000;
+    private static final long ESPERA_LOG_MS = 1000;
+    private static final long ESPERA_IDENTIFICACAO_MS = 2000;
+
+    public static final String PROPRIEDADE_LEITORES = "ponto.leitores";
+    public static final String LEITORES_UNICO = "unico";
+    public static final String LEITORES_MULTIPLOS = "multiplos";
+
+    // Só um dos dois é criado, conforme ponto.leitores
+    private final GerenciadorDigital gerenciador;
+    private final GerenciadorLeitores leitores;
+    private final WebSocketConfig configWebSocket = WebSocketConfig.lerPropriedades();
+    private BiometriaWebSocket webSocket;
+    private ServicoEnvio envio;
+    private final CountDownLatch termino = new CountDownLatch(1);
+    private boolean parado;
+    // Identificação fora das threads de captura, uma colocação por vez
+    private final ExecutorService identificacao = Executors.newSingleThreadExecutor(tarefa -> {
+        Thread thread = new Thread(tarefa, "identificacao");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean identificando = new AtomicBoolean();
+
+    public ServicoPonto() {
+        if (LEITORES_MULTIPLOS.equalsIgnoreCase(System.getProperty(PROPRIEDADE_LEITORES, LEITORES_UNICO))) {
+            gerenciador = null;
+            leitores = GerenciadorLeitores.getInstance();
+        } else {
+            gerenciador = GerenciadorDigital.getInstance();
+            leitores = null;
+        }
+    }
+
+    /**
+     * Abre o spool de envio (reenviando o que ficou pendente), o servidor
+     * WebSocket e a captura.
+     *
+     * @return false se algum deles não pôde ser aberto; o que já tinha sido
+     * aberto é fechado
+     */
+    public boolean iniciar() {
+        try {
+            envio = ServicoEnvio.lerPropriedades();
+        } catch (IOException | IllegalArgumentException e) {
+            log.erro("Não foi possível abrir o spool de envio: {}", e.getMessage());
+            return false;
+        }
+        if (envio != null) {
+            envio.iniciar();
+        }
+
+        if (configWebSocket.isAtivo()) {
+            webSocket = new BiometriaWebSocket(configWebSocket);
+            try {
+                webSocket.iniciar();
+            } catch (IOException e) {
+                log.erro("Não foi possível abrir o servidor WebSocket: {}", e.getMessage());
+                webSocket = null;
+                parar();
+                return false;
+            }
+            if (leitores != null) {
+                conectarPainel(webSocket);
+            } else {
+                BiometriaWebSocket destino = webSocket;
+                gerenciador.setQualidadeListener(destino::publicarQualidade);
+                gerenciador.setQuadroListener(quadro -> {
+                    try {
+                        destino.publicarQuadro(quadro);
+                    } finally {
+                        quadro.devolver();
+                    }
+                });
+            }
+        }
+
+        conectarIdentificacao();
+
+        boolean capturando = leitores != null ? leitores.iniciar() : gerenciador.iniciarCaptura();
+        if (!capturando) {
+            log.erro("Falha ao iniciar a captura");
+            parar();
+            return false;
+        }
+        String captura = leitores != null
+            ? leitores.getLeitores().size() + " leitores"
+            : gerenciador.getLargura() + "x" + gerenciador.getAltura();
+        log.info("Serviço no ar em {} ms ({}, WebSocket {}, envio {})",
+            ManagementFactory.getRuntimeMXBean().getUptime(), captura,
+            webSocket != null ? "na porta " + webSocket.getPorta() : "desligado",
+            envio != null ? "ativo" : "desligado");
+        return true;
+    }
+
+    private void conectarIdentificacao() {
+        BiometriaWebSocket destino = webSocket;
+        boolean comparadorJava = GerenciadorDigital.COMPARADOR_JAVA.equalsIgnoreCase(
+            System.getProperty(GerenciadorDigital.PROPRIEDADE_COMPARADOR, GerenciadorDigital.COMPARADOR_NATIVO));
+        if (!comparadorJava) {
+            log.aviso("Sem {}={} as digitais não são identificadas e nenhuma batida é registrada",
+                GerenciadorDigital.PROPRIEDADE_COMPARADOR, GerenciadorDigital.COMPARADOR_JAVA);
+        }
+        if (leitores != null) {
+            if (comparadorJava) {
+                // O leitor só entrega o template depois do veredito de vivacidade da
+                // colocação, então uma digital suspeita não vira batida
+                leitores.adicionarListener(new GerenciadorLeitores.EventoListener() {
+                    @Override
+                    public void onTemplateExtraido(int dispositivo, byte[] template) {
+                        agendar(() -> identificarLeitor(dispositivo, template));
+                    }
+                });
+            }
+            return;
+        }
+        gerenciador.setPresencaListener(temDedo -> {
+            if (destino != null) {
+                destino.publicarPresenca(temDedo);
+            }
+            if (temDedo && comparadorJava && identificando.compareAndSet(false, true)
+                    && !agendar(this::identificarColocacao)) {
+                identificando.set(false);
+            }
+        });
+    }
+
+    /**
+     * @return false se o serviço já está parando
+     */
+    private boolean agendar(Runnable tarefa) {
+        try {
+            identificacao.execute(tarefa);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Rajada da colocação que acabou de começar; com a vivacidade ligada, a
+     * rajada só volta depois do veredito.
+     */
+    private void identificarColocacao() {
+        try {
+            CapturaRajada.Resultado resultado = gerenciador.capturarRajada();
+            byte[] template = gerenciador.getTemplateAtual();
+            if (resultado == null || resultado.getQuadrosGuardados() == 0 || resultado.isSuspeita()
+                    || template == null) {
+                return;
+            }
+            LeitorBiometrico leitor = LeitorBiometrico.getInstance();
+            String serial = leitor.getDriver().lerSerial(leitor.getDeviceHandle());
+            registrar(-1, serial != null ? serial : "0", template, resultado.getMelhorQualidade());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.erro("Erro ao identificar a digital: {}", e.getMessage(), e);
+        } finally {
+            identificando.set(false);
+        }
+    }
+
+    private void identificarLeitor(int dispositivo, byte[] template) {
+        LeitorDispositivo aberto = leitores.getLeitor(dispositivo);
+        if (aberto == null) {
+            return; // Desconectado enquanto esperava
+        }
+        try {
+            registrar(dispositivo, aberto.getSerial(), template, aberto.getQualidadeDigital());
+        } catch (RuntimeException e) {
+            log.erro("Erro ao identificar a digital do leitor {}: {}", dispositivo, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Identifica o template na galeria e grava a batida (ou a captura, se não
+     * identificou) no spool de envio.
+     *
+     * @param leitor número do leitor no {@link GerenciadorLeitores}, ou -1 no
+     *               modo de um leitor
+     */
+    private void registrar(int leitor, String dispositivo, byte[] template, int qualidade) {
+        GerenciadorGaleria galeria = leitores != null ? leitores.getGaleria() : gerenciador.getGaleria();
+        int[] pontuacao = new int[1];
+        int fid = galeria.identificar(template, pontuacao);
+        if (fid >= 0) {
+            log.info("Batida do funcionário {} no leitor {} (pontuação {})", fid, dispositivo, pontuacao[0]);
+        } else {
+            log.info("Digital não identificada no leitor {} (qualidade {})", dispositivo, qualidade);
+        }
+        BiometriaWebSocket destino = webSocket;
+        if (destino != null) {
+            destino.publicarIdentificacao(leitor, fid);
+        }
+        if (envio == null) {
+            return;
+        }
+        try {
+            if (fid >= 0) {
+                envio.registrarBatida(fid, dispositivo, pontuacao[0]);
+            } else {
+                envio.registrarCaptura(template, qualidade);
+            }
+        } catch (IOException e) {
+            log.erro("Não foi possível gravar no spool de envio: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Eventos de todos os leitores no painel; cada leitor tem a sua prévia,
+     * com o número dele no cabeçalho.
+     */
+    private void conectarPainel(BiometriaWebSocket destino) {
+        leitores.adicionarListener(new GerenciadorLeitores.EventoListener() {
+            @Override
+            public void onPresencaAlterada(int dispositivo, boolean temDedo) {
+                destino.publicarPresenca(dispositivo, temDedo);
+            }
+
+            @Override
+            public void onQualidadeAtualizada(int dispositivo, int qualidade, String mensagem) {
+                destino.publicarQualidade(dispositivo, qualidade, mensagem);
+            }
+
+            @Override
+            public void onQuadroCapturado(int dispositivo, Quadro quadro) {
+                destino.publicarQuadro(dispositivo, quadro);
+            }
+        });
+    }
+
+    public void parar() {
+        synchronized (this) {
+            if (parado) {
+                return;
+            }
+            parado = true;
+        }
+        log.info("Encerrando o serviço");
+        // Interrompe a rajada em andamento antes de liberar o leitor
+        identificacao.shutdownNow();
+        try {
+            if (!identificacao.awaitTermination(ESPERA_IDENTIFICACAO_MS, TimeUnit.MILLISECONDS)) {
+                log.erro("Identificação não terminou a tempo");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (leitores != null) {
+                leitores.encerrar();
+            } else {
+                gerenciador.encerrar();
+            }
+        } catch (RuntimeException e) {
+            log.erro("Falha ao liberar o leitor: {}", e.getMessage(), e);
+        }
+        if (webSocket != null) {
+            webSocket.parar();
+        }
+        if (envio != null) {
+            envio.parar(ESPERA_ENVIO_MS);
+        }
+        log.info("Serviço encerrado");
+        DespachanteLog.getInstance().descarregar(ESPERA_LOG_MS);
+        termino.countDown();
+    }
+
+    /**
+     * Bloqueia até {@link #parar()}.
+     */
+    public void aguardarTermino() throws InterruptedException {
+        termino.await();
+    }
+
+    public boolean aguardarTermino(long tempoMs) throws InterruptedException {
+        return termino.await(tempoMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Captura de um leitor, ou null com {@code ponto.leitores=multiplos}.
+     */
+    public GerenciadorDigital getGerenciador() {
+        return gerenciador;
+    }
+
+    /**
+     * Captura de vários leitores, ou null no modo de um leitor (padrão).
+     */
+    public GerenciadorLeitores getLeitores() {
+        return leitores;
+    }
+
+    /**
+     * Servidor do painel, ou null se desligado ({@code ponto.ws.ativo=false}).
+     */
+    public BiometriaWebSocket getWebSocket() {
+        return webSocket;
+    }
+
+    /**
+     * Envio ao sistema web, ou null sem {@code ponto.envio.url}.
+     */
+    public ServicoEnvio getEnvio() {
+        return envio;
+    }
+}
@@ -0,0 +1,41 @@
+package com.ponto;
+
+import com.ponto.config.ArquivoConfiguracao;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Ponto de entrada do serviço sem interface gráfica ({@link ServicoPonto}):
+ * <pre>
+ * java -Xmx64m -cp ... com.ponto.SistemaPontoApplication [ponto.properties]
+ * </pre>
+ * Lê o arquivo de configuração ({@link ArquivoConfiguracao}) antes de carregar
+ * qualquer outra classe do sistema e força {@code java.awt.headless}. Um
+ * Ctrl+C ou SIGTERM para a captura e libera o leitor antes de sair.
+ */
+public class SistemaPontoApplication {
+
+    public static void main(String[] args) throws InterruptedException {
+        // Antes de qualquer classe AWT: nada de tela nem toolkit
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        Path arquivo = ArquivoConfiguracao.localizar(args);
+        if (arquivo != null) {
+            try {
+                ArquivoConfiguracao.aplicar(arquivo);
+            } catch (IOException e) {
+                System.err.println("Não foi possível ler a configuração " + arquivo + ": " + e);
+                System.exit(1);
+            }
+        }
+
+        ServicoPonto servico = new ServicoPonto();
+        Runtime.getRuntime().addShutdownHook(new Thread(servico::parar, "encerramento"));
+        if (!servico.iniciar()) {
+            System.exit(1);
+        }
+        servico.aguardarTermino();
+    }
+}
@@ -0,0 +1,66 @@
+package com.ponto.config;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Arquivo de configuração do serviço ({@code ponto.properties}): as mesmas
+ * chaves das propriedades de sistema ({@code ponto.ws.*}, {@code ponto.envio.*},
+ * {@code ponto.log.*}, {@code ponto.metricas.porta}, {@code ponto.sensor.driver}...),
+ * uma por linha. Um {@code -D} na linha de comando vale mais que o arquivo.
+ * <p>
+ * Tem de ser aplicado antes de qualquer classe que lê as propriedades ao ser
+ * carregada (o log, por exemplo), então não usa o {@code Log}.
+ */
+public final class ArquivoConfiguracao {
+
+    public static final String PROPRIEDADE_ARQUIVO = "ponto.config";
+    public static final String ARQUIVO_PADRAO = "ponto.properties";
+
+    private ArquivoConfiguracao() {
+    }
+
+    /**
+     * Arquivo a usar: o primeiro argumento, senão {@code -Dponto.config}, senão
+     * {@code ponto.properties} na pasta atual se existir.
+     *
+     * @return null se não há arquivo
+     */
+    public static Path localizar(String[] args) {
+        if (args.length > 0) {
+            return Paths.get(args[0]);
+        }
+        String arquivo = System.getProperty(PROPRIEDADE_ARQUIVO);
+        if (arquivo != null) {
+            return Paths.get(arquivo);
+        }
+        Path padrao = Paths.get(ARQUIVO_PADRAO);
+        return Files.isRegularFile(padrao) ? padrao : null;
+    }
+
+    /**
+     * Copia para as propriedades de sistema as chaves do arquivo que não foram
+     * definidas na linha de comando.
+     *
+     * @return quantas chaves foram aplicadas
+     */
+    public static int aplicar(Path arquivo) throws IOException {
+        Properties propriedades = new Properties();
+        try (Reader leitor = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8)) {
+            propriedades.load(leitor);
+        }
+        int aplicadas = 0;
+        for (String chave : propriedades.stringPropertyNames()) {
+            if (System.getProperty(chave) == null) {
+                System.setProperty(chave, propriedades.getProperty(chave).trim());
+                aplicadas++;
+            }
+        }
+        return aplicadas;
+    }
+}
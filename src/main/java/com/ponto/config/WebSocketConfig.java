@@ -0,0 +1,221 @@
+package com.ponto.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Configuração do {@link com.ponto.websocket.BiometriaWebSocket}. Os valores
+ * padrão servem para um painel na própria máquina; {@link #lerPropriedades()}
+ * aplica as propriedades {@code ponto.ws.*} do sistema por cima deles.
+ */
+public class WebSocketConfig {
+
+    public static final String PROPRIEDADE_ATIVO = "ponto.ws.ativo";
+    public static final String PROPRIEDADE_PORTA = "ponto.ws.porta";
+    public static final String PROPRIEDADE_ENDERECO = "ponto.ws.endereco";
+    public static final String PROPRIEDADE_CAMINHO = "ponto.ws.caminho";
+    public static final String PROPRIEDADE_REDUCAO = "ponto.ws.reducao";
+    public static final String PROPRIEDADE_TAMANHO_BLOCO = "ponto.ws.tamanhoBloco";
+    public static final String PROPRIEDADE_LIMIAR_BLOCO = "ponto.ws.limiarBloco";
+    public static final String PROPRIEDADE_QUADROS_POR_SEGUNDO = "ponto.ws.quadrosPorSegundo";
+    public static final String PROPRIEDADE_MAXIMO_CLIENTES = "ponto.ws.maximoClientes";
+    public static final String PROPRIEDADE_ORIGENS = "ponto.ws.origens";
+
+    private boolean ativo = true;
+    private int porta = 8787;
+    // Só localhost por padrão: a prévia é a digital da pessoa
+    private String endereco = "127.0.0.1";
+    private String caminho = "/biometria";
+    private int reducao = 2;
+    private int tamanhoBloco = 16;
+    private int limiarBloco = 8;
+    private int quadrosPorSegundo = 15;
+    private int maximoClientes = 64;
+    private int eventosPorCliente = 32;
+    // Páginas que podem abrir o WebSocket; sem a lista, qualquer site aberto
+    // no navegador do posto leria a prévia da digital
+    private List<String> origens = lerOrigens("http://localhost,http://127.0.0.1");
+
+    public static WebSocketConfig lerPropriedades() {
+        WebSocketConfig config = new WebSocketConfig();
+        config.setAtivo(Boolean.parseBoolean(System.getProperty(PROPRIEDADE_ATIVO, String.valueOf(config.ativo))));
+        config.setPorta(Integer.getInteger(PROPRIEDADE_PORTA, config.porta));
+        config.setEndereco(System.getProperty(PROPRIEDADE_ENDERECO, config.endereco));
+        config.setCaminho(System.getProperty(PROPRIEDADE_CAMINHO, config.caminho));
+        config.setReducao(Integer.getInteger(PROPRIEDADE_REDUCAO, config.reducao));
+        config.setTamanhoBloco(Integer.getInteger(PROPRIEDADE_TAMANHO_BLOCO, config.tamanhoBloco));
+        config.setLimiarBloco(Integer.getInteger(PROPRIEDADE_LIMIAR_BLOCO, config.limiarBloco));
+        config.setQuadrosPorSegundo(Integer.getInteger(PROPRIEDADE_QUADROS_POR_SEGUNDO, config.quadrosPorSegundo));
+        config.setMaximoClientes(Integer.getInteger(PROPRIEDADE_MAXIMO_CLIENTES, config.maximoClientes));
+        String origens = System.getProperty(PROPRIEDADE_ORIGENS);
+        if (origens != null) {
+            config.setOrigens(origens);
+        }
+        return config;
+    }
+
+    public boolean isAtivo() {
+        return ativo;
+    }
+
+    /**
+     * Sem o servidor o serviço só captura e envia (nenhuma porta aberta).
+     */
+    public void setAtivo(boolean ativo) {
+        this.ativo = ativo;
+    }
+
+    public int getPorta() {
+        return porta;
+    }
+
+    /**
+     * @param porta 0 escolhe uma porta livre
+     */
+    public void setPorta(int porta) {
+        this.porta = porta;
+    }
+
+    public String getEndereco() {
+        return endereco;
+    }
+
+    /**
+     * Endereço em que o servidor escuta ({@code 0.0.0.0} para todas as interfaces).
+     */
+    public void setEndereco(String endereco) {
+        this.endereco = endereco;
+    }
+
+    public String getCaminho() {
+        return caminho;
+    }
+
+    public void setCaminho(String caminho) {
+        this.caminho = caminho;
+    }
+
+    public int getReducao() {
+        return reducao;
+    }
+
+    /**
+     * Fator de redução da prévia em cada eixo (2 = média de blocos 2x2).
+     */
+    public void setReducao(int reducao) {
+        if (reducao < 1 || reducao > 8) {
+            throw new IllegalArgumentException("Redução deve estar entre 1 e 8: " + reducao);
+        }
+        this.reducao = reducao;
+    }
+
+    public int getTamanhoBloco() {
+        return tamanhoBloco;
+    }
+
+    /**
+     * Lado, em pixels da prévia, dos blocos enviados só quando mudam.
+     */
+    public void setTamanhoBloco(int tamanhoBloco) {
+        if (tamanhoBloco < 4 || tamanhoBloco > 128) {
+            throw new IllegalArgumentException("Tamanho de bloco deve estar entre 4 e 128: " + tamanhoBloco);
+        }
+        this.tamanhoBloco = tamanhoBloco;
+    }
+
+    public int getLimiarBloco() {
+        return limiarBloco;
+    }
+
+    /**
+     * Diferença mínima de tom num pixel para o bloco ser reenviado; abaixo
+     * disso é ruído do sensor.
+     */
+    public void setLimiarBloco(int limiarBloco) {
+        this.limiarBloco = Math.max(0, limiarBloco);
+    }
+
+    public int getQuadrosPorSegundo() {
+        return quadrosPorSegundo;
+    }
+
+    /**
+     * Limite de prévias por segundo; quadros acima disso nem são reduzidos.
+     */
+    public void setQuadrosPorSegundo(int quadrosPorSegundo) {
+        this.quadrosPorSegundo = Math.max(1, quadrosPorSegundo);
+    }
+
+    public int getMaximoClientes() {
+        return maximoClientes;
+    }
+
+    public void setMaximoClientes(int maximoClientes) {
+        this.maximoClientes = maximoClientes;
+    }
+
+    public int getEventosPorCliente() {
+        return eventosPorCliente;
+    }
+
+    /**
+     * Eventos guardados para um cliente lento; acima disso os mais antigos
+     * são descartados.
+     */
+    public void setEventosPorCliente(int eventosPorCliente) {
+        this.eventosPorCliente = Math.max(1, eventosPorCliente);
+    }
+
+    public List<String> getOrigens() {
+        return origens;
+    }
+
+    /**
+     * Origens (cabeçalho Origin) aceitas no handshake, separadas por vírgula,
+     * como {@code https://ponto.empresa.com.br}. Sem porta vale qualquer porta
+     * daquele esquema e host. Pedidos sem Origin ou de outra origem recebem
+     * 403.
+     */
+    public void setOrigens(String origens) {
+        this.origens = lerOrigens(origens);
+    }
+
+    public boolean isOrigemPermitida(String origem) {
+        if (origem == null) {
+            return false;
+        }
+        String normalizada = normalizar(origem);
+        for (String permitida : origens) {
+            if (normalizada.equals(permitida)
+                || (normalizada.startsWith(permitida + ":") && !temPorta(permitida))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> lerOrigens(String lista) {
+        List<String> lidas = new ArrayList<>();
+        for (String origem : lista.split(",")) {
+            if (!origem.trim().isEmpty()) {
+                lidas.add(normalizar(origem));
+            }
+        }
+        return Collections.unmodifiableList(lidas);
+    }
+
+    private static String normalizar(String origem) {
+        String normalizada = origem.trim().toLowerCase(Locale.ROOT);
+        while (normalizada.endsWith("/")) {
+            normalizada = normalizada.substring(0, normalizada.length() - 1);
+        }
+        return normalizada;
+    }
+
+    private static boolean temPorta(String origem) {
+        int inicioHost = origem.indexOf("://");
+        return origem.indexOf(':', inicioHost < 0 ? 0 : inicioHost + 3) >= 0;
+    }
+}
@@ -0,0 +1,462 @@
+package com.ponto.websocket;
+
+import com.ponto.config.WebSocketConfig;
+import com.sistema.ponto.biometria.captura.Quadro;
+import com.sistema.ponto.log.Log;
+import com.sistema.ponto.metricas.Contador;
+import com.sistema.ponto.metricas.RegistroMetricas;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Servidor WebSocket embutido (RFC 6455, só NIO do JDK) que leva a captura ao
+ * painel web. Uma única thread atende todos os clientes; quem captura só
+ * entrega os dados e a acorda.
+ * <p>
+ * Mensagens de texto (JSON curto):
+ * <ul>
+ *   <li>{@code {"tipo":"qualidade","valor":73,"mensagem":"Qualidade média"}}</li>
+ *   <li>{@code {"tipo":"presenca","dedo":true}}</li>
+ * </ul>
+ * Mensagens binárias (prévia, inteiros big-endian):
+ * <pre>
+ *   u8  tipo (1)         u8  flags (1 = quadro-chave)
+ *   u8  leitor (0 com um leitor só)
+ *   u16 largura          u16 altura
+ *   u8  lado do bloco    u32 sequência do quadro
+ *   u16 quantidade de blocos, e para cada bloco:
+ *       u16 índice (linha * blocosPorLinha + coluna) + pixels do bloco, linha a linha
+ * </pre>
+ * Os blocos da borda direita e de baixo podem ser menores que o lado. O
+ * cliente mantém uma imagem por leitor e só sobrescreve os blocos recebidos;
+ * o primeiro quadro de cada leitor (e qualquer mudança de tamanho) é um
+ * quadro-chave com todos eles.
+ * <p>
+ * Cada cliente tem no máximo uma mensagem em envio. Um cliente lento não
+ * acumula prévias: quando fica livre recebe só a mais nova (como diferença do
+ * que já tem), e os eventos dele são limitados a
+ * {@link WebSocketConfig#getEventosPorCliente()}. Os outros clientes e a
+ * captura não esperam por ele.
+ */
+public class BiometriaWebSocket {
+
+    private static final Log log = Log.para(BiometriaWebSocket.class);
+
+    private static final long ESPERA_SELECAO_MS = 1000;
+    // Sem progresso no envio por esse tempo, o cliente é desconectado
+    private static final long TEMPO_MAXIMO_PARADO_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long TEMPO_MAXIMO_HANDSHAKE_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long ESPERA_TERMINO_MS = 2000;
+    // O número do leitor vai num u8 no cabeçalho da prévia
+    private static final int MAXIMO_LEITOR = 255;
+
+    private static final Contador CONEXOES = RegistroMetricas.getInstance().contador(
+        "ponto_ws_conexoes_total", "Clientes WebSocket conectados (handshake concluído)");
+    private static final Contador RECUSADAS = RegistroMetricas.getInstance().contador(
+        "ponto_ws_recusadas_total", "Conexões recusadas por excesso de clientes");
+    private static final Contador BYTES = RegistroMetricas.getInstance().contador(
+        "ponto_ws_bytes_enviados_total", "Bytes enviados aos clientes WebSocket");
+
+    private final WebSocketConfig config;
+    private final CodificadorPrevia codificador;
+    private final long intervaloPreviaNanos;
+
+    // Só a thread do servidor mexe nas conexões
+    private final List<Conexao> conexoes = new ArrayList<>();
+    private volatile int clientesAbertos;
+
+    // Um canal de prévias por leitor, indexado pelo número dele; copiado ao
+    // crescer, para o servidor percorrer sem trava
+    private volatile CanalPrevia[] canais = new CanalPrevia[0];
+
+    private final ConcurrentLinkedQueue<byte[]> eventosPendentes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean acordado = new AtomicBoolean();
+
+    private Selector seletor;
+    private ServerSocketChannel servidor;
+    private Thread thread;
+    private volatile boolean rodando;
+
+    public BiometriaWebSocket(WebSocketConfig config) {
+        this.config = config;
+        this.codificador = new CodificadorPrevia(config.getReducao(), config.getTamanhoBloco(),
+            config.getLimiarBloco());
+        this.intervaloPreviaNanos = TimeUnit.SECONDS.toNanos(1) / config.getQuadrosPorSegundo();
+        RegistroMetricas.getInstance().medidor("ponto_ws_clientes", "Clientes WebSocket abertos",
+            () -> clientesAbertos);
+    }
+
+    public synchronized void iniciar() throws IOException {
+        if (rodando) {
+            return;
+        }
+        seletor = Selector.open();
+        servidor = ServerSocketChannel.open();
+        servidor.bind(new InetSocketAddress(config.getEndereco(), config.getPorta()));
+        servidor.configureBlocking(false);
+        servidor.register(seletor, SelectionKey.OP_ACCEPT);
+        rodando = true;
+        thread = new Thread(this::executar, "ws-servidor");
+        thread.setDaemon(true);
+        // Atender o painel nunca deve tirar CPU da captura
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        thread.start();
+        log.info("WebSocket em ws://{}:{}{}", config.getEndereco(), getPorta(), config.getCaminho());
+    }
+
+    public synchronized void parar() {
+        if (!rodando) {
+            return;
+        }
+        rodando = false;
+        seletor.wakeup();
+        try {
+            thread.join(ESPERA_TERMINO_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Espera o servidor parar (por {@link #parar()}).
+     */
+    public void aguardarTermino() throws InterruptedException {
+        Thread atual = thread;
+        if (atual != null) {
+            atual.join();
+        }
+    }
+
+    public int getPorta() {
+        return servidor != null ? servidor.socket().getLocalPort() : -1;
+    }
+
+    public int getClientes() {
+        return clientesAbertos;
+    }
+
+    public void publicarQualidade(int qualidade, String mensagem) {
+        if (clientesAbertos == 0) {
+            return;
+        }
+        StringBuilder json = new StringBuilder(64);
+        json.append("{\"tipo\":\"qualidade\",\"valor\":").append(qualidade).append(",\"mensagem\":");
+        escreverTexto(json, mensagem);
+        json.append('}');
+        publicarTexto(json.toString());
+    }
+
+    /**
+     * Qualidade de um dos leitores do {@code GerenciadorLeitores}
+     * ({@code ponto.leitores=multiplos}), com o número do leitor.
+     */
+    public void publicarQualidade(int leitor, int qualidade, String mensagem) {
+        if (clientesAbertos == 0) {
+            return;
+        }
+        StringBuilder json = new StringBuilder(80);
+        json.append("{\"tipo\":\"qualidade\",\"leitor\":").append(leitor)
+            .append(",\"valor\":").append(qualidade).append(",\"mensagem\":");
+        escreverTexto(json, mensagem);
+        json.append('}');
+        publicarTexto(json.toString());
+    }
+
+    public void publicarPresenca(boolean temDedo) {
+        if (clientesAbertos == 0) {
+            return;
+        }
+        publicarTexto(temDedo ? "{\"tipo\":\"presenca\",\"dedo\":true}" : "{\"tipo\":\"presenca\",\"dedo\":false}");
+    }
+
+    public void publicarPresenca(int leitor, boolean temDedo) {
+        if (clientesAbertos == 0) {
+            return;
+        }
+        publicarTexto("{\"tipo\":\"presenca\",\"leitor\":" + leitor + ",\"dedo\":" + temDedo + "}");
+    }
+
+    /**
+     * Resultado da identificação de uma colocação do dedo.
+     *
+     * @param leitor número do leitor, ou -1 com um leitor só (campo omitido)
+     * @param fid    funcionário identificado, ou -1
+     */
+    public void publicarIdentificacao(int leitor, int fid) {
+        if (clientesAbertos == 0) {
+            return;
+        }
+        publicarTexto("{\"tipo\":\"identificacao\"" + (leitor >= 0 ? ",\"leitor\":" + leitor : "")
+            + ",\"fid\":" + fid + "}");
+    }
+
+    /**
+     * Envia uma mensagem de texto (JSON) a todos os clientes. Pode ser chamado
+     * de qualquer thread.
+     */
+    public void publicarTexto(String texto) {
+        if (clientesAbertos == 0) {
+            return;
+        }
+        eventosPendentes.offer(ProtocoloWebSocket.texto(texto));
+        acordar();
+    }
+
+    /**
+     * Prévia do leitor único (leitor 0 no cabeçalho).
+     */
+    public void publicarQuadro(Quadro quadro) {
+        publicarQuadro(0, quadro);
+    }
+
+    /**
+     * Reduz o quadro para a prévia do leitor e acorda o servidor; não espera
+     * por nenhum cliente. Chamado na thread de publicação da captura do
+     * leitor. Sem clientes, ou acima de
+     * {@link WebSocketConfig#getQuadrosPorSegundo()} para esse leitor, volta
+     * sem tocar nos pixels. O quadro pode ser devolvido ao pool logo depois.
+     *
+     * @param leitor número do leitor (0 a 255)
+     */
+    public void publicarQuadro(int leitor, Quadro quadro) {
+        if (clientesAbertos == 0) {
+            return;
+        }
+        if (canal(leitor).publicar(quadro.getPixels(), quadro.getLargura(), quadro.getAltura(),
+                quadro.getSequencia(), codificador, System.nanoTime(), intervaloPreviaNanos)) {
+            acordar();
+        }
+    }
+
+    private CanalPrevia canal(int leitor) {
+        if (leitor < 0 || leitor > MAXIMO_LEITOR) {
+            throw new IllegalArgumentException("Número de leitor fora do cabeçalho da prévia: " + leitor);
+        }
+        CanalPrevia[] atuais = canais;
+        for (CanalPrevia canal : atuais) {
+            if (canal.leitor == leitor) {
+                return canal;
+            }
+        }
+        synchronized (this) {
+            for (CanalPrevia canal : canais) {
+                if (canal.leitor == leitor) {
+                    return canal;
+                }
+            }
+            CanalPrevia novo = new CanalPrevia(leitor);
+            CanalPrevia[] maiores = Arrays.copyOf(canais, canais.length + 1);
+            maiores[maiores.length - 1] = novo;
+            canais = maiores;
+            return novo;
+        }
+    }
+
+    private void acordar() {
+        if (!acordado.getAndSet(true)) {
+            seletor.wakeup();
+        }
+    }
+
+    private static void escreverTexto(StringBuilder json, String texto) {
+        if (texto == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private void executar() {
+        long ultimaVerificacao = System.nanoTime();
+        try {
+            while (rodando) {
+                seletor.select(ESPERA_SELECAO_MS);
+                acordado.set(false);
+                long agora = System.nanoTime();
+                Iterator<SelectionKey> chaves = seletor.selectedKeys().iterator();
+                while (chaves.hasNext()) {
+                    SelectionKey chave = chaves.next();
+                    chaves.remove();
+                    if (!chave.isValid()) {
+                        continue;
+                    }
+                    if (chave.isAcceptable()) {
+                        aceitar(agora);
+                    } else if (chave.isReadable()) {
+                        ler((Conexao) chave.attachment());
+                    }
+                }
+                distribuirEventos();
+                CanalPrevia[] atuais = canais;
+                for (CanalPrevia canal : atuais) {
+                    canal.atualizarLida();
+                }
+                for (int i = conexoes.size() - 1; i >= 0; i--) {
+                    Conexao conexao = conexoes.get(i);
+                    if (conexao.chave.isValid()) {
+                        enviar(conexao, atuais, agora);
+                    }
+                }
+                if (agora - ultimaVerificacao >= TimeUnit.MILLISECONDS.toNanos(ESPERA_SELECAO_MS)) {
+                    ultimaVerificacao = agora;
+                    verificarParados(agora);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.erro("Erro no servidor WebSocket: {}", e.getMessage(), e);
+        } finally {
+            for (Conexao conexao : new ArrayList<>(conexoes)) {
+                fechar(conexao);
+            }
+            try {
+                servidor.close();
+                seletor.close();
+            } catch (IOException e) {
+                // Encerrando de qualquer forma
+            }
+            rodando = false;
+            log.info("Servidor WebSocket parado");
+        }
+    }
+
+    private void aceitar(long agora) throws IOException {
+        SocketChannel canal;
+        while ((canal = servidor.accept()) != null) {
+            if (conexoes.size() >= config.getMaximoClientes()) {
+                RECUSADAS.incrementar();
+                log.aviso("Conexão WebSocket recusada: limite de {} clientes", config.getMaximoClientes());
+                canal.close();
+                continue;
+            }
+            canal.configureBlocking(false);
+            canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey chave = canal.register(seletor, SelectionKey.OP_READ);
+            Conexao conexao = new Conexao(canal, chave, config.getEventosPorCliente(), agora);
+            chave.attach(conexao);
+            conexoes.add(conexao);
+        }
+    }
+
+    private void ler(Conexao conexao) {
+        try {
+            int lidos = conexao.canal.read(conexao.getEntrada());
+            if (lidos < 0) {
+                fechar(conexao);
+                return;
+            }
+            boolean abertaAntes = conexao.aberta;
+            conexao.processarEntrada(config);
+            if (conexao.aberta && !abertaAntes) {
+                CONEXOES.incrementar();
+                atualizarAbertos();
+                log.info("Cliente WebSocket conectado: {} ({} abertos)",
+                    conexao.canal.getRemoteAddress(), clientesAbertos);
+            }
+        } catch (IOException e) {
+            fechar(conexao);
+        }
+    }
+
+    private void distribuirEventos() {
+        byte[] evento;
+        while ((evento = eventosPendentes.poll()) != null) {
+            for (Conexao conexao : conexoes) {
+                if (conexao.aberta && !conexao.fechando) {
+                    conexao.adicionarEvento(evento);
+                }
+            }
+        }
+    }
+
+    /**
+     * Escreve o que o socket aceitar sem bloquear; o resto fica para quando o
+     * seletor avisar que há espaço.
+     */
+    private void enviar(Conexao conexao, CanalPrevia[] atuais, long agora) {
+        try {
+            while (true) {
+                if (conexao.saida == null && !conexao.proximaMensagem(atuais, codificador)) {
+                    if (conexao.fechando) {
+                        fechar(conexao);
+                    } else {
+                        conexao.chave.interestOps(SelectionKey.OP_READ);
+                    }
+                    return;
+                }
+                int escritos = conexao.canal.write(conexao.saida);
+                if (escritos > 0) {
+                    BYTES.somar(escritos);
+                    conexao.ultimoProgressoNanos = agora;
+                }
+                if (conexao.saida.hasRemaining()) {
+                    conexao.chave.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                conexao.saida = null;
+                conexao.ultimoProgressoNanos = agora;
+            }
+        } catch (IOException e) {
+            fechar(conexao);
+        }
+    }
+
+    private void verificarParados(long agora) {
+        for (int i = conexoes.size() - 1; i >= 0; i--) {
+            Conexao conexao = conexoes.get(i);
+            if (conexao.saida != null && agora - conexao.ultimoProgressoNanos > TEMPO_MAXIMO_PARADO_NANOS) {
+                log.aviso("Cliente WebSocket parado há mais de {} s, desconectando",
+                    TimeUnit.NANOSECONDS.toSeconds(TEMPO_MAXIMO_PARADO_NANOS));
+                fechar(conexao);
+            } else if (!conexao.aberta && agora - conexao.criadaNanos > TEMPO_MAXIMO_HANDSHAKE_NANOS) {
+                fechar(conexao);
+            }
+        }
+    }
+
+    private void fechar(Conexao conexao) {
+        conexao.chave.cancel();
+        try {
+            conexao.canal.close();
+        } catch (IOException e) {
+            // Já estava fechado
+        }
+        if (conexoes.remove(conexao) && conexao.aberta) {
+            atualizarAbertos();
+            log.info("Cliente WebSocket desconectado ({} abertos)", clientesAbertos);
+        }
+    }
+
+    private void atualizarAbertos() {
+        int abertos = 0;
+        for (Conexao conexao : conexoes) {
+            if (conexao.aberta) {
+                abertos++;
+            }
+        }
+        clientesAbertos = abertos;
+    }
+}
@@ -0,0 +1,67 @@
+package com.ponto.websocket;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Prévias de um leitor: três {@link Previa}, uma sendo escrita pela captura
+ * desse leitor, uma lida pelo servidor e a mais nova pronta no meio, trocadas
+ * sem trava. Cada leitor tem o seu canal, então um leitor não sobrescreve a
+ * prévia de outro nem a referência que os clientes guardam dele.
+ */
+final class CanalPrevia {
+
+    final int leitor;
+
+    private final AtomicReference<Previa> pronta = new AtomicReference<>(new Previa());
+    // Só a thread de publicação do leitor (sob a trava do canal)
+    private Previa escrita = new Previa();
+    private long versao;
+    private long ultimaPreviaNanos;
+    // Só a thread do servidor
+    private Previa lida = new Previa();
+
+    CanalPrevia(int leitor) {
+        this.leitor = leitor;
+    }
+
+    /**
+     * Reduz o quadro na prévia de escrita e a troca pela pronta. Chamado na
+     * thread de publicação do leitor.
+     *
+     * @return false se ainda não passou o intervalo mínimo desde a última prévia
+     */
+    synchronized boolean publicar(byte[] pixels, int largura, int altura, long sequencia,
+                                  CodificadorPrevia codificador, long agora, long intervaloNanos) {
+        if (agora - ultimaPreviaNanos < intervaloNanos) {
+            return false;
+        }
+        ultimaPreviaNanos = agora;
+        int reducao = codificador.getReducao();
+        Previa previa = escrita;
+        previa.preparar(largura / reducao, altura / reducao);
+        codificador.reduzir(pixels, largura, altura, previa.pixels);
+        previa.leitor = leitor;
+        previa.sequencia = sequencia;
+        previa.versao = ++versao;
+        escrita = pronta.getAndSet(previa);
+        return true;
+    }
+
+    /**
+     * Prévia mais nova para o servidor enviar; troca pela pronta se houver uma
+     * mais nova. Só na thread do servidor.
+     */
+    Previa atualizarLida() {
+        if (pronta.get().versao > lida.versao) {
+            lida = pronta.getAndSet(lida);
+        }
+        return lida;
+    }
+
+    /**
+     * Última prévia trocada por {@link #atualizarLida()}.
+     */
+    Previa getLida() {
+        return lida;
+    }
+}
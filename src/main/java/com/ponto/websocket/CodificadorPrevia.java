@@ -0,0 +1,147 @@
+package com.ponto.websocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reduz os quadros do sensor e monta as mensagens binárias de prévia com só
+ * os blocos que mudaram em relação ao que o cliente já tem.
+ * <p>
+ * Cada cliente guarda a sua referência (a imagem como ele a vê); um cliente
+ * que perdeu prévias recebe a diferença para a última que recebeu, então
+ * descartar quadros nunca deixa a imagem dele errada.
+ */
+final class CodificadorPrevia {
+
+    static final int TIPO_QUADRO = 1;
+    static final int FLAG_CHAVE = 1;
+    // tipo, flags, leitor, largura, altura, bloco, sequência, quantidade de blocos
+    static final int CABECALHO_PREVIA = 1 + 1 + 1 + 2 + 2 + 1 + 4 + 2;
+
+    private final int reducao;
+    private final int bloco;
+    private final int limiar;
+
+    CodificadorPrevia(int reducao, int bloco, int limiar) {
+        this.reducao = reducao;
+        this.bloco = bloco;
+        this.limiar = limiar;
+    }
+
+    int getReducao() {
+        return reducao;
+    }
+
+    /**
+     * Média de cada bloco {@code reducao x reducao}; as sobras da borda são
+     * ignoradas. O destino precisa de {@code (largura / reducao) * (altura / reducao)} bytes.
+     */
+    void reduzir(byte[] origem, int largura, int altura, byte[] destino) {
+        int larguraReduzida = largura / reducao;
+        int alturaReduzida = altura / reducao;
+        if (reducao == 1) {
+            System.arraycopy(origem, 0, destino, 0, largura * altura);
+            return;
+        }
+        int area = reducao * reducao;
+        int saida = 0;
+        for (int y = 0; y < alturaReduzida; y++) {
+            int linha = y * reducao * largura;
+            for (int x = 0; x < larguraReduzida; x++) {
+                int soma = 0;
+                int inicio = linha + x * reducao;
+                for (int dy = 0; dy < reducao; dy++) {
+                    int posicao = inicio + dy * largura;
+                    for (int dx = 0; dx < reducao; dx++) {
+                        soma += origem[posicao + dx] & 0xFF;
+                    }
+                }
+                destino[saida++] = (byte) (soma / area);
+            }
+        }
+    }
+
+    /**
+     * Espaço para a maior mensagem de uma prévia (quadro-chave), incluindo o
+     * cabeçalho WebSocket.
+     */
+    int capacidade(int largura, int altura) {
+        return ProtocoloWebSocket.CABECALHO_MAXIMO + CABECALHO_PREVIA
+            + 2 * quantidadeBlocos(largura, altura) + largura * altura;
+    }
+
+    int quantidadeBlocos(int largura, int altura) {
+        return ((largura + bloco - 1) / bloco) * ((altura + bloco - 1) / bloco);
+    }
+
+    /**
+     * Monta em {@code destino} o quadro WebSocket com os blocos da prévia que
+     * diferem de {@code referencia} (todos, se {@code chave}) e atualiza a
+     * referência. Ao voltar, {@code destino} está pronto para ser escrito.
+     *
+     * @return quantidade de blocos; 0 quando nada mudou (nada a enviar)
+     */
+    int codificar(Previa previa, byte[] referencia, boolean chave, ByteBuffer destino) {
+        int largura = previa.largura;
+        int altura = previa.altura;
+        byte[] pixels = previa.pixels;
+        int inicioDados = ProtocoloWebSocket.CABECALHO_MAXIMO;
+        destino.clear();
+        destino.position(inicioDados);
+        destino.put((byte) TIPO_QUADRO)
+            .put((byte) (chave ? FLAG_CHAVE : 0))
+            .put((byte) previa.leitor)
+            .putShort((short) largura)
+            .putShort((short) altura)
+            .put((byte) bloco)
+            .putInt((int) previa.sequencia);
+        int posicaoQuantidade = destino.position();
+        destino.putShort((short) 0);
+
+        int blocosX = (largura + bloco - 1) / bloco;
+        int blocosY = (altura + bloco - 1) / bloco;
+        int quantidade = 0;
+        for (int by = 0; by < blocosY; by++) {
+            int y0 = by * bloco;
+            int alturaBloco = Math.min(bloco, altura - y0);
+            for (int bx = 0; bx < blocosX; bx++) {
+                int x0 = bx * bloco;
+                int larguraBloco = Math.min(bloco, largura - x0);
+                if (!chave && !mudou(pixels, referencia, largura, x0, y0, larguraBloco, alturaBloco)) {
+                    continue;
+                }
+                destino.putShort((short) (by * blocosX + bx));
+                for (int y = y0; y < y0 + alturaBloco; y++) {
+                    int posicao = y * largura + x0;
+                    destino.put(pixels, posicao, larguraBloco);
+                    System.arraycopy(pixels, posicao, referencia, posicao, larguraBloco);
+                }
+                quantidade++;
+            }
+        }
+        if (quantidade == 0) {
+            return 0;
+        }
+        destino.putShort(posicaoQuantidade, (short) quantidade);
+        int fim = destino.position();
+        int inicio = ProtocoloWebSocket.escreverCabecalho(destino, ProtocoloWebSocket.OPCODE_BINARIO,
+            inicioDados, fim - inicioDados);
+        destino.limit(fim);
+        destino.position(inicio);
+        return quantidade;
+    }
+
+    private boolean mudou(byte[] atual, byte[] referencia, int largura, int x0, int y0,
+                          int larguraBloco, int alturaBloco) {
+        for (int y = y0; y < y0 + alturaBloco; y++) {
+            int posicao = y * largura + x0;
+            int fim = posicao + larguraBloco;
+            for (; posicao < fim; posicao++) {
+                int diferenca = (atual[posicao] & 0xFF) - (referencia[posicao] & 0xFF);
+                if (diferenca > limiar || -diferenca > limiar) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
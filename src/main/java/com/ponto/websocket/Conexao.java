@@ -0,0 +1,320 @@
+package com.ponto.websocket;
+
+import com.ponto.config.WebSocketConfig;
+import com.sistema.ponto.metricas.Contador;
+import com.sistema.ponto.metricas.RegistroMetricas;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estado de um cliente do {@link BiometriaWebSocket}. Usada só pela thread do
+ * servidor.
+ * <p>
+ * Há no máximo uma mensagem em envio ({@link #saida}). Atrás dela ficam as
+ * respostas de controle, os eventos (limitados; os mais antigos saem primeiro)
+ * e, por último, as prévias, que nunca enfileiram: quando o cliente fica
+ * livre, ele recebe a diferença entre a prévia mais nova de um leitor e a
+ * última que recebeu desse leitor. Os leitores com prévia nova são atendidos
+ * em rodízio.
+ */
+final class Conexao {
+
+    private static final int TAMANHO_ENTRADA = 4096;
+    private static final byte[] FIM_CABECALHOS = {'\r', '\n', '\r', '\n'};
+
+    private static final Contador PREVIAS = RegistroMetricas.getInstance().contador(
+        "ponto_ws_previas_total", "Prévias enviadas (somando os clientes)");
+    private static final Contador PREVIAS_DESCARTADAS = RegistroMetricas.getInstance().contador(
+        "ponto_ws_previas_descartadas_total", "Prévias puladas por clientes lentos");
+    private static final Contador EVENTOS_DESCARTADOS = RegistroMetricas.getInstance().contador(
+        "ponto_ws_eventos_descartados_total", "Eventos descartados por clientes lentos");
+    private static final Contador ORIGENS_RECUSADAS = RegistroMetricas.getInstance().contador(
+        "ponto_ws_origens_recusadas_total", "Handshakes recusados por Origin ausente ou fora da lista");
+
+    final SocketChannel canal;
+    final SelectionKey chave;
+    final long criadaNanos;
+
+    ByteBuffer saida;
+    long ultimoProgressoNanos;
+    boolean aberta;
+    boolean fechando;
+
+    private final ByteBuffer entrada = ByteBuffer.allocate(TAMANHO_ENTRADA);
+    private final ArrayDeque<byte[]> controle = new ArrayDeque<>(4);
+    private final ArrayDeque<byte[]> eventos;
+    private final int limiteEventos;
+
+    /**
+     * A imagem de um leitor como o cliente a vê.
+     */
+    private static final class Referencia {
+        byte[] pixels;
+        int largura;
+        int altura;
+        long versaoEnviada;
+    }
+
+    // Indexadas pelo número do leitor
+    private Referencia[] referencias = new Referencia[0];
+    private ByteBuffer bufferPrevia;
+    private int proximoCanal;
+
+    Conexao(SocketChannel canal, SelectionKey chave, int limiteEventos, long agora) {
+        this.canal = canal;
+        this.chave = chave;
+        this.limiteEventos = limiteEventos;
+        this.eventos = new ArrayDeque<>(limiteEventos);
+        this.criadaNanos = agora;
+        this.ultimoProgressoNanos = agora;
+    }
+
+    ByteBuffer getEntrada() {
+        return entrada;
+    }
+
+    void adicionarEvento(byte[] mensagem) {
+        if (eventos.size() >= limiteEventos) {
+            eventos.pollFirst();
+            EVENTOS_DESCARTADOS.incrementar();
+        }
+        eventos.addLast(mensagem);
+    }
+
+    private void responder(byte[] mensagem) {
+        controle.addLast(mensagem);
+    }
+
+    private void recusar(String status) {
+        responder(("HTTP/1.1 " + status + "\r\nConnection: close\r\nContent-Length: 0\r\n\r\n")
+            .getBytes(StandardCharsets.ISO_8859_1));
+        fechando = true;
+    }
+
+    private void fechar(int codigo) {
+        responder(ProtocoloWebSocket.fechamento(codigo));
+        fechando = true;
+    }
+
+    /**
+     * Prepara a próxima mensagem em {@link #saida}.
+     *
+     * @return false se não há nada para enviar agora
+     */
+    boolean proximaMensagem(CanalPrevia[] canais, CodificadorPrevia codificador) {
+        if (!controle.isEmpty()) {
+            saida = ByteBuffer.wrap(controle.pollFirst());
+            return true;
+        }
+        if (fechando || !aberta) {
+            return false;
+        }
+        if (!eventos.isEmpty()) {
+            saida = ByteBuffer.wrap(eventos.pollFirst());
+            return true;
+        }
+        for (int i = 0; i < canais.length; i++) {
+            int indice = (proximoCanal + i) % canais.length;
+            if (prepararPrevia(canais[indice].getLida(), codificador)) {
+                proximoCanal = indice + 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean prepararPrevia(Previa previa, CodificadorPrevia codificador) {
+        Referencia referencia = referencia(previa.leitor);
+        if (previa.versao <= referencia.versaoEnviada) {
+            return false;
+        }
+        if (referencia.versaoEnviada > 0) {
+            PREVIAS_DESCARTADAS.somar(previa.versao - referencia.versaoEnviada - 1);
+        }
+        referencia.versaoEnviada = previa.versao;
+        boolean quadroChave = false;
+        if (referencia.pixels == null || referencia.largura != previa.largura || referencia.altura != previa.altura) {
+            referencia.pixels = new byte[previa.largura * previa.altura];
+            referencia.largura = previa.largura;
+            referencia.altura = previa.altura;
+            quadroChave = true;
+        }
+        int capacidade = codificador.capacidade(previa.largura, previa.altura);
+        if (bufferPrevia == null || bufferPrevia.capacity() < capacidade) {
+            bufferPrevia = ByteBuffer.allocate(capacidade);
+        }
+        if (codificador.codificar(previa, referencia.pixels, quadroChave, bufferPrevia) > 0) {
+            PREVIAS.incrementar();
+            saida = bufferPrevia;
+            return true;
+        }
+        return false;
+    }
+
+    private Referencia referencia(int leitor) {
+        if (leitor >= referencias.length) {
+            referencias = Arrays.copyOf(referencias, leitor + 1);
+        }
+        if (referencias[leitor] == null) {
+            referencias[leitor] = new Referencia();
+        }
+        return referencias[leitor];
+    }
+
+    /**
+     * Trata o que chegou em {@link #getEntrada()}: o handshake HTTP e depois os
+     * quadros do cliente (só os de controle importam; texto e binário são
+     * ignorados).
+     */
+    void processarEntrada(WebSocketConfig config) {
+        entrada.flip();
+        if (!aberta && !fechando) {
+            int fim = procurarFimCabecalhos();
+            if (fim < 0) {
+                if (entrada.limit() == entrada.capacity()) {
+                    recusar("431 Request Header Fields Too Large");
+                }
+                entrada.position(entrada.limit());
+                entrada.limit(entrada.capacity());
+                return;
+            }
+            String requisicao = new String(entrada.array(), 0, fim, StandardCharsets.ISO_8859_1);
+            entrada.position(fim + FIM_CABECALHOS.length);
+            handshake(requisicao, config);
+        }
+        while (aberta && !fechando && lerQuadro()) {
+            // Um quadro do cliente por volta
+        }
+        entrada.compact();
+        if (!entrada.hasRemaining() && !fechando) {
+            fechar(ProtocoloWebSocket.FECHAMENTO_MUITO_GRANDE);
+        }
+    }
+
+    private int procurarFimCabecalhos() {
+        byte[] dados = entrada.array();
+        for (int i = 0; i + FIM_CABECALHOS.length <= entrada.limit(); i++) {
+            if (dados[i] == '\r' && dados[i + 1] == '\n' && dados[i + 2] == '\r' && dados[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void handshake(String requisicao, WebSocketConfig config) {
+        String[] linhas = requisicao.split("\r\n");
+        String[] partes = linhas[0].split(" ");
+        if (partes.length < 3 || !"GET".equals(partes[0])) {
+            recusar("400 Bad Request");
+            return;
+        }
+        String alvo = partes[1];
+        int consulta = alvo.indexOf('?');
+        if (consulta >= 0) {
+            alvo = alvo.substring(0, consulta);
+        }
+        if (!alvo.equals(config.getCaminho())) {
+            recusar("404 Not Found");
+            return;
+        }
+        Map<String, String> cabecalhos = new HashMap<>();
+        for (int i = 1; i < linhas.length; i++) {
+            int separador = linhas[i].indexOf(':');
+            if (separador > 0) {
+                cabecalhos.put(linhas[i].substring(0, separador).trim().toLowerCase(),
+                    linhas[i].substring(separador + 1).trim());
+            }
+        }
+        if (!config.isOrigemPermitida(cabecalhos.get("origin"))) {
+            ORIGENS_RECUSADAS.incrementar();
+            recusar("403 Forbidden");
+            return;
+        }
+        String upgrade = cabecalhos.get("upgrade");
+        String chaveCliente = cabecalhos.get("sec-websocket-key");
+        if (upgrade == null || !upgrade.equalsIgnoreCase("websocket") || chaveCliente == null) {
+            recusar("400 Bad Request");
+            return;
+        }
+        if (!"13".equals(cabecalhos.get("sec-websocket-version"))) {
+            responder(("HTTP/1.1 426 Upgrade Required\r\nSec-WebSocket-Version: 13\r\n"
+                + "Connection: close\r\nContent-Length: 0\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            fechando = true;
+            return;
+        }
+        responder(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+            + "Sec-WebSocket-Accept: " + ProtocoloWebSocket.chaveAceite(chaveCliente) + "\r\n\r\n")
+            .getBytes(StandardCharsets.ISO_8859_1));
+        aberta = true;
+    }
+
+    /**
+     * @return false se não há um quadro completo na entrada
+     */
+    private boolean lerQuadro() {
+        int inicio = entrada.position();
+        if (entrada.remaining() < 2) {
+            return false;
+        }
+        int b0 = entrada.get(inicio) & 0xFF;
+        int b1 = entrada.get(inicio + 1) & 0xFF;
+        int opcode = b0 & 0x0F;
+        if ((b1 & 0x80) == 0) {
+            // Cliente tem de mascarar tudo o que envia
+            fechar(ProtocoloWebSocket.FECHAMENTO_PROTOCOLO);
+            return false;
+        }
+        long tamanho = b1 & 0x7F;
+        int cabecalho = 2;
+        if (tamanho == 126) {
+            if (entrada.remaining() < 4) {
+                return false;
+            }
+            tamanho = entrada.getShort(inicio + 2) & 0xFFFF;
+            cabecalho = 4;
+        } else if (tamanho == 127) {
+            if (entrada.remaining() < 10) {
+                return false;
+            }
+            tamanho = entrada.getLong(inicio + 2);
+            cabecalho = 10;
+        }
+        if (tamanho < 0 || tamanho > TAMANHO_ENTRADA - cabecalho - 4) {
+            fechar(ProtocoloWebSocket.FECHAMENTO_MUITO_GRANDE);
+            return false;
+        }
+        int total = cabecalho + 4 + (int) tamanho;
+        if (entrada.remaining() < total) {
+            return false;
+        }
+        int mascara = inicio + cabecalho;
+        int dados = mascara + 4;
+        byte[] conteudo = null;
+        if (opcode >= ProtocoloWebSocket.OPCODE_FECHAR) {
+            conteudo = new byte[(int) tamanho];
+            for (int i = 0; i < conteudo.length; i++) {
+                conteudo[i] = (byte) (entrada.get(dados + i) ^ entrada.get(mascara + (i & 3)));
+            }
+        }
+        entrada.position(inicio + total);
+
+        if (opcode == ProtocoloWebSocket.OPCODE_PING) {
+            responder(ProtocoloWebSocket.mensagem(ProtocoloWebSocket.OPCODE_PONG, conteudo));
+        } else if (opcode == ProtocoloWebSocket.OPCODE_FECHAR) {
+            int codigo = conteudo.length >= 2
+                ? ((conteudo[0] & 0xFF) << 8) | (conteudo[1] & 0xFF)
+                : ProtocoloWebSocket.FECHAMENTO_NORMAL;
+            fechar(codigo);
+        } else if (opcode > ProtocoloWebSocket.OPCODE_BINARIO && opcode != ProtocoloWebSocket.OPCODE_PONG) {
+            fechar(ProtocoloWebSocket.FECHAMENTO_PROTOCOLO);
+        }
+        return true;
+    }
+}
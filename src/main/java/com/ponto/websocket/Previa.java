@@ -0,0 +1,24 @@
+package com.ponto.websocket;
+
+/**
+ * Imagem reduzida de um quadro, uma das três de um {@link CanalPrevia} que
+ * circulam entre a thread de captura do leitor e a do servidor.
+ */
+final class Previa {
+
+    byte[] pixels = new byte[0];
+    int largura;
+    int altura;
+    int leitor;
+    long sequencia;
+    // Ordem de publicação; 0 = nunca preenchida
+    long versao;
+
+    void preparar(int largura, int altura) {
+        if (pixels.length < largura * altura) {
+            pixels = new byte[largura * altura];
+        }
+        this.largura = largura;
+        this.altura = altura;
+    }
+}
@@ -0,0 +1,91 @@
+package com.ponto.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * O pouco da RFC 6455 de que o servidor precisa: a chave do handshake e os
+ * cabeçalhos dos quadros que ele envia (sem máscara, sempre com FIN).
+ */
+final class ProtocoloWebSocket {
+
+    static final int OPCODE_CONTINUACAO = 0x0;
+    static final int OPCODE_TEXTO = 0x1;
+    static final int OPCODE_BINARIO = 0x2;
+    static final int OPCODE_FECHAR = 0x8;
+    static final int OPCODE_PING = 0x9;
+    static final int OPCODE_PONG = 0xA;
+
+    static final int FECHAMENTO_NORMAL = 1000;
+    static final int FECHAMENTO_PROTOCOLO = 1002;
+    static final int FECHAMENTO_MUITO_GRANDE = 1009;
+
+    /** Maior cabeçalho de um quadro enviado pelo servidor. */
+    static final int CABECALHO_MAXIMO = 10;
+
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private ProtocoloWebSocket() {
+    }
+
+    static String chaveAceite(String chave) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] resumo = sha1.digest((chave.trim() + GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(resumo);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 indisponível", e);
+        }
+    }
+
+    static int tamanhoCabecalho(int tamanho) {
+        if (tamanho < 126) {
+            return 2;
+        }
+        return tamanho < 65536 ? 4 : 10;
+    }
+
+    /**
+     * Escreve o cabeçalho imediatamente antes de {@code inicioDados}, onde já
+     * está a mensagem, sem copiá-la.
+     *
+     * @return posição onde o quadro começa
+     */
+    static int escreverCabecalho(ByteBuffer destino, int opcode, int inicioDados, int tamanho) {
+        int inicio = inicioDados - tamanhoCabecalho(tamanho);
+        destino.put(inicio, (byte) (0x80 | opcode));
+        if (tamanho < 126) {
+            destino.put(inicio + 1, (byte) tamanho);
+        } else if (tamanho < 65536) {
+            destino.put(inicio + 1, (byte) 126);
+            destino.putShort(inicio + 2, (short) tamanho);
+        } else {
+            destino.put(inicio + 1, (byte) 127);
+            destino.putLong(inicio + 2, tamanho);
+        }
+        return inicio;
+    }
+
+    /**
+     * Quadro completo, pronto para ser enviado a vários clientes.
+     */
+    static byte[] mensagem(int opcode, byte[] dados) {
+        int cabecalho = tamanhoCabecalho(dados.length);
+        byte[] quadro = new byte[cabecalho + dados.length];
+        ByteBuffer buffer = ByteBuffer.wrap(quadro);
+        escreverCabecalho(buffer, opcode, cabecalho, dados.length);
+        System.arraycopy(dados, 0, quadro, cabecalho, dados.length);
+        return quadro;
+    }
+
+    static byte[] texto(String texto) {
+        return mensagem(OPCODE_TEXTO, texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static byte[] fechamento(int codigo) {
+        return mensagem(OPCODE_FECHAR, new byte[] {(byte) (codigo >> 8), (byte) codigo});
+    }
+}
@@ -1,14 +1,13 @@
 package com.sistema.ponto;
 
-import com.sistema.ponto.biometria.LeitorBiometrico;
 import com.sistema.ponto.biometria.GerenciadorDigital;
+import com.sistema.ponto.ui.PainelDigital;
 import javax.swing.*;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 
 public class TesteLeitorBiometrico {
     private static JFrame janela;
-    private static JLabel labelImagem;
+    private static PainelDigital painelDigital;
     private static JLabel labelStatus;
     private static GerenciadorDigital gerenciador;
     private static byte[] ultimoTemplate;
@@ -18,7 +17,7 @@ public class TesteLeitorBiometrico {
     private static JButton btnDescartar;
     private static JButton btnTestarLED;
     private static boolean ledVermelho = false;
-    private static BufferedImage imagemAtual;
+    private static volatile boolean capturaHabilitada = false;
     
     public static void main(String[] args) {
         try {
@@ -32,20 +31,13 @@ public class TesteLeitorBiometrico {
             criarInterface();
             
             // Configura os listeners
-            gerenciador.setImagemListener(imagem -> {
-                imagemAtual = imagem;
-                SwingUtilities.invokeLater(() -> {
-                    // Redimensiona a imagem para o tamanho do label
-                    Image imagemRedimensionada = imagemAtual.getScaledInstance(
-                        labelImagem.getWidth(), 
-                        labelImagem.getHeight(), 
-                        Image.SCALE_SMOOTH);
-                    labelImagem.setIcon(new ImageIcon(imagemRedimensionada));
-                    btnCapturar.setEnabled(true);
-                    
-                    // Força o repaint do label
-                    labelImagem.repaint();
-                });
+            gerenciador.setQuadroListener(quadro -> {
+                // O painel guarda só o quadro mais recente e coalesce as repinturas
+                painelDigital.exibir(quadro);
+                if (!capturaHabilitada) {
+                    capturaHabilitada = true;
+                    SwingUtilities.invokeLater(() -> btnCapturar.setEnabled(true));
+                }
             });
             
             gerenciador.setQualidadeListener((qualidade, mensagem) -> {
@@ -90,14 +82,12 @@ public class TesteLeitorBiometrico {
         // Painel para a imagem
         JPanel painelImagem = new JPanel(new BorderLayout());
         painelImagem.setBorder(BorderFactory.createTitledBorder("Digital"));
-        labelImagem = new JLabel();
-        labelImagem.setPreferredSize(new Dimension(242, 266)); // Tamanho padrão do ZK4500
-        labelImagem.setMinimumSize(new Dimension(242, 266));
-        labelImagem.setMaximumSize(new Dimension(242, 266));
-        labelImagem.setBorder(BorderFactory.createLineBorder(Color.BLACK));
-        labelImagem.setHorizontalAlignment(SwingConstants.CENTER);
-        labelImagem.setVerticalAlignment(SwingConstants.CENTER);
-        painelImagem.add(labelImagem, BorderLayout.CENTER);
+        painelDigital = new PainelDigital();
+        painelDigital.setPreferredSize(new Dimension(242, 266)); // Tamanho padrão do ZK4500
+        painelDigital.setMinimumSize(new Dimension(242, 266));
+        painelDigital.setMaximumSize(new Dimension(242, 266));
+        painelDigital.setBorder(BorderFactory.createLineBorder(Color.BLACK));
+        painelImagem.add(painelDigital, BorderLayout.CENTER);
         
         // Painel de status e botões
         JPanel painelControles = new JPanel(new BorderLayout(5, 5));
@@ -173,8 +163,7 @@ public class TesteLeitorBiometrico {
         janela.addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
             public void windowClosing(java.awt.event.WindowEvent windowEvent) {
-                gerenciador.pararCaptura();
-                LeitorBiometrico.getInstance().finalizar();
+                gerenciador.encerrar();
             }
         });
     }
@@ -185,7 +174,8 @@ public class TesteLeitorBiometrico {
         btnDescartar.setEnabled(false);
         labelStatus.setText("Aguardando dedo...");
         labelStatus.setForeground(Color.BLACK);
-        labelImagem.setIcon(null);
+        painelDigital.limpar();
+        capturaHabilitada = false;
         ultimoTemplate = null;
     }
 } 
\ No newline at end of file
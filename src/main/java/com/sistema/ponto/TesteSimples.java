@@ -1,26 +1,29 @@
 package com.sistema.ponto;
 
-import com.zkteco.biometric.FingerprintSensorEx;
+import com.sistema.ponto.biometria.driver.DriverSensor;
+import com.sistema.ponto.biometria.driver.FabricaDriver;
 
 public class TesteSimples {
     public static void main(String[] args) {
         System.out.println("Iniciando teste do leitor biométrico...");
         
+        DriverSensor driver = FabricaDriver.getDriver();
+        
         try {
             // Inicializa o SDK
             System.out.println("Tentando inicializar o SDK...");
-            int ret = FingerprintSensorEx.Init();
+            int ret = driver.init();
             System.out.println("Inicialização do SDK: " + (ret == 0 ? "OK" : "Falha - código " + ret));
             
             // Obtém o número de leitores conectados
             System.out.println("Verificando leitores conectados...");
-            int deviceCount = FingerprintSensorEx.GetDeviceCount();
+            int deviceCount = driver.getDeviceCount();
             System.out.println("Leitores encontrados: " + deviceCount);
             
             if (deviceCount > 0) {
                 // Abre o primeiro leitor
                 System.out.println("Tentando abrir o primeiro leitor...");
-                long devHandle = FingerprintSensorEx.OpenDevice(0);
+                long devHandle = driver.openDevice(0);
                 if (devHandle != 0) {
                     System.out.println("Leitor aberto com sucesso! Handle: " + devHandle);
                     
@@ -28,12 +31,12 @@ public class TesteSimples {
                     byte[] paramValue = new byte[4];
                     int[] size = new int[1];
                     size[0] = 4;
-                    ret = FingerprintSensorEx.GetParameters(devHandle, 1, paramValue, size);
+                    ret = driver.getParameters(devHandle, 1, paramValue, size);
                     System.out.println("Parâmetros do leitor: " + ret);
                     
                     // Fecha o leitor
                     System.out.println("Fechando o leitor...");
-                    FingerprintSensorEx.CloseDevice(devHandle);
+                    driver.closeDevice(devHandle);
                     System.out.println("Leitor fechado.");
                 } else {
                     System.out.println("Falha ao abrir o leitor!");
@@ -42,7 +45,7 @@ public class TesteSimples {
             
             // Finaliza o SDK
             System.out.println("Finalizando SDK...");
-            FingerprintSensorEx.Terminate();
+            driver.terminate();
             System.out.println("SDK finalizado.");
             
         } catch (UnsatisfiedLinkError e) {
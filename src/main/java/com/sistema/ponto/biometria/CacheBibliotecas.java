@@ -0,0 +1,285 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.log.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Pasta persistente com as DLLs do SDK extraídas do JAR, uma subpasta por
+ * versão com o nome tirado do SHA-256 do conteúdo.
+ * <p>
+ * Na primeira partida (ou depois de as DLLs mudarem) elas são copiadas com
+ * transferência NIO para uma pasta temporária, que é renomeada atomicamente
+ * para o nome final; uma queda no meio nunca deixa uma versão incompleta. Um
+ * índice com o tamanho e a data de cada recurso aponta para a versão certa, e
+ * nas partidas seguintes nada é lido do JAR: só se confere o tamanho dos arquivos.
+ * <p>
+ * A pasta vem de {@code -Dponto.nativo.cache} (padrão {@code ~/.rlponto/nativo}).
+ */
+public final class CacheBibliotecas {
+
+    private static final Log log = Log.para(CacheBibliotecas.class);
+
+    public static final String PROPRIEDADE_PASTA = "ponto.nativo.cache";
+
+    private static final int TAMANHO_BUFFER = 256 * 1024;
+    private static final String PREFIXO_INDICE = "indice-";
+    private static final String PREFIXO_TEMPORARIO = "extraindo-";
+    private static final String PREFIXO_TEMPORARIO_ANTIGO = "zkfinger";
+    private static final long IDADE_TEMPORARIO_ABANDONADO_MS = 60 * 60 * 1000;
+
+    private final String diretorioRecursos;
+    private final String[] nomes;
+    private final Path base;
+
+    // Métricas da última preparação
+    private volatile boolean partidaQuente;
+    private volatile long tempoPreparoMs = -1;
+    private volatile long bytesExtraidos;
+
+    /**
+     * @param diretorioRecursos caminho das DLLs no classpath, terminado em "/"
+     */
+    public CacheBibliotecas(String diretorioRecursos, String... nomes) {
+        this(diretorioRecursos, pastaPadrao(), nomes);
+    }
+
+    public CacheBibliotecas(String diretorioRecursos, Path base, String... nomes) {
+        this.diretorioRecursos = diretorioRecursos;
+        this.base = base;
+        this.nomes = nomes.clone();
+    }
+
+    public static Path pastaPadrao() {
+        String pasta = System.getProperty(PROPRIEDADE_PASTA);
+        if (pasta != null) {
+            return Paths.get(pasta);
+        }
+        return Paths.get(System.getProperty("user.home"), ".rlponto", "nativo");
+    }
+
+    /**
+     * Garante que a versão atual das DLLs está na cache.
+     *
+     * @return pasta com todas as DLLs
+     */
+    public synchronized Path preparar() throws IOException {
+        long inicio = System.nanoTime();
+        bytesExtraidos = 0;
+        URLConnection[] recursos = abrirRecursos();
+        Path indice = base.resolve(PREFIXO_INDICE + chaveRapida(recursos));
+        Path pasta = pastaDoIndice(indice, recursos);
+        partidaQuente = pasta != null;
+        if (pasta == null) {
+            Files.createDirectories(base);
+            pasta = extrair(recursos);
+            gravarIndice(indice, pasta);
+            limparVersoesAntigas(pasta, indice);
+        }
+        tempoPreparoMs = (System.nanoTime() - inicio) / 1_000_000;
+        return pasta;
+    }
+
+    private URLConnection[] abrirRecursos() throws IOException {
+        URLConnection[] recursos = new URLConnection[nomes.length];
+        for (int i = 0; i < nomes.length; i++) {
+            URL url = CacheBibliotecas.class.getClassLoader().getResource(diretorioRecursos + nomes[i]);
+            if (url == null) {
+                throw new IOException("DLL não encontrada: " + diretorioRecursos + nomes[i]);
+            }
+            recursos[i] = url.openConnection();
+            // Sem cache do JarFile: o arquivo não fica aberto depois da partida
+            recursos[i].setUseCaches(false);
+        }
+        return recursos;
+    }
+
+    /**
+     * Chave barata (nome, tamanho e data de cada recurso) para achar a versão
+     * extraída sem ler o conteúdo.
+     */
+    private String chaveRapida(URLConnection[] recursos) {
+        MessageDigest digest = sha256();
+        for (int i = 0; i < nomes.length; i++) {
+            digest.update((nomes[i] + ':' + recursos[i].getContentLengthLong() + ':'
+                + recursos[i].getLastModified() + ';').getBytes(StandardCharsets.UTF_8));
+        }
+        return hexadecimal(digest.digest(), 16);
+    }
+
+    /**
+     * @return pasta apontada pelo índice, ou null se o índice não existe ou a
+     *         pasta está incompleta
+     */
+    private Path pastaDoIndice(Path indice, URLConnection[] recursos) {
+        try {
+            if (!Files.isRegularFile(indice)) {
+                return null;
+            }
+            String versao = new String(Files.readAllBytes(indice), StandardCharsets.UTF_8).trim();
+            Path pasta = base.resolve(versao);
+            for (int i = 0; i < nomes.length; i++) {
+                Path arquivo = pasta.resolve(nomes[i]);
+                if (!Files.isRegularFile(arquivo) || Files.size(arquivo) != recursos[i].getContentLengthLong()) {
+                    return null;
+                }
+            }
+            return pasta;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Path extrair(URLConnection[] recursos) throws IOException {
+        Path temporaria = Files.createTempDirectory(base, PREFIXO_TEMPORARIO);
+        try {
+            MessageDigest digest = sha256();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+            for (int i = 0; i < nomes.length; i++) {
+                digest.update(nomes[i].getBytes(StandardCharsets.UTF_8));
+                try (InputStream entrada = new DigestInputStream(recursos[i].getInputStream(), digest);
+                     ReadableByteChannel origem = Channels.newChannel(entrada);
+                     FileChannel destino = FileChannel.open(temporaria.resolve(nomes[i]),
+                         StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                    while (origem.read(buffer) >= 0) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            bytesExtraidos += destino.write(buffer);
+                        }
+                        buffer.clear();
+                    }
+                    destino.force(false);
+                }
+            }
+            Path pasta = base.resolve(hexadecimal(digest.digest(), 32));
+            try {
+                Files.move(temporaria, pasta, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Mesmo conteúdo já extraído (outro processo ou índice perdido)
+                apagar(temporaria);
+            } catch (IOException e) {
+                if (!Files.isDirectory(pasta)) {
+                    throw e;
+                }
+                // No Windows o destino existente aparece como AccessDenied
+                apagar(temporaria);
+            }
+            return pasta;
+        } catch (IOException e) {
+            apagar(temporaria);
+            throw e;
+        }
+    }
+
+    private void gravarIndice(Path indice, Path pasta) throws IOException {
+        Path temporario = Files.createTempFile(base, PREFIXO_TEMPORARIO, ".tmp");
+        Files.write(temporario, pasta.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temporario, indice, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Apaga versões e índices antigos da cache e as pastas temporárias deixadas
+     * pela extração antiga. DLLs ainda carregadas por outro processo ficam (no
+     * Windows não dá para apagá-las) e saem numa próxima limpeza.
+     */
+    private void limparVersoesAntigas(Path atual, Path indiceAtual) {
+        try (DirectoryStream<Path> entradas = Files.newDirectoryStream(base)) {
+            for (Path entrada : entradas) {
+                if (entrada.equals(atual) || entrada.equals(indiceAtual) || extracaoEmAndamento(entrada)) {
+                    continue;
+                }
+                apagar(entrada);
+            }
+        } catch (IOException e) {
+            log.aviso("Não foi possível limpar a cache de DLLs: {}", e.getMessage());
+        }
+        Path temporarios = Paths.get(System.getProperty("java.io.tmpdir"));
+        try (DirectoryStream<Path> antigas = Files.newDirectoryStream(temporarios, PREFIXO_TEMPORARIO_ANTIGO + "*")) {
+            for (Path antiga : antigas) {
+                apagar(antiga);
+            }
+        } catch (IOException e) {
+            // Sem permissão na pasta temporária: nada a limpar
+        }
+    }
+
+    /**
+     * Pasta temporária recente: pode ser de outro processo extraindo agora.
+     */
+    private static boolean extracaoEmAndamento(Path entrada) throws IOException {
+        return entrada.getFileName().toString().startsWith(PREFIXO_TEMPORARIO)
+            && System.currentTimeMillis() - Files.getLastModifiedTime(entrada).toMillis() < IDADE_TEMPORARIO_ABANDONADO_MS;
+    }
+
+    private static void apagar(Path caminho) {
+        try (Stream<Path> arquivos = Files.walk(caminho)) {
+            arquivos.sorted(Comparator.reverseOrder()).forEach(arquivo -> {
+                try {
+                    Files.deleteIfExists(arquivo);
+                } catch (IOException e) {
+                    // Em uso; fica para a próxima
+                }
+            });
+        } catch (IOException e) {
+            // Idem
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hexadecimal(byte[] bytes, int caracteres) {
+        StringBuilder sb = new StringBuilder(caracteres);
+        for (int i = 0; sb.length() < caracteres; i++) {
+            sb.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public Path getBase() {
+        return base;
+    }
+
+    /**
+     * true se a última preparação achou a versão atual já extraída.
+     */
+    public boolean isPartidaQuente() {
+        return partidaQuente;
+    }
+
+    /**
+     * Duração da última preparação em ms (-1 antes da primeira).
+     */
+    public long getTempoPreparoMs() {
+        return tempoPreparoMs;
+    }
+
+    public long getBytesExtraidos() {
+        return bytesExtraidos;
+    }
+}
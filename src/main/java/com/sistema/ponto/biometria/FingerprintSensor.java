@@ -1,76 +1,117 @@
 package com.sistema.ponto.biometria;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.file.Files;
+import com.sistema.ponto.log.Log;
+
 import java.nio.file.Path;
-import java.nio.file.Paths;
 
 /**
  * Interface com o ZKFinger SDK.
  * Esta classe fornece métodos estáticos que mapeiam diretamente para as funções nativas do SDK.
+ * <p>
+ * As DLLs vêm da {@link CacheBibliotecas}: extraídas só na primeira partida ou
+ * quando mudam. Os módulos de captura dos outros sensores (Silk ID, módulos
+ * OEM, captura assíncrona) continuam sendo carregados na partida: ainda não foi
+ * conferido no ZK4500 que o libzkfp funciona sem eles. Com
+ * {@code -Dponto.nativo.carregarTodas=false} a partida carrega só as
+ * essenciais, e os opcionais ficam para {@link #carregarModulosOpcionais()}.
  */
 public class FingerprintSensor {
+
+    private static final Log log = Log.para(FingerprintSensor.class);
+
+    public static final String PROPRIEDADE_CARREGAR_TODAS = "ponto.nativo.carregarTodas";
+
+    private static final String DIRETORIO_DLLS = "lib/dll/sdk/";
+
+    // Na ordem em que precisam ser carregadas
+    private static final String[] DLLS_ESSENCIAIS = {
+        "libzkfp.dll",
+        "libzkfpcsharp.dll",
+        "libcorrect.dll",
+        "libzksensorcore.dll",
+        "USB.dll",
+        "usb_dll.dll",
+        "wd_utils.dll",
+        "zkfputil.dll"
+    };
+
+    private static final String[] DLLS_OPCIONAIS = {
+        "libidfprcap.dll",
+        "libsilkidcap.dll",
+        "libzkfpmodulecap.dll",
+        "libzklibcap.dll",
+        "libsilkid.dll",
+        "mi.dll",
+        "ZKFPCap_ASYNC.dll"
+    };
+
+    private static final CacheBibliotecas cache;
+    private static final Path pastaDlls;
+    private static final long tempoCarregamentoMs;
+    private static boolean opcionaisCarregadas;
+
     static {
         try {
-            // Cria diretório temporário para as DLLs
-            Path tempDir = Files.createTempDirectory("zkfinger");
-            
-            // Extrai e carrega as DLLs na ordem correta
-            String[] dlls = {
-                "libzkfp.dll",
-                "libzkfpcsharp.dll",
-                "libidfprcap.dll",
-                "libsilkidcap.dll",
-                "libzkfpmodulecap.dll",
-                "libzklibcap.dll",
-                "libcorrect.dll",
-                "libsilkid.dll",
-                "libzksensorcore.dll",
-                "mi.dll",
-                "USB.dll",
-                "usb_dll.dll",
-                "wd_utils.dll",
-                "ZKFPCap_ASYNC.dll",
-                "zkfputil.dll"
-            };
-            
-            for (String dll : dlls) {
-                extractAndLoadDll(tempDir, dll);
+            long inicio = System.nanoTime();
+            String[] todas = new String[DLLS_ESSENCIAIS.length + DLLS_OPCIONAIS.length];
+            System.arraycopy(DLLS_ESSENCIAIS, 0, todas, 0, DLLS_ESSENCIAIS.length);
+            System.arraycopy(DLLS_OPCIONAIS, 0, todas, DLLS_ESSENCIAIS.length, DLLS_OPCIONAIS.length);
+            cache = new CacheBibliotecas(DIRETORIO_DLLS, todas);
+            pastaDlls = cache.preparar();
+
+            carregar(DLLS_ESSENCIAIS);
+            if (Boolean.parseBoolean(System.getProperty(PROPRIEDADE_CARREGAR_TODAS, "true"))) {
+                carregarModulosOpcionais();
             }
-            
-            System.out.println("DLLs carregadas com sucesso!");
+            tempoCarregamentoMs = (System.nanoTime() - inicio) / 1_000_000;
+
+            log.info("DLLs carregadas com sucesso em {} ms ({}, preparo {} ms)", tempoCarregamentoMs,
+                cache.isPartidaQuente() ? "cache quente" : cache.getBytesExtraidos() + " bytes extraídos",
+                cache.getTempoPreparoMs());
         } catch (Exception e) {
-            System.err.println("Erro ao carregar biblioteca nativa: " + e.getMessage());
-            e.printStackTrace();
+            log.erro("Erro ao carregar biblioteca nativa: {}", e.getMessage(), e);
             throw new RuntimeException(e);
         }
     }
 
-    private static void extractAndLoadDll(Path tempDir, String dllName) throws Exception {
-        // Caminho da DLL no JAR
-        String dllPath = "lib/dll/sdk/" + dllName;
-        
-        // Carrega a DLL do JAR
-        InputStream in = FingerprintSensor.class.getClassLoader().getResourceAsStream(dllPath);
-        if (in == null) {
-            throw new RuntimeException("DLL não encontrada: " + dllPath);
+    private static void carregar(String[] dlls) {
+        for (String dll : dlls) {
+            System.load(pastaDlls.resolve(dll).toAbsolutePath().toString());
         }
+    }
 
-        // Extrai para o diretório temporário
-        File tempFile = new File(tempDir.toFile(), dllName);
-        try (OutputStream out = new FileOutputStream(tempFile)) {
-            byte[] buffer = new byte[1024];
-            int read;
-            while ((read = in.read(buffer)) != -1) {
-                out.write(buffer, 0, read);
-            }
+    /**
+     * Carrega os módulos de captura dos outros sensores. Pode ser chamado mais
+     * de uma vez.
+     */
+    public static synchronized void carregarModulosOpcionais() {
+        if (!opcionaisCarregadas) {
+            carregar(DLLS_OPCIONAIS);
+            opcionaisCarregadas = true;
         }
+    }
+
+    /**
+     * Tempo da extração (ou da conferência da cache) mais o carregamento das
+     * DLLs essenciais, em ms.
+     */
+    public static long getTempoCarregamentoMs() {
+        return tempoCarregamentoMs;
+    }
+
+    /**
+     * true se as DLLs já estavam na cache nesta partida.
+     */
+    public static boolean isPartidaQuente() {
+        return cache.isPartidaQuente();
+    }
+
+    public static long getTempoPreparoMs() {
+        return cache.getTempoPreparoMs();
+    }
 
-        // Carrega a DLL
-        System.load(tempFile.getAbsolutePath());
+    public static Path getPastaDlls() {
+        return pastaDlls;
     }
 
     // Métodos nativos que mapeiam diretamente para as funções do SDK
@@ -83,4 +124,4 @@ public class FingerprintSensor {
     public static native long DBInit();
     public static native void DBFree(long handle);
     public static native int DBMatch(long handle, byte[] template1, byte[] template2);
-} 
\ No newline at end of file
+}
@@ -1,34 +1,153 @@
 package com.sistema.ponto.biometria;
 
-import com.zkteco.biometric.FingerprintSensorEx;
+import com.sistema.ponto.biometria.captura.AgendadorCaptura;
+import com.sistema.ponto.biometria.captura.CapturaRajada;
+import com.sistema.ponto.biometria.captura.EstagioVivacidade;
+import com.sistema.ponto.biometria.captura.PipelineCaptura;
+import com.sistema.ponto.biometria.captura.PoolQuadros;
+import com.sistema.ponto.biometria.captura.Quadro;
+import com.sistema.ponto.biometria.comparacao.ComparadorMinucias;
+import com.sistema.ponto.biometria.comparacao.ExtratorMinucias;
+import com.sistema.ponto.biometria.comparacao.TemplateMinucias;
+import com.sistema.ponto.biometria.driver.DriverSensor;
+import com.sistema.ponto.biometria.galeria.GerenciadorGaleria;
+import com.sistema.ponto.biometria.processamento.AnalisadorBlocos;
+import com.sistema.ponto.biometria.processamento.MapaQualidade;
+import com.sistema.ponto.log.Log;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class GerenciadorDigital {
+
+    private static final Log log = Log.para(GerenciadorDigital.class);
+
+    /**
+     * Com -Dponto.comparador=java os templates são extraídos e comparados em Java
+     * ({@link ExtratorMinucias}/{@link ComparadorMinucias}) em vez do DBMatch nativo.
+     */
+    public static final String PROPRIEDADE_COMPARADOR = "ponto.comparador";
+    public static final String COMPARADOR_NATIVO = "nativo";
+    public static final String COMPARADOR_JAVA = "java";
+    
+    /**
+     * Análise de vivacidade ({@link EstagioVivacidade}): ligada por padrão;
+     * {@code -Dponto.vivacidade=false} desliga. O limiar (0 a 1) e o prazo por
+     * colocação do dedo (ms) podem ser ajustados.
+     */
+    public static final String PROPRIEDADE_VIVACIDADE = "ponto.vivacidade";
+    public static final String PROPRIEDADE_VIVACIDADE_LIMIAR = "ponto.vivacidade.limiar";
+    public static final String PROPRIEDADE_VIVACIDADE_PRAZO = "ponto.vivacidade.prazo";
+    
+    /**
+     * Captura em rajada ({@link #capturarRajada()}): qualidade que aceita o
+     * quadro na hora, prazo da rajada (ms) e quantos melhores quadros guardar.
+     */
+    public static final String PROPRIEDADE_RAJADA_ALVO = "ponto.rajada.alvo";
+    public static final String PROPRIEDADE_RAJADA_PRAZO = "ponto.rajada.prazo";
+    public static final String PROPRIEDADE_RAJADA_QUADROS = "ponto.rajada.quadros";
+    
+    /**
+     * Qualidade do quadro: {@code global} (padrão) é a qualidade de escuridão e
+     * contraste do quadro inteiro; {@code blocos} usa o mapa por bloco do
+     * {@link AnalisadorBlocos}, que também dá as dicas na tela, mas os limiares
+     * dele só foram calibrados no simulador e não em capturas do ZK4500. O
+     * número de threads do mapa é por padrão o de processadores.
+     */
+    public static final String PROPRIEDADE_QUALIDADE = "ponto.qualidade";
+    public static final String PROPRIEDADE_QUALIDADE_THREADS = "ponto.qualidade.threads";
+    public static final String QUALIDADE_BLOCOS = "blocos";
+    public static final String QUALIDADE_GLOBAL = "global";
+    
+    private static final long TEMPO_TERMINO_MS = 2000;
+    // Além do prazo da vivacidade, para o veredito sair da thread do estágio
+    static final long FOLGA_VEREDITO_MS = 100;
+    
     private static GerenciadorDigital instance;
     private final LeitorBiometrico leitor;
-    private byte[] imagemBuffer;
+    private final DriverSensor driver;
+    private final SupervisorSaude supervisor;
+    private final GerenciadorGaleria galeria;
+    private final AgendadorCaptura agendador = new AgendadorCaptura();
+    private PipelineCaptura pipeline;
+    private EstagioVivacidade vivacidade;
+    private CapturaRajada rajada;
+    private final AnalisadorBlocos analisadorBlocos;
     private int larguraImagem;
     private int alturaImagem;
     private AtomicBoolean capturando;
     private int qualidadeDigital;
-    private byte[] templateAtual;
+    private volatile byte[] templateAtual;
     private QualidadeListener qualidadeListener;
     private ImagemListener imagemListener;
+    private QuadroListener quadroListener;
+    private PresencaListener presencaListener;
+    private boolean dedoPresente;
+    // Template já extraído nesta colocação do dedo (só na thread de publicação)
+    private boolean templateDaColocacao;
+    private boolean encerrado;
+    // Instante do primeiro quadro da colocação atual do dedo; vereditos de
+    // colocações anteriores são ignorados
+    private volatile long presencaNanos;
+    private volatile boolean digitalSuspeita;
+    // Últimos vereditos, de qualquer colocação: a rajada procura o da colocação
+    // dos quadros dela, que pode já não ser a atual. Avisado em travaVeredito
+    private final Object travaVeredito = new Object();
+    private final EstagioVivacidade.Veredito[] vereditos = new EstagioVivacidade.Veredito[4];
+    private int proximoVeredito;
+    private final boolean comparadorJava;
+    private final boolean vivacidadeAtiva;
+    private final ComparadorMinucias comparador = new ComparadorMinucias();
+    private final ThreadLocal<ExtratorMinucias> extrator = ThreadLocal.withInitial(ExtratorMinucias::new);
     
     public interface QualidadeListener {
         void onQualidadeAtualizada(int qualidade, String mensagem);
     }
     
+    /**
+     * Recebe uma cópia da imagem a cada quadro com dedo (aloca uma imagem por quadro).
+     */
     public interface ImagemListener {
         void onImagemCapturada(BufferedImage imagem);
     }
     
+    /**
+     * Recebe o quadro do pool sem cópia. O listener passa a ser dono de uma
+     * referência e deve chamar {@link Quadro#devolver()} quando terminar de usá-lo,
+     * inclusive se o repassar para outra thread.
+     */
+    public interface QuadroListener {
+        void onQuadroCapturado(Quadro quadro);
+    }
+    
+    /**
+     * Avisado quando o dedo é colocado ou retirado (só nas transições).
+     */
+    public interface PresencaListener {
+        void onPresencaAlterada(boolean temDedo);
+    }
+    
     private GerenciadorDigital() {
         leitor = LeitorBiometrico.getInstance();
+        driver = leitor.getDriver();
+        supervisor = SupervisorSaude.getInstance();
+        // Depois de uma reconexão o dispositivo volta com os parâmetros de fábrica
+        supervisor.adicionarListener((handle, sdkReiniciado) -> {
+            if (capturando.get()) {
+                configurarSensor(handle);
+            }
+        });
+        // A galeria carrega em segundo plano; a captura não espera por ela
+        galeria = GerenciadorGaleria.getInstance();
+        galeria.iniciarCarga();
         capturando = new AtomicBoolean(false);
         qualidadeDigital = 0;
         templateAtual = null;
+        comparadorJava = COMPARADOR_JAVA.equalsIgnoreCase(
+            System.getProperty(PROPRIEDADE_COMPARADOR, COMPARADOR_NATIVO));
+        vivacidadeAtiva = Boolean.parseBoolean(System.getProperty(PROPRIEDADE_VIVACIDADE, "true"));
+        analisadorBlocos = criarAnalisadorBlocos();
     }
     
     public static GerenciadorDigital getInstance() {
@@ -46,6 +165,14 @@ public class GerenciadorDigital {
         this.imagemListener = listener;
     }
     
+    public void setQuadroListener(QuadroListener listener) {
+        this.quadroListener = listener;
+    }
+    
+    public void setPresencaListener(PresencaListener listener) {
+        this.presencaListener = listener;
+    }
+    
     public boolean iniciarCaptura() {
         if (!leitor.isInitialized()) {
             if (!leitor.inicializar()) {
@@ -58,146 +185,357 @@ public class GerenciadorDigital {
             byte[] paramValue = new byte[4];
             int[] size = new int[1];
             
-            FingerprintSensorEx.GetParameters(leitor.getDeviceHandle(), 1, paramValue, size);
+            driver.getParameters(leitor.getDeviceHandle(), 1, paramValue, size);
             larguraImagem = byteArrayToInt(paramValue);
             
-            FingerprintSensorEx.GetParameters(leitor.getDeviceHandle(), 2, paramValue, size);
+            driver.getParameters(leitor.getDeviceHandle(), 2, paramValue, size);
             alturaImagem = byteArrayToInt(paramValue);
             
-            System.out.println("Dimensões da imagem: " + larguraImagem + "x" + alturaImagem);
-            System.out.println("Handle do dispositivo: " + leitor.getDeviceHandle());
-            
-            // Configura parâmetros do sensor
-            paramValue = new byte[4];
-            paramValue[0] = 1; // Alta velocidade
-            FingerprintSensorEx.SetParameters(leitor.getDeviceHandle(), 2001, paramValue, 4);
-            
-            paramValue[0] = 3; // Sensibilidade média-alta
-            FingerprintSensorEx.SetParameters(leitor.getDeviceHandle(), 4, paramValue, 4);
+            log.info("Dimensões da imagem: {}x{}", larguraImagem, alturaImagem);
+            log.info("Handle do dispositivo: {}", leitor.getDeviceHandle());
             
-            paramValue[0] = 1; // LED ON
-            FingerprintSensorEx.SetParameters(leitor.getDeviceHandle(), 101, paramValue, 4);
+            configurarSensor(leitor.getDeviceHandle());
             
-            imagemBuffer = new byte[larguraImagem * alturaImagem];
+            PoolQuadros pool = pipeline != null ? pipeline.getPoolQuadros() : null;
+            if (pool == null || !pool.isCompativel(larguraImagem, alturaImagem)) {
+                pipeline = new PipelineCaptura(larguraImagem, alturaImagem, agendador,
+                    this::adquirirQuadro, this::publicarQuadro);
+                vivacidade = vivacidadeAtiva ? criarVivacidade(larguraImagem, alturaImagem) : null;
+                if (vivacidade != null) {
+                    vivacidade.setVereditoListener(this::registrarVeredito);
+                    pipeline.setQuadrosRetidos(EstagioVivacidade.QUADROS_RETIDOS);
+                }
+                rajada = criarRajada();
+                pipeline.setAnalisadorBlocos(analisadorBlocos);
+                pipeline.setTerminoListener(this::pipelineTerminado);
+            }
             
-            // Inicia thread de captura
+            // Inicia as threads de aquisição, análise e publicação
             capturando.set(true);
-            new Thread(this::threadCaptura).start();
+            digitalSuspeita = false;
+            if (vivacidade != null) {
+                vivacidade.iniciar();
+            }
+            pipeline.iniciar();
             return true;
         }
         return false;
     }
     
+    /**
+     * Estágio de vivacidade com o limiar e o prazo de {@code ponto.vivacidade.*}.
+     */
+    static EstagioVivacidade criarVivacidade(int largura, int altura) {
+        EstagioVivacidade estagio = new EstagioVivacidade(largura, altura);
+        try {
+            estagio.setLimiar(Float.parseFloat(System.getProperty(PROPRIEDADE_VIVACIDADE_LIMIAR,
+                String.valueOf(EstagioVivacidade.LIMIAR_PADRAO))));
+            estagio.setPrazoMs(Long.parseLong(System.getProperty(PROPRIEDADE_VIVACIDADE_PRAZO,
+                String.valueOf(EstagioVivacidade.PRAZO_PADRAO_MS))));
+        } catch (NumberFormatException e) {
+            log.aviso("Configuração de vivacidade inválida, usando o padrão: {}", e.getMessage());
+        }
+        return estagio;
+    }
+    
+    /**
+     * Analisador por blocos conforme {@code ponto.qualidade}; null na qualidade global.
+     */
+    static AnalisadorBlocos criarAnalisadorBlocos() {
+        if (!QUALIDADE_BLOCOS.equalsIgnoreCase(System.getProperty(PROPRIEDADE_QUALIDADE, QUALIDADE_GLOBAL))) {
+            return null;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            threads = Integer.parseInt(System.getProperty(PROPRIEDADE_QUALIDADE_THREADS, String.valueOf(threads)));
+        } catch (NumberFormatException e) {
+            log.aviso("Número de threads da qualidade inválido, usando o padrão: {}", e.getMessage());
+        }
+        return new AnalisadorBlocos(threads);
+    }
+    
+    private CapturaRajada criarRajada() {
+        int quadros = CapturaRajada.QUADROS_GUARDADOS_PADRAO;
+        int alvo = CapturaRajada.QUALIDADE_ALVO_PADRAO;
+        long prazo = CapturaRajada.PRAZO_PADRAO_MS;
+        try {
+            quadros = Integer.parseInt(System.getProperty(PROPRIEDADE_RAJADA_QUADROS, String.valueOf(quadros)));
+            alvo = Integer.parseInt(System.getProperty(PROPRIEDADE_RAJADA_ALVO, String.valueOf(alvo)));
+            prazo = Long.parseLong(System.getProperty(PROPRIEDADE_RAJADA_PRAZO, String.valueOf(prazo)));
+        } catch (NumberFormatException e) {
+            log.aviso("Configuração da rajada inválida, usando o padrão: {}", e.getMessage());
+        }
+        CapturaRajada nova = new CapturaRajada(larguraImagem, alturaImagem, Math.max(1, quadros));
+        nova.setQualidadeAlvo(alvo);
+        nova.setPrazoMs(prazo);
+        return nova;
+    }
+    
+    private void configurarSensor(long handle) {
+        byte[] paramValue = new byte[4];
+        paramValue[0] = 1; // Alta velocidade
+        driver.setParameters(handle, 2001, paramValue, 4);
+        
+        paramValue[0] = 3; // Sensibilidade média-alta
+        driver.setParameters(handle, 4, paramValue, 4);
+        
+        paramValue[0] = 1; // LED ON
+        driver.setParameters(handle, 101, paramValue, 4);
+    }
+    
     public void pararCaptura() {
         capturando.set(false);
+        if (pipeline != null) {
+            pipeline.parar();
+        }
+        if (vivacidade != null) {
+            vivacidade.parar();
+        }
+        if (rajada != null) {
+            rajada.cancelar();
+        }
+    }
+    
+    /**
+     * Pipeline parado por erro na aquisição ou na análise: desliga a captura
+     * para {@link #isCapturando()} refletir isso e {@link #iniciarCaptura()}
+     * poder ligá-la de novo.
+     */
+    private void pipelineTerminado(Exception causa) {
+        if (capturando.get()) {
+            log.erro("Captura parada por erro no pipeline: {}", causa.getMessage());
+            pararCaptura();
+        }
     }
     
-    private void threadCaptura() {
-        System.out.println("Thread de captura iniciada");
-        int falhasConsecutivas = 0;
+    /**
+     * Para a captura, espera as threads do pipeline e fecha o dispositivo e o
+     * SDK. {@link #iniciarCaptura()} abre tudo de novo.
+     */
+    public void finalizarLeitor() {
+        pararCaptura();
+        if (pipeline != null && !pipeline.aguardarTermino(TEMPO_TERMINO_MS)) {
+            log.erro("Captura não terminou a tempo; fechando o leitor assim mesmo");
+        }
+        if (vivacidade != null && !vivacidade.aguardarTermino(TEMPO_TERMINO_MS)) {
+            log.erro("Análise de vivacidade não terminou a tempo");
+        }
+        leitor.finalizar();
+    }
+    
+    /**
+     * Libera o leitor e a galeria (grava o snapshot pendente). Para os ganchos
+     * de encerramento: depois disso a instância não deve mais ser usada.
+     */
+    public synchronized void encerrar() {
+        if (encerrado) {
+            return;
+        }
+        encerrado = true;
+        finalizarLeitor();
+        if (analisadorBlocos != null) {
+            analisadorBlocos.encerrar();
+        }
+        galeria.encerrar();
+    }
+    
+    /**
+     * Estágio de aquisição: só fala com o dispositivo. Quando o leitor cai, o
+     * {@link SupervisorSaude} o recupera ainda na thread de aquisição.
+     */
+    private int adquirirQuadro(byte[] destino) throws InterruptedException {
+        int ret = supervisor.capturar(destino);
+        if (ret != 0) {
+            log.depuracao("Resultado da captura: {}", ret);
+        }
+        return ret;
+    }
+    
+    /**
+     * Estágio de publicação: roda fora da thread do sensor, então listeners lentos
+     * só fazem quadros antigos serem descartados.
+     */
+    private void publicarQuadro(Quadro quadro) {
+        // Primeiro, para a vivacidade receber o quadro sem esperar os listeners
+        if (vivacidade != null) {
+            vivacidade.oferecer(quadro);
+        }
+        if (quadro.temDedo() != dedoPresente) {
+            dedoPresente = quadro.temDedo();
+            if (dedoPresente) {
+                presencaNanos = quadro.getColocacaoNanos();
+                digitalSuspeita = false;
+                templateDaColocacao = false;
+            }
+            if (presencaListener != null) {
+                presencaListener.onPresencaAlterada(dedoPresente);
+            }
+        }
+        if (!quadro.temDedo()) {
+            return;
+        }
+        if (rajada != null && !digitalSuspeita) {
+            rajada.oferecer(quadro);
+        }
+        log.depuracao("Pixels escuros encontrados: {}", quadro.getPixelsEscuros());
         
-        while (capturando.get()) {
-            try {
-                // Captura imagem
-                int ret = FingerprintSensorEx.AcquireFingerprintImage(leitor.getDeviceHandle(), imagemBuffer);
-                System.out.println("Resultado da captura: " + ret);
-                
-                if (ret == 0) {
-                    System.out.println("Imagem capturada com sucesso");
-                    falhasConsecutivas = 0;
-                    
-                    // Verifica se há pixels escuros suficientes para indicar presença de dedo
-                    int pixelsEscuros = 0;
-                    for (byte b : imagemBuffer) {
-                        if ((b & 0xFF) < 128) {
-                            pixelsEscuros++;
-                            if (pixelsEscuros > 1000) { // Se encontrar mais de 1000 pixels escuros
-                                break;
-                            }
-                        }
-                    }
-                    
-                    System.out.println("Pixels escuros encontrados: " + pixelsEscuros);
-                    
-                    if (pixelsEscuros > 1000) {
-                        // Calcula qualidade
-                        qualidadeDigital = calcularQualidade(imagemBuffer);
-                        System.out.println("Qualidade calculada: " + qualidadeDigital);
-                        
-                        String mensagem;
-                        if (qualidadeDigital == -1) {
-                            mensagem = "Digital suspeita detectada";
-                        } else if (qualidadeDigital < 50) {
-                            mensagem = "Qualidade ruim";
-                        } else if (qualidadeDigital < 75) {
-                            mensagem = "Qualidade média";
-                        } else {
-                            mensagem = "Qualidade boa";
-                        }
-                        
-                        if (qualidadeListener != null) {
-                            qualidadeListener.onQualidadeAtualizada(qualidadeDigital, mensagem);
-                        }
-                        
-                        // Converte para BufferedImage e notifica listener
-                        if (imagemListener != null) {
-                            BufferedImage imagem = new BufferedImage(larguraImagem, alturaImagem, BufferedImage.TYPE_BYTE_GRAY);
-                            byte[] pixels = ((java.awt.image.DataBufferByte) imagem.getRaster().getDataBuffer()).getData();
-                            System.arraycopy(imagemBuffer, 0, pixels, 0, pixels.length);
-                            imagemListener.onImagemCapturada(imagem);
-                            System.out.println("Imagem enviada para o listener");
-                        }
-                    } else {
-                        System.out.println("Poucos pixels escuros, provavelmente sem dedo");
+        // Digital suspeita continua -1 até o dedo sair
+        qualidadeDigital = digitalSuspeita ? -1 : quadro.getQualidade();
+        log.depuracao("Qualidade calculada: {}", qualidadeDigital);
+        
+        // Com o mapa por bloco, a qualidade ruim vem com o que fazer
+        String mensagem = mensagemQualidade(qualidadeDigital, quadro.getMapa().getDica());
+        
+        if (qualidadeListener != null) {
+            qualidadeListener.onQualidadeAtualizada(qualidadeDigital, mensagem);
+        }
+        
+        // Sem o SDK o template sai da própria imagem: uma vez por colocação, no
+        // primeiro quadro bom (a rajada troca pelo melhor quadro dela)
+        if (comparadorJava && qualidadeDigital >= 50 && !templateDaColocacao) {
+            templateDaColocacao = true;
+            templateAtual = extrairTemplate(quadro.getPixels(), larguraImagem, alturaImagem);
+            if (digitalSuspeita) {
+                templateAtual = null; // O veredito chegou durante a extração
+            }
+        }
+        
+        if (quadroListener != null) {
+            quadro.reter();
+            quadroListener.onQuadroCapturado(quadro);
+        }
+        
+        // Converte para BufferedImage e notifica listener
+        if (imagemListener != null) {
+            BufferedImage imagem = converterParaImagem(quadro.getPixels(), larguraImagem, alturaImagem);
+            imagemListener.onImagemCapturada(imagem);
+            log.depuracao("Imagem enviada para o listener");
+        }
+    }
+    
+    /**
+     * Captura em rajada: com a captura ligada, avalia os quadros com dedo até
+     * um atingir a qualidade alvo ({@code ponto.rajada.alvo}) ou o prazo
+     * acabar, e devolve os melhores, todos da mesma colocação do dedo.
+     * Bloqueia até lá; quadros de uma digital suspeita não entram. Com a
+     * vivacidade ligada espera também o veredito da colocação dos quadros (no
+     * máximo o prazo dela, contado da chegada do dedo) e marca o resultado
+     * ({@link CapturaRajada.Resultado#isSuspeita()}), ainda que o dedo já
+     * tenha sido recolocado. Sem veredito no prazo o resultado é aceito, como
+     * num veredito inconclusivo.
+     *
+     * @return null se a captura não está ligada ou outra rajada está em andamento
+     */
+    public CapturaRajada.Resultado capturarRajada() throws InterruptedException {
+        CapturaRajada atual = rajada;
+        if (atual == null || !capturando.get()
+                || !atual.iniciar(atual.getQualidadeAlvo(), atual.getPrazoMs())) {
+            return null;
+        }
+        agendador.setRajada(true);
+        pipeline.antecipar(agendador.getIntervaloOciosoMinimoMs());
+        try {
+            CapturaRajada.Resultado resultado = atual.aguardar();
+            log.info("Rajada {}", resultado);
+            EstagioVivacidade estagio = vivacidade;
+            if (estagio != null && resultado.getQuadrosGuardados() > 0) {
+                EstagioVivacidade.Veredito veredito = aguardarVeredito(estagio, resultado.getColocacaoNanos());
+                if (veredito == null) {
+                    log.aviso("Sem veredito de vivacidade em {} ms; rajada aceita sem ele", estagio.getPrazoMs());
+                } else if (veredito.isSuspeita()) {
+                    resultado.marcarSuspeita();
+                }
+            }
+            if (comparadorJava && resultado.getQuadrosGuardados() > 0
+                    && resultado.getMelhorQualidade() >= 50 && !resultado.isSuspeita()) {
+                templateAtual = extrairTemplate(resultado.getPixels(0), resultado.getLargura(), resultado.getAltura());
+            }
+            return resultado;
+        } finally {
+            agendador.setRajada(false);
+        }
+    }
+    
+    /**
+     * Espera o veredito da colocação informada até o prazo do estágio mais
+     * {@link #FOLGA_VEREDITO_MS}, contado da chegada do dedo.
+     *
+     * @return null se o prazo passou sem veredito ou se já saiu o de uma
+     *         colocação posterior (a informada terminou sem veredito)
+     */
+    private EstagioVivacidade.Veredito aguardarVeredito(EstagioVivacidade estagio, long colocacao)
+            throws InterruptedException {
+        long limite = colocacao + TimeUnit.MILLISECONDS.toNanos(estagio.getPrazoMs() + FOLGA_VEREDITO_MS);
+        synchronized (travaVeredito) {
+            while (true) {
+                boolean posterior = false;
+                for (EstagioVivacidade.Veredito veredito : vereditos) {
+                    if (veredito == null) {
+                        continue;
                     }
-                } else {
-                    falhasConsecutivas++;
-                    if (falhasConsecutivas > 10) {
-                        System.out.println("Muitas falhas consecutivas, reiniciando leitor...");
-                        leitor.finalizar();
-                        Thread.sleep(1000);
-                        if (leitor.inicializar()) {
-                            falhasConsecutivas = 0;
-                        }
+                    if (veredito.getInicioNanos() == colocacao) {
+                        return veredito;
                     }
+                    posterior |= veredito.getInicioNanos() - colocacao > 0;
                 }
-                Thread.sleep(100);
-        } catch (Exception e) {
-                System.out.println("Erro na thread de captura: " + e.getMessage());
-            e.printStackTrace();
-                break;
+                long restante = limite - System.nanoTime();
+                if (posterior || restante <= 0) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(travaVeredito, restante);
             }
         }
-        System.out.println("Thread de captura finalizada");
     }
     
-    private int calcularQualidade(byte[] imagem) {
-        int pixelsEscuros = 0;
-        int somaContraste = 0;
-        int totalPixels = larguraImagem * alturaImagem;
-        
-        // Conta pixels escuros e calcula contraste
-        for (int i = 0; i < totalPixels; i++) {
-            int pixel = imagem[i] & 0xFF;
-            if (pixel < 128) {
-                pixelsEscuros++;
-            }
-            
-            // Calcula contraste com o pixel vizinho (se não for borda)
-            if (i < totalPixels - 1) {
-                int nextPixel = imagem[i + 1] & 0xFF;
-                somaContraste += Math.abs(pixel - nextPixel);
+    /**
+     * Veredito da vivacidade, na thread do estágio. Uma digital suspeita vira
+     * qualidade -1 pelo mesmo caminho dos quadros e perde o template.
+     */
+    private void registrarVeredito(EstagioVivacidade.Veredito veredito) {
+        synchronized (travaVeredito) {
+            vereditos[proximoVeredito] = veredito;
+            proximoVeredito = (proximoVeredito + 1) % vereditos.length;
+            travaVeredito.notifyAll();
+        }
+        if (veredito.getInicioNanos() != presencaNanos) {
+            return; // Dedo já foi recolocado
+        }
+        if (veredito.isSuspeita()) {
+            digitalSuspeita = true;
+            qualidadeDigital = -1;
+            templateAtual = null;
+            log.aviso("Digital suspeita: {}", veredito);
+            if (qualidadeListener != null) {
+                qualidadeListener.onQualidadeAtualizada(-1, mensagemQualidade(-1));
             }
+        } else {
+            log.depuracao("Vivacidade: {}", veredito);
         }
-        
-        // Calcula pontuação baseada em pixels escuros (40%) e contraste (60%)
-        double percentualEscuro = (pixelsEscuros * 100.0) / totalPixels;
-        double percentualContraste = (somaContraste * 100.0) / (totalPixels * 255);
-        
-        int pontuacaoEscuro = (int)((percentualEscuro > 15 ? 40 : (percentualEscuro * 40 / 15)));
-        int pontuacaoContraste = (int)((percentualContraste > 30 ? 60 : (percentualContraste * 60 / 30)));
-        
-        return Math.min(100, pontuacaoEscuro + pontuacaoContraste);
+    }
+    
+    static String mensagemQualidade(int qualidade, MapaQualidade.Dica dica) {
+        if (qualidade >= 0 && qualidade < 50 && dica != MapaQualidade.Dica.NENHUMA) {
+            return dica.getMensagem();
+        }
+        return mensagemQualidade(qualidade);
+    }
+    
+    static String mensagemQualidade(int qualidade) {
+        if (qualidade == -1) {
+            return "Digital suspeita detectada";
+        } else if (qualidade < 50) {
+            return "Qualidade ruim";
+        } else if (qualidade < 75) {
+            return "Qualidade média";
+        }
+        return "Qualidade boa";
+    }
+    
+    static BufferedImage converterParaImagem(byte[] buffer, int largura, int altura) {
+        BufferedImage imagem = new BufferedImage(largura, altura, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) imagem.getRaster().getDataBuffer()).getData();
+        System.arraycopy(buffer, 0, pixels, 0, pixels.length);
+        return imagem;
     }
     
     public byte[] getTemplateAtual() {
@@ -208,6 +546,42 @@ public class GerenciadorDigital {
         return qualidadeDigital;
     }
     
+    public AgendadorCaptura getAgendador() {
+        return agendador;
+    }
+    
+    public PoolQuadros getPoolQuadros() {
+        return pipeline != null ? pipeline.getPoolQuadros() : null;
+    }
+    
+    /**
+     * Pipeline de captura (filas e métricas por estágio), ou null antes da primeira captura.
+     */
+    public PipelineCaptura getPipeline() {
+        return pipeline;
+    }
+    
+    /**
+     * Captura em rajada (configuração e contadores), ou null antes da primeira captura.
+     */
+    public CapturaRajada getRajada() {
+        return rajada;
+    }
+    
+    /**
+     * Estágio de vivacidade, ou null se desligado ou antes da primeira captura.
+     */
+    public EstagioVivacidade getVivacidade() {
+        return vivacidade;
+    }
+    
+    /**
+     * A colocação atual (ou a última) do dedo foi considerada dedo artificial.
+     */
+    public boolean isDigitalSuspeita() {
+        return digitalSuspeita;
+    }
+    
     private int byteArrayToInt(byte[] bytes) {
         return ((bytes[3] & 0xFF) << 24) |
                ((bytes[2] & 0xFF) << 16) |
@@ -215,12 +589,41 @@ public class GerenciadorDigital {
                (bytes[0] & 0xFF);
     }
     
+    /**
+     * Extrai o template de minúcias (formato Java) de um quadro. Pode ser
+     * chamado de qualquer thread.
+     */
+    public byte[] extrairTemplate(byte[] pixels, int largura, int altura) {
+        return extrator.get().extrair(pixels, largura, altura).serializar();
+    }
+    
+    public boolean isComparadorJava() {
+        return comparadorJava;
+    }
+    
     public boolean verificarDigital(byte[] template1, byte[] template2) {
         if (template1 == null || template2 == null) {
             return false;
         }
         
-        int ret = FingerprintSensorEx.DBMatch(leitor.getDBHandle(), template1, template2);
+        boolean java1 = TemplateMinucias.isTemplate(template1);
+        boolean java2 = TemplateMinucias.isTemplate(template2);
+        if (java1 || java2) {
+            if (java1 != java2) {
+                log.info("Templates de formatos diferentes (Java e SDK) não podem ser comparados");
+                return false;
+            }
+            try {
+                // Mesma escala 0-100 e mesmo limiar do DBMatch
+                return comparador.comparar(template1, template2) >= ComparadorMinucias.LIMIAR_COMPATIVEL;
+            } catch (IllegalArgumentException e) {
+                log.erro("Template inválido: {}", e.getMessage());
+                return false;
+            }
+        }
+        
+        // Banco livre do pool da galeria: verificações simultâneas não se esperam
+        int ret = galeria.comparar(template1, template2);
         return ret >= 50; // Score é retornado diretamente
     }
     
@@ -229,11 +632,15 @@ public class GerenciadorDigital {
             return false;
         }
         
-        int[] score = new int[1];
-        int[] processados = new int[1];
-        int id = FingerprintSensorEx.DBIdentify(leitor.getDBHandle(), template, score, processados);
-        
-        return id >= 0;
+        return galeria.identificar(template, null) >= 0;
+    }
+    
+    public SupervisorSaude getSupervisor() {
+        return supervisor;
+    }
+    
+    public GerenciadorGaleria getGaleria() {
+        return galeria;
     }
 
     public boolean alternarLED(boolean vermelho) {
@@ -241,7 +648,7 @@ public class GerenciadorDigital {
             // Garante que o leitor está inicializado
             if (!leitor.isInitialized()) {
                 if (!leitor.inicializar()) {
-                    System.out.println("Falha ao inicializar o leitor");
+                    log.erro("Falha ao inicializar o leitor");
                     return false;
                 }
             }
@@ -251,33 +658,66 @@ public class GerenciadorDigital {
             
             // Primeiro desliga o LED
             paramValue[0] = 0;
-            int ret = FingerprintSensorEx.SetParameters(leitor.getDeviceHandle(), 101, paramValue, 4);
+            driver.setParameters(leitor.getDeviceHandle(), 101, paramValue, 4);
             Thread.sleep(100); // Pequena pausa
             
-            // Agora liga na cor desejada
-            paramValue[0] = (byte)(vermelho ? 2 : 1); // 1 = Verde, 2 = Vermelho
-            ret = FingerprintSensorEx.SetParameters(leitor.getDeviceHandle(), 101, paramValue, 4);
+            // Agora liga na cor desejada; se falhar, o supervisor recupera o
+            // leitor e tenta mais uma vez
+            byte[] cor = new byte[4];
+            cor[0] = (byte)(vermelho ? 2 : 1); // 1 = Verde, 2 = Vermelho
+            int ret = supervisor.executar(handle -> driver.setParameters(handle, 101, cor, 4));
             
-            System.out.println("Resultado da alteração do LED: " + ret);
-            
-            // Se falhou, tenta reinicializar o leitor e tentar novamente
-            if (ret != 0) {
-                System.out.println("Tentando reinicializar o leitor...");
-                leitor.finalizar();
-                Thread.sleep(500);
-                
-                if (leitor.inicializar()) {
-                    paramValue[0] = (byte)(vermelho ? 2 : 1);
-                    ret = FingerprintSensorEx.SetParameters(leitor.getDeviceHandle(), 101, paramValue, 4);
-                    System.out.println("Resultado após reinicialização: " + ret);
-                }
-            }
+            log.info("Resultado da alteração do LED: {}", ret);
             
             return ret == 0;
         } catch (Exception e) {
-            System.out.println("Erro ao alterar LED: " + e.getMessage());
-            e.printStackTrace();
+            log.erro("Erro ao alterar LED: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Liga o beep por 200 ms.
+     */
+    public boolean testarBeep() {
+        try {
+            if (!leitor.isInitialized() && !leitor.inicializar()) {
+                log.erro("Falha ao inicializar o leitor");
+                return false;
+            }
+            byte[] ligado = new byte[4];
+            ligado[0] = 1;
+            int ret = supervisor.executar(handle -> driver.setParameters(handle, DriverSensor.PARAM_BEEP, ligado, 4));
+            if (ret != 0) {
+                log.erro("Falha ao ativar beep: {}", ret);
+                return false;
+            }
+            Thread.sleep(200);
+            byte[] desligado = new byte[4];
+            ret = supervisor.executar(handle -> driver.setParameters(handle, DriverSensor.PARAM_BEEP, desligado, 4));
+            if (ret != 0) {
+                log.erro("Falha ao desativar beep: {}", ret);
+                return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Largura das imagens do sensor; 0 antes da primeira captura.
+     */
+    public int getLargura() {
+        return larguraImagem;
+    }
+
+    public int getAltura() {
+        return alturaImagem;
+    }
+
+    public boolean isCapturando() {
+        return capturando.get();
+    }
+}
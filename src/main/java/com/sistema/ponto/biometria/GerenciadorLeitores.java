@@ -0,0 +1,431 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.captura.Quadro;
+import com.sistema.ponto.biometria.driver.DriverSensor;
+import com.sistema.ponto.biometria.galeria.GerenciadorGaleria;
+import com.sistema.ponto.biometria.processamento.AnalisadorBlocos;
+import com.sistema.ponto.log.Log;
+import com.sistema.ponto.metricas.Contador;
+import com.sistema.ponto.metricas.RegistroMetricas;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vários leitores no mesmo host (catracas com dois a quatro leitores ZK), cada
+ * um com seu {@link LeitorDispositivo} e pipeline de captura. Todos usam a
+ * mesma galeria ({@link GerenciadorGaleria}) e publicam num único
+ * {@link EventoListener}, com o número do dispositivo em cada evento.
+ * <p>
+ * O SDK e o banco de templates continuam no {@link LeitorBiometrico}, que abre
+ * o dispositivo 0. A cada {@link #INTERVALO_VERIFICACAO_MS} o gerenciador fecha
+ * os leitores que pararam de responder e, quando o GetDeviceCount muda ou
+ * falta algum leitor, abre cada índice da lista e compara o número de série
+ * ({@link DriverSensor#lerSerial(long)}) com os leitores abertos: o índice
+ * muda quando um leitor do meio da lista sai, o serial não. Um serial já
+ * aberto tem o handle de sonda fechado; um serial novo vira um leitor. O
+ * número de cada leitor nos eventos é dado na primeira vez que o serial
+ * aparece e não muda depois.
+ * <p>
+ * Travas: a verificação roda sob {@link #travaVerificacao} e só pega a trava
+ * do gerenciador para alterar o mapa de leitores, nunca ao chamar o
+ * {@link LeitorBiometrico}; o {@link LeitorBiometrico} chama
+ * {@link #onBancoLiberado} com a trava dele, então o gerenciador nunca pode
+ * esperar por ela segurando a própria.
+ * <p>
+ * Substitui a captura do {@link GerenciadorDigital}; os dois não devem capturar
+ * do mesmo dispositivo ao mesmo tempo.
+ */
+public class GerenciadorLeitores implements LeitorBiometrico.BancoListener {
+
+    private static final Log log = Log.para(GerenciadorLeitores.class);
+
+    public static final long INTERVALO_VERIFICACAO_MS = 2000;
+
+    private static GerenciadorLeitores instance;
+
+    private static final Contador CONEXOES = RegistroMetricas.getInstance().contador(
+        "ponto_leitores_conexoes_total", "Leitores abertos (inclui reconexões)");
+    private static final Contador DESCONEXOES = RegistroMetricas.getInstance().contador(
+        "ponto_leitores_desconexoes_total", "Leitores fechados por falta de resposta");
+
+    /**
+     * Eventos de todos os leitores. Os de captura chegam na thread de publicação
+     * do leitor; os de conexão, na thread de verificação.
+     */
+    public interface EventoListener {
+        default void onLeitorConectado(int dispositivo) {
+        }
+
+        default void onLeitorDesconectado(int dispositivo) {
+        }
+
+        /**
+         * Dedo colocado ou retirado do leitor (só nas transições).
+         */
+        default void onPresencaAlterada(int dispositivo, boolean temDedo) {
+        }
+
+        default void onQualidadeAtualizada(int dispositivo, int qualidade, String mensagem) {
+        }
+
+        /**
+         * Template Java de um quadro bom (só com -Dponto.comparador=java), um
+         * por colocação. Com a vivacidade ligada só sai depois do veredito da
+         * colocação, e nunca de uma digital suspeita; nesse caso chega na
+         * thread de vivacidade do leitor.
+         */
+        default void onTemplateExtraido(int dispositivo, byte[] template) {
+        }
+
+        /**
+         * Quadro com dedo, sem cópia. Volta ao pool quando o método retorna;
+         * para guardá-lo chame {@link Quadro#reter()} e depois {@link Quadro#devolver()}.
+         */
+        default void onQuadroCapturado(int dispositivo, Quadro quadro) {
+        }
+    }
+
+    private final LeitorBiometrico leitor;
+    private final DriverSensor driver;
+    private final GerenciadorGaleria galeria;
+    private final boolean comparadorJava;
+    private final boolean vivacidadeAtiva;
+    // Compartilhado pelos pipelines dos leitores: um só pool de threads
+    private final AnalisadorBlocos analisadorBlocos;
+    private final List<EventoListener> listeners = new CopyOnWriteArrayList<>();
+    // dispositivo -> leitor aberto; alterado só com a trava do gerenciador
+    private final Map<Integer, LeitorDispositivo> leitores = new TreeMap<>();
+    // Número de série -> número do leitor nos eventos (trava do gerenciador)
+    private final Map<String, Integer> numeros = new HashMap<>();
+    private final Object travaVerificacao = new Object();
+    private final ScheduledExecutorService verificador;
+    private volatile ScheduledFuture<?> verificacao;
+    // Serial do leitor aberto pelo LeitorBiometrico; null até a primeira verificação
+    private volatile String serialPrincipal;
+    private volatile boolean reabrirPrincipal;
+    // GetDeviceCount da última enumeração; -1 força enumerar de novo
+    private volatile int quantidadeEnumerada = -1;
+    // Muda a cada finalização do SDK: handles abertos antes deixam de valer
+    private volatile int geracao;
+    private boolean semSerialAvisado;
+
+    private GerenciadorLeitores() {
+        leitor = LeitorBiometrico.getInstance();
+        driver = leitor.getDriver();
+        galeria = GerenciadorGaleria.getInstance();
+        galeria.iniciarCarga();
+        comparadorJava = GerenciadorDigital.COMPARADOR_JAVA.equalsIgnoreCase(
+            System.getProperty(GerenciadorDigital.PROPRIEDADE_COMPARADOR, GerenciadorDigital.COMPARADOR_NATIVO));
+        vivacidadeAtiva = Boolean.parseBoolean(System.getProperty(GerenciadorDigital.PROPRIEDADE_VIVACIDADE, "true"));
+        analisadorBlocos = GerenciadorDigital.criarAnalisadorBlocos();
+        verificador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "leitores-verificacao");
+            thread.setDaemon(true);
+            return thread;
+        });
+        leitor.adicionarBancoListener(this);
+        RegistroMetricas.getInstance().medidor("ponto_leitores_conectados",
+            "Leitores abertos pelo gerenciador", () -> getLeitores().size());
+    }
+
+    public static synchronized GerenciadorLeitores getInstance() {
+        if (instance == null) {
+            instance = new GerenciadorLeitores();
+        }
+        return instance;
+    }
+
+    public void adicionarListener(EventoListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removerListener(EventoListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Inicializa o SDK (se preciso), abre todos os leitores conectados e começa
+     * a verificação periódica.
+     */
+    public boolean iniciar() {
+        if (!leitor.isInitialized() && !leitor.inicializar()) {
+            return false;
+        }
+        verificarDispositivos();
+        synchronized (this) {
+            if (verificacao == null) {
+                verificacao = verificador.scheduleWithFixedDelay(this::verificarDispositivos,
+                    INTERVALO_VERIFICACAO_MS, INTERVALO_VERIFICACAO_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Para a captura de todos os leitores e fecha os que o gerenciador abriu.
+     * O SDK continua inicializado.
+     */
+    public void parar() {
+        synchronized (travaVerificacao) {
+            synchronized (this) {
+                if (verificacao != null) {
+                    verificacao.cancel(false);
+                    verificacao = null;
+                }
+                for (LeitorDispositivo aberto : new ArrayList<>(leitores.values())) {
+                    fechar(aberto);
+                }
+                quantidadeEnumerada = -1;
+            }
+        }
+    }
+
+    /**
+     * Fecha os leitores desconectados e abre os dispositivos novos. Roda
+     * periodicamente depois de {@link #iniciar()}; pode ser chamado para
+     * verificar na hora.
+     */
+    public void verificarDispositivos() {
+        synchronized (travaVerificacao) {
+            try {
+                boolean fechou = false;
+                synchronized (this) {
+                    for (LeitorDispositivo aberto : new ArrayList<>(leitores.values())) {
+                        if (aberto.isDesconectado()) {
+                            fechar(aberto);
+                            fechou = true;
+                        }
+                    }
+                }
+                if (!leitor.isInitialized()) {
+                    return;
+                }
+                int geracaoInicial = geracao;
+                if (serialPrincipal == null) {
+                    abrirPrincipal(geracaoInicial);
+                }
+                int quantidade = driver.getDeviceCount();
+                if (!fechou && quantidade == quantidadeEnumerada && getLeitores().size() >= quantidade) {
+                    return;
+                }
+                quantidadeEnumerada = quantidade;
+                for (int indice = 0; indice < quantidade; indice++) {
+                    sondar(indice, geracaoInicial);
+                }
+            } catch (Exception e) {
+                // A verificação periódica não pode morrer por causa de um leitor
+                log.erro("Erro ao verificar leitores: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    void agendarVerificacao() {
+        if (verificacao != null) {
+            verificador.execute(this::verificarDispositivos);
+        }
+    }
+
+    /**
+     * Registra o leitor que o {@link LeitorBiometrico} abriu ao inicializar o SDK.
+     */
+    private void abrirPrincipal(int geracaoInicial) {
+        long handle = leitor.getDeviceHandle();
+        if (handle == 0) {
+            return;
+        }
+        String serial = identificar(handle, 0);
+        serialPrincipal = serial;
+        registrar(serial, handle, true, geracaoInicial);
+    }
+
+    /**
+     * Abre o índice para ler o serial: um leitor já aberto tem a sonda fechada,
+     * o principal que voltou é entregue ao {@link LeitorBiometrico} e os
+     * outros viram leitores novos.
+     */
+    private void sondar(int indice, int geracaoInicial) {
+        long handle = driver.openDevice(indice);
+        if (handle == 0) {
+            return; // Ocupado ou falhou; a próxima verificação tenta de novo
+        }
+        String serial = identificar(handle, indice);
+        if (isAberto(serial)) {
+            driver.closeDevice(handle);
+            return;
+        }
+        boolean principal = reabrirPrincipal && serial.equals(serialPrincipal);
+        if (principal) {
+            // Fora da trava do gerenciador: o LeitorBiometrico tem a própria
+            if (!leitor.adotarDispositivo(handle)) {
+                driver.closeDevice(handle);
+                return;
+            }
+            reabrirPrincipal = false;
+        }
+        registrar(serial, handle, principal, geracaoInicial);
+    }
+
+    private String identificar(long handle, int indice) {
+        String serial = driver.lerSerial(handle);
+        if (serial != null) {
+            return serial;
+        }
+        if (!semSerialAvisado) {
+            semSerialAvisado = true;
+            log.aviso("O SDK não informa o número de série; leitores identificados pelo índice");
+        }
+        return "indice-" + indice;
+    }
+
+    private synchronized boolean isAberto(String serial) {
+        for (LeitorDispositivo aberto : leitores.values()) {
+            if (aberto.getSerial().equals(serial)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void registrar(String serial, long handle, boolean principal, int geracaoInicial) {
+        if (geracao != geracaoInicial) {
+            // O SDK foi finalizado durante a verificação: o handle já não vale
+            return;
+        }
+        Integer numero = numeros.get(serial);
+        if (numero == null) {
+            numero = numeros.size();
+            numeros.put(serial, numero);
+        }
+        LeitorDispositivo novo = new LeitorDispositivo(numero, serial, handle, principal, driver, this);
+        leitores.put(numero, novo);
+        novo.iniciar();
+        CONEXOES.incrementar();
+        log.info("Leitor {} ({}) conectado ({}x{}, handle {})", numero, serial,
+            novo.getLargura(), novo.getAltura(), handle);
+        for (EventoListener listener : listeners) {
+            listener.onLeitorConectado(numero);
+        }
+    }
+
+    private void fechar(LeitorDispositivo aberto) {
+        aberto.fechar();
+        leitores.remove(aberto.getDispositivo());
+        if (aberto.isDesconectado()) {
+            DESCONEXOES.incrementar();
+            reabrirPrincipal |= aberto.isPrincipal();
+        }
+        log.info("Leitor {} ({}) fechado", aberto.getDispositivo(), aberto.getSerial());
+        for (EventoListener listener : listeners) {
+            listener.onLeitorDesconectado(aberto.getDispositivo());
+        }
+    }
+
+    /**
+     * Fecha todos os leitores, o SDK e a galeria (grava o snapshot pendente).
+     * Para os ganchos de encerramento: depois disso a instância não deve mais
+     * ser usada.
+     */
+    public void encerrar() {
+        parar();
+        verificador.shutdownNow();
+        leitor.finalizar();
+        if (analisadorBlocos != null) {
+            analisadorBlocos.encerrar();
+        }
+        galeria.encerrar();
+    }
+
+    /**
+     * O SDK vai ser finalizado (os handles deixam de valer): para todos os leitores.
+     */
+    @Override
+    public synchronized void onBancoLiberado(long dbHandle) {
+        geracao++;
+        for (LeitorDispositivo aberto : new ArrayList<>(leitores.values())) {
+            fechar(aberto);
+        }
+        // O próximo Init abre o índice 0, que pode ser outro leitor
+        reabrirPrincipal = false;
+        serialPrincipal = null;
+        quantidadeEnumerada = -1;
+    }
+
+    /**
+     * SDK inicializado de novo: reabre os leitores se a captura estava ativa.
+     */
+    @Override
+    public void onBancoInicializado(long dbHandle) {
+        agendarVerificacao();
+    }
+
+    void notificarPresenca(int dispositivo, boolean temDedo) {
+        for (EventoListener listener : listeners) {
+            listener.onPresencaAlterada(dispositivo, temDedo);
+        }
+    }
+
+    void notificarQualidade(int dispositivo, int qualidade, String mensagem) {
+        for (EventoListener listener : listeners) {
+            listener.onQualidadeAtualizada(dispositivo, qualidade, mensagem);
+        }
+    }
+
+    void notificarTemplate(int dispositivo, byte[] template) {
+        for (EventoListener listener : listeners) {
+            listener.onTemplateExtraido(dispositivo, template);
+        }
+    }
+
+    void notificarQuadro(int dispositivo, Quadro quadro) {
+        for (EventoListener listener : listeners) {
+            listener.onQuadroCapturado(dispositivo, quadro);
+        }
+    }
+
+    boolean isComparadorJava() {
+        return comparadorJava;
+    }
+
+    boolean isVivacidadeAtiva() {
+        return vivacidadeAtiva;
+    }
+
+    AnalisadorBlocos getAnalisadorBlocos() {
+        return analisadorBlocos;
+    }
+
+    /**
+     * Identifica o último template do leitor na galeria compartilhada.
+     *
+     * @return fid do funcionário ou -1
+     */
+    public int identificar(int dispositivo) {
+        LeitorDispositivo aberto = getLeitor(dispositivo);
+        byte[] template = aberto != null ? aberto.getTemplateAtual() : null;
+        return template != null ? galeria.identificar(template, null) : -1;
+    }
+
+    public synchronized LeitorDispositivo getLeitor(int dispositivo) {
+        return leitores.get(dispositivo);
+    }
+
+    /**
+     * Leitores abertos, em ordem de dispositivo.
+     */
+    public synchronized List<LeitorDispositivo> getLeitores() {
+        return new ArrayList<>(leitores.values());
+    }
+
+    public GerenciadorGaleria getGaleria() {
+        return galeria;
+    }
+}
@@ -1,15 +1,34 @@
 package com.sistema.ponto.biometria;
 
-import com.zkteco.biometric.FingerprintSensorEx;
+import com.sistema.ponto.biometria.driver.DriverSensor;
+import com.sistema.ponto.biometria.driver.FabricaDriver;
+import com.sistema.ponto.log.Log;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class LeitorBiometrico {
+
+    private static final Log log = Log.para(LeitorBiometrico.class);
     private static LeitorBiometrico instance;
-    private boolean initialized = false;
+    private final DriverSensor driver;
+    private volatile boolean initialized = false;
     private long deviceHandle;
     private long dbHandle;
+    private final List<BancoListener> bancoListeners = new CopyOnWriteArrayList<>();
+    
+    /**
+     * Avisado quando o banco de templates do SDK é criado (cada inicialização ou
+     * reconexão cria um banco novo, vazio) e logo antes de ele ser liberado.
+     */
+    public interface BancoListener {
+        void onBancoInicializado(long dbHandle);
+        
+        void onBancoLiberado(long dbHandle);
+    }
     
     private LeitorBiometrico() {
         // Construtor privado para Singleton
+        driver = FabricaDriver.getDriver();
     }
     
     public static LeitorBiometrico getInstance() {
@@ -27,74 +46,92 @@ public class LeitorBiometrico {
     }
     
     public boolean inicializar() {
+        return inicializar(true);
+    }
+    
+    /**
+     * @param aguardar faz as pausas para o dispositivo estabilizar; o
+     *                 {@link SupervisorSaude} dispensa, porque já espera entre
+     *                 as tentativas
+     */
+    private boolean inicializar(boolean aguardar) {
         if (!initialized) {
             try {
-                // Finaliza qualquer instância anterior
+                // Finaliza qualquer instância anterior; na primeira abertura
+                // do processo não há o que fechar nem por que esperar
                 try {
-                    FingerprintSensorEx.CloseDevice(deviceHandle);
-                    FingerprintSensorEx.Terminate();
-                    Thread.sleep(1000);
+                    driver.closeDevice(deviceHandle);
+                    driver.terminate();
+                    if (aguardar && deviceHandle != 0) {
+                        Thread.sleep(1000);
+                    }
                 } catch (Exception e) {
                     // Ignora erros aqui, pois pode não haver dispositivo aberto
                 }
                 
                 // Inicializa o SDK
-                System.out.println("Inicializando SDK...");
-                int ret = FingerprintSensorEx.Init();
+                log.info("Inicializando SDK...");
+                int ret = driver.init();
                 if (ret != 0) {
-                    System.out.println("Erro ao inicializar SDK: " + ret);
+                    log.erro("Erro ao inicializar SDK: {}", ret);
                     return false;
                 }
                 
                 // Espera um pouco para o dispositivo estar pronto
-                Thread.sleep(1000);
+                if (aguardar) {
+                    Thread.sleep(1000);
+                }
                 
                 // Abre o dispositivo
-                System.out.println("Abrindo dispositivo...");
-                deviceHandle = FingerprintSensorEx.OpenDevice(0);
+                log.info("Abrindo dispositivo...");
+                deviceHandle = driver.openDevice(0);
                 if (deviceHandle == 0) {
-                    System.out.println("Erro ao abrir dispositivo");
+                    log.erro("Erro ao abrir dispositivo");
                     return false;
                 }
                 
                 // Espera o dispositivo estabilizar
-                Thread.sleep(500);
+                if (aguardar) {
+                    Thread.sleep(500);
+                }
                 
                 // Obtém parâmetros da imagem
                 byte[] paramValue = new byte[4];
                 int[] size = new int[1];
                 size[0] = 4;
                 
-                ret = FingerprintSensorEx.GetParameters(deviceHandle, 1, paramValue, size);
+                ret = driver.getParameters(deviceHandle, 1, paramValue, size);
                 int width = byteArrayToInt(paramValue);
                 
-                ret = FingerprintSensorEx.GetParameters(deviceHandle, 2, paramValue, size);
+                ret = driver.getParameters(deviceHandle, 2, paramValue, size);
                 int height = byteArrayToInt(paramValue);
                 
-                System.out.println("Dimensões do sensor: " + width + "x" + height);
+                log.info("Dimensões do sensor: {}x{}", width, height);
                 
                 // Inicializa o banco de dados de templates
-                dbHandle = FingerprintSensorEx.DBInit();
+                dbHandle = driver.dbInit();
                 if (dbHandle == 0) {
-                    System.out.println("Erro ao inicializar banco de templates");
+                    log.erro("Erro ao inicializar banco de templates");
                     return false;
                 }
                 
                 // Tenta ligar o LED verde
                 paramValue = new byte[4];
                 paramValue[0] = 1;
-                ret = FingerprintSensorEx.SetParameters(deviceHandle, 101, paramValue, 4);
+                ret = driver.setParameters(deviceHandle, 101, paramValue, 4);
                 if (ret != 0) {
-                    System.out.println("Aviso: Não foi possível configurar o LED: " + ret);
+                    log.aviso("Não foi possível configurar o LED: {}", ret);
                 }
                 
                 initialized = true;
-                System.out.println("Leitor inicializado com sucesso! Handle: " + deviceHandle);
+                log.info("Leitor inicializado com sucesso! Handle: {}", deviceHandle);
+                for (BancoListener listener : bancoListeners) {
+                    listener.onBancoInicializado(dbHandle);
+                }
                 return true;
                 
             } catch (Exception e) {
-                System.out.println("Erro ao inicializar leitor: " + e.getMessage());
-                e.printStackTrace();
+                log.erro("Erro ao inicializar leitor: {}", e.getMessage(), e);
                 return false;
             }
         }
@@ -105,7 +142,7 @@ public class LeitorBiometrico {
         try {
             if (!initialized) {
                 if (!inicializar()) {
-                    System.out.println("Falha ao inicializar o leitor");
+                    log.erro("Falha ao inicializar o leitor");
                     return false;
                 }
             }
@@ -113,13 +150,12 @@ public class LeitorBiometrico {
             byte[] paramValue = new byte[4];
             paramValue[0] = (byte)(vermelho ? 2 : 1); // 1 = Verde, 2 = Vermelho
             
-            int ret = FingerprintSensorEx.SetParameters(deviceHandle, 101, paramValue, 4);
-            System.out.println("Resultado da alteração do LED: " + ret);
+            int ret = driver.setParameters(deviceHandle, 101, paramValue, 4);
+            log.info("Resultado da alteração do LED: {}", ret);
             
             return ret == 0;
         } catch (Exception e) {
-            System.out.println("Erro ao alterar LED: " + e.getMessage());
-            e.printStackTrace();
+            log.erro("Erro ao alterar LED: {}", e.getMessage(), e);
             return false;
         }
     }
@@ -130,22 +166,86 @@ public class LeitorBiometrico {
                 // Desliga LED
                 byte[] paramValue = new byte[4];
                 paramValue[0] = 0;
-                FingerprintSensorEx.SetParameters(deviceHandle, 101, paramValue, 4);
+                driver.setParameters(deviceHandle, 101, paramValue, 4);
                 
                 if (dbHandle != 0) {
-                    FingerprintSensorEx.DBFree(dbHandle);
+                    for (BancoListener listener : bancoListeners) {
+                        listener.onBancoLiberado(dbHandle);
+                    }
+                    driver.dbFree(dbHandle);
+                    dbHandle = 0;
                 }
                 
-                FingerprintSensorEx.CloseDevice(deviceHandle);
-                FingerprintSensorEx.Terminate();
+                driver.closeDevice(deviceHandle);
+                driver.terminate();
                 initialized = false;
-                System.out.println("Leitor finalizado");
+                log.info("Leitor finalizado");
             } catch (Exception e) {
-                e.printStackTrace();
+                log.erro("Erro ao finalizar leitor: {}", e.getMessage(), e);
             }
         }
     }
     
+    /**
+     * Fecha e abre de novo só o dispositivo 0 (leitor desconectado e ligado de
+     * novo), sem finalizar o SDK nem o banco de templates: os outros leitores
+     * abertos no mesmo SDK continuam funcionando.
+     */
+    public synchronized boolean reabrirDispositivo() {
+        if (!initialized) {
+            return false;
+        }
+        driver.closeDevice(deviceHandle);
+        long novoHandle = driver.openDevice(0);
+        if (novoHandle == 0) {
+            log.erro("Erro ao reabrir dispositivo");
+            return false;
+        }
+        deviceHandle = novoHandle;
+        byte[] paramValue = new byte[4];
+        paramValue[0] = 1;
+        driver.setParameters(deviceHandle, DriverSensor.PARAM_LED, paramValue, 4);
+        log.info("Dispositivo reaberto. Handle: {}", deviceHandle);
+        return true;
+    }
+
+    /**
+     * Passa a usar {@code novoHandle}, já aberto por quem chama, como o
+     * dispositivo principal (o leitor principal voltou com outro índice na
+     * lista do SDK). O handle antigo é fechado.
+     */
+    public synchronized boolean adotarDispositivo(long novoHandle) {
+        if (!initialized || novoHandle == 0) {
+            return false;
+        }
+        if (deviceHandle != novoHandle) {
+            driver.closeDevice(deviceHandle);
+            deviceHandle = novoHandle;
+        }
+        byte[] paramValue = new byte[4];
+        paramValue[0] = 1;
+        driver.setParameters(deviceHandle, DriverSensor.PARAM_LED, paramValue, 4);
+        log.info("Dispositivo principal trocado. Handle: {}", deviceHandle);
+        return true;
+    }
+
+    /**
+     * Terminate/Init completo sem as pausas do {@link #inicializar()}. O banco
+     * de templates é recriado (os listeners são avisados).
+     */
+    public synchronized boolean reiniciarSdk() {
+        finalizar();
+        return inicializar(false);
+    }
+
+    public void adicionarBancoListener(BancoListener listener) {
+        bancoListeners.add(listener);
+    }
+    
+    public void removerBancoListener(BancoListener listener) {
+        bancoListeners.remove(listener);
+    }
+    
     public boolean isInitialized() {
         return initialized;
     }
@@ -157,4 +257,8 @@ public class LeitorBiometrico {
     public long getDBHandle() {
         return dbHandle;
     }
+    
+    public DriverSensor getDriver() {
+        return driver;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,319 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.captura.AgendadorCaptura;
+import com.sistema.ponto.biometria.captura.EstagioVivacidade;
+import com.sistema.ponto.biometria.captura.PipelineCaptura;
+import com.sistema.ponto.biometria.captura.Quadro;
+import com.sistema.ponto.biometria.comparacao.ExtratorMinucias;
+import com.sistema.ponto.biometria.driver.DriverSensor;
+import com.sistema.ponto.log.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Um leitor aberto pelo {@link GerenciadorLeitores}, com handle, pipeline de
+ * captura (threads, pool de quadros e agendador) e estado de qualidade próprios.
+ * <p>
+ * O leitor principal usa o handle do {@link LeitorBiometrico}; os outros são
+ * abertos pelo gerenciador e fechados aqui. Depois de {@link #LIMITE_FALHAS}
+ * capturas seguidas com erro o leitor se dá por desconectado e para a própria
+ * captura; o gerenciador fecha o handle e tenta abrir de novo na próxima
+ * verificação.
+ * <p>
+ * Com a vivacidade ligada cada leitor tem o seu {@link EstagioVivacidade}: o
+ * template da colocação só é entregue depois do veredito dela (ou do prazo
+ * sem veredito, como no {@link GerenciadorDigital}), e uma digital suspeita
+ * não gera template nem batida.
+ */
+public class LeitorDispositivo {
+
+    private static final Log log = Log.para(LeitorDispositivo.class);
+
+    public static final int LIMITE_FALHAS = 10;
+
+    private final int dispositivo;
+    private final String serial;
+    private final boolean principal;
+    private final DriverSensor driver;
+    private final GerenciadorLeitores gerenciador;
+    private final AgendadorCaptura agendador = new AgendadorCaptura();
+    private final PipelineCaptura pipeline;
+    // Usado só pela thread de publicação deste leitor
+    private final ExtratorMinucias extrator = new ExtratorMinucias();
+    private final int largura;
+    private final int altura;
+    private volatile long handle;
+    private volatile boolean desconectado;
+    private volatile int qualidadeDigital;
+    private volatile byte[] templateAtual;
+    private int falhasConsecutivas;
+    private boolean templateDaColocacao;
+    private boolean dedoPresente;
+    // Null com -Dponto.vivacidade=false
+    private final EstagioVivacidade vivacidade;
+    // Colocação atual e o veredito dela (publicação e thread de vivacidade)
+    private final Object travaVeredito = new Object();
+    private long colocacaoNanos;
+    private boolean vereditoRecebido;
+    private volatile boolean digitalSuspeita;
+    private byte[] templatePendente;
+
+    LeitorDispositivo(int dispositivo, String serial, long handle, boolean principal, DriverSensor driver,
+                      GerenciadorLeitores gerenciador) {
+        this.dispositivo = dispositivo;
+        this.serial = serial;
+        this.handle = handle;
+        this.principal = principal;
+        this.driver = driver;
+        this.gerenciador = gerenciador;
+        largura = driver.lerParametroInt(handle, DriverSensor.PARAM_LARGURA);
+        altura = driver.lerParametroInt(handle, DriverSensor.PARAM_ALTURA);
+        pipeline = new PipelineCaptura(largura, altura, agendador, this::adquirirQuadro, this::publicarQuadro);
+        pipeline.setNome("leitor" + dispositivo);
+        pipeline.setAnalisadorBlocos(gerenciador.getAnalisadorBlocos());
+        pipeline.setTerminoListener(this::pipelineTerminado);
+        vivacidade = gerenciador.isVivacidadeAtiva() ? GerenciadorDigital.criarVivacidade(largura, altura) : null;
+        if (vivacidade != null) {
+            vivacidade.setNome("leitor" + dispositivo);
+            vivacidade.setVereditoListener(this::registrarVeredito);
+            pipeline.setQuadrosRetidos(EstagioVivacidade.QUADROS_RETIDOS);
+        }
+    }
+
+    void iniciar() {
+        // Mesma configuração do GerenciadorDigital.iniciarCaptura
+        byte[] paramValue = new byte[4];
+        paramValue[0] = 1; // Alta velocidade
+        driver.setParameters(handle, DriverSensor.PARAM_VELOCIDADE, paramValue, 4);
+        paramValue[0] = 3; // Sensibilidade média-alta
+        driver.setParameters(handle, DriverSensor.PARAM_SENSIBILIDADE, paramValue, 4);
+        paramValue[0] = 1; // LED ON
+        driver.setParameters(handle, DriverSensor.PARAM_LED, paramValue, 4);
+        falhasConsecutivas = 0;
+        if (vivacidade != null) {
+            vivacidade.iniciar();
+        }
+        pipeline.iniciar();
+    }
+
+    /**
+     * Para a captura e espera as threads; fecha o handle se ele não for o do
+     * {@link LeitorBiometrico}.
+     */
+    void fechar() {
+        pipeline.parar();
+        if (vivacidade != null) {
+            vivacidade.parar();
+        }
+        if (!pipeline.aguardarTermino(2000)) {
+            log.erro("Captura do leitor {} não terminou a tempo", dispositivo);
+        }
+        if (vivacidade != null && !vivacidade.aguardarTermino(2000)) {
+            log.erro("Vivacidade do leitor {} não terminou a tempo", dispositivo);
+        }
+        if (!principal && handle != 0) {
+            driver.closeDevice(handle);
+        }
+        handle = 0;
+    }
+
+    private int adquirirQuadro(byte[] destino) {
+        int ret = driver.acquireFingerprintImage(handle, destino);
+        if (ret == 0) {
+            falhasConsecutivas = 0;
+            return ret;
+        }
+        falhasConsecutivas++;
+        if (falhasConsecutivas > LIMITE_FALHAS && !desconectado) {
+            log.info("Leitor {} sem resposta ({}), considerado desconectado", dispositivo, ret);
+            desconectado = true;
+            pipeline.parar();
+            gerenciador.agendarVerificacao();
+        }
+        return ret;
+    }
+
+    /**
+     * Pipeline parado por erro: o leitor é tratado como desconectado, e o
+     * gerenciador o fecha e abre de novo na próxima verificação.
+     */
+    private void pipelineTerminado(Exception causa) {
+        log.erro("Captura do leitor {} parada por erro: {}", dispositivo, causa.getMessage());
+        desconectado = true;
+        gerenciador.agendarVerificacao();
+    }
+
+    private void publicarQuadro(Quadro quadro) {
+        // Primeiro, para a vivacidade receber o quadro sem esperar os listeners
+        if (vivacidade != null) {
+            vivacidade.oferecer(quadro);
+            liberarSemVeredito();
+        }
+        if (quadro.temDedo() != dedoPresente) {
+            dedoPresente = quadro.temDedo();
+            if (dedoPresente) {
+                synchronized (travaVeredito) {
+                    colocacaoNanos = quadro.getColocacaoNanos();
+                    vereditoRecebido = false;
+                    digitalSuspeita = false;
+                    templatePendente = null;
+                }
+            }
+            gerenciador.notificarPresenca(dispositivo, dedoPresente);
+        }
+        if (!quadro.temDedo()) {
+            templateDaColocacao = false;
+            return;
+        }
+        // Digital suspeita continua -1 até o dedo sair
+        qualidadeDigital = digitalSuspeita ? -1 : quadro.getQualidade();
+        gerenciador.notificarQualidade(dispositivo, qualidadeDigital,
+            GerenciadorDigital.mensagemQualidade(qualidadeDigital, quadro.getMapa().getDica()));
+        // Um template por colocação do dedo, do primeiro quadro bom
+        if (gerenciador.isComparadorJava() && qualidadeDigital >= 50 && !templateDaColocacao) {
+            templateDaColocacao = true;
+            entregarTemplate(extrator.extrair(quadro.getPixels(), largura, altura).serializar());
+        }
+        gerenciador.notificarQuadro(dispositivo, quadro);
+    }
+
+    /**
+     * Entrega o template da colocação atual se o veredito dela já saiu (ou sem
+     * vivacidade); senão o guarda até ele sair.
+     */
+    private void entregarTemplate(byte[] template) {
+        synchronized (travaVeredito) {
+            if (digitalSuspeita) {
+                return; // O veredito chegou durante a extração
+            }
+            if (vivacidade != null && !vereditoRecebido) {
+                templatePendente = template;
+                return;
+            }
+        }
+        notificarTemplate(template);
+    }
+
+    /**
+     * Veredito da vivacidade, na thread do estágio: libera ou descarta o
+     * template guardado da colocação.
+     */
+    private void registrarVeredito(EstagioVivacidade.Veredito veredito) {
+        byte[] liberado;
+        synchronized (travaVeredito) {
+            if (veredito.getInicioNanos() != colocacaoNanos) {
+                return; // Dedo já foi recolocado
+            }
+            vereditoRecebido = true;
+            liberado = templatePendente;
+            templatePendente = null;
+            if (veredito.isSuspeita()) {
+                digitalSuspeita = true;
+                liberado = null;
+            }
+        }
+        if (veredito.isSuspeita()) {
+            qualidadeDigital = -1;
+            log.aviso("Digital suspeita no leitor {}: {}", dispositivo, veredito);
+            gerenciador.notificarQualidade(dispositivo, -1, GerenciadorDigital.mensagemQualidade(-1));
+        } else {
+            log.depuracao("Vivacidade do leitor {}: {}", dispositivo, veredito);
+            if (liberado != null) {
+                notificarTemplate(liberado);
+            }
+        }
+    }
+
+    /**
+     * Sem veredito até o prazo da vivacidade mais a folga, o template guardado
+     * é entregue, como num veredito inconclusivo.
+     */
+    private void liberarSemVeredito() {
+        byte[] liberado;
+        synchronized (travaVeredito) {
+            if (templatePendente == null || System.nanoTime() - colocacaoNanos < TimeUnit.MILLISECONDS.toNanos(
+                    vivacidade.getPrazoMs() + GerenciadorDigital.FOLGA_VEREDITO_MS)) {
+                return;
+            }
+            liberado = templatePendente;
+            templatePendente = null;
+            vereditoRecebido = true;
+        }
+        log.aviso("Sem veredito de vivacidade no leitor {} em {} ms; template entregue sem ele",
+            dispositivo, vivacidade.getPrazoMs());
+        notificarTemplate(liberado);
+    }
+
+    private void notificarTemplate(byte[] template) {
+        templateAtual = template;
+        gerenciador.notificarTemplate(dispositivo, template);
+    }
+
+    /**
+     * Número do leitor nos eventos; o mesmo enquanto o serial for o mesmo,
+     * ainda que o índice no SDK mude.
+     */
+    public int getDispositivo() {
+        return dispositivo;
+    }
+
+    /**
+     * Número de série do leitor, ou "indice-N" se o SDK não informar.
+     */
+    public String getSerial() {
+        return serial;
+    }
+
+    public boolean isPrincipal() {
+        return principal;
+    }
+
+    public long getHandle() {
+        return handle;
+    }
+
+    public boolean isDesconectado() {
+        return desconectado;
+    }
+
+    public int getLargura() {
+        return largura;
+    }
+
+    public int getAltura() {
+        return altura;
+    }
+
+    public int getQualidadeDigital() {
+        return qualidadeDigital;
+    }
+
+    /**
+     * A colocação atual (ou a última) do dedo foi considerada dedo artificial.
+     */
+    public boolean isDigitalSuspeita() {
+        return digitalSuspeita;
+    }
+
+    /**
+     * Estágio de vivacidade do leitor, ou null se desligado.
+     */
+    public EstagioVivacidade getVivacidade() {
+        return vivacidade;
+    }
+
+    /**
+     * Template Java do último quadro bom (só com -Dponto.comparador=java), ou null.
+     */
+    public byte[] getTemplateAtual() {
+        return templateAtual;
+    }
+
+    public AgendadorCaptura getAgendador() {
+        return agendador;
+    }
+
+    public PipelineCaptura getPipeline() {
+        return pipeline;
+    }
+}
@@ -1,25 +1,29 @@
 package com.sistema.ponto.biometria;
 
-import com.zkteco.biometric.FingerprintSensorEx;
+import com.sistema.ponto.biometria.captura.CapturaRajada;
+import com.sistema.ponto.biometria.captura.Quadro;
+import com.sistema.ponto.biometria.persistencia.ServicoPersistencia;
+import com.sistema.ponto.log.Log;
+import com.sistema.ponto.ui.PainelDigital;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 import java.io.File;
-import javax.imageio.ImageIO;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Interface Swing de captura: um cliente do {@link GerenciadorDigital}, que
+ * cuida do leitor, do pipeline e da qualidade (o mesmo núcleo do serviço sem
+ * interface, {@code com.ponto.SistemaPontoApplication}).
+ */
 public class LeitorSimples extends JFrame {
-    private long deviceHandle;
-    private boolean initialized;
-    private int largura;
-    private int altura;
-    private volatile boolean visualizando = false;
-    private BufferedImage ultimaImagem = null;
+
+    private static final long serialVersionUID = 1L;
+    private static final Log log = Log.para(LeitorSimples.class);
+    private final GerenciadorDigital gerenciador = GerenciadorDigital.getInstance();
+    private volatile boolean initialized;
     
-    private JLabel imageLabel;
+    private PainelDigital painelDigital;
     private JButton btnIniciar;
     private JButton btnCapturar;
     private JButton btnFinalizar;
@@ -27,20 +31,24 @@ public class LeitorSimples extends JFrame {
     private JLabel statusLabel;
     
     private static final String PASTA_DIGITAIS = "digitais_capturadas";
+    private final ServicoPersistencia persistencia = new ServicoPersistencia(new File(PASTA_DIGITAIS));
     
     public LeitorSimples() {
         super("Leitor Biometrico ZK4500");
         criarPastaDigitais();
         initComponents();
+        gerenciador.setQuadroListener(this::publicarQuadro);
+        gerenciador.setQualidadeListener((qualidade, mensagem) ->
+            atualizarStatus(mensagem + " - Qualidade: " + qualidade + "%", qualidade >= 50 ? Color.GREEN : Color.RED));
     }
     
     private void criarPastaDigitais() {
         File pasta = new File(PASTA_DIGITAIS);
         if (!pasta.exists()) {
             if (pasta.mkdir()) {
-                log("Pasta 'digitais_capturadas' criada com sucesso!");
+                log.info("Pasta 'digitais_capturadas' criada com sucesso!");
             } else {
-                log("[ERRO] Não foi possível criar a pasta 'digitais_capturadas'");
+                log.erro("Não foi possível criar a pasta 'digitais_capturadas'");
             }
         }
     }
@@ -60,10 +68,11 @@ public class LeitorSimples extends JFrame {
         mainPanel.add(statusLabel, BorderLayout.NORTH);
         
         // Area central para imagem da digital
-        imageLabel = new JLabel("Posicione o dedo no leitor", SwingConstants.CENTER);
-        imageLabel.setPreferredSize(new Dimension(300, 300));
-        imageLabel.setBorder(BorderFactory.createLineBorder(Color.GRAY));
-        mainPanel.add(imageLabel, BorderLayout.CENTER);
+        painelDigital = new PainelDigital();
+        painelDigital.setMensagem("Posicione o dedo no leitor");
+        painelDigital.setPreferredSize(new Dimension(300, 300));
+        painelDigital.setBorder(BorderFactory.createLineBorder(Color.GRAY));
+        mainPanel.add(painelDigital, BorderLayout.CENTER);
         
         // Painel de botoes
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
@@ -94,13 +103,13 @@ public class LeitorSimples extends JFrame {
         btnFinalizar.addActionListener(e -> finalizarLeitor());
         btnTesteBeep.addActionListener(e -> {
             if (initialized) {
-                if (testarBeep()) {
-                    log("Teste de beep executado com sucesso!");
+                if (gerenciador.testarBeep()) {
+                    log.info("Teste de beep executado com sucesso!");
                 } else {
-                    log("[ERRO] Falha no teste de beep");
+                    log.erro("Falha no teste de beep");
                 }
             } else {
-                log("[ERRO] Leitor não inicializado");
+                log.erro("Leitor não inicializado");
             }
         });
         
@@ -110,14 +119,13 @@ public class LeitorSimples extends JFrame {
             @Override
             public void windowClosing(WindowEvent e) {
                 finalizarLeitor();
+                gerenciador.encerrar();
+                // Termina de gravar as capturas pendentes antes de sair
+                persistencia.encerrar(5000);
             }
         });
     }
     
-    private void log(String message) {
-        System.out.println(message);
-    }
-    
     private void atualizarStatus(String status, Color cor) {
         SwingUtilities.invokeLater(() -> {
             statusLabel.setText(status);
@@ -130,158 +138,90 @@ public class LeitorSimples extends JFrame {
             btnIniciar.setEnabled(false);
             atualizarStatus("Inicializando...", Color.BLUE);
             
-            try {
-                log("\n=== Iniciando Leitor Biometrico ===");
-                
-                // Finaliza qualquer instancia anterior
-                log("Finalizando instancias anteriores...");
-                FingerprintSensorEx.CloseDevice(deviceHandle);
-                FingerprintSensorEx.Terminate();
-                Thread.sleep(1000);
-                
-                // Inicializa o SDK
-                log("Inicializando SDK...");
-                int ret = FingerprintSensorEx.Init();
-                log("Retorno da inicialização do SDK: " + ret);
-                if (ret != 0) {
-                    log("[ERRO] Falha ao inicializar SDK: " + ret);
-                    atualizarStatus("Erro ao inicializar SDK", Color.RED);
-                    btnIniciar.setEnabled(true);
-                    return;
-                }
-                
-                // Abre o dispositivo
-                log("Abrindo dispositivo...");
-                deviceHandle = FingerprintSensorEx.OpenDevice(0);
-                log("Retorno do OpenDevice: " + deviceHandle);
-                if (deviceHandle == 0) {
-                    log("[ERRO] Falha ao abrir dispositivo");
-                    atualizarStatus("Erro ao abrir dispositivo", Color.RED);
-                    btnIniciar.setEnabled(true);
-                    return;
-                }
-                log("Handle do dispositivo: " + deviceHandle);
-                
-                // Verifica se o dispositivo está respondendo
-                byte[] paramValue = new byte[4];
-                int[] size = new int[1];
-                size[0] = 4;
-                
-                log("Verificando parâmetros do dispositivo...");
-                ret = FingerprintSensorEx.GetParameters(deviceHandle, 1, paramValue, size);
-                log("Retorno do GetParameters (largura): " + ret);
-                if (ret != 0) {
-                    log("[ERRO] Dispositivo não está respondendo: " + ret);
-                    atualizarStatus("Erro de comunicação", Color.RED);
-                    FingerprintSensorEx.CloseDevice(deviceHandle);
-                    btnIniciar.setEnabled(true);
-                    return;
-                }
-                
-                // Obtém dimensões do sensor
-                largura = byteArrayToInt(paramValue);
-                
-                ret = FingerprintSensorEx.GetParameters(deviceHandle, 2, paramValue, size);
-                altura = byteArrayToInt(paramValue);
-                
-                log("Dimensões do sensor: " + largura + "x" + altura);
-                
-                initialized = true;
-                log("Leitor inicializado com sucesso!");
-                atualizarStatus("Pronto para captura", Color.GREEN);
-                
-                btnCapturar.setEnabled(true);
-                btnFinalizar.setEnabled(true);
-                btnTesteBeep.setEnabled(true);
-                
-                // Inicia a visualização contínua
-                visualizando = true;
-                iniciarVisualizacaoContinua();
-                
-            } catch (Exception e) {
-                log("[ERRO] Falha ao inicializar leitor: " + e.getMessage());
-                e.printStackTrace();
-                atualizarStatus("Erro ao inicializar", Color.RED);
+            log.info("=== Iniciando Leitor Biometrico ===");
+            if (!gerenciador.iniciarCaptura()) {
+                log.erro("Falha ao iniciar a captura");
+                atualizarStatus("Erro ao inicializar o leitor", Color.RED);
                 btnIniciar.setEnabled(true);
+                return;
             }
+            
+            initialized = true;
+            log.info("Leitor inicializado com sucesso!");
+            atualizarStatus("Pronto para captura", Color.GREEN);
+            
+            btnCapturar.setEnabled(true);
+            btnFinalizar.setEnabled(true);
+            btnTesteBeep.setEnabled(true);
         }).start();
     }
     
-    private void iniciarVisualizacaoContinua() {
-        new Thread(() -> {
-            byte[] imgbuf = new byte[largura * altura];
-            
-            while (visualizando && initialized) {
-                try {
-                    int ret = FingerprintSensorEx.AcquireFingerprintImage(deviceHandle, imgbuf);
-                    
-                    if (ret == 0) {
-                        BufferedImage fingerImage = new BufferedImage(largura, altura, BufferedImage.TYPE_BYTE_GRAY);
-                        byte[] imgData = ((DataBufferByte) fingerImage.getRaster().getDataBuffer()).getData();
-                        System.arraycopy(imgbuf, 0, imgData, 0, imgbuf.length);
-                        
-                        Image scaledImage = fingerImage.getScaledInstance(300, 300, Image.SCALE_SMOOTH);
-                        ultimaImagem = fingerImage;
-                        
-                        SwingUtilities.invokeLater(() -> {
-                            imageLabel.setIcon(new ImageIcon(scaledImage));
-                            imageLabel.setText(null);
-                        });
-                    }
-                    
-                    Thread.sleep(100);
-                    
-                } catch (Exception e) {
-                    log("[ERRO] Falha durante visualização: " + e.getMessage());
-                    e.printStackTrace();
-                    break;
-                }
-            }
-        }).start();
+    /**
+     * Agenda a exibição do quadro. Chamado na thread de publicação do
+     * pipeline; o painel assume a referência recebida.
+     */
+    private void publicarQuadro(Quadro quadro) {
+        painelDigital.exibir(quadro);
     }
     
+    /**
+     * Captura em rajada ({@link GerenciadorDigital#capturarRajada()}) numa thread
+     * à parte: grava o melhor quadro da rajada, não o que estava na tela no clique.
+     */
     private void capturarDigital() {
-        if (!initialized || ultimaImagem == null) {
-            log("[ERRO] Nenhuma digital detectada para capturar");
-            JOptionPane.showMessageDialog(this, "Posicione o dedo no leitor primeiro!", "Aviso", JOptionPane.WARNING_MESSAGE);
+        if (!initialized) {
+            log.erro("Leitor não inicializado");
             return;
         }
-        
-        try {
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            String nomeArquivo = PASTA_DIGITAIS + File.separator + "digital_" + timestamp + ".png";
-            
-            File outputfile = new File(nomeArquivo);
-            ImageIO.write(ultimaImagem, "png", outputfile);
-            
-            log("Digital salva com sucesso: " + nomeArquivo);
-            JOptionPane.showMessageDialog(this, "Digital capturada com sucesso!\nSalva em: " + nomeArquivo);
-            
-        } catch (Exception e) {
-            log("[ERRO] Falha ao salvar digital: " + e.getMessage());
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Erro ao salvar a digital!", "Erro", JOptionPane.ERROR_MESSAGE);
-        }
+        btnCapturar.setEnabled(false);
+        atualizarStatus("Capturando... mantenha o dedo no leitor", Color.BLUE);
+        new Thread(() -> {
+            try {
+                CapturaRajada.Resultado resultado = gerenciador.capturarRajada();
+                if (resultado == null || resultado.getQuadrosGuardados() == 0) {
+                    log.erro("Nenhuma digital detectada para capturar");
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                        "Posicione o dedo no leitor primeiro!", "Aviso", JOptionPane.WARNING_MESSAGE));
+                } else if (resultado.isSuspeita()) {
+                    log.aviso("Captura recusada: digital suspeita");
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                        "Digital suspeita detectada!", "Aviso", JOptionPane.WARNING_MESSAGE));
+                } else {
+                    salvar(resultado);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                SwingUtilities.invokeLater(() -> btnCapturar.setEnabled(initialized));
+            }
+        }, "captura-rajada").start();
     }
     
-    private int byteArrayToInt(byte[] bytes) {
-        return ((bytes[3] & 0xFF) << 24) |
-               ((bytes[2] & 0xFF) << 16) |
-               ((bytes[1] & 0xFF) << 8) |
-               (bytes[0] & 0xFF);
+    private void salvar(CapturaRajada.Resultado resultado) {
+        // A gravação roda na thread do serviço com uma cópia do melhor quadro
+        CompletableFuture<File> gravacao = persistencia.salvar(resultado.copiarPixels(0),
+            resultado.getLargura(), resultado.getAltura(), "digital");
+        int qualidade = resultado.getMelhorQualidade();
+        
+        gravacao.whenComplete((arquivo, erro) -> SwingUtilities.invokeLater(() -> {
+            if (erro == null) {
+                log.info("Digital salva com sucesso: {} (qualidade {})", arquivo.getPath(), qualidade);
+                JOptionPane.showMessageDialog(this, "Digital capturada com sucesso!\nQualidade: " + qualidade
+                    + "%\nSalva em: " + arquivo.getPath());
+            } else {
+                log.erro("Falha ao salvar digital: {}", erro.getMessage(), erro);
+                JOptionPane.showMessageDialog(this, "Erro ao salvar a digital!", "Erro", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
     }
     
     private void finalizarLeitor() {
         if (initialized) {
             try {
-                visualizando = false;
-                Thread.sleep(200);
-                
-                log("\n=== Finalizando Leitor ===");
-                FingerprintSensorEx.CloseDevice(deviceHandle);
-                FingerprintSensorEx.Terminate();
+                log.info("=== Finalizando Leitor ===");
                 initialized = false;
-                log("Leitor finalizado com sucesso");
+                gerenciador.finalizarLeitor();
+                log.info("Leitor finalizado com sucesso");
                 atualizarStatus("Leitor finalizado", Color.GRAY);
                 
                 btnIniciar.setEnabled(true);
@@ -289,53 +229,11 @@ public class LeitorSimples extends JFrame {
                 btnFinalizar.setEnabled(false);
                 btnTesteBeep.setEnabled(false);
                 
-                imageLabel.setIcon(null);
-                imageLabel.setText("Posicione o dedo no leitor");
+                painelDigital.limpar();
                 
             } catch (Exception e) {
-                log("[ERRO] Falha ao finalizar leitor: " + e.getMessage());
-                e.printStackTrace();
-            }
-        }
-    }
-    
-    private boolean testarBeep() {
-        try {
-            log("\n=== Testando Beep ===");
-            log("Device Handle: " + deviceHandle);
-            
-            // Ativa o beep
-            byte[] paramValue = new byte[4];
-            paramValue[0] = 1;
-            log("Enviando comando para ativar beep...");
-            int ret = FingerprintSensorEx.SetParameters(deviceHandle, 2002, paramValue, 4);
-            log("SetParameters (ativar beep) retornou: " + ret);
-            
-            if (ret != 0) {
-                log("[ERRO] Falha ao ativar beep: " + ret);
-                return false;
+                log.erro("Falha ao finalizar leitor: {}", e.getMessage(), e);
             }
-            
-            // Aguarda um pouco
-            Thread.sleep(200);
-            
-            // Desativa o beep
-            paramValue[0] = 0;
-            log("Enviando comando para desativar beep...");
-            ret = FingerprintSensorEx.SetParameters(deviceHandle, 2002, paramValue, 4);
-            log("SetParameters (desativar beep) retornou: " + ret);
-            
-            if (ret != 0) {
-                log("[ERRO] Falha ao desativar beep: " + ret);
-                return false;
-            }
-            
-            log("Teste de beep concluído com sucesso!");
-            return true;
-        } catch (Exception e) {
-            log("[ERRO] Falha ao testar beep: " + e.getMessage());
-            e.printStackTrace();
-            return false;
         }
     }
     
@@ -343,7 +241,7 @@ public class LeitorSimples extends JFrame {
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
-            e.printStackTrace();
+            log.aviso("Não foi possível usar o visual do sistema: {}", e.getMessage());
         }
         
         SwingUtilities.invokeLater(() -> {
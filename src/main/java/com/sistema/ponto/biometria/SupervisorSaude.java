@@ -0,0 +1,350 @@
+package com.sistema.ponto.biometria;
+
+import com.sistema.ponto.biometria.driver.DriverSensor;
+import com.sistema.ponto.log.Log;
+import com.sistema.ponto.metricas.Contador;
+import com.sistema.ponto.metricas.Histograma;
+import com.sistema.ponto.metricas.RegistroMetricas;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Supervisiona o dispositivo 0 do {@link LeitorBiometrico}: classifica os erros
+ * do SDK e recupera o leitor com o menor estrago possível.
+ * <ul>
+ *   <li>erro transitório (captura ruim): só depois de {@link #LIMITE_TRANSITORIOS}
+ *       seguidos vira recuperação;</li>
+ *   <li>dispositivo perdido: reabre só o dispositivo, sem finalizar o SDK, e o
+ *       banco de templates continua valendo. Sem leitor conectado espera e tenta
+ *       de novo, até {@link #LIMITE_ESPERAS_SEM_DISPOSITIVO} vezes (cabo
+ *       recolocado em alguns segundos não custa o banco);</li>
+ *   <li>falha do SDK, {@link #LIMITE_REABERTURAS} reaberturas sem nenhuma
+ *       captura boa ou o leitor sumido por tempo demais (o SDK também deixa de
+ *       listar o leitor quando trava): Terminate/Init sem as pausas fixas da
+ *       inicialização (a galeria recarrega o banco novo).</li>
+ * </ul>
+ * Entre tentativas a espera cresce exponencialmente a partir de
+ * {@link #ESPERA_BASE_MS} até {@link #ESPERA_MAXIMA_MS}, com variação aleatória
+ * para vários terminais não baterem no mesmo servidor/USB ao mesmo tempo.
+ * A espera acontece fora da trava, e quem chega depois de outra thread já ter
+ * recuperado o leitor não recupera de novo.
+ */
+public class SupervisorSaude {
+
+    private static final Log log = Log.para(SupervisorSaude.class);
+
+    public static final int LIMITE_TRANSITORIOS = 10;
+    public static final int LIMITE_REABERTURAS = 3;
+    public static final int LIMITE_ESPERAS_SEM_DISPOSITIVO = 10;
+    public static final long ESPERA_BASE_MS = 100;
+    public static final long ESPERA_MAXIMA_MS = 5000;
+
+    public enum ClasseErro {
+        /** Captura ou extração que falhou; a próxima pode dar certo. */
+        TRANSITORIO,
+        /** Handle inválido ou leitor desconectado. */
+        DISPOSITIVO_PERDIDO,
+        /** SDK não inicializado ou em estado inválido. */
+        FALHA_SDK
+    }
+
+    /**
+     * Operação sobre o dispositivo (LED, parâmetros...) que pode ser repetida
+     * com o handle novo depois de uma recuperação.
+     */
+    public interface Comando {
+        int executar(long deviceHandle);
+    }
+
+    /**
+     * Avisado depois de cada recuperação, na thread que recuperou, para
+     * reconfigurar o dispositivo (velocidade, sensibilidade, LED).
+     */
+    public interface RecuperacaoListener {
+        void onDispositivoRecuperado(long deviceHandle, boolean sdkReiniciado);
+    }
+
+    private static SupervisorSaude instance;
+
+    private static final Contador REABERTURAS = RegistroMetricas.getInstance().contador(
+        "ponto_leitor_reaberturas_total", "Recuperações só com a reabertura do dispositivo");
+    private static final Contador REINICIOS_SDK = RegistroMetricas.getInstance().contador(
+        "ponto_leitor_reinicios_sdk_total", "Recuperações que reiniciaram o SDK");
+    private static final Histograma DURACAO_QUEDAS = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_leitor_queda_segundos", "Duração das quedas do leitor, da primeira falha à primeira operação boa");
+
+    private final LeitorBiometrico leitor;
+    private final DriverSensor driver;
+    private final List<RecuperacaoListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Estado da queda atual; alterado só com a trava do supervisor
+    private volatile int geracao;
+    private int transitoriosSeguidos;
+    private int tentativas;
+    private int reaberturasSemCaptura;
+    private int esperasSemDispositivo;
+    private volatile long inicioFalhasNanos;
+    private boolean recuperando;
+
+    // Métricas
+    private volatile long quedas;
+    private volatile long recuperacoesDispositivo;
+    private volatile long recuperacoesSdk;
+    private volatile long tentativasFalhas;
+    private final long[] errosPorClasse = new long[ClasseErro.values().length];
+    private volatile long ultimaQuedaNanos;
+    private volatile long maiorQuedaNanos;
+    private volatile long totalQuedasNanos;
+
+    SupervisorSaude(LeitorBiometrico leitor) {
+        this.leitor = leitor;
+        this.driver = leitor.getDriver();
+    }
+
+    public static synchronized SupervisorSaude getInstance() {
+        if (instance == null) {
+            instance = new SupervisorSaude(LeitorBiometrico.getInstance());
+        }
+        return instance;
+    }
+
+    public void adicionarListener(RecuperacaoListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removerListener(RecuperacaoListener listener) {
+        listeners.remove(listener);
+    }
+
+    public static ClasseErro classificar(int codigo) {
+        switch (codigo) {
+            case DriverSensor.ZKFP_ERR_NO_DEVICE:
+            case DriverSensor.ZKFP_ERR_OPEN:
+            case DriverSensor.ZKFP_ERR_INVALID_HANDLE:
+            case DriverSensor.ZKFP_ERR_NOT_OPENED:
+                return ClasseErro.DISPOSITIVO_PERDIDO;
+            case DriverSensor.ZKFP_ERR_INIT:
+            case DriverSensor.ZKFP_ERR_NOT_INIT:
+                return ClasseErro.FALHA_SDK;
+            default:
+                return ClasseErro.TRANSITORIO;
+        }
+    }
+
+    /**
+     * Captura um quadro do dispositivo 0. Em caso de erro decide se é hora de
+     * recuperar o leitor e, se for, recupera ali mesmo (a thread de captura não
+     * tem nada melhor a fazer enquanto o leitor está fora).
+     *
+     * @return retorno do SDK para esta captura
+     */
+    public int capturar(byte[] destino) throws InterruptedException {
+        int geracaoObservada = geracao;
+        int ret = driver.acquireFingerprintImage(leitor.getDeviceHandle(), destino);
+        if (ret == DriverSensor.ZKFP_ERR_OK) {
+            registrarSucesso();
+            return ret;
+        }
+        ClasseErro classe = registrarFalha(ret);
+        if (classe != ClasseErro.TRANSITORIO || transitoriosSeguidos > LIMITE_TRANSITORIOS) {
+            recuperar(classe, geracaoObservada);
+        }
+        return ret;
+    }
+
+    /**
+     * Executa um comando no dispositivo 0. Se falhar, recupera o leitor (ou só
+     * espera, se o erro for transitório) e tenta mais uma vez.
+     *
+     * @return retorno do SDK da última tentativa
+     */
+    public int executar(Comando comando) throws InterruptedException {
+        int geracaoObservada = geracao;
+        int ret = comando.executar(leitor.getDeviceHandle());
+        if (ret == DriverSensor.ZKFP_ERR_OK) {
+            registrarSucesso();
+            return ret;
+        }
+        ClasseErro classe = registrarFalha(ret);
+        if (classe == ClasseErro.TRANSITORIO) {
+            Thread.sleep(calcularEspera(0));
+        } else if (!recuperar(classe, geracaoObservada)) {
+            return ret;
+        }
+        ret = comando.executar(leitor.getDeviceHandle());
+        if (ret == DriverSensor.ZKFP_ERR_OK) {
+            registrarSucesso();
+        }
+        return ret;
+    }
+
+    private synchronized ClasseErro registrarFalha(int ret) {
+        ClasseErro classe = classificar(ret);
+        errosPorClasse[classe.ordinal()]++;
+        if (inicioFalhasNanos == 0) {
+            inicioFalhasNanos = System.nanoTime();
+        }
+        if (classe == ClasseErro.TRANSITORIO) {
+            transitoriosSeguidos++;
+        }
+        return classe;
+    }
+
+    private void registrarSucesso() {
+        if (inicioFalhasNanos == 0) {
+            return;
+        }
+        synchronized (this) {
+            if (recuperando) {
+                long duracao = System.nanoTime() - inicioFalhasNanos;
+                ultimaQuedaNanos = duracao;
+                DURACAO_QUEDAS.registrar(duracao);
+                totalQuedasNanos += duracao;
+                if (duracao > maiorQuedaNanos) {
+                    maiorQuedaNanos = duracao;
+                }
+                log.info("Leitor recuperado depois de {} ms e {} tentativa(s)",
+                    TimeUnit.NANOSECONDS.toMillis(duracao), tentativas);
+            }
+            inicioFalhasNanos = 0;
+            transitoriosSeguidos = 0;
+            tentativas = 0;
+            reaberturasSemCaptura = 0;
+            esperasSemDispositivo = 0;
+            recuperando = false;
+        }
+    }
+
+    /**
+     * Uma tentativa de recuperação, depois da espera da tentativa anterior.
+     *
+     * @return true se o leitor está utilizável (por esta ou por outra thread)
+     */
+    private boolean recuperar(ClasseErro classe, int geracaoObservada) throws InterruptedException {
+        int anteriores;
+        synchronized (this) {
+            anteriores = tentativas;
+        }
+        if (anteriores > 0) {
+            Thread.sleep(calcularEspera(anteriores - 1));
+        }
+        boolean sdkReiniciado;
+        long handle;
+        synchronized (this) {
+            if (geracao != geracaoObservada) {
+                // Outra thread recuperou enquanto esta esperava
+                return true;
+            }
+            if (!recuperando) {
+                recuperando = true;
+                quedas++;
+                log.info("Leitor fora ({}), iniciando recuperação", classe);
+            }
+            tentativas++;
+            transitoriosSeguidos = 0;
+            sdkReiniciado = classe == ClasseErro.FALHA_SDK || !leitor.isInitialized()
+                || reaberturasSemCaptura >= LIMITE_REABERTURAS
+                || esperasSemDispositivo >= LIMITE_ESPERAS_SEM_DISPOSITIVO;
+            boolean recuperado;
+            if (sdkReiniciado) {
+                log.info("Reiniciando SDK (tentativa {})", tentativas);
+                recuperado = leitor.reiniciarSdk();
+                reaberturasSemCaptura = 0;
+                esperasSemDispositivo = 0;
+            } else if (driver.getDeviceCount() == 0) {
+                // Leitor desconectado: nada a reabrir, o banco fica como está
+                esperasSemDispositivo++;
+                recuperado = false;
+            } else {
+                recuperado = leitor.reabrirDispositivo();
+                reaberturasSemCaptura++;
+            }
+            if (!recuperado) {
+                tentativasFalhas++;
+                return false;
+            }
+            if (sdkReiniciado) {
+                recuperacoesSdk++;
+                REINICIOS_SDK.incrementar();
+            } else {
+                recuperacoesDispositivo++;
+                REABERTURAS.incrementar();
+            }
+            geracao++;
+            handle = leitor.getDeviceHandle();
+        }
+        for (RecuperacaoListener listener : listeners) {
+            listener.onDispositivoRecuperado(handle, sdkReiniciado);
+        }
+        return true;
+    }
+
+    /**
+     * Espera antes da tentativa {@code tentativa + 1}: metade fixa e metade
+     * aleatória de {@code base * 2^tentativa}, limitada a {@link #ESPERA_MAXIMA_MS}.
+     */
+    static long calcularEspera(int tentativa) {
+        long teto = ESPERA_BASE_MS << Math.min(tentativa, 16);
+        teto = Math.min(teto, ESPERA_MAXIMA_MS);
+        return teto / 2 + ThreadLocalRandom.current().nextLong(teto / 2 + 1);
+    }
+
+    /**
+     * true entre a primeira recuperação e a próxima operação que deu certo.
+     */
+    public synchronized boolean isEmQueda() {
+        return recuperando;
+    }
+
+    /**
+     * Quedas (sequências de falhas que precisaram de recuperação).
+     */
+    public long getQuedas() {
+        return quedas;
+    }
+
+    /**
+     * Recuperações só com a reabertura do dispositivo.
+     */
+    public long getRecuperacoesDispositivo() {
+        return recuperacoesDispositivo;
+    }
+
+    /**
+     * Recuperações que precisaram reiniciar o SDK.
+     */
+    public long getRecuperacoesSdk() {
+        return recuperacoesSdk;
+    }
+
+    public long getTentativasFalhas() {
+        return tentativasFalhas;
+    }
+
+    public synchronized long getErros(ClasseErro classe) {
+        return errosPorClasse[classe.ordinal()];
+    }
+
+    public double getUltimaQuedaMs() {
+        return ultimaQuedaNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaiorQuedaMs() {
+        return maiorQuedaNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getTotalQuedasMs() {
+        return totalQuedasNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d quedas (%d reaberturas, %d reinícios do SDK, %d tentativas falhas), "
+                + "última %.0f ms, maior %.0f ms, total %.0f ms",
+            quedas, recuperacoesDispositivo, recuperacoesSdk, tentativasFalhas,
+            getUltimaQuedaMs(), getMaiorQuedaMs(), getTotalQuedasMs());
+    }
+}
@@ -0,0 +1,321 @@
+package com.sistema.ponto.biometria.captura;
+
+import com.sistema.ponto.biometria.processamento.EstatisticasQuadro;
+import com.sistema.ponto.log.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decide quando fazer a próxima captura a partir de uma máquina de estados do dedo.
+ * <ul>
+ *   <li>OCIOSO: sem dedo; o intervalo entre capturas cresce exponencialmente até o máximo.</li>
+ *   <li>DEDO_CHEGANDO: há sinal de dedo, mas ainda não confirmado; captura sem pausa
+ *       até o prazo de chegada, depois volta a OCIOSO.</li>
+ *   <li>DEDO_PRESENTE: dedo confirmado; captura sem pausa (ou no intervalo configurado).</li>
+ *   <li>DEDO_RETIRADO: o dedo saiu; volta a ociosidade com o intervalo mínimo.</li>
+ * </ul>
+ * A histerese usa dois limiares de pixels escuros (entrada e saída) e um número
+ * de quadros consecutivos para confirmar cada transição, evitando que contatos
+ * parciais fiquem alternando de estado. Um sinal fraco que não se confirma no
+ * prazo (digital latente ou resíduo no vidro) é tratado como sensor vazio até
+ * sumir ou ficar forte, para não capturar sem pausa até alguém limpar o vidro.
+ * <p>
+ * Também mede, por batida, o tempo até o primeiro quadro bom: do último quadro
+ * sem dedo (pior caso da chegada do dedo) até o primeiro quadro com qualidade
+ * mínima. Usado por uma única thread de captura; só o modo rajada
+ * ({@link #setRajada(boolean)}) pode ser trocado de outra thread.
+ */
+public class AgendadorCaptura {
+
+    private static final Log log = Log.para(AgendadorCaptura.class);
+
+    public enum Estado {
+        OCIOSO, DEDO_CHEGANDO, DEDO_PRESENTE, DEDO_RETIRADO
+    }
+
+    public interface EstadoListener {
+        void onEstadoAlterado(Estado anterior, Estado novo);
+    }
+
+    // Configuração
+    private long intervaloOciosoMinimoMs = 25;
+    private long intervaloOciosoMaximoMs = 200;
+    private double fatorBackoff = 2.0;
+    private long intervaloPresenteMs = 0;
+    private int limiarEntrada = EstatisticasQuadro.MINIMO_PIXELS_ESCUROS * 3;
+    private int limiarSaida = EstatisticasQuadro.MINIMO_PIXELS_ESCUROS;
+    private int quadrosParaConfirmar = 2;
+    private int quadrosParaRetirar = 2;
+    private int qualidadeBoa = 50;
+    private long prazoChegadaMs = 1000;
+    private volatile boolean rajada;
+
+    // Estado
+    private volatile Estado estado = Estado.OCIOSO;
+    private EstadoListener estadoListener;
+    private long intervaloOciosoAtualMs = intervaloOciosoMinimoMs;
+    private int confirmacoes;
+    private int ausencias;
+    private long inicioChegadaNanos;
+    // Sinal fraco que esgotou o prazo de chegada; só um sinal forte inicia outra batida
+    private boolean residuo;
+    private long ultimoQuadroSemDedoNanos = System.nanoTime();
+    private long inicioBatidaNanos;
+    private boolean quadroBomNaBatida;
+
+    // Métricas (escritas só pela thread de captura, lidas por qualquer thread)
+    private volatile long batidas;
+    private volatile long batidasComQuadroBom;
+    private volatile long somaTempoQuadroBomMs;
+    private volatile long maiorTempoQuadroBomMs;
+    private volatile long ultimoTempoQuadroBomMs = -1;
+
+    /**
+     * Registra o resultado de uma captura bem-sucedida e retorna quantos
+     * milissegundos esperar antes da próxima.
+     */
+    public long registrarQuadro(int pixelsEscuros, int qualidade, long instanteNanos) {
+        boolean sinal = pixelsEscuros > limiarSaida;
+        boolean forte = pixelsEscuros >= limiarEntrada;
+
+        switch (estado) {
+            case OCIOSO:
+            case DEDO_RETIRADO:
+                if (!sinal) {
+                    residuo = false;
+                }
+                if (sinal && (forte || !residuo)) {
+                    residuo = false;
+                    iniciarBatida();
+                    inicioChegadaNanos = instanteNanos;
+                    alterarEstado(Estado.DEDO_CHEGANDO);
+                    avaliarChegada(forte, sinal, instanteNanos);
+                } else {
+                    ultimoQuadroSemDedoNanos = instanteNanos;
+                    if (estado == Estado.DEDO_RETIRADO) {
+                        intervaloOciosoAtualMs = intervaloOciosoMinimoMs;
+                        alterarEstado(Estado.OCIOSO);
+                        return intervaloOciosoAtualMs;
+                    }
+                    // Em rajada o dedo tem de ser visto logo que chega
+                    return rajada ? intervaloOciosoMinimoMs : proximoIntervaloOcioso();
+                }
+                break;
+            case DEDO_CHEGANDO:
+                avaliarChegada(forte, sinal, instanteNanos);
+                break;
+            case DEDO_PRESENTE:
+                if (sinal) {
+                    ausencias = 0;
+                } else if (++ausencias >= quadrosParaRetirar) {
+                    alterarEstado(Estado.DEDO_RETIRADO);
+                }
+                break;
+            default:
+                break;
+        }
+
+        if (estado == Estado.OCIOSO || estado == Estado.DEDO_RETIRADO) {
+            ultimoQuadroSemDedoNanos = instanteNanos;
+            return intervaloOciosoAtualMs;
+        }
+
+        if (sinal && qualidade >= qualidadeBoa && !quadroBomNaBatida) {
+            registrarPrimeiroQuadroBom(instanteNanos);
+        }
+        return estado == Estado.DEDO_PRESENTE && !rajada ? intervaloPresenteMs : 0;
+    }
+
+    /**
+     * Registra uma captura que falhou no SDK e retorna a espera até a próxima.
+     */
+    public long registrarFalha() {
+        if (estado == Estado.OCIOSO) {
+            return proximoIntervaloOcioso();
+        }
+        return intervaloOciosoMinimoMs;
+    }
+
+    /**
+     * Dorme o tempo retornado por {@link #registrarQuadro}; com espera zero não cede a CPU.
+     */
+    public static void aguardar(long esperaMs) throws InterruptedException {
+        if (esperaMs > 0) {
+            Thread.sleep(esperaMs);
+        }
+    }
+
+    public void reiniciar() {
+        estado = Estado.OCIOSO;
+        intervaloOciosoAtualMs = intervaloOciosoMinimoMs;
+        confirmacoes = 0;
+        ausencias = 0;
+        residuo = false;
+        ultimoQuadroSemDedoNanos = System.nanoTime();
+    }
+
+    private void avaliarChegada(boolean forte, boolean sinal, long instanteNanos) {
+        if (forte) {
+            ausencias = 0;
+            if (++confirmacoes >= quadrosParaConfirmar) {
+                alterarEstado(Estado.DEDO_PRESENTE);
+            }
+        } else if (!sinal) {
+            confirmacoes = 0;
+            if (++ausencias >= quadrosParaRetirar) {
+                // Alarme falso ou toque rápido demais
+                intervaloOciosoAtualMs = intervaloOciosoMinimoMs;
+                alterarEstado(Estado.OCIOSO);
+            }
+        } else if (instanteNanos - inicioChegadaNanos >= TimeUnit.MILLISECONDS.toNanos(prazoChegadaMs)) {
+            // Contato parcial que não confirma nem some
+            log.depuracao("Sinal fraco por mais de {} ms; tratado como resíduo no sensor", prazoChegadaMs);
+            residuo = true;
+            intervaloOciosoAtualMs = intervaloOciosoMinimoMs;
+            alterarEstado(Estado.OCIOSO);
+        }
+    }
+
+    private void iniciarBatida() {
+        batidas++;
+        intervaloOciosoAtualMs = intervaloOciosoMinimoMs;
+        confirmacoes = 0;
+        ausencias = 0;
+        quadroBomNaBatida = false;
+        inicioBatidaNanos = ultimoQuadroSemDedoNanos;
+    }
+
+    private void registrarPrimeiroQuadroBom(long instanteNanos) {
+        quadroBomNaBatida = true;
+        long tempoMs = TimeUnit.NANOSECONDS.toMillis(instanteNanos - inicioBatidaNanos);
+        ultimoTempoQuadroBomMs = tempoMs;
+        batidasComQuadroBom++;
+        somaTempoQuadroBomMs += tempoMs;
+        if (tempoMs > maiorTempoQuadroBomMs) {
+            maiorTempoQuadroBomMs = tempoMs;
+        }
+        log.depuracao("Primeiro quadro bom em {} ms", tempoMs);
+    }
+
+    private long proximoIntervaloOcioso() {
+        long atual = intervaloOciosoAtualMs;
+        intervaloOciosoAtualMs = Math.min(intervaloOciosoMaximoMs,
+            Math.max(intervaloOciosoMinimoMs, (long) Math.ceil(atual * fatorBackoff)));
+        return atual;
+    }
+
+    private void alterarEstado(Estado novo) {
+        Estado anterior = estado;
+        if (anterior == novo) {
+            return;
+        }
+        estado = novo;
+        if (estadoListener != null) {
+            estadoListener.onEstadoAlterado(anterior, novo);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Configuração
+    // ---------------------------------------------------------------------
+
+    public void setEstadoListener(EstadoListener estadoListener) {
+        this.estadoListener = estadoListener;
+    }
+
+    /**
+     * Intervalos de captura sem dedo: começa no mínimo e é multiplicado pelo
+     * fator a cada quadro vazio, até o máximo.
+     */
+    public void setIntervalosOciosos(long minimoMs, long maximoMs, double fatorBackoff) {
+        this.intervaloOciosoMinimoMs = minimoMs;
+        this.intervaloOciosoMaximoMs = Math.max(minimoMs, maximoMs);
+        this.fatorBackoff = Math.max(1.0, fatorBackoff);
+        this.intervaloOciosoAtualMs = minimoMs;
+    }
+
+    /**
+     * Intervalo entre capturas com o dedo confirmado (0 = sem pausa).
+     */
+    public void setIntervaloPresenteMs(long intervaloPresenteMs) {
+        this.intervaloPresenteMs = intervaloPresenteMs;
+    }
+
+    /**
+     * Modo rajada ({@link CapturaRajada}): com o dedo no sensor captura sem
+     * pausa mesmo com {@link #setIntervaloPresenteMs} configurado, e sem dedo
+     * não aumenta o intervalo ocioso. Pode ser chamado de qualquer thread.
+     */
+    public void setRajada(boolean rajada) {
+        this.rajada = rajada;
+    }
+
+    public boolean isRajada() {
+        return rajada;
+    }
+
+    /**
+     * Limiares de pixels escuros: acima de {@code saida} há sinal de dedo; a partir
+     * de {@code entrada} o contato conta para confirmar a presença.
+     */
+    public void setLimiares(int entrada, int saida) {
+        this.limiarEntrada = Math.max(entrada, saida);
+        this.limiarSaida = saida;
+    }
+
+    public void setQuadrosHisterese(int paraConfirmar, int paraRetirar) {
+        this.quadrosParaConfirmar = Math.max(1, paraConfirmar);
+        this.quadrosParaRetirar = Math.max(1, paraRetirar);
+    }
+
+    /**
+     * Tempo máximo em DEDO_CHEGANDO sem confirmar a presença; depois disso o
+     * sinal fraco é tratado como resíduo no sensor.
+     */
+    public void setPrazoChegadaMs(long prazoChegadaMs) {
+        this.prazoChegadaMs = Math.max(0, prazoChegadaMs);
+    }
+
+    public void setQualidadeBoa(int qualidadeBoa) {
+        this.qualidadeBoa = qualidadeBoa;
+    }
+
+    // ---------------------------------------------------------------------
+    // Estado e métricas
+    // ---------------------------------------------------------------------
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    public long getIntervaloOciosoMinimoMs() {
+        return intervaloOciosoMinimoMs;
+    }
+
+    public boolean isDedoPresente() {
+        return estado == Estado.DEDO_PRESENTE;
+    }
+
+    public long getBatidas() {
+        return batidas;
+    }
+
+    public long getBatidasComQuadroBom() {
+        return batidasComQuadroBom;
+    }
+
+    /**
+     * Tempo até o primeiro quadro bom na última batida que teve um, ou -1.
+     */
+    public long getUltimoTempoQuadroBomMs() {
+        return ultimoTempoQuadroBomMs;
+    }
+
+    public long getMaiorTempoQuadroBomMs() {
+        return maiorTempoQuadroBomMs;
+    }
+
+    public double getTempoMedioQuadroBomMs() {
+        return batidasComQuadroBom == 0 ? 0 : somaTempoQuadroBomMs / (double) batidasComQuadroBom;
+    }
+}
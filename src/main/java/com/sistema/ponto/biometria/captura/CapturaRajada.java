@@ -0,0 +1,431 @@
+package com.sistema.ponto.biometria.captura;
+
+import com.sistema.ponto.log.Log;
+import com.sistema.ponto.metricas.Contador;
+import com.sistema.ponto.metricas.Histograma;
+import com.sistema.ponto.metricas.RegistroMetricas;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captura em rajada: em vez de usar o quadro que estiver na tela no clique,
+ * avalia cada quadro com dedo que chega da publicação ({@link #oferecer(Quadro)})
+ * e guarda os k melhores em buffers alocados uma vez só. A rajada termina
+ * assim que um quadro atinge a qualidade alvo, ou no fim do prazo com o
+ * melhor quadro visto até ali.
+ * <p>
+ * Os quadros guardados são todos da mesma colocação do dedo
+ * ({@link Quadro#getColocacaoNanos()}): se o dedo é retirado e colocado de
+ * novo durante a rajada, ela recomeça com a colocação nova, dentro do mesmo prazo.
+ * <p>
+ * Uma rajada por vez. Os pixels do {@link Resultado} ficam nos buffers da
+ * rajada e valem até a próxima começar; copie-os para guardar.
+ */
+public class CapturaRajada {
+
+    private static final Log log = Log.para(CapturaRajada.class);
+
+    public enum Termino {
+        /** Um quadro atingiu a qualidade alvo. */
+        ALVO,
+        /** O prazo acabou; o resultado é o melhor quadro visto. */
+        PRAZO,
+        /** O prazo acabou sem nenhum quadro com dedo. */
+        SEM_DEDO,
+        CANCELADA
+    }
+
+    public static final int QUADROS_GUARDADOS_PADRAO = 3;
+    public static final int QUALIDADE_ALVO_PADRAO = 50;
+    public static final long PRAZO_PADRAO_MS = 1500;
+
+    private static final Histograma QUADROS_POR_BATIDA = RegistroMetricas.getInstance().histograma(
+        "ponto_rajada_quadros", "Quadros com dedo avaliados por rajada", 1);
+    private static final Histograma TEMPO_ACEITE = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_rajada_aceite_segundos", "Da chegada do dedo ao quadro aceito na rajada");
+    private static final Histograma QUALIDADE_ACEITA = RegistroMetricas.getInstance().histograma(
+        "ponto_rajada_qualidade", "Qualidade do melhor quadro de cada rajada", 1);
+    private static final Contador POR_ALVO = RegistroMetricas.getInstance().contador(
+        "ponto_rajada_alvo_total", "Rajadas encerradas ao atingir a qualidade alvo");
+    private static final Contador POR_PRAZO = RegistroMetricas.getInstance().contador(
+        "ponto_rajada_prazo_total", "Rajadas encerradas pelo prazo (melhor quadro visto)");
+    private static final Contador SEM_DEDO = RegistroMetricas.getInstance().contador(
+        "ponto_rajada_sem_dedo_total", "Rajadas sem nenhum quadro com dedo no prazo");
+    private static final Contador RECOMECOS = RegistroMetricas.getInstance().contador(
+        "ponto_rajada_recomecos_total", "Rajadas recomeçadas porque o dedo foi recolocado");
+
+    /**
+     * Resultado de uma rajada. Os quadros guardados vêm do melhor para o pior.
+     */
+    public final class Resultado {
+        private final Termino termino;
+        private final int[] ordem;
+        private final int quadrosAvaliados;
+        private final long tempoAceiteNanos;
+        private final long duracaoNanos;
+        private final long colocacaoNanos;
+        private volatile boolean suspeita;
+
+        private Resultado(Termino termino, int[] ordem, int quadrosAvaliados,
+                          long tempoAceiteNanos, long duracaoNanos, long colocacaoNanos) {
+            this.termino = termino;
+            this.ordem = ordem;
+            this.quadrosAvaliados = quadrosAvaliados;
+            this.tempoAceiteNanos = tempoAceiteNanos;
+            this.duracaoNanos = duracaoNanos;
+            this.colocacaoNanos = colocacaoNanos;
+        }
+
+        public Termino getTermino() {
+            return termino;
+        }
+
+        /**
+         * Quadros guardados (no máximo k); 0 se nenhum quadro tinha dedo.
+         */
+        public int getQuadrosGuardados() {
+            return ordem.length;
+        }
+
+        /**
+         * Pixels do i-ésimo melhor quadro (0 = melhor), válidos até a próxima rajada.
+         */
+        public byte[] getPixels(int i) {
+            return slots[ordem[i]];
+        }
+
+        public byte[] copiarPixels(int i) {
+            return slots[ordem[i]].clone();
+        }
+
+        public int getQualidade(int i) {
+            return qualidades[ordem[i]];
+        }
+
+        public long getSequencia(int i) {
+            return sequencias[ordem[i]];
+        }
+
+        public int getMelhorQualidade() {
+            return ordem.length == 0 ? 0 : qualidades[ordem[0]];
+        }
+
+        /**
+         * Quadros com dedo avaliados até o término.
+         */
+        public int getQuadrosAvaliados() {
+            return quadrosAvaliados;
+        }
+
+        /**
+         * Da chegada do dedo ao quadro aceito (ou ao fim do prazo); 0 sem dedo.
+         */
+        public long getTempoAceiteNanos() {
+            return tempoAceiteNanos;
+        }
+
+        /**
+         * Do início da rajada ao término.
+         */
+        public long getDuracaoNanos() {
+            return duracaoNanos;
+        }
+
+        /**
+         * Colocação do dedo ({@link Quadro#getColocacaoNanos()}) de todos os
+         * quadros guardados; 0 sem dedo.
+         */
+        public long getColocacaoNanos() {
+            return colocacaoNanos;
+        }
+
+        /**
+         * A vivacidade considerou a colocação destes quadros um dedo artificial.
+         */
+        public boolean isSuspeita() {
+            return suspeita;
+        }
+
+        public void marcarSuspeita() {
+            suspeita = true;
+        }
+
+        public int getLargura() {
+            return largura;
+        }
+
+        public int getAltura() {
+            return altura;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: qualidade %d, %d quadros avaliados, aceite em %.0f ms (rajada de %.0f ms)",
+                termino, getMelhorQualidade(), quadrosAvaliados, tempoAceiteNanos / 1e6, duracaoNanos / 1e6);
+        }
+    }
+
+    private final int largura;
+    private final int altura;
+    private final byte[][] slots;
+    private final int[] qualidades;
+    private final long[] sequencias;
+
+    private int qualidadeAlvo = QUALIDADE_ALVO_PADRAO;
+    private long prazoMs = PRAZO_PADRAO_MS;
+
+    // Rajada atual (protegido por this). Fica reservada até o resultado ser
+    // entregue, para outra rajada não reaproveitar os buffers antes disso
+    private boolean reservada;
+    private Termino termino;
+    private int alvo;
+    private long inicioNanos;
+    private long limiteNanos;
+    private long primeiroDedoNanos;
+    private long colocacaoNanos;
+    private long aceiteNanos;
+    private int guardados;
+    private int avaliados;
+
+    private volatile long rajadas;
+
+    public CapturaRajada(int largura, int altura) {
+        this(largura, altura, QUADROS_GUARDADOS_PADRAO);
+    }
+
+    /**
+     * @param quadrosGuardados quantos melhores quadros guardar (k)
+     */
+    public CapturaRajada(int largura, int altura, int quadrosGuardados) {
+        if (quadrosGuardados < 1) {
+            throw new IllegalArgumentException("Quantidade de quadros inválida: " + quadrosGuardados);
+        }
+        this.largura = largura;
+        this.altura = altura;
+        this.slots = new byte[quadrosGuardados][largura * altura];
+        this.qualidades = new int[quadrosGuardados];
+        this.sequencias = new long[quadrosGuardados];
+    }
+
+    /**
+     * Qualidade (0-100) que encerra a rajada na hora.
+     */
+    public synchronized void setQualidadeAlvo(int qualidadeAlvo) {
+        this.qualidadeAlvo = qualidadeAlvo;
+    }
+
+    public synchronized int getQualidadeAlvo() {
+        return qualidadeAlvo;
+    }
+
+    /**
+     * Tempo máximo de uma rajada, contado do início (o dedo pode chegar depois).
+     */
+    public synchronized void setPrazoMs(long prazoMs) {
+        this.prazoMs = prazoMs;
+    }
+
+    public synchronized long getPrazoMs() {
+        return prazoMs;
+    }
+
+    public boolean isCompativel(int largura, int altura) {
+        return this.largura == largura && this.altura == altura;
+    }
+
+    /**
+     * Faz uma rajada com o alvo e o prazo configurados, bloqueando até o término.
+     *
+     * @return null se outra rajada já está em andamento
+     */
+    public Resultado capturar() throws InterruptedException {
+        int alvoAtual;
+        long prazoAtual;
+        synchronized (this) {
+            alvoAtual = qualidadeAlvo;
+            prazoAtual = prazoMs;
+        }
+        return capturar(alvoAtual, prazoAtual);
+    }
+
+    public Resultado capturar(int qualidadeAlvo, long prazoMs) throws InterruptedException {
+        if (!iniciar(qualidadeAlvo, prazoMs)) {
+            return null;
+        }
+        return aguardar();
+    }
+
+    /**
+     * Começa uma rajada; os quadros passam a ser avaliados a partir do próximo
+     * {@link #oferecer(Quadro)}.
+     *
+     * @return false se outra rajada já está em andamento
+     */
+    public synchronized boolean iniciar(int qualidadeAlvo, long prazoMs) {
+        if (reservada) {
+            return false;
+        }
+        reservada = true;
+        termino = null;
+        alvo = qualidadeAlvo;
+        inicioNanos = System.nanoTime();
+        limiteNanos = inicioNanos + TimeUnit.MILLISECONDS.toNanos(prazoMs);
+        primeiroDedoNanos = 0;
+        colocacaoNanos = 0;
+        aceiteNanos = 0;
+        guardados = 0;
+        avaliados = 0;
+        return true;
+    }
+
+    /**
+     * Espera o término da rajada iniciada com {@link #iniciar}.
+     */
+    public synchronized Resultado aguardar() throws InterruptedException {
+        try {
+            while (termino == null) {
+                long restante = limiteNanos - System.nanoTime();
+                if (restante <= 0) {
+                    concluir(guardados == 0 ? Termino.SEM_DEDO : Termino.PRAZO, System.nanoTime());
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, restante);
+            }
+        } catch (InterruptedException e) {
+            if (termino == null) {
+                concluir(Termino.CANCELADA, System.nanoTime());
+            }
+            reservada = false;
+            throw e;
+        }
+        Resultado resultado = montarResultado();
+        reservada = false;
+        return resultado;
+    }
+
+    /**
+     * Encerra a rajada em andamento; quem espera recebe o melhor quadro até aqui.
+     */
+    public synchronized void cancelar() {
+        if (isAtiva()) {
+            concluir(Termino.CANCELADA, System.nanoTime());
+        }
+    }
+
+    public synchronized boolean isAtiva() {
+        return reservada && termino == null;
+    }
+
+    /**
+     * Avalia um quadro da publicação. Só copia os pixels quando o quadro entra
+     * entre os k melhores; fora de uma rajada não faz nada.
+     */
+    public synchronized void oferecer(Quadro quadro) {
+        if (!isAtiva() || !quadro.temDedo()) {
+            return;
+        }
+        long instante = quadro.getInstanteNanos();
+        if (instante < inicioNanos) {
+            return; // Adquirido antes do início da rajada
+        }
+        if (quadro.getColocacaoNanos() != colocacaoNanos) {
+            if (primeiroDedoNanos != 0) {
+                // Dedo recolocado: os quadros guardados são de outra colocação
+                RECOMECOS.incrementar();
+                log.depuracao("Rajada recomeçada: dedo recolocado após {} quadros", avaliados);
+            }
+            colocacaoNanos = quadro.getColocacaoNanos();
+            primeiroDedoNanos = instante;
+            guardados = 0;
+            avaliados = 0;
+        }
+        avaliados++;
+        int qualidade = quadro.getQualidade();
+
+        int slot;
+        if (guardados < slots.length) {
+            slot = guardados++;
+        } else {
+            slot = 0;
+            for (int i = 1; i < guardados; i++) {
+                if (qualidades[i] < qualidades[slot]) {
+                    slot = i;
+                }
+            }
+            if (qualidade <= qualidades[slot]) {
+                return;
+            }
+        }
+        System.arraycopy(quadro.getPixels(), 0, slots[slot], 0, slots[slot].length);
+        qualidades[slot] = qualidade;
+        sequencias[slot] = quadro.getSequencia();
+
+        if (qualidade >= alvo) {
+            concluir(Termino.ALVO, instante);
+        }
+    }
+
+    private void concluir(Termino motivo, long instante) {
+        termino = motivo;
+        aceiteNanos = primeiroDedoNanos == 0 ? 0 : Math.max(0, instante - primeiroDedoNanos);
+        rajadas++;
+        switch (motivo) {
+            case ALVO:
+                POR_ALVO.incrementar();
+                break;
+            case PRAZO:
+                POR_PRAZO.incrementar();
+                break;
+            case SEM_DEDO:
+                SEM_DEDO.incrementar();
+                break;
+            default:
+                break;
+        }
+        if (guardados > 0) {
+            QUADROS_POR_BATIDA.registrar(avaliados);
+            TEMPO_ACEITE.registrar(aceiteNanos);
+            QUALIDADE_ACEITA.registrar(qualidades[melhor()]);
+        }
+        notifyAll();
+    }
+
+    private int melhor() {
+        int melhor = 0;
+        for (int i = 1; i < guardados; i++) {
+            if (qualidades[i] > qualidades[melhor]) {
+                melhor = i;
+            }
+        }
+        return melhor;
+    }
+
+    private Resultado montarResultado() {
+        int[] ordem = new int[guardados];
+        for (int i = 0; i < guardados; i++) {
+            ordem[i] = i;
+        }
+        // k é pequeno: inserção direta, da maior para a menor qualidade
+        for (int i = 1; i < ordem.length; i++) {
+            int atual = ordem[i];
+            int j = i - 1;
+            while (j >= 0 && qualidades[ordem[j]] < qualidades[atual]) {
+                ordem[j + 1] = ordem[j];
+                j--;
+            }
+            ordem[j + 1] = atual;
+        }
+        Resultado resultado = new Resultado(termino, ordem, avaliados, aceiteNanos, System.nanoTime() - inicioNanos,
+            guardados == 0 ? 0 : colocacaoNanos);
+        log.depuracao("Rajada: {}", resultado);
+        return resultado;
+    }
+
+    public long getRajadas() {
+        return rajadas;
+    }
+
+    public int getQuadrosGuardadosMaximo() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,481 @@
+package com.sistema.ponto.biometria.captura;
+
+import com.sistema.ponto.biometria.processamento.AnalisadorVivacidade;
+import com.sistema.ponto.log.Log;
+import com.sistema.ponto.metricas.Contador;
+import com.sistema.ponto.metricas.Histograma;
+import com.sistema.ponto.metricas.RegistroMetricas;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Análise de vivacidade (detecção de dedo artificial) numa thread própria, ao
+ * lado do pipeline de captura: a publicação só entrega os quadros com dedo
+ * ({@link #oferecer(Quadro)}, que nunca espera) e segue com a batida normal.
+ * <p>
+ * Cada colocação do dedo tem um prazo fixo, contado da chegada do primeiro
+ * quadro com dedo: até lá sai um {@link Veredito}, com o que deu para medir.
+ * A análise termina antes quando já viu {@link #QUADROS_VEREDITO} quadros ou
+ * quando o dedo sai. Os quadros analisados ficam a pelo menos
+ * {@link #INTERVALO_MINIMO_MS} um do outro, para a deformação ser vista ao
+ * longo do contato mesmo com o sensor em alta velocidade. Se o analisador atrasar, quadros intermediários são
+ * descartados (fila de um quadro, {@link FilaSpsc.Politica#DESCARTAR_MAIS_ANTIGO}).
+ * <p>
+ * Retém no máximo {@link #QUADROS_RETIDOS} quadros do pool ao mesmo tempo.
+ */
+public class EstagioVivacidade {
+
+    private static final Log log = Log.para(EstagioVivacidade.class);
+
+    /**
+     * Recebe o resultado de cada colocação do dedo, na thread do estágio.
+     */
+    public interface VereditoListener {
+        void onVeredito(Veredito veredito);
+    }
+
+    public static final long PRAZO_PADRAO_MS = 300;
+    public static final float LIMIAR_PADRAO = 0.45f;
+    public static final int QUADROS_VEREDITO = 6;
+    public static final long INTERVALO_MINIMO_MS = 25;
+    /** Um na fila e um em análise. */
+    public static final int QUADROS_RETIDOS = 2;
+    /** Com menos quadros que isso não há deformação para medir. */
+    private static final int QUADROS_MINIMOS = 2;
+
+    private static final long ESPERA_FILA_MS = 100;
+    // Durante a análise a espera é curta para notar logo a saída do dedo
+    private static final long ESPERA_SAIDA_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final Histograma TEMPO_TEXTURA = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_vivacidade_textura_segundos", "Tempo da medida de textura por quadro");
+    private static final Histograma TEMPO_CONTRASTE = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_vivacidade_contraste_segundos", "Tempo da medida de contraste crista-vale por quadro");
+    private static final Histograma TEMPO_DEFORMACAO = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_vivacidade_deformacao_segundos", "Tempo dos blocos e da medida de deformação por quadro");
+    private static final Histograma TEMPO_VEREDITO = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_vivacidade_veredito_segundos", "Da chegada do dedo ao veredito de vivacidade");
+    private static final Contador VIVAS = RegistroMetricas.getInstance().contador(
+        "ponto_vivacidade_vivas_total", "Colocações do dedo aceitas como dedo vivo");
+    private static final Contador SUSPEITAS = RegistroMetricas.getInstance().contador(
+        "ponto_vivacidade_suspeitas_total", "Colocações do dedo com suspeita de dedo artificial");
+    private static final Contador INCONCLUSIVAS = RegistroMetricas.getInstance().contador(
+        "ponto_vivacidade_inconclusivas_total", "Colocações do dedo sem quadros suficientes no prazo");
+
+    /**
+     * Resultado de uma colocação do dedo. Pontuações de 0 (réplica) a 1 (vivo).
+     */
+    public static class Veredito {
+        private final long inicioNanos;
+        private final int quadros;
+        private final boolean inconclusivo;
+        private final boolean suspeita;
+        private final float pontuacao;
+        private final float textura;
+        private final float contraste;
+        private final float deformacao;
+        private final long duracaoNanos;
+
+        Veredito(long inicioNanos, int quadros, boolean inconclusivo, boolean suspeita, float pontuacao,
+                 float textura, float contraste, float deformacao, long duracaoNanos) {
+            this.inicioNanos = inicioNanos;
+            this.quadros = quadros;
+            this.inconclusivo = inconclusivo;
+            this.suspeita = suspeita;
+            this.pontuacao = pontuacao;
+            this.textura = textura;
+            this.contraste = contraste;
+            this.deformacao = deformacao;
+            this.duracaoNanos = duracaoNanos;
+        }
+
+        /**
+         * Colocação do dedo ({@link Quadro#getColocacaoNanos()}): instante do primeiro quadro dela.
+         */
+        public long getInicioNanos() {
+            return inicioNanos;
+        }
+
+        public int getQuadros() {
+            return quadros;
+        }
+
+        /**
+         * Poucos quadros no prazo (dedo rápido demais): nem vivo nem suspeito.
+         */
+        public boolean isInconclusivo() {
+            return inconclusivo;
+        }
+
+        public boolean isSuspeita() {
+            return suspeita;
+        }
+
+        public float getPontuacao() {
+            return pontuacao;
+        }
+
+        public float getTextura() {
+            return textura;
+        }
+
+        public float getContraste() {
+            return contraste;
+        }
+
+        public float getDeformacao() {
+            return deformacao;
+        }
+
+        /**
+         * Da chegada do dedo ao veredito.
+         */
+        public long getDuracaoNanos() {
+            return duracaoNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s em %.1f ms, %d quadros, pontuação %.2f (textura %.2f, contraste %.2f, deformação %.2f)",
+                inconclusivo ? "inconclusivo" : suspeita ? "suspeito" : "vivo",
+                duracaoNanos / 1e6, quadros, pontuacao, textura, contraste, deformacao);
+        }
+    }
+
+    /**
+     * Uma colocação do dedo, vista pela publicação. O fim é a sequência do
+     * primeiro quadro sem dedo depois dela.
+     */
+    private static final class Presenca {
+        final long inicioSequencia;
+        final long inicioNanos;
+        volatile long fimSequencia = Long.MAX_VALUE;
+
+        Presenca(long inicioSequencia, long inicioNanos) {
+            this.inicioSequencia = inicioSequencia;
+            this.inicioNanos = inicioNanos;
+        }
+    }
+
+    private final int largura;
+    private final int altura;
+    private final FilaSpsc<Quadro> fila = new FilaSpsc<>(QUADROS_RETIDOS - 1,
+        FilaSpsc.Politica.DESCARTAR_MAIS_ANTIGO, Quadro::devolver);
+    private final MetricasEstagio metricas = new MetricasEstagio("vivacidade");
+    private final AnalisadorVivacidade analisador = new AnalisadorVivacidade();
+
+    private volatile long prazoNanos = TimeUnit.MILLISECONDS.toNanos(PRAZO_PADRAO_MS);
+    private volatile float limiar = LIMIAR_PADRAO;
+    private volatile VereditoListener listener;
+    private volatile boolean rodando;
+    private String sufixoThread = "";
+    private Thread thread;
+
+    // Escritos pela publicação
+    private volatile Presenca presenca;
+    private boolean dedoAnterior;
+
+    // Só da thread do estágio
+    private Presenca analisada;
+    private boolean concluida = true;
+    private int quadrosRecebidos;
+    private long ultimoInstanteNanos;
+
+    private volatile long vivas;
+    private volatile long suspeitas;
+    private volatile long inconclusivas;
+    private volatile long prazosEsgotados;
+
+    public EstagioVivacidade(int largura, int altura) {
+        this.largura = largura;
+        this.altura = altura;
+    }
+
+    public void setVereditoListener(VereditoListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Tempo máximo entre a chegada do dedo e o veredito.
+     */
+    public void setPrazoMs(long prazoMs) {
+        this.prazoNanos = TimeUnit.MILLISECONDS.toNanos(prazoMs);
+    }
+
+    public long getPrazoMs() {
+        return TimeUnit.NANOSECONDS.toMillis(prazoNanos);
+    }
+
+    /**
+     * Pontuação abaixo da qual a digital é suspeita (0 a 1).
+     */
+    public void setLimiar(float limiar) {
+        this.limiar = limiar;
+    }
+
+    public float getLimiar() {
+        return limiar;
+    }
+
+    /**
+     * Acrescenta um nome à thread do estágio (um estágio por leitor). Vale a
+     * partir do próximo {@link #iniciar()}.
+     */
+    public void setNome(String nome) {
+        this.sufixoThread = nome == null || nome.isEmpty() ? "" : "-" + nome;
+    }
+
+    public synchronized void iniciar() {
+        if (rodando) {
+            return;
+        }
+        aguardarTermino(ESPERA_FILA_MS * 2);
+        presenca = null;
+        dedoAnterior = false;
+        analisada = null;
+        concluida = true;
+        rodando = true;
+        thread = new Thread(this::executar, "captura-vivacidade" + sufixoThread);
+        // A análise não disputa o processador com a captura
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void parar() {
+        rodando = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Espera a thread terminar e devolve ao pool o que ficou na fila. Chamar
+     * depois que a publicação parou de oferecer quadros.
+     */
+    public synchronized boolean aguardarTermino(long tempoMs) {
+        if (thread != null) {
+            try {
+                thread.join(Math.max(1, tempoMs));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (thread.isAlive()) {
+                return false;
+            }
+        }
+        // Com a thread parada, quem chama passa a ser o consumidor da fila
+        fila.esvaziar();
+        return true;
+    }
+
+    /**
+     * Chamado pela publicação com cada quadro, com ou sem dedo; retém os quadros
+     * com dedo e nunca espera.
+     */
+    public void oferecer(Quadro quadro) {
+        boolean temDedo = quadro.temDedo();
+        if (temDedo != dedoAnterior) {
+            dedoAnterior = temDedo;
+            if (temDedo) {
+                // A colocação vem do pipeline: o primeiro quadro dela pode ter sido descartado na fila
+                presenca = new Presenca(quadro.getSequencia(), quadro.getColocacaoNanos());
+            } else if (presenca != null) {
+                presenca.fimSequencia = quadro.getSequencia();
+            }
+        }
+        if (temDedo && rodando) {
+            quadro.reter();
+            try {
+                fila.oferecer(quadro);
+            } catch (InterruptedException e) {
+                // Com descarte a fila não espera; só repassa a interrupção
+                Thread.currentThread().interrupt();
+                quadro.devolver();
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Thread do estágio
+    // ---------------------------------------------------------------------
+
+    private void executar() {
+        log.depuracao("Estágio de vivacidade iniciado");
+        try {
+            while (rodando) {
+                acompanharPresenca();
+                Quadro quadro = fila.retirar(esperaMaximaNanos(), TimeUnit.NANOSECONDS);
+                acompanharPresenca();
+                if (quadro != null) {
+                    try {
+                        analisar(quadro);
+                    } finally {
+                        quadro.devolver();
+                    }
+                }
+                if (!concluida && deveConcluir()) {
+                    concluir();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Parada solicitada
+        } catch (Exception e) {
+            log.erro("Erro no estágio de vivacidade: {}", e.getMessage(), e);
+            rodando = false;
+        }
+        log.depuracao("Estágio de vivacidade finalizado");
+    }
+
+    /**
+     * Começa a analisar uma nova colocação do dedo; a anterior, se ainda aberta,
+     * é concluída com o que já foi medido.
+     */
+    private void acompanharPresenca() {
+        Presenca atual = presenca;
+        if (atual != null && atual != analisada) {
+            if (!concluida) {
+                concluir();
+            }
+            analisada = atual;
+            concluida = false;
+            quadrosRecebidos = 0;
+            ultimoInstanteNanos = 0;
+            analisador.reiniciar();
+        }
+    }
+
+    private long esperaMaximaNanos() {
+        if (concluida) {
+            return TimeUnit.MILLISECONDS.toNanos(ESPERA_FILA_MS);
+        }
+        if (analisada.fimSequencia != Long.MAX_VALUE) {
+            return 0; // Dedo saiu: só o que já está na fila
+        }
+        long restante = analisada.inicioNanos + prazoNanos - System.nanoTime();
+        return Math.max(0, Math.min(restante, ESPERA_SAIDA_NANOS));
+    }
+
+    private boolean deveConcluir() {
+        return analisador.getQuadros() >= QUADROS_VEREDITO
+            || System.nanoTime() - analisada.inicioNanos >= prazoNanos
+            || (analisada.fimSequencia != Long.MAX_VALUE && fila.getProfundidade() == 0);
+    }
+
+    /**
+     * Mede o quadro olhando o relógio antes de cada etapa; quadros de uma
+     * colocação já concluída são ignorados.
+     */
+    private void analisar(Quadro quadro) {
+        if (concluida || quadro.getSequencia() < analisada.inicioSequencia
+                || quadro.getSequencia() >= analisada.fimSequencia) {
+            return;
+        }
+        quadrosRecebidos++;
+        if (ultimoInstanteNanos != 0
+                && quadro.getInstanteNanos() - ultimoInstanteNanos < TimeUnit.MILLISECONDS.toNanos(INTERVALO_MINIMO_MS)) {
+            return;
+        }
+        long limite = analisada.inicioNanos + prazoNanos;
+        long inicio = System.nanoTime();
+        if (inicio >= limite) {
+            return;
+        }
+        ultimoInstanteNanos = quadro.getInstanteNanos();
+        byte[] pixels = quadro.getPixels();
+
+        analisador.marcarBlocos(pixels, largura, altura);
+        analisador.medirDeformacao();
+        long fimDeformacao = System.nanoTime();
+        TEMPO_DEFORMACAO.registrar(fimDeformacao - inicio);
+        long fim = fimDeformacao;
+        if (fimDeformacao < limite) {
+            analisador.medirContraste(pixels);
+            long fimContraste = System.nanoTime();
+            TEMPO_CONTRASTE.registrar(fimContraste - fimDeformacao);
+            fim = fimContraste;
+            if (fimContraste < limite) {
+                analisador.medirTextura(pixels);
+                fim = System.nanoTime();
+                TEMPO_TEXTURA.registrar(fim - fimContraste);
+            }
+        }
+        metricas.registrar(inicio - quadro.getInstanteNanos(), fim - inicio);
+    }
+
+    private void concluir() {
+        concluida = true;
+        long agora = System.nanoTime();
+        long duracao = agora - analisada.inicioNanos;
+        if (duracao > prazoNanos) {
+            prazosEsgotados++;
+        }
+        TEMPO_VEREDITO.registrar(duracao);
+
+        int quadros = analisador.getQuadros();
+        boolean inconclusivo = quadros < QUADROS_MINIMOS;
+        float pontuacao = analisador.getPontuacao();
+        boolean suspeita = !inconclusivo && pontuacao < limiar;
+        if (inconclusivo) {
+            INCONCLUSIVAS.incrementar();
+            inconclusivas++;
+        } else if (suspeita) {
+            SUSPEITAS.incrementar();
+            suspeitas++;
+        } else {
+            VIVAS.incrementar();
+            vivas++;
+        }
+        Veredito veredito = new Veredito(analisada.inicioNanos, quadros, inconclusivo, suspeita, pontuacao,
+            analisador.pontuarTextura(), analisador.pontuarContraste(), analisador.pontuarDeformacao(), duracao);
+        log.depuracao("Vivacidade: {} ({} quadros recebidos)", veredito, quadrosRecebidos);
+
+        VereditoListener destino = listener;
+        if (destino != null) {
+            try {
+                destino.onVeredito(veredito);
+            } catch (RuntimeException e) {
+                log.erro("Erro no listener de vivacidade: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Métricas
+    // ---------------------------------------------------------------------
+
+    public MetricasEstagio getMetricas() {
+        return metricas;
+    }
+
+    public FilaSpsc<Quadro> getFila() {
+        return fila;
+    }
+
+    public long getVivas() {
+        return vivas;
+    }
+
+    public long getSuspeitas() {
+        return suspeitas;
+    }
+
+    public long getInconclusivas() {
+        return inconclusivas;
+    }
+
+    /**
+     * Vereditos que saíram depois do prazo (a thread do estágio não conseguiu rodar a tempo).
+     */
+    public long getPrazosEsgotados() {
+        return prazosEsgotados;
+    }
+
+    public String resumo() {
+        return String.format("%s, descartados %d; %d vivas, %d suspeitas, %d inconclusivas, prazo %d ms "
+                + "(veredito p50 %.1f ms, p99 %.1f ms, %d fora do prazo)",
+            metricas, fila.getDescartados(), vivas, suspeitas, inconclusivas, getPrazoMs(),
+            TEMPO_VEREDITO.getP50() * 1e3, TEMPO_VEREDITO.getP99() * 1e3, prazosEsgotados);
+    }
+}
@@ -0,0 +1,223 @@
+package com.sistema.ponto.biometria.captura;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Fila circular limitada, sem travas, para exatamente um produtor e um consumidor.
+ * <p>
+ * O produtor só escreve na cauda e o consumidor só avança a cabeça, então nenhuma
+ * operação normal usa lock. Quando a fila está cheia a política decide:
+ * <ul>
+ *   <li>{@link Politica#DESCARTAR_MAIS_ANTIGO}: o produtor retira o elemento mais
+ *   antigo (entregue ao descartador, ex.: {@code Quadro::devolver}) e nunca espera;</li>
+ *   <li>{@link Politica#BLOQUEAR}: o produtor espera o consumidor liberar espaço.</li>
+ * </ul>
+ * Como o descarte faz o produtor também consumir, a cabeça avança por CAS: quem
+ * vence o CAS é o dono do elemento. As posições não são limpas depois de lidas
+ * (o produtor pode já ter reescrito a posição), então a fila mantém referências
+ * aos últimos elementos; para quadros do pool isso não custa nada.
+ */
+public class FilaSpsc<T> {
+
+    public enum Politica {
+        DESCARTAR_MAIS_ANTIGO, BLOQUEAR
+    }
+
+    // Espera máxima entre verificações quando alguém está estacionado
+    private static final long ESPERA_MAXIMA_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Object[] posicoes;
+    private final int mascara;
+    private final Politica politica;
+    private final Consumer<T> descartador;
+
+    private final AtomicLong cabeca = new AtomicLong();
+    private final AtomicLong cauda = new AtomicLong();
+
+    private volatile Thread consumidorAguardando;
+    private volatile Thread produtorAguardando;
+
+    // Contadores (cada um tem um único escritor)
+    private volatile long inseridos;
+    private volatile long descartados;
+    private volatile long bloqueios;
+    private volatile int maiorProfundidade;
+
+    /**
+     * @param capacidade  arredondada para a próxima potência de 2
+     * @param descartador recebe os elementos descartados pela política (pode ser null)
+     */
+    public FilaSpsc(int capacidade, Politica politica, Consumer<T> descartador) {
+        if (capacidade < 1) {
+            throw new IllegalArgumentException("Capacidade inválida: " + capacidade);
+        }
+        int tamanho = Integer.highestOneBit(capacidade);
+        if (tamanho < capacidade) {
+            tamanho <<= 1;
+        }
+        this.posicoes = new Object[tamanho];
+        this.mascara = tamanho - 1;
+        this.politica = politica;
+        this.descartador = descartador;
+    }
+
+    /**
+     * Insere um elemento (somente a thread produtora).
+     * Com {@link Politica#BLOQUEAR} espera por espaço; com
+     * {@link Politica#DESCARTAR_MAIS_ANTIGO} retorna imediatamente.
+     */
+    public void oferecer(T elemento) throws InterruptedException {
+        long t = cauda.get();
+        while (t - cabeca.get() >= posicoes.length) {
+            if (politica == Politica.DESCARTAR_MAIS_ANTIGO) {
+                T antigo = retirarCabeca();
+                if (antigo != null) {
+                    descartados++;
+                    if (descartador != null) {
+                        descartador.accept(antigo);
+                    }
+                }
+            } else {
+                bloqueios++;
+                aguardarEspaco(t);
+            }
+        }
+
+        posicoes[(int) t & mascara] = elemento;
+        cauda.lazySet(t + 1);
+        inseridos++;
+
+        int profundidade = (int) (t + 1 - cabeca.get());
+        if (profundidade > maiorProfundidade) {
+            maiorProfundidade = profundidade;
+        }
+
+        Thread consumidor = consumidorAguardando;
+        if (consumidor != null) {
+            LockSupport.unpark(consumidor);
+        }
+    }
+
+    /**
+     * Retira o próximo elemento sem esperar, ou null se a fila estiver vazia.
+     */
+    public T retirar() {
+        T elemento = retirarCabeca();
+        if (elemento != null) {
+            Thread produtor = produtorAguardando;
+            if (produtor != null) {
+                LockSupport.unpark(produtor);
+            }
+        }
+        return elemento;
+    }
+
+    /**
+     * Retira o próximo elemento esperando até o tempo informado (somente a thread consumidora).
+     */
+    public T retirar(long tempo, TimeUnit unidade) throws InterruptedException {
+        T elemento = retirar();
+        if (elemento != null) {
+            return elemento;
+        }
+        long limite = System.nanoTime() + unidade.toNanos(tempo);
+        consumidorAguardando = Thread.currentThread();
+        try {
+            while (true) {
+                elemento = retirar();
+                if (elemento != null) {
+                    return elemento;
+                }
+                long restante = limite - System.nanoTime();
+                if (restante <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, Math.min(restante, ESPERA_MAXIMA_NANOS));
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            consumidorAguardando = null;
+        }
+    }
+
+    /**
+     * Esvazia a fila entregando os elementos ao descartador (use com os estágios parados).
+     */
+    public void esvaziar() {
+        T elemento;
+        while ((elemento = retirarCabeca()) != null) {
+            if (descartador != null) {
+                descartador.accept(elemento);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T retirarCabeca() {
+        while (true) {
+            long h = cabeca.get();
+            if (h >= cauda.get()) {
+                return null;
+            }
+            // Lê antes do CAS: depois dele o produtor pode reescrever a posição
+            T elemento = (T) posicoes[(int) h & mascara];
+            if (cabeca.compareAndSet(h, h + 1)) {
+                return elemento;
+            }
+        }
+    }
+
+    private void aguardarEspaco(long t) throws InterruptedException {
+        produtorAguardando = Thread.currentThread();
+        try {
+            while (t - cabeca.get() >= posicoes.length) {
+                LockSupport.parkNanos(this, ESPERA_MAXIMA_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            produtorAguardando = null;
+        }
+    }
+
+    public Politica getPolitica() {
+        return politica;
+    }
+
+    public int getCapacidade() {
+        return posicoes.length;
+    }
+
+    /**
+     * Elementos na fila neste momento (aproximado se lido durante operações).
+     */
+    public int getProfundidade() {
+        long h = cabeca.get();
+        return (int) Math.max(0, cauda.get() - h);
+    }
+
+    public int getMaiorProfundidade() {
+        return maiorProfundidade;
+    }
+
+    public long getInseridos() {
+        return inseridos;
+    }
+
+    public long getDescartados() {
+        return descartados;
+    }
+
+    /**
+     * Quantas vezes o produtor encontrou a fila cheia e teve que esperar.
+     */
+    public long getBloqueios() {
+        return bloqueios;
+    }
+}
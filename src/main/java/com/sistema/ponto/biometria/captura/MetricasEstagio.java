@@ -0,0 +1,72 @@
+package com.sistema.ponto.biometria.captura;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contadores de um estágio do pipeline de captura: quantos quadros processou,
+ * quanto tempo cada um esperou na fila de entrada e quanto tempo o estágio
+ * levou para processá-lo. Escrito só pela thread do estágio, lido por qualquer uma.
+ */
+public class MetricasEstagio {
+
+    private final String nome;
+
+    private volatile long processados;
+    private volatile long tempoEsperaTotalNanos;
+    private volatile long maiorTempoEsperaNanos;
+    private volatile long tempoProcessamentoTotalNanos;
+    private volatile long maiorTempoProcessamentoNanos;
+
+    public MetricasEstagio(String nome) {
+        this.nome = nome;
+    }
+
+    /**
+     * @param esperaNanos        tempo na fila antes do estágio (0 no primeiro estágio)
+     * @param processamentoNanos tempo gasto pelo estágio no quadro
+     */
+    void registrar(long esperaNanos, long processamentoNanos) {
+        processados++;
+        tempoEsperaTotalNanos += esperaNanos;
+        if (esperaNanos > maiorTempoEsperaNanos) {
+            maiorTempoEsperaNanos = esperaNanos;
+        }
+        tempoProcessamentoTotalNanos += processamentoNanos;
+        if (processamentoNanos > maiorTempoProcessamentoNanos) {
+            maiorTempoProcessamentoNanos = processamentoNanos;
+        }
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public long getProcessados() {
+        return processados;
+    }
+
+    public double getTempoMedioEsperaMs() {
+        long n = processados;
+        return n == 0 ? 0 : tempoEsperaTotalNanos / (double) n / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaiorTempoEsperaMs() {
+        return maiorTempoEsperaNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getTempoMedioProcessamentoMs() {
+        long n = processados;
+        return n == 0 ? 0 : tempoProcessamentoTotalNanos / (double) n / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaiorTempoProcessamentoMs() {
+        return maiorTempoProcessamentoNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d quadros, fila %.2f ms (máx %.2f), processamento %.2f ms (máx %.2f)",
+            nome, processados, getTempoMedioEsperaMs(), getMaiorTempoEsperaMs(),
+            getTempoMedioProcessamentoMs(), getMaiorTempoProcessamentoMs());
+    }
+}
@@ -0,0 +1,512 @@
+package com.sistema.ponto.biometria.captura;
+
+import com.sistema.ponto.biometria.processamento.AnalisadorBlocos;
+import com.sistema.ponto.biometria.processamento.AnalisadorQuadro;
+import com.sistema.ponto.biometria.processamento.EstatisticasQuadro;
+import com.sistema.ponto.log.Log;
+import com.sistema.ponto.metricas.Contador;
+import com.sistema.ponto.metricas.Histograma;
+import com.sistema.ponto.metricas.RegistroMetricas;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pipeline de captura em três estágios, cada um na sua thread:
+ * <ol>
+ *   <li>aquisição: só conversa com o dispositivo, escrevendo em quadros do pool;</li>
+ *   <li>análise: presença, qualidade e o {@link AgendadorCaptura};</li>
+ *   <li>publicação: entrega o quadro ao {@link Publicador} (listeners da interface).</li>
+ * </ol>
+ * Os estágios são ligados por {@link FilaSpsc} limitadas, cada uma com sua política
+ * de transbordo. Com {@link FilaSpsc.Politica#DESCARTAR_MAIS_ANTIGO} (padrão) um
+ * listener lento só faz quadros antigos serem descartados; o sensor não para.
+ * <p>
+ * O intervalo entre capturas vem do agendador, que roda no estágio de análise;
+ * quando ele pede capturas mais rápidas (dedo chegando) a thread de aquisição é
+ * acordada no meio da espera.
+ */
+public class PipelineCaptura {
+
+    private static final Log log = Log.para(PipelineCaptura.class);
+
+    /**
+     * Captura um quadro do dispositivo no buffer informado. Retorna 0 em caso de
+     * sucesso ou o código de erro do SDK. Chamado só pela thread de aquisição.
+     */
+    public interface FonteQuadros {
+        int adquirir(byte[] destino) throws InterruptedException;
+    }
+
+    /**
+     * Recebe cada quadro analisado, com ou sem dedo ({@link Quadro#temDedo()},
+     * o dedo confirmado pela histerese do {@link AgendadorCaptura}).
+     * O pipeline devolve o quadro ao pool quando o método retorna; para guardá-lo
+     * ou repassá-lo a outra thread, chame {@link Quadro#reter()}.
+     */
+    public interface Publicador {
+        void publicar(Quadro quadro);
+    }
+
+    /**
+     * Avisado, na thread do estágio, quando a aquisição ou a análise para por um
+     * erro inesperado e não por {@link #parar()}. O pipeline já foi parado.
+     */
+    public interface TerminoListener {
+        void onTerminoPorErro(Exception causa);
+    }
+
+    public static final int CAPACIDADE_PADRAO = 4;
+
+    private static final long ESPERA_FILA_MS = 100;
+    private static final long ESPERA_TERMINO_MS = 2000;
+
+    // Somadas de todos os pipelines (um por leitor)
+    private static final Contador QUADROS = RegistroMetricas.getInstance().contador(
+        "ponto_captura_quadros_total", "Quadros adquiridos do sensor");
+    private static final Contador FALHAS = RegistroMetricas.getInstance().contador(
+        "ponto_captura_falhas_total", "Capturas que o SDK devolveu com erro");
+    private static final Histograma LATENCIA_AQUISICAO = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_captura_aquisicao_segundos", "Duração da chamada de captura do SDK");
+    private static final Contador PRESENCAS = RegistroMetricas.getInstance().contador(
+        "ponto_captura_presencas_total", "Dedos detectados (transições sem dedo -> com dedo)");
+    private static final Histograma QUALIDADE = RegistroMetricas.getInstance().histograma(
+        "ponto_captura_qualidade", "Qualidade (0-100) dos quadros com dedo", 1);
+    private static final Histograma LATENCIA_LISTENERS = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_captura_listeners_segundos", "Tempo dos listeners por quadro publicado");
+    private static final Contador DESCARTADOS = RegistroMetricas.getInstance().contador(
+        "ponto_captura_descartados_total", "Quadros descartados por fila cheia");
+
+    private final int largura;
+    private final int altura;
+    private final AgendadorCaptura agendador;
+    private final FonteQuadros fonte;
+    private final Publicador publicador;
+
+    private int capacidadeAnalise = CAPACIDADE_PADRAO;
+    private FilaSpsc.Politica politicaAnalise = FilaSpsc.Politica.DESCARTAR_MAIS_ANTIGO;
+    private int capacidadePublicacao = CAPACIDADE_PADRAO;
+    private FilaSpsc.Politica politicaPublicacao = FilaSpsc.Politica.DESCARTAR_MAIS_ANTIGO;
+    private String sufixoThreads = "";
+    private int quadrosRetidos;
+
+    private PoolQuadros pool;
+    private FilaSpsc<Quadro> filaAnalise;
+    private FilaSpsc<Quadro> filaPublicacao;
+    private final MetricasEstagio metricasAquisicao = new MetricasEstagio("aquisição");
+    private final MetricasEstagio metricasAnalise = new MetricasEstagio("análise");
+    private final MetricasEstagio metricasPublicacao = new MetricasEstagio("publicação");
+    private final AnalisadorQuadro analisador = new AnalisadorQuadro();
+    private final EstatisticasQuadro estatisticas = new EstatisticasQuadro();
+    private volatile AnalisadorBlocos analisadorBlocos;
+    private volatile TerminoListener terminoListener;
+
+    private volatile boolean rodando;
+    private volatile long esperaSugeridaMs;
+    private volatile long falhasAquisicao;
+    private volatile long semQuadroLivre;
+    private long sequencia;
+    private boolean dedoAnterior;
+    private long colocacaoNanos;
+    private Thread threadAquisicao;
+    private Thread threadAnalise;
+    private Thread threadPublicacao;
+
+    public PipelineCaptura(int largura, int altura, AgendadorCaptura agendador,
+                           FonteQuadros fonte, Publicador publicador) {
+        this.largura = largura;
+        this.altura = altura;
+        this.agendador = agendador;
+        this.fonte = fonte;
+        this.publicador = publicador;
+    }
+
+    /**
+     * Configura a fila entre aquisição e análise. Vale a partir do próximo {@link #iniciar()}.
+     */
+    public void setFilaAnalise(int capacidade, FilaSpsc.Politica politica) {
+        this.capacidadeAnalise = capacidade;
+        this.politicaAnalise = politica;
+    }
+
+    /**
+     * Configura a fila entre análise e publicação. Vale a partir do próximo {@link #iniciar()}.
+     */
+    public void setFilaPublicacao(int capacidade, FilaSpsc.Politica politica) {
+        this.capacidadePublicacao = capacidade;
+        this.politicaPublicacao = politica;
+    }
+
+    /**
+     * Acrescenta um nome às threads do pipeline (um pipeline por leitor).
+     * Vale a partir do próximo {@link #iniciar()}.
+     */
+    public void setNome(String nome) {
+        this.sufixoThreads = nome == null || nome.isEmpty() ? "" : "-" + nome;
+    }
+
+    /**
+     * Quadros que consumidores de fora do pipeline retêm ao mesmo tempo, além da
+     * folga padrão ({@link PoolQuadros#TAMANHO_PADRAO}), para a aquisição não
+     * ficar sem quadro livre. Vale a partir do próximo {@link #iniciar()}.
+     */
+    public void setQuadrosRetidos(int quadrosRetidos) {
+        this.quadrosRetidos = quadrosRetidos;
+    }
+
+    /**
+     * Com um analisador por blocos, os quadros com dedo ganham o mapa de
+     * qualidade ({@link Quadro#getMapa()}) e a pontuação dele passa a ser a
+     * qualidade do quadro; {@code null} volta à qualidade global.
+     */
+    public void setAnalisadorBlocos(AnalisadorBlocos analisadorBlocos) {
+        this.analisadorBlocos = analisadorBlocos;
+    }
+
+    public AnalisadorBlocos getAnalisadorBlocos() {
+        return analisadorBlocos;
+    }
+
+    public void setTerminoListener(TerminoListener listener) {
+        this.terminoListener = listener;
+    }
+
+    public synchronized void iniciar() {
+        if (rodando) {
+            return;
+        }
+        aguardarTermino(ESPERA_TERMINO_MS);
+
+        filaAnalise = new FilaSpsc<>(capacidadeAnalise, politicaAnalise, Quadro::devolver);
+        filaPublicacao = new FilaSpsc<>(capacidadePublicacao, politicaPublicacao, Quadro::devolver);
+
+        // Um quadro em cada fila cheia, um em cada estágio e folga para quem retém
+        int tamanhoPool = filaAnalise.getCapacidade() + filaPublicacao.getCapacidade()
+            + 3 + PoolQuadros.TAMANHO_PADRAO + quadrosRetidos;
+        if (pool == null || pool.getTamanho() != tamanhoPool) {
+            pool = new PoolQuadros(largura, altura, tamanhoPool);
+        }
+
+        agendador.reiniciar();
+        dedoAnterior = false;
+        esperaSugeridaMs = 0;
+        rodando = true;
+
+        threadAquisicao = new Thread(this::executarAquisicao, "captura-aquisicao" + sufixoThreads);
+        threadAnalise = new Thread(this::executarAnalise, "captura-analise" + sufixoThreads);
+        threadPublicacao = new Thread(this::executarPublicacao, "captura-publicacao" + sufixoThreads);
+        threadPublicacao.start();
+        threadAnalise.start();
+        threadAquisicao.start();
+    }
+
+    /**
+     * Sinaliza a parada sem esperar: cada estágio termina o quadro atual e o
+     * seguinte esvazia a fila de entrada, devolvendo os quadros ao pool.
+     */
+    public void parar() {
+        rodando = false;
+        interromper(threadAquisicao);
+        interromper(threadAnalise);
+        interromper(threadPublicacao);
+    }
+
+    /**
+     * Espera as threads do pipeline terminarem depois de {@link #parar()}.
+     */
+    public synchronized boolean aguardarTermino(long tempoMs) {
+        long limite = System.currentTimeMillis() + tempoMs;
+        try {
+            for (Thread thread : new Thread[] { threadAquisicao, threadAnalise, threadPublicacao }) {
+                if (thread != null) {
+                    thread.join(Math.max(1, limite - System.currentTimeMillis()));
+                    if (thread.isAlive()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Encurta a espera da aquisição para no máximo o tempo informado, acordando-a
+     * se já estiver esperando mais (ex.: rajada pedida com o sensor ocioso).
+     */
+    public void antecipar(long esperaMs) {
+        if (esperaMs < esperaSugeridaMs) {
+            atualizarEspera(esperaMs);
+        }
+    }
+
+    public boolean isRodando() {
+        return rodando;
+    }
+
+    // ---------------------------------------------------------------------
+    // Estágios
+    // ---------------------------------------------------------------------
+
+    private void executarAquisicao() {
+        log.depuracao("Estágio de aquisição iniciado");
+        try {
+            while (rodando) {
+                Quadro quadro = pool.emprestar(ESPERA_FILA_MS, TimeUnit.MILLISECONDS);
+                if (quadro == null) {
+                    // Todos os quadros retidos por consumidores: tenta de novo
+                    semQuadroLivre++;
+                    continue;
+                }
+                long espera;
+                try {
+                    long inicio = System.nanoTime();
+                    int ret = fonte.adquirir(quadro.getPixels());
+                    long fim = System.nanoTime();
+                    metricasAquisicao.registrar(0, fim - inicio);
+                    LATENCIA_AQUISICAO.registrar(fim - inicio);
+
+                    if (ret == 0) {
+                        QUADROS.incrementar();
+                        quadro.marcar(++sequencia, fim);
+                        quadro.setEnfileiradoNanos(fim);
+                        oferecer(filaAnalise, quadro);
+                        quadro = null;
+                        espera = esperaSugeridaMs;
+                    } else {
+                        FALHAS.incrementar();
+                        falhasAquisicao++;
+                        espera = Math.max(esperaSugeridaMs, agendador.getIntervaloOciosoMinimoMs());
+                    }
+                } finally {
+                    if (quadro != null) {
+                        quadro.devolver();
+                    }
+                }
+                aguardarProximaCaptura(espera);
+            }
+        } catch (InterruptedException e) {
+            // Parada solicitada
+        } catch (Exception e) {
+            log.erro("Erro no estágio de aquisição: {}", e.getMessage(), e);
+            parar();
+            notificarTermino(e);
+        }
+        log.depuracao("Estágio de aquisição finalizado");
+    }
+
+    private void executarAnalise() {
+        try {
+            while (rodando) {
+                Quadro quadro = filaAnalise.retirar(ESPERA_FILA_MS, TimeUnit.MILLISECONDS);
+                if (quadro == null) {
+                    continue;
+                }
+                try {
+                    long inicio = System.nanoTime();
+                    analisador.analisar(quadro.getPixels(), largura, altura, estatisticas);
+                    boolean sinal = estatisticas.temDedo();
+                    int qualidade = sinal ? estatisticas.getQualidade() : 0;
+                    AnalisadorBlocos blocos = analisadorBlocos;
+                    if (sinal && blocos != null) {
+                        qualidade = blocos.analisar(quadro.getPixels(), largura, altura, quadro.getMapa()).getPontuacao();
+                    } else {
+                        quadro.getMapa().limpar();
+                    }
+                    atualizarEspera(agendador.registrarQuadro(
+                        estatisticas.getPixelsEscuros(), qualidade, quadro.getInstanteNanos()));
+                    // Presença é a do agendador: contatos parciais e resíduo no vidro
+                    // não chegam aos listeners como dedo
+                    boolean temDedo = agendador.isDedoPresente();
+                    if (!temDedo) {
+                        qualidade = 0;
+                        quadro.getMapa().limpar();
+                    }
+                    quadro.registrarAnalise(temDedo, estatisticas.getPixelsEscuros(), qualidade);
+                    if (temDedo) {
+                        QUALIDADE.registrar(qualidade);
+                        if (!dedoAnterior) {
+                            PRESENCAS.incrementar();
+                            colocacaoNanos = quadro.getInstanteNanos();
+                        }
+                    }
+                    quadro.setColocacaoNanos(temDedo ? colocacaoNanos : 0);
+                    dedoAnterior = temDedo;
+                    long fim = System.nanoTime();
+                    metricasAnalise.registrar(inicio - quadro.getEnfileiradoNanos(), fim - inicio);
+
+                    quadro.setEnfileiradoNanos(fim);
+                    oferecer(filaPublicacao, quadro);
+                    quadro = null;
+                } finally {
+                    if (quadro != null) {
+                        quadro.devolver();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Parada solicitada
+        } catch (Exception e) {
+            log.erro("Erro no estágio de análise: {}", e.getMessage(), e);
+            parar();
+            notificarTermino(e);
+        }
+        esvaziarDepoisDe(threadAquisicao, filaAnalise);
+    }
+
+    private void executarPublicacao() {
+        while (rodando) {
+            Quadro quadro;
+            try {
+                quadro = filaPublicacao.retirar(ESPERA_FILA_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (quadro == null) {
+                continue;
+            }
+            try {
+                long inicio = System.nanoTime();
+                publicador.publicar(quadro);
+                long duracao = System.nanoTime() - inicio;
+                metricasPublicacao.registrar(inicio - quadro.getEnfileiradoNanos(), duracao);
+                LATENCIA_LISTENERS.registrar(duracao);
+            } catch (Exception e) {
+                // Um listener com erro não derruba a captura
+                log.erro("Erro ao publicar quadro: {}", e.getMessage(), e);
+            } finally {
+                quadro.devolver();
+            }
+        }
+        esvaziarDepoisDe(threadAnalise, filaPublicacao);
+    }
+
+    private void notificarTermino(Exception causa) {
+        TerminoListener listener = terminoListener;
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onTerminoPorErro(causa);
+        } catch (Exception e) {
+            log.erro("Erro no listener de término: {}", e.getMessage(), e);
+        }
+    }
+
+    private static void oferecer(FilaSpsc<Quadro> fila, Quadro quadro) throws InterruptedException {
+        long descartados = fila.getDescartados();
+        fila.oferecer(quadro);
+        if (fila.getDescartados() != descartados) {
+            DESCARTADOS.somar(fila.getDescartados() - descartados);
+        }
+    }
+
+    private void atualizarEspera(long espera) {
+        long anterior = esperaSugeridaMs;
+        esperaSugeridaMs = espera;
+        if (espera < anterior) {
+            // Dedo chegando: não deixa a aquisição terminar a espera longa
+            LockSupport.unpark(threadAquisicao);
+        }
+    }
+
+    private void aguardarProximaCaptura(long esperaMs) throws InterruptedException {
+        if (esperaMs <= 0) {
+            return;
+        }
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaMs);
+        while (rodando) {
+            long restante = limite - System.nanoTime();
+            if (restante <= 0 || esperaSugeridaMs < esperaMs) {
+                return;
+            }
+            LockSupport.parkNanos(this, restante);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private static void esvaziarDepoisDe(Thread produtor, FilaSpsc<Quadro> fila) {
+        // Só o consumidor pode retirar da fila, e só depois que o produtor parou
+        try {
+            produtor.join();
+        } catch (InterruptedException e) {
+            try {
+                produtor.join();
+            } catch (InterruptedException ignorada) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        fila.esvaziar();
+    }
+
+    private static void interromper(Thread thread) {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Métricas
+    // ---------------------------------------------------------------------
+
+    public AgendadorCaptura getAgendador() {
+        return agendador;
+    }
+
+    public PoolQuadros getPoolQuadros() {
+        return pool;
+    }
+
+    public FilaSpsc<Quadro> getFilaAnalise() {
+        return filaAnalise;
+    }
+
+    public FilaSpsc<Quadro> getFilaPublicacao() {
+        return filaPublicacao;
+    }
+
+    public MetricasEstagio getMetricasAquisicao() {
+        return metricasAquisicao;
+    }
+
+    public MetricasEstagio getMetricasAnalise() {
+        return metricasAnalise;
+    }
+
+    public MetricasEstagio getMetricasPublicacao() {
+        return metricasPublicacao;
+    }
+
+    public long getFalhasAquisicao() {
+        return falhasAquisicao;
+    }
+
+    /**
+     * Quantas vezes a aquisição esperou em vão por um quadro livre no pool.
+     */
+    public long getSemQuadroLivre() {
+        return semQuadroLivre;
+    }
+
+    public String resumo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(metricasAquisicao).append(", falhas ").append(falhasAquisicao)
+          .append(", sem quadro livre ").append(semQuadroLivre).append('\n');
+        sb.append(metricasAnalise).append(", ").append(descreverFila(filaAnalise)).append('\n');
+        sb.append(metricasPublicacao).append(", ").append(descreverFila(filaPublicacao));
+        return sb.toString();
+    }
+
+    private static String descreverFila(FilaSpsc<Quadro> fila) {
+        if (fila == null) {
+            return "fila não criada";
+        }
+        return String.format("fila %d/%d (máx %d), descartados %d, bloqueios %d",
+            fila.getProfundidade(), fila.getCapacidade(), fila.getMaiorProfundidade(),
+            fila.getDescartados(), fila.getBloqueios());
+    }
+}
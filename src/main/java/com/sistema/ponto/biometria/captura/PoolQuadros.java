@@ -0,0 +1,97 @@
+package com.sistema.ponto.biometria.captura;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool fixo de quadros pré-alocados (buffer duplo ou triplo).
+ * Depois da criação, emprestar e devolver quadros não aloca memória: o laço de
+ * captura escreve sempre nos mesmos buffers e o coletor de lixo fica parado.
+ * Quando todos os quadros estão em uso (consumidor atrasado), {@link #emprestar()}
+ * retorna null e o chamador deve descartar o quadro em vez de alocar outro.
+ */
+public class PoolQuadros {
+
+    public static final int TAMANHO_PADRAO = 3;
+
+    private final int largura;
+    private final int altura;
+    private final int tamanho;
+    private final ArrayBlockingQueue<Quadro> livres;
+    private final AtomicLong emprestimosNegados = new AtomicLong();
+
+    public PoolQuadros(int largura, int altura) {
+        this(largura, altura, TAMANHO_PADRAO);
+    }
+
+    public PoolQuadros(int largura, int altura, int tamanho) {
+        if (tamanho < 2) {
+            throw new IllegalArgumentException("O pool precisa de pelo menos 2 quadros");
+        }
+        this.largura = largura;
+        this.altura = altura;
+        this.tamanho = tamanho;
+        this.livres = new ArrayBlockingQueue<>(tamanho);
+        for (int i = 0; i < tamanho; i++) {
+            livres.add(new Quadro(this, largura, altura));
+        }
+    }
+
+    /**
+     * Empresta um quadro livre, ou retorna null se todos estiverem em uso.
+     */
+    public Quadro emprestar() {
+        Quadro quadro = livres.poll();
+        if (quadro == null) {
+            emprestimosNegados.incrementAndGet();
+            return null;
+        }
+        quadro.emprestado();
+        return quadro;
+    }
+
+    /**
+     * Empresta um quadro esperando até o tempo informado por uma devolução.
+     */
+    public Quadro emprestar(long tempo, TimeUnit unidade) throws InterruptedException {
+        Quadro quadro = livres.poll(tempo, unidade);
+        if (quadro == null) {
+            emprestimosNegados.incrementAndGet();
+            return null;
+        }
+        quadro.emprestado();
+        return quadro;
+    }
+
+    void receber(Quadro quadro) {
+        livres.offer(quadro);
+    }
+
+    public boolean isCompativel(int largura, int altura) {
+        return this.largura == largura && this.altura == altura;
+    }
+
+    public int getLargura() {
+        return largura;
+    }
+
+    public int getAltura() {
+        return altura;
+    }
+
+    public int getTamanho() {
+        return tamanho;
+    }
+
+    public int getLivres() {
+        return livres.size();
+    }
+
+    /**
+     * Quantas vezes um quadro foi pedido sem haver nenhum livre (quadros descartados).
+     */
+    public long getEmprestimosNegados() {
+        return emprestimosNegados.get();
+    }
+}
@@ -0,0 +1,167 @@
+package com.sistema.ponto.biometria.captura;
+
+import com.sistema.ponto.biometria.processamento.MapaQualidade;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Quadro de imagem pertencente a um {@link PoolQuadros}.
+ * Os pixels são o próprio buffer do raster TYPE_BYTE_GRAY, então o SDK escreve
+ * diretamente na imagem exibida, sem cópia nem alocação. A imagem só é criada
+ * no primeiro {@link #getImagem()}: sem interface (serviço headless) nenhuma
+ * classe AWT é carregada.
+ * <p>
+ * Cada quadro tem contagem de referências: quem recebe um quadro deve chamar
+ * {@link #devolver()} ao terminar; quem precisa guardá-lo por mais tempo chama
+ * {@link #reter()} antes. Ao chegar a zero o quadro volta para o pool.
+ */
+public class Quadro {
+
+    private final PoolQuadros pool;
+    private final int largura;
+    private final int altura;
+    private final byte[] pixels;
+    private final MapaQualidade mapa = new MapaQualidade();
+    private volatile BufferedImage imagem;
+    private final AtomicInteger referencias = new AtomicInteger();
+    private volatile long sequencia;
+    private volatile long instanteNanos;
+    private volatile int pixelsEscuros;
+    private volatile int qualidade;
+    private volatile boolean temDedo;
+    private volatile long colocacaoNanos;
+    private long enfileiradoNanos;
+
+    Quadro(PoolQuadros pool, int largura, int altura) {
+        this.pool = pool;
+        this.largura = largura;
+        this.altura = altura;
+        this.pixels = new byte[largura * altura];
+    }
+
+    /**
+     * Buffer de pixels (largura * altura bytes) que pode ser passado ao SDK.
+     */
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Imagem que compartilha o mesmo buffer de {@link #getPixels()}.
+     */
+    public BufferedImage getImagem() {
+        BufferedImage atual = imagem;
+        if (atual == null) {
+            // Duas threads podem criar ao mesmo tempo: as duas imagens usam o mesmo buffer
+            ComponentColorModel cores = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY),
+                new int[] {8}, false, true, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            atual = new BufferedImage(cores, Raster.createInterleavedRaster(new DataBufferByte(pixels, pixels.length),
+                largura, altura, largura, 1, new int[] {0}, null), false, null);
+            imagem = atual;
+        }
+        return atual;
+    }
+
+    public int getLargura() {
+        return largura;
+    }
+
+    public int getAltura() {
+        return altura;
+    }
+
+    public long getSequencia() {
+        return sequencia;
+    }
+
+    public long getInstanteNanos() {
+        return instanteNanos;
+    }
+
+    public void marcar(long sequencia, long instanteNanos) {
+        this.sequencia = sequencia;
+        this.instanteNanos = instanteNanos;
+    }
+
+    /**
+     * Guarda no quadro o resultado da análise, para os estágios seguintes do
+     * pipeline não dependerem das estatísticas reutilizadas pelo analisador.
+     */
+    public void registrarAnalise(boolean temDedo, int pixelsEscuros, int qualidade) {
+        this.temDedo = temDedo;
+        this.pixelsEscuros = pixelsEscuros;
+        this.qualidade = qualidade;
+    }
+
+    public boolean temDedo() {
+        return temDedo;
+    }
+
+    /**
+     * Instante do primeiro quadro com dedo da colocação a que este quadro
+     * pertence; identifica a colocação. 0 sem dedo.
+     */
+    public long getColocacaoNanos() {
+        return colocacaoNanos;
+    }
+
+    public void setColocacaoNanos(long colocacaoNanos) {
+        this.colocacaoNanos = colocacaoNanos;
+    }
+
+    public int getPixelsEscuros() {
+        return pixelsEscuros;
+    }
+
+    public int getQualidade() {
+        return qualidade;
+    }
+
+    /**
+     * Mapa de qualidade por bloco, preenchido pela análise quando o pipeline
+     * tem um {@link com.sistema.ponto.biometria.processamento.AnalisadorBlocos};
+     * vazio nos quadros sem dedo. Pertence ao quadro: vale enquanto ele estiver retido.
+     */
+    public MapaQualidade getMapa() {
+        return mapa;
+    }
+
+    public void reter() {
+        if (referencias.getAndIncrement() <= 0) {
+            referencias.getAndDecrement();
+            throw new IllegalStateException("Quadro retido após ser devolvido ao pool");
+        }
+    }
+
+    public void devolver() {
+        int restantes = referencias.decrementAndGet();
+        if (restantes == 0) {
+            pool.receber(this);
+        } else if (restantes < 0) {
+            referencias.incrementAndGet();
+            throw new IllegalStateException("Quadro devolvido mais vezes do que foi emprestado");
+        }
+    }
+
+    // Usado pelo pipeline para medir a espera em cada fila; a própria fila
+    // publica o valor para a thread consumidora
+    void setEnfileiradoNanos(long enfileiradoNanos) {
+        this.enfileiradoNanos = enfileiradoNanos;
+    }
+
+    long getEnfileiradoNanos() {
+        return enfileiradoNanos;
+    }
+
+    void emprestado() {
+        temDedo = false;
+        referencias.set(1);
+    }
+}
@@ -0,0 +1,40 @@
+package com.sistema.ponto.biometria.comparacao;
+
+/**
+ * Ângulos inteiros em 1/256 de volta: somas e diferenças viram aritmética com
+ * máscara (& 0xFF) e seno/cosseno saem de tabela.
+ */
+final class Angulos {
+
+    static final int VOLTA = 256;
+    static final double RADIANOS_POR_UNIDADE = 2 * Math.PI / VOLTA;
+
+    static final float[] COSSENO = new float[VOLTA];
+    static final float[] SENO = new float[VOLTA];
+
+    static {
+        for (int i = 0; i < VOLTA; i++) {
+            COSSENO[i] = (float) Math.cos(i * RADIANOS_POR_UNIDADE);
+            SENO[i] = (float) Math.sin(i * RADIANOS_POR_UNIDADE);
+        }
+    }
+
+    private Angulos() {
+    }
+
+    static int deRadianos(double radianos) {
+        return (int) Math.round(radianos / RADIANOS_POR_UNIDADE) & 0xFF;
+    }
+
+    static int atan2(double dy, double dx) {
+        return deRadianos(Math.atan2(dy, dx));
+    }
+
+    /**
+     * Menor diferença absoluta entre dois ângulos (0 a 128).
+     */
+    static int diferenca(int a, int b) {
+        int d = (a - b) & 0xFF;
+        return d > 128 ? 256 - d : d;
+    }
+}
@@ -0,0 +1,318 @@
+package com.sistema.ponto.biometria.comparacao;
+
+/**
+ * Comparação 1:1 e 1:N de {@link TemplateMinucias} em Java puro.
+ * <p>
+ * Em duas fases:
+ * <ol>
+ * <li>estrutura local: cada par (minúcia da sonda, minúcia do candidato) é
+ *     pontuado pela concordância dos vizinhos mais próximos (distância, direção
+ *     e ângulo relativos, invariantes a rotação e translação). Os melhores pares
+ *     viram hipóteses de alinhamento;</li>
+ * <li>consolidação: para cada hipótese a sonda é rotacionada e transladada sobre
+ *     o candidato e as minúcias são pareadas por distância e ângulo. Vale o
+ *     alinhamento com mais pares.</li>
+ * </ol>
+ * A similaridade é {@code pares² / (nA · nB)}, contando em nA e nB só as
+ * minúcias dentro da área comum às duas capturas (com um mínimo de
+ * {@link #SOBREPOSICAO_MINIMA} do total), e vai para a escala 0-100
+ * do {@code DBMatch} do SDK: {@link #LIMIAR_COMPATIVEL} (50) é o mesmo limiar
+ * de decisão usado com o comparador nativo.
+ * <p>
+ * Não guarda estado: os buffers de trabalho são por thread, então uma única
+ * instância pode ser usada por qualquer número de threads.
+ */
+public class ComparadorMinucias {
+
+    /** Score a partir do qual duas digitais são consideradas do mesmo dedo. */
+    public static final int LIMIAR_COMPATIVEL = 50;
+
+    /** Hipóteses de alinhamento testadas por comparação. */
+    private static final int MAXIMO_HIPOTESES = 12;
+    /** Vizinhos que precisam concordar para um par virar hipótese. */
+    private static final int VIZINHOS_MINIMOS = 2;
+
+    // Tolerâncias da estrutura local
+    private static final int TOLERANCIA_DISTANCIA_LOCAL = 6;
+    private static final int TOLERANCIA_ANGULO_LOCAL = 14;
+
+    // Tolerâncias da consolidação (distorção da pele e erro de extração)
+    private static final int RAIO_PAREAMENTO = 9;
+    private static final int TOLERANCIA_ANGULO = 16;
+    /** Margem em pixels em volta das minúcias para definir a área comum. */
+    private static final int MARGEM_AREA = 12;
+    /**
+     * Fração mínima das minúcias de cada template contada como área comum: sem
+     * isso um alinhamento que sobrepõe só a borda das duas digitais ganharia
+     * similaridade alta com poucos pares.
+     */
+    private static final double SOBREPOSICAO_MINIMA = 0.65;
+
+    /** Pares mínimos para o score ser diferente de zero. */
+    private static final int PARES_MINIMOS = 5;
+    /** Similaridade que corresponde ao score {@link #LIMIAR_COMPATIVEL}. */
+    private static final double SIMILARIDADE_LIMIAR = 0.25;
+
+    private static final class Espaco {
+        final int[] hipoteseA = new int[MAXIMO_HIPOTESES];
+        final int[] hipoteseB = new int[MAXIMO_HIPOTESES];
+        final int[] hipotesePeso = new int[MAXIMO_HIPOTESES];
+        final boolean[] pareado = new boolean[TemplateMinucias.MAXIMO_MINUCIAS];
+        final int[] tx = new int[TemplateMinucias.MAXIMO_MINUCIAS];
+        final int[] ty = new int[TemplateMinucias.MAXIMO_MINUCIAS];
+        final int[] ta = new int[TemplateMinucias.MAXIMO_MINUCIAS];
+        // Saída do último alinhamento consolidado
+        int pares;
+        int dentroA;
+        int dentroB;
+    }
+
+    private static final ThreadLocal<Espaco> ESPACO = ThreadLocal.withInitial(Espaco::new);
+
+    /**
+     * Score de 0 a 100 na escala do DBMatch.
+     */
+    public int comparar(TemplateMinucias a, TemplateMinucias b) {
+        return paraEscalaCompativel(similaridade(a, b, ESPACO.get()));
+    }
+
+    public int comparar(byte[] a, byte[] b) {
+        return comparar(TemplateMinucias.ler(a), TemplateMinucias.ler(b));
+    }
+
+    public boolean verificar(TemplateMinucias a, TemplateMinucias b) {
+        return comparar(a, b) >= LIMIAR_COMPATIVEL;
+    }
+
+    /**
+     * Número de minúcias pareadas no melhor alinhamento (sem normalização).
+     */
+    public int contarPares(TemplateMinucias a, TemplateMinucias b) {
+        Espaco espaco = ESPACO.get();
+        similaridade(a, b, espaco);
+        return espaco.pares;
+    }
+
+    /**
+     * Busca 1:N numa galeria. Retorna o índice do melhor candidato com score
+     * maior ou igual a {@link #LIMIAR_COMPATIVEL}, ou -1; o score vai em
+     * {@code score[0]} quando informado.
+     */
+    public int identificar(TemplateMinucias sonda, TemplateMinucias[] galeria, int quantidade, int[] score) {
+        Espaco espaco = ESPACO.get();
+        int melhor = -1;
+        int melhorScore = -1;
+        for (int i = 0; i < quantidade; i++) {
+            TemplateMinucias candidato = galeria[i];
+            if (candidato == null) {
+                continue;
+            }
+            int s = paraEscalaCompativel(similaridade(sonda, candidato, espaco));
+            if (s > melhorScore) {
+                melhorScore = s;
+                melhor = i;
+            }
+        }
+        if (score != null && score.length > 0) {
+            score[0] = Math.max(0, melhorScore);
+        }
+        return melhorScore >= LIMIAR_COMPATIVEL ? melhor : -1;
+    }
+
+    /**
+     * Converte a similaridade (0 a 1) para 0-100 com {@link #SIMILARIDADE_LIMIAR}
+     * caindo em {@link #LIMIAR_COMPATIVEL}: linear até o limiar e comprimida acima.
+     */
+    static int paraEscalaCompativel(double similaridade) {
+        if (similaridade <= 0) {
+            return 0;
+        }
+        double score;
+        if (similaridade < SIMILARIDADE_LIMIAR) {
+            score = LIMIAR_COMPATIVEL * similaridade / SIMILARIDADE_LIMIAR;
+        } else {
+            double acima = (similaridade - SIMILARIDADE_LIMIAR) / (1 - SIMILARIDADE_LIMIAR);
+            score = LIMIAR_COMPATIVEL + (100 - LIMIAR_COMPATIVEL) * Math.sqrt(acima);
+        }
+        return (int) Math.min(100, Math.round(score));
+    }
+
+    private double similaridade(TemplateMinucias a, TemplateMinucias b, Espaco espaco) {
+        espaco.pares = 0;
+        if (a.quantidade < PARES_MINIMOS || b.quantidade < PARES_MINIMOS) {
+            return 0;
+        }
+        int hipoteses = selecionarHipoteses(a, b, espaco);
+        double melhor = 0;
+        int melhoresPares = 0;
+        for (int h = 0; h < hipoteses; h++) {
+            consolidar(a, b, espaco.hipoteseA[h], espaco.hipoteseB[h], espaco);
+            int pares = espaco.pares;
+            if (pares < PARES_MINIMOS) {
+                continue;
+            }
+            double nA = Math.max(Math.max(espaco.dentroA, pares), a.quantidade * SOBREPOSICAO_MINIMA);
+            double nB = Math.max(Math.max(espaco.dentroB, pares), b.quantidade * SOBREPOSICAO_MINIMA);
+            double s = pares * pares / (nA * nB);
+            if (s > melhor) {
+                melhor = s;
+                melhoresPares = pares;
+            }
+        }
+        espaco.pares = melhoresPares;
+        return melhor;
+    }
+
+    /**
+     * Pontua todos os pares pela estrutura local e guarda os melhores.
+     */
+    private static int selecionarHipoteses(TemplateMinucias a, TemplateMinucias b, Espaco espaco) {
+        int ka = a.vizinhosPorMinucia;
+        int kb = b.vizinhosPorMinucia;
+        int selecionadas = 0;
+        int[] hA = espaco.hipoteseA;
+        int[] hB = espaco.hipoteseB;
+        int[] hPeso = espaco.hipotesePeso;
+        int[] estruturaA = a.estruturaLocal;
+        int[] estruturaB = b.estruturaLocal;
+        int toleranciaAngulo = TOLERANCIA_ANGULO_LOCAL;
+
+        for (int i = 0; i < a.quantidade; i++) {
+            int baseA = i * ka;
+            for (int j = 0; j < b.quantidade; j++) {
+                int baseB = j * kb;
+                int usados = 0;
+                int concordantes = 0;
+                int erro = 0;
+                for (int u = 0; u < ka; u++) {
+                    int ea = estruturaA[baseA + u];
+                    int da = ea >>> 16;
+                    for (int v = 0; v < kb; v++) {
+                        if ((usados & (1 << v)) != 0) {
+                            continue;
+                        }
+                        int eb = estruturaB[baseB + v];
+                        int ed = da - (eb >>> 16);
+                        if (ed > TOLERANCIA_DISTANCIA_LOCAL || ed < -TOLERANCIA_DISTANCIA_LOCAL) {
+                            continue;
+                        }
+                        // |diferença| <= tolerância em aritmética módulo 256, sem desvio
+                        int edir = ((ea >>> 8) - (eb >>> 8) + toleranciaAngulo) & 0xFF;
+                        int eang = (ea - eb + toleranciaAngulo) & 0xFF;
+                        if (edir <= 2 * toleranciaAngulo && eang <= 2 * toleranciaAngulo) {
+                            usados |= 1 << v;
+                            concordantes++;
+                            erro += Math.abs(ed) + Math.abs(edir - toleranciaAngulo) + Math.abs(eang - toleranciaAngulo);
+                            break;
+                        }
+                    }
+                }
+                if (concordantes < VIZINHOS_MINIMOS) {
+                    continue;
+                }
+                // Peso: vizinhos concordantes, desempate pelo menor erro
+                int peso = concordantes * 1000 - erro;
+                int pos = selecionadas < MAXIMO_HIPOTESES ? selecionadas++ : MAXIMO_HIPOTESES;
+                while (pos > 0 && hPeso[pos - 1] < peso) {
+                    if (pos < MAXIMO_HIPOTESES) {
+                        hPeso[pos] = hPeso[pos - 1];
+                        hA[pos] = hA[pos - 1];
+                        hB[pos] = hB[pos - 1];
+                    }
+                    pos--;
+                }
+                if (pos < MAXIMO_HIPOTESES) {
+                    hPeso[pos] = peso;
+                    hA[pos] = i;
+                    hB[pos] = j;
+                }
+            }
+        }
+        return selecionadas;
+    }
+
+    /**
+     * Alinha a sonda sobre o candidato fazendo coincidir a minúcia {@code i} de
+     * A com a {@code j} de B e pareia as demais de forma gulosa.
+     */
+    private static void consolidar(TemplateMinucias a, TemplateMinucias b, int i, int j, Espaco espaco) {
+        int rotacao = (b.angulo[j] - a.angulo[i]) & 0xFF;
+        float cos = Angulos.COSSENO[rotacao];
+        float sen = Angulos.SENO[rotacao];
+        int[] tx = espaco.tx;
+        int[] ty = espaco.ty;
+        int[] ta = espaco.ta;
+
+        // Caixa das minúcias de B e de A transformada, para a área comum
+        int minBx = Integer.MAX_VALUE;
+        int minBy = Integer.MAX_VALUE;
+        int maxBx = Integer.MIN_VALUE;
+        int maxBy = Integer.MIN_VALUE;
+        for (int m = 0; m < b.quantidade; m++) {
+            minBx = Math.min(minBx, b.x[m]);
+            maxBx = Math.max(maxBx, b.x[m]);
+            minBy = Math.min(minBy, b.y[m]);
+            maxBy = Math.max(maxBy, b.y[m]);
+        }
+        int minAx = Integer.MAX_VALUE;
+        int minAy = Integer.MAX_VALUE;
+        int maxAx = Integer.MIN_VALUE;
+        int maxAy = Integer.MIN_VALUE;
+        for (int m = 0; m < a.quantidade; m++) {
+            float dx = a.x[m] - a.x[i];
+            float dy = a.y[m] - a.y[i];
+            tx[m] = Math.round(b.x[j] + dx * cos - dy * sen);
+            ty[m] = Math.round(b.y[j] + dx * sen + dy * cos);
+            ta[m] = (a.angulo[m] + rotacao) & 0xFF;
+            minAx = Math.min(minAx, tx[m]);
+            maxAx = Math.max(maxAx, tx[m]);
+            minAy = Math.min(minAy, ty[m]);
+            maxAy = Math.max(maxAy, ty[m]);
+        }
+
+        int dentroA = 0;
+        for (int m = 0; m < a.quantidade; m++) {
+            if (tx[m] >= minBx - MARGEM_AREA && tx[m] <= maxBx + MARGEM_AREA
+                    && ty[m] >= minBy - MARGEM_AREA && ty[m] <= maxBy + MARGEM_AREA) {
+                dentroA++;
+            }
+        }
+        int dentroB = 0;
+        for (int m = 0; m < b.quantidade; m++) {
+            if (b.x[m] >= minAx - MARGEM_AREA && b.x[m] <= maxAx + MARGEM_AREA
+                    && b.y[m] >= minAy - MARGEM_AREA && b.y[m] <= maxAy + MARGEM_AREA) {
+                dentroB++;
+            }
+        }
+
+        boolean[] pareado = espaco.pareado;
+        for (int m = 0; m < b.quantidade; m++) {
+            pareado[m] = false;
+        }
+        int raio2 = RAIO_PAREAMENTO * RAIO_PAREAMENTO;
+        int pares = 0;
+        for (int m = 0; m < a.quantidade; m++) {
+            int melhor = -1;
+            int melhorDistancia = raio2 + 1;
+            for (int n = 0; n < b.quantidade; n++) {
+                if (pareado[n]) {
+                    continue;
+                }
+                int dx = tx[m] - b.x[n];
+                int dy = ty[m] - b.y[n];
+                int d2 = dx * dx + dy * dy;
+                if (d2 < melhorDistancia && Angulos.diferenca(ta[m], b.angulo[n]) <= TOLERANCIA_ANGULO) {
+                    melhorDistancia = d2;
+                    melhor = n;
+                }
+            }
+            if (melhor >= 0) {
+                pareado[melhor] = true;
+                pares++;
+            }
+        }
+        espaco.pares = pares;
+        espaco.dentroA = dentroA;
+        espaco.dentroB = dentroB;
+    }
+}
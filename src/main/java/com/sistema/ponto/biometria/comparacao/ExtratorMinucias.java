@@ -0,0 +1,914 @@
+package com.sistema.ponto.biometria.comparacao;
+
+import java.util.Arrays;
+
+/**
+ * Extrai minúcias (terminações e bifurcações de crista, com direção) de um
+ * quadro em tons de cinza de 8 bits, como os de {@code AcquireFingerprintImage}.
+ * <p>
+ * Etapas:
+ * <ol>
+ * <li>segmentação por bloco de 8x8 (variância e média), com limpeza e erosão da
+ *     máscara para descartar a borda do dedo;</li>
+ * <li>campo de orientação pelos gradientes de Sobel (vetores com ângulo dobrado,
+ *     suavizados entre blocos vizinhos), com coerência por bloco;</li>
+ * <li>filtro orientado: suavização gaussiana ao longo da crista e comparação com
+ *     a média de um período na direção normal, que binariza sem limiar global;</li>
+ * <li>afinamento de Zhang-Suen e número de cruzamentos no esqueleto;</li>
+ * <li>remoção de falsas minúcias (espinhos, pontes, cristas quebradas, pares
+ *     próximos demais) rastreando o esqueleto a partir de cada candidata.</li>
+ * </ol>
+ * Todos os buffers são reaproveitados entre chamadas; use uma instância por thread.
+ */
+public class ExtratorMinucias {
+
+    static final int BLOCO = 8;
+    /** Direções em que o filtro orientado é pré-calculado (passo de 11,25°). */
+    private static final int DIRECOES = 16;
+    private static final int RAIO_TANGENTE = 4;
+
+    /** Desvio padrão mínimo (em tons) para um bloco ser considerado dedo. */
+    private static final int DESVIO_MINIMO = 16;
+    /** Blocos mais claros que isso são fundo mesmo com variância (borda sem pressão). */
+    private static final int MEDIA_MAXIMA = 235;
+    /** Blocos de distância até a borda do dedo dentro dos quais minúcias são ignoradas. */
+    private static final int EROSAO_BLOCOS = 2;
+
+    private static final int PERIODO_MINIMO = 5;
+    private static final int PERIODO_MAXIMO = 15;
+    private static final int PERIODO_PADRAO = 9;
+
+    /** Máximo de minúcias no template; acima disso ficam as de maior qualidade. */
+    public static final int MAXIMO_MINUCIAS = 100;
+
+    // Anel de 16 blocos (borda de um quadrado 5x5) em volta do bloco, para o índice de Poincaré
+    private static final int[] ANEL_DX = {-2, -1, 0, 1, 2, 2, 2, 2, 2, 1, 0, -1, -2, -2, -2, -2};
+    private static final int[] ANEL_DY = {-2, -2, -2, -2, -2, -1, 0, 1, 2, 2, 2, 2, 2, 1, 0, -1};
+    /** Blocos mínimos numa região de índice não nulo para contar como ponto singular. */
+    private static final int BLOCOS_PONTO_SINGULAR = 2;
+
+    // Vizinhança de 8 no sentido horário a partir do norte
+    private static final int[] VIZ_DX = {0, 1, 1, 1, 0, -1, -1, -1};
+    private static final int[] VIZ_DY = {-1, -1, 0, 1, 1, 1, 0, -1};
+
+    // Filtro orientado: deslocamentos ao longo da crista (tangente) e pesos gaussianos
+    private static final int[][] TANGENTE_DX = new int[DIRECOES][2 * RAIO_TANGENTE + 1];
+    private static final int[][] TANGENTE_DY = new int[DIRECOES][2 * RAIO_TANGENTE + 1];
+    private static final int[] PESO_TANGENTE = new int[2 * RAIO_TANGENTE + 1];
+    private static final int SOMA_PESOS;
+
+    static {
+        int soma = 0;
+        for (int t = -RAIO_TANGENTE; t <= RAIO_TANGENTE; t++) {
+            PESO_TANGENTE[t + RAIO_TANGENTE] = (int) Math.round(64 * Math.exp(-t * t / 8.0));
+            soma += PESO_TANGENTE[t + RAIO_TANGENTE];
+        }
+        SOMA_PESOS = soma;
+        for (int d = 0; d < DIRECOES; d++) {
+            double fi = d * Math.PI / DIRECOES;
+            for (int t = -RAIO_TANGENTE; t <= RAIO_TANGENTE; t++) {
+                TANGENTE_DX[d][t + RAIO_TANGENTE] = (int) Math.round(t * Math.cos(fi));
+                TANGENTE_DY[d][t + RAIO_TANGENTE] = (int) Math.round(t * Math.sin(fi));
+            }
+        }
+    }
+
+    private int largura;
+    private int altura;
+    private int blocosX;
+    private int blocosY;
+
+    // Por bloco
+    private boolean[] primeiroPlano = new boolean[0];
+    private boolean[] auxiliarBloco = new boolean[0];
+    private boolean[] interno = new boolean[0];
+    private float[] orientacao = new float[0];
+    private float[] coerencia = new float[0];
+    private int[] direcao = new int[0];
+    private int[] indicePoincare = new int[0];
+    private int[] pilhaBlocos = new int[0];
+    private double[] vetorX = new double[0];
+    private double[] vetorY = new double[0];
+    private double[] energia = new double[0];
+
+    // Por pixel
+    private int[] suave = new int[0];
+    private byte[] binaria = new byte[0];
+    private byte[] auxiliarPixel = new byte[0];
+    private int[] indiceMinucia = new int[0];
+    private int[] candidatos = new int[0];
+
+    // Normal da crista, com a largura do período estimado
+    private int raioNormal;
+    private final int[][] normalDx = new int[DIRECOES][];
+    private final int[][] normalDy = new int[DIRECOES][];
+
+    // Minúcias candidatas
+    private int total;
+    private int[] mx = new int[256];
+    private int[] my = new int[256];
+    private int[] mAngulo = new int[256];
+    private int[] mTipo = new int[256];
+    private int[] mQualidade = new int[256];
+    private boolean[] removida = new boolean[256];
+
+    // Rastreio
+    private final int[] fimRastreio = new int[2];
+    private final int[] bloqueados = new int[3];
+    private final int[] recentes = new int[2];
+    private final int[] inicioRamo = new int[4];
+    private final int[] angulosRamo = new int[3];
+
+    public TemplateMinucias extrair(byte[] pixels, int largura, int altura) {
+        if (largura < 4 * BLOCO || altura < 4 * BLOCO) {
+            throw new IllegalArgumentException("Imagem pequena demais: " + largura + "x" + altura);
+        }
+        if (pixels.length < largura * altura) {
+            throw new IllegalArgumentException("Buffer menor que " + largura + "x" + altura);
+        }
+        preparar(largura, altura);
+        segmentar(pixels);
+        calcularOrientacao(pixels);
+        int classe = classificarPadrao();
+        suavizarAoLongoDaCrista(pixels);
+        int periodoDecimos = estimarPeriodo();
+        prepararNormal(periodoDecimos);
+        binarizar();
+        afinar();
+        detectarMinucias();
+        filtrarMinucias(periodoDecimos);
+        return montarTemplate(periodoDecimos, classe);
+    }
+
+    private void preparar(int largura, int altura) {
+        this.largura = largura;
+        this.altura = altura;
+        blocosX = (largura + BLOCO - 1) / BLOCO;
+        blocosY = (altura + BLOCO - 1) / BLOCO;
+        int blocos = blocosX * blocosY;
+        if (primeiroPlano.length < blocos) {
+            primeiroPlano = new boolean[blocos];
+            auxiliarBloco = new boolean[blocos];
+            interno = new boolean[blocos];
+            orientacao = new float[blocos];
+            coerencia = new float[blocos];
+            direcao = new int[blocos];
+            indicePoincare = new int[blocos];
+            pilhaBlocos = new int[blocos];
+            vetorX = new double[blocos];
+            vetorY = new double[blocos];
+            energia = new double[blocos];
+        }
+        int n = largura * altura;
+        if (suave.length < n) {
+            suave = new int[n];
+            binaria = new byte[n];
+            auxiliarPixel = new byte[n];
+            indiceMinucia = new int[n];
+            candidatos = new int[n];
+            Arrays.fill(indiceMinucia, -1);
+        }
+        total = 0;
+    }
+
+    // ---------------------------------------------------------------------
+    // Segmentação
+    // ---------------------------------------------------------------------
+
+    private void segmentar(byte[] pixels) {
+        int limiarVariancia = DESVIO_MINIMO * DESVIO_MINIMO;
+        for (int by = 0; by < blocosY; by++) {
+            for (int bx = 0; bx < blocosX; bx++) {
+                int x0 = bx * BLOCO;
+                int y0 = by * BLOCO;
+                int x1 = Math.min(x0 + BLOCO, largura);
+                int y1 = Math.min(y0 + BLOCO, altura);
+                int soma = 0;
+                int somaQuadrados = 0;
+                for (int y = y0; y < y1; y++) {
+                    int p = y * largura;
+                    for (int x = x0; x < x1; x++) {
+                        int v = pixels[p + x] & 0xFF;
+                        soma += v;
+                        somaQuadrados += v * v;
+                    }
+                }
+                int n = (x1 - x0) * (y1 - y0);
+                int media = soma / n;
+                int variancia = somaQuadrados / n - media * media;
+                primeiroPlano[by * blocosX + bx] = variancia >= limiarVariancia && media <= MEDIA_MAXIMA;
+            }
+        }
+        // Remove blocos isolados e fecha buracos pequenos
+        for (int passada = 0; passada < 2; passada++) {
+            for (int by = 0; by < blocosY; by++) {
+                for (int bx = 0; bx < blocosX; bx++) {
+                    int vizinhos = contarVizinhos(primeiroPlano, bx, by);
+                    boolean atual = primeiroPlano[by * blocosX + bx];
+                    auxiliarBloco[by * blocosX + bx] = atual ? vizinhos >= 3 : vizinhos >= 6;
+                }
+            }
+            System.arraycopy(auxiliarBloco, 0, primeiroPlano, 0, blocosX * blocosY);
+        }
+        // Interior: blocos a mais de EROSAO_BLOCOS da borda do dedo
+        System.arraycopy(primeiroPlano, 0, interno, 0, blocosX * blocosY);
+        for (int passada = 0; passada < EROSAO_BLOCOS; passada++) {
+            for (int by = 0; by < blocosY; by++) {
+                for (int bx = 0; bx < blocosX; bx++) {
+                    auxiliarBloco[by * blocosX + bx] = interno[by * blocosX + bx] && contarVizinhos(interno, bx, by) == 8;
+                }
+            }
+            System.arraycopy(auxiliarBloco, 0, interno, 0, blocosX * blocosY);
+        }
+    }
+
+    private int contarVizinhos(boolean[] mascara, int bx, int by) {
+        int n = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int x = bx + dx;
+                int y = by + dy;
+                if ((dx != 0 || dy != 0) && x >= 0 && y >= 0 && x < blocosX && y < blocosY
+                        && mascara[y * blocosX + x]) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    // ---------------------------------------------------------------------
+    // Campo de orientação
+    // ---------------------------------------------------------------------
+
+    private void calcularOrientacao(byte[] pixels) {
+        int blocos = blocosX * blocosY;
+        Arrays.fill(vetorX, 0, blocos, 0);
+        Arrays.fill(vetorY, 0, blocos, 0);
+        Arrays.fill(energia, 0, blocos, 0);
+        // Sobel uma vez por pixel, acumulado no bloco do pixel
+        for (int y = 1; y < altura - 1; y++) {
+            int linhaBloco = (y / BLOCO) * blocosX;
+            int p = y * largura;
+            for (int x = 1; x < largura - 1; x++) {
+                int b = linhaBloco + x / BLOCO;
+                if (!primeiroPlano[b]) {
+                    continue;
+                }
+                int i = p + x;
+                int a00 = pixels[i - largura - 1] & 0xFF;
+                int a01 = pixels[i - largura] & 0xFF;
+                int a02 = pixels[i - largura + 1] & 0xFF;
+                int a10 = pixels[i - 1] & 0xFF;
+                int a12 = pixels[i + 1] & 0xFF;
+                int a20 = pixels[i + largura - 1] & 0xFF;
+                int a21 = pixels[i + largura] & 0xFF;
+                int a22 = pixels[i + largura + 1] & 0xFF;
+                int gx = (a02 + 2 * a12 + a22) - (a00 + 2 * a10 + a20);
+                int gy = (a20 + 2 * a21 + a22) - (a00 + 2 * a01 + a02);
+                vetorX[b] += gx * gx - gy * gy;
+                vetorY[b] += 2.0 * gx * gy;
+                energia[b] += gx * gx + gy * gy;
+            }
+        }
+        // Média 3x3 entre blocos do dedo (janela efetiva de 24x24 pixels)
+        for (int by = 0; by < blocosY; by++) {
+            for (int bx = 0; bx < blocosX; bx++) {
+                int b = by * blocosX + bx;
+                if (!primeiroPlano[b]) {
+                    orientacao[b] = 0;
+                    coerencia[b] = 0;
+                    direcao[b] = 0;
+                    continue;
+                }
+                double sx = 0;
+                double sy = 0;
+                double se = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int x = bx + dx;
+                        int y = by + dy;
+                        if (x >= 0 && y >= 0 && x < blocosX && y < blocosY && primeiroPlano[y * blocosX + x]) {
+                            int v = y * blocosX + x;
+                            sx += vetorX[v];
+                            sy += vetorY[v];
+                            se += energia[v];
+                        }
+                    }
+                }
+                // O gradiente é perpendicular à crista
+                double teta = 0.5 * Math.atan2(sy, sx) + Math.PI / 2;
+                if (teta >= Math.PI) {
+                    teta -= Math.PI;
+                }
+                orientacao[b] = (float) teta;
+                coerencia[b] = se > 0 ? (float) (Math.sqrt(sx * sx + sy * sy) / se) : 0;
+                direcao[b] = (int) Math.round(teta / Math.PI * DIRECOES) % DIRECOES;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Pontos singulares e classe do padrão
+    // ---------------------------------------------------------------------
+
+    /**
+     * Índice de Poincaré do campo de orientação num anel de 5x5 blocos em volta
+     * de cada bloco: +1/2 perto de um núcleo, -1/2 perto de um delta e +1 no
+     * centro de um verticilo. Regiões conexas com o mesmo índice contam como um
+     * ponto singular.
+     */
+    private int classificarPadrao() {
+        int blocos = blocosX * blocosY;
+        Arrays.fill(indicePoincare, 0, blocos, 0);
+        for (int by = 2; by < blocosY - 2; by++) {
+            for (int bx = 2; bx < blocosX - 2; bx++) {
+                indicePoincare[by * blocosX + bx] = indicePoincare(bx, by);
+            }
+        }
+        int nucleos = 0;
+        int deltas = 0;
+        int centros = 0;
+        for (int b = 0; b < blocos; b++) {
+            int indice = indicePoincare[b];
+            if (indice != 0 && apagarRegiao(b, indice) >= BLOCOS_PONTO_SINGULAR) {
+                if (indice == 1) {
+                    nucleos++;
+                } else if (indice == -1) {
+                    deltas++;
+                } else if (indice == 2) {
+                    centros++;
+                }
+            }
+        }
+        if (centros > 0 || nucleos >= 2) {
+            return TemplateMinucias.CLASSE_VERTICILO;
+        }
+        if (nucleos == 1) {
+            return TemplateMinucias.CLASSE_PRESILHA;
+        }
+        if (deltas == 0) {
+            return TemplateMinucias.CLASSE_ARCO;
+        }
+        // Só delta: núcleo fora da imagem ou ruído
+        return TemplateMinucias.CLASSE_DESCONHECIDA;
+    }
+
+    /**
+     * Soma das variações de orientação ao longo do anel, em meias voltas
+     * (0 se o anel sair do dedo).
+     */
+    private int indicePoincare(int bx, int by) {
+        float anterior = 0;
+        float soma = 0;
+        for (int k = 0; k <= ANEL_DX.length; k++) {
+            int v = (by + ANEL_DY[k % ANEL_DX.length]) * blocosX + bx + ANEL_DX[k % ANEL_DX.length];
+            if (!primeiroPlano[v]) {
+                return 0;
+            }
+            float teta = orientacao[v];
+            if (k > 0) {
+                float d = teta - anterior;
+                if (d > Math.PI / 2) {
+                    d -= Math.PI;
+                } else if (d < -Math.PI / 2) {
+                    d += Math.PI;
+                }
+                soma += d;
+            }
+            anterior = teta;
+        }
+        return Math.round((float) (soma / Math.PI));
+    }
+
+    /**
+     * Zera a região conexa (vizinhança de 8) com o índice dado e retorna o tamanho.
+     */
+    private int apagarRegiao(int inicio, int indice) {
+        int topo = 0;
+        int tamanho = 0;
+        pilhaBlocos[topo++] = inicio;
+        indicePoincare[inicio] = 0;
+        while (topo > 0) {
+            int b = pilhaBlocos[--topo];
+            tamanho++;
+            int bx = b % blocosX;
+            int by = b / blocosX;
+            for (int k = 0; k < VIZ_DX.length; k++) {
+                int x = bx + VIZ_DX[k];
+                int y = by + VIZ_DY[k];
+                if (x >= 0 && y >= 0 && x < blocosX && y < blocosY && indicePoincare[y * blocosX + x] == indice) {
+                    indicePoincare[y * blocosX + x] = 0;
+                    pilhaBlocos[topo++] = y * blocosX + x;
+                }
+            }
+        }
+        return tamanho;
+    }
+
+    // ---------------------------------------------------------------------
+    // Filtro orientado e binarização
+    // ---------------------------------------------------------------------
+
+    private void suavizarAoLongoDaCrista(byte[] pixels) {
+        for (int y = 0; y < altura; y++) {
+            int linhaBloco = (y / BLOCO) * blocosX;
+            boolean linhaInterna = y >= RAIO_TANGENTE && y < altura - RAIO_TANGENTE;
+            for (int x = 0; x < largura; x++) {
+                int d = direcao[linhaBloco + x / BLOCO];
+                int[] dxs = TANGENTE_DX[d];
+                int[] dys = TANGENTE_DY[d];
+                int soma = 0;
+                if (linhaInterna && x >= RAIO_TANGENTE && x < largura - RAIO_TANGENTE) {
+                    for (int t = 0; t < PESO_TANGENTE.length; t++) {
+                        soma += PESO_TANGENTE[t] * (pixels[(y + dys[t]) * largura + x + dxs[t]] & 0xFF);
+                    }
+                } else {
+                    for (int t = 0; t < PESO_TANGENTE.length; t++) {
+                        int xx = limitar(x + dxs[t], largura);
+                        int yy = limitar(y + dys[t], altura);
+                        soma += PESO_TANGENTE[t] * (pixels[yy * largura + xx] & 0xFF);
+                    }
+                }
+                suave[y * largura + x] = soma / SOMA_PESOS;
+            }
+        }
+    }
+
+    /**
+     * Período das cristas pela assinatura na direção normal, no centro de cada
+     * bloco interno: distância média entre cruzamentos da média.
+     */
+    private int estimarPeriodo() {
+        double somaPeriodos = 0;
+        int amostras = 0;
+        int raio = 2 * PERIODO_MAXIMO;
+        int[] perfil = new int[2 * raio + 1];
+        for (int by = 0; by < blocosY; by++) {
+            for (int bx = 0; bx < blocosX; bx++) {
+                int b = by * blocosX + bx;
+                if (!interno[b] || coerencia[b] < 0.3f) {
+                    continue;
+                }
+                double teta = orientacao[b];
+                double nx = -Math.sin(teta);
+                double ny = Math.cos(teta);
+                int cx = bx * BLOCO + BLOCO / 2;
+                int cy = by * BLOCO + BLOCO / 2;
+                long soma = 0;
+                for (int n = -raio; n <= raio; n++) {
+                    int x = limitar((int) Math.round(cx + n * nx), largura);
+                    int y = limitar((int) Math.round(cy + n * ny), altura);
+                    perfil[n + raio] = suave[y * largura + x];
+                    soma += perfil[n + raio];
+                }
+                int media = (int) (soma / perfil.length);
+                int primeiro = -1;
+                int ultimo = -1;
+                int cruzamentos = 0;
+                for (int i = 1; i < perfil.length; i++) {
+                    if ((perfil[i - 1] < media) != (perfil[i] < media)) {
+                        if (primeiro < 0) {
+                            primeiro = i;
+                        }
+                        ultimo = i;
+                        cruzamentos++;
+                    }
+                }
+                if (cruzamentos >= 3) {
+                    double periodo = 2.0 * (ultimo - primeiro) / (cruzamentos - 1);
+                    if (periodo >= PERIODO_MINIMO && periodo <= PERIODO_MAXIMO) {
+                        somaPeriodos += periodo;
+                        amostras++;
+                    }
+                }
+            }
+        }
+        double periodo = amostras > 0 ? somaPeriodos / amostras : PERIODO_PADRAO;
+        return (int) Math.round(periodo * 10);
+    }
+
+    private void prepararNormal(int periodoDecimos) {
+        int raio = Math.max(2, (periodoDecimos + 10) / 20);
+        if (raio == raioNormal) {
+            return;
+        }
+        raioNormal = raio;
+        for (int d = 0; d < DIRECOES; d++) {
+            double fi = d * Math.PI / DIRECOES;
+            normalDx[d] = new int[2 * raio + 1];
+            normalDy[d] = new int[2 * raio + 1];
+            for (int n = -raio; n <= raio; n++) {
+                normalDx[d][n + raio] = (int) Math.round(-n * Math.sin(fi));
+                normalDy[d][n + raio] = (int) Math.round(n * Math.cos(fi));
+            }
+        }
+    }
+
+    /**
+     * Crista (1) onde o valor suavizado é mais escuro que a média de um período
+     * na direção normal. Só dentro da máscara do dedo.
+     */
+    private void binarizar() {
+        int raio = raioNormal;
+        int amostras = 2 * raio + 1;
+        for (int y = 0; y < altura; y++) {
+            int linhaBloco = (y / BLOCO) * blocosX;
+            boolean linhaInterna = y >= raio && y < altura - raio;
+            for (int x = 0; x < largura; x++) {
+                int i = y * largura + x;
+                int b = linhaBloco + x / BLOCO;
+                if (!primeiroPlano[b] || x == 0 || y == 0 || x == largura - 1 || y == altura - 1) {
+                    binaria[i] = 0;
+                    continue;
+                }
+                int[] dxs = normalDx[direcao[b]];
+                int[] dys = normalDy[direcao[b]];
+                int soma = 0;
+                if (linhaInterna && x >= raio && x < largura - raio) {
+                    for (int n = 0; n < amostras; n++) {
+                        soma += suave[(y + dys[n]) * largura + x + dxs[n]];
+                    }
+                } else {
+                    for (int n = 0; n < amostras; n++) {
+                        soma += suave[limitar(y + dys[n], altura) * largura + limitar(x + dxs[n], largura)];
+                    }
+                }
+                binaria[i] = (byte) (suave[i] * amostras < soma ? 1 : 0);
+            }
+        }
+        // Limpeza: pixel isolado sai, buraco cercado fecha
+        for (int y = 1; y < altura - 1; y++) {
+            for (int x = 1; x < largura - 1; x++) {
+                int i = y * largura + x;
+                int vizinhos = 0;
+                for (int k = 0; k < 8; k++) {
+                    vizinhos += binaria[i + VIZ_DY[k] * largura + VIZ_DX[k]];
+                }
+                byte v = binaria[i];
+                if (v == 1 && vizinhos <= 1) {
+                    v = 0;
+                } else if (v == 0 && vizinhos >= 7 && primeiroPlano[(y / BLOCO) * blocosX + x / BLOCO]) {
+                    v = 1;
+                }
+                auxiliarPixel[i] = v;
+            }
+        }
+        for (int y = 1; y < altura - 1; y++) {
+            System.arraycopy(auxiliarPixel, y * largura + 1, binaria, y * largura + 1, largura - 2);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Afinamento (Zhang-Suen) sobre a lista de pixels de crista
+    // ---------------------------------------------------------------------
+
+    private void afinar() {
+        int n = 0;
+        for (int y = 1; y < altura - 1; y++) {
+            for (int x = 1; x < largura - 1; x++) {
+                int i = y * largura + x;
+                if (binaria[i] != 0) {
+                    candidatos[n++] = i;
+                }
+            }
+        }
+        boolean mudou = true;
+        while (mudou) {
+            mudou = false;
+            for (int subiteracao = 0; subiteracao < 2; subiteracao++) {
+                // Marca primeiro (2), apaga depois: a decisão usa o estado do início da subiteração
+                int marcados = 0;
+                for (int c = 0; c < n; c++) {
+                    int i = candidatos[c];
+                    if (deveApagar(i, subiteracao)) {
+                        binaria[i] = 2;
+                        marcados++;
+                    }
+                }
+                if (marcados == 0) {
+                    continue;
+                }
+                mudou = true;
+                int restantes = 0;
+                for (int c = 0; c < n; c++) {
+                    int i = candidatos[c];
+                    if (binaria[i] == 2) {
+                        binaria[i] = 0;
+                    } else {
+                        candidatos[restantes++] = i;
+                    }
+                }
+                n = restantes;
+            }
+        }
+    }
+
+    private boolean deveApagar(int i, int subiteracao) {
+        int w = largura;
+        // Pixels marcados (2) ainda contam como crista nesta subiteração
+        int p2 = binaria[i - w] != 0 ? 1 : 0;
+        int p3 = binaria[i - w + 1] != 0 ? 1 : 0;
+        int p4 = binaria[i + 1] != 0 ? 1 : 0;
+        int p5 = binaria[i + w + 1] != 0 ? 1 : 0;
+        int p6 = binaria[i + w] != 0 ? 1 : 0;
+        int p7 = binaria[i + w - 1] != 0 ? 1 : 0;
+        int p8 = binaria[i - 1] != 0 ? 1 : 0;
+        int p9 = binaria[i - w - 1] != 0 ? 1 : 0;
+        int vizinhos = p2 + p3 + p4 + p5 + p6 + p7 + p8 + p9;
+        if (vizinhos < 2 || vizinhos > 6) {
+            return false;
+        }
+        int transicoes = (p2 == 0 && p3 == 1 ? 1 : 0) + (p3 == 0 && p4 == 1 ? 1 : 0)
+            + (p4 == 0 && p5 == 1 ? 1 : 0) + (p5 == 0 && p6 == 1 ? 1 : 0)
+            + (p6 == 0 && p7 == 1 ? 1 : 0) + (p7 == 0 && p8 == 1 ? 1 : 0)
+            + (p8 == 0 && p9 == 1 ? 1 : 0) + (p9 == 0 && p2 == 1 ? 1 : 0);
+        if (transicoes != 1) {
+            return false;
+        }
+        if (subiteracao == 0) {
+            return p2 * p4 * p6 == 0 && p4 * p6 * p8 == 0;
+        }
+        return p2 * p4 * p8 == 0 && p2 * p6 * p8 == 0;
+    }
+
+    // ---------------------------------------------------------------------
+    // Minúcias
+    // ---------------------------------------------------------------------
+
+    private int numeroCruzamentos(int i) {
+        int cruzamentos = 0;
+        int anterior = binaria[i + VIZ_DY[7] * largura + VIZ_DX[7]];
+        for (int k = 0; k < 8; k++) {
+            int atual = binaria[i + VIZ_DY[k] * largura + VIZ_DX[k]];
+            if (atual != anterior) {
+                cruzamentos++;
+            }
+            anterior = atual;
+        }
+        return cruzamentos / 2;
+    }
+
+    private void detectarMinucias() {
+        for (int y = BLOCO; y < altura - BLOCO; y++) {
+            int linhaBloco = (y / BLOCO) * blocosX;
+            for (int x = BLOCO; x < largura - BLOCO; x++) {
+                int i = y * largura + x;
+                if (binaria[i] == 0 || !interno[linhaBloco + x / BLOCO]) {
+                    continue;
+                }
+                int cn = numeroCruzamentos(i);
+                if (cn == 1 || cn == 3) {
+                    adicionarCandidata(x, y, cn == 1 ? TemplateMinucias.TERMINACAO : TemplateMinucias.BIFURCACAO,
+                        coerencia[linhaBloco + x / BLOCO]);
+                }
+            }
+        }
+        for (int m = 0; m < total; m++) {
+            indiceMinucia[my[m] * largura + mx[m]] = m;
+        }
+    }
+
+    private void adicionarCandidata(int x, int y, int tipo, float qualidade) {
+        if (total == mx.length) {
+            int novo = total * 2;
+            mx = Arrays.copyOf(mx, novo);
+            my = Arrays.copyOf(my, novo);
+            mAngulo = Arrays.copyOf(mAngulo, novo);
+            mTipo = Arrays.copyOf(mTipo, novo);
+            mQualidade = Arrays.copyOf(mQualidade, novo);
+            removida = Arrays.copyOf(removida, novo);
+        }
+        mx[total] = x;
+        my[total] = y;
+        mTipo[total] = tipo;
+        mQualidade[total] = Math.max(0, Math.min(100, Math.round(qualidade * 100)));
+        removida[total] = false;
+        total++;
+    }
+
+    /**
+     * Segue o esqueleto a partir de {@code inicio} (vizinho da minúcia em
+     * {@code origem}) por até {@code passos} pixels. Guarda em
+     * {@link #fimRastreio} o último pixel e o índice da minúcia encontrada no
+     * caminho (-1 se nenhuma). Retorna quantos pixels andou.
+     */
+    private int rastrear(int origem, int inicio, int outroRamo1, int outroRamo2, int passos) {
+        // A origem e os outros ramos da bifurcação ficam bloqueados o caminho todo
+        bloqueados[0] = origem;
+        bloqueados[1] = outroRamo1 >= 0 ? outroRamo1 : origem;
+        bloqueados[2] = outroRamo2 >= 0 ? outroRamo2 : origem;
+        recentes[0] = origem;
+        recentes[1] = origem;
+        int anterior = origem;
+        int atual = inicio;
+        fimRastreio[1] = -1;
+        int andados = 1;
+        while (true) {
+            int encontrada = indiceMinucia[atual];
+            if (encontrada >= 0) {
+                fimRastreio[1] = encontrada;
+                break;
+            }
+            if (andados >= passos) {
+                break;
+            }
+            int x = atual % largura;
+            int y = atual / largura;
+            if (x <= 0 || y <= 0 || x >= largura - 1 || y >= altura - 1) {
+                break;
+            }
+            int proximo = -1;
+            int reserva = -1;
+            for (int k = 0; k < 8; k++) {
+                int v = atual + VIZ_DY[k] * largura + VIZ_DX[k];
+                if (binaria[v] == 0 || v == anterior || foiVisitado(v)) {
+                    continue;
+                }
+                if (adjacentes(v, anterior)) {
+                    // Canto do esqueleto: só se não houver caminho melhor
+                    if (reserva < 0) {
+                        reserva = v;
+                    }
+                } else if (proximo < 0) {
+                    proximo = v;
+                }
+            }
+            if (proximo < 0) {
+                proximo = reserva;
+            }
+            if (proximo < 0) {
+                break;
+            }
+            recentes[andados & 1] = anterior;
+            anterior = atual;
+            atual = proximo;
+            andados++;
+        }
+        fimRastreio[0] = atual;
+        return andados;
+    }
+
+    private boolean foiVisitado(int v) {
+        return v == bloqueados[0] || v == bloqueados[1] || v == bloqueados[2]
+            || v == recentes[0] || v == recentes[1];
+    }
+
+    private boolean adjacentes(int a, int b) {
+        int dx = a % largura - b % largura;
+        int dy = a / largura - b / largura;
+        return dx >= -1 && dx <= 1 && dy >= -1 && dy <= 1;
+    }
+
+    /**
+     * Primeiro pixel de cada grupo de vizinhos de esqueleto (um por ramo).
+     */
+    private int ramos(int i) {
+        int n = 0;
+        int anterior = binaria[i + VIZ_DY[7] * largura + VIZ_DX[7]];
+        for (int k = 0; k < 8; k++) {
+            int v = i + VIZ_DY[k] * largura + VIZ_DX[k];
+            int atual = binaria[v];
+            if (atual != 0 && anterior == 0 && n < inicioRamo.length) {
+                inicioRamo[n++] = v;
+            }
+            anterior = atual;
+        }
+        return n;
+    }
+
+    private void filtrarMinucias(int periodoDecimos) {
+        int passosValidacao = Math.max(6, (periodoDecimos * 12 + 50) / 100);
+        int passosDirecao = Math.max(5, (periodoDecimos + 5) / 10);
+        int distanciaMinima = Math.max(4, (periodoDecimos * 6 + 50) / 100);
+        int distanciaQuebra = (periodoDecimos * 15 + 50) / 100;
+
+        // Espinhos, pontes e cristas curtas: duas minúcias ligadas por pouco esqueleto
+        for (int m = 0; m < total; m++) {
+            int i = my[m] * largura + mx[m];
+            int n = ramos(i);
+            double somaX = 0;
+            double somaY = 0;
+            for (int r = 0; r < n && r < 3; r++) {
+                rastrear(i, inicioRamo[r], n > 1 ? inicioRamo[(r + 1) % n] : -1, n > 2 ? inicioRamo[(r + 2) % n] : -1,
+                    Math.max(passosValidacao, passosDirecao));
+                int outra = fimRastreio[1];
+                int fim = fimRastreio[0];
+                int dx = fim % largura - mx[m];
+                int dy = fim / largura - my[m];
+                if (outra >= 0 && outra != m && dx * dx + dy * dy <= passosValidacao * passosValidacao) {
+                    removida[m] = true;
+                    removida[outra] = true;
+                }
+                angulosRamo[r] = Angulos.atan2(dy, dx);
+                somaX += dx;
+                somaY += dy;
+            }
+            int direcaoRastreada;
+            if (mTipo[m] == TemplateMinucias.TERMINACAO || n < 3) {
+                // Aponta para fora da crista
+                direcaoRastreada = Angulos.atan2(-somaY, -somaX);
+            } else {
+                // Bifurcação: entre os dois ramos mais próximos em ângulo
+                int melhorA = 0;
+                int melhorB = 1;
+                int menor = Integer.MAX_VALUE;
+                for (int a = 0; a < 3; a++) {
+                    int b = (a + 1) % 3;
+                    int d = Angulos.diferenca(angulosRamo[a], angulosRamo[b]);
+                    if (d < menor) {
+                        menor = d;
+                        melhorA = a;
+                        melhorB = b;
+                    }
+                }
+                direcaoRastreada = (angulosRamo[melhorA] + (((angulosRamo[melhorB] - angulosRamo[melhorA] + 128) & 0xFF) - 128) / 2) & 0xFF;
+            }
+            mAngulo[m] = refinarComOrientacao(mx[m], my[m], direcaoRastreada);
+        }
+
+        // Pares próximos demais e cristas quebradas (terminações frente a frente)
+        for (int a = 0; a < total; a++) {
+            for (int b = a + 1; b < total; b++) {
+                int dx = mx[b] - mx[a];
+                int dy = my[b] - my[a];
+                int d2 = dx * dx + dy * dy;
+                if (d2 <= distanciaMinima * distanciaMinima) {
+                    removida[a] = true;
+                    removida[b] = true;
+                } else if (d2 <= distanciaQuebra * distanciaQuebra
+                        && mTipo[a] == TemplateMinucias.TERMINACAO && mTipo[b] == TemplateMinucias.TERMINACAO
+                        && Angulos.diferenca(mAngulo[a], mAngulo[b]) >= 96) {
+                    removida[a] = true;
+                    removida[b] = true;
+                }
+            }
+        }
+
+        for (int m = 0; m < total; m++) {
+            indiceMinucia[my[m] * largura + mx[m]] = -1;
+        }
+    }
+
+    /**
+     * Troca a direção rastreada pela orientação do bloco (menos ruidosa) no
+     * sentido mais próximo, se as duas concordarem até 45°.
+     */
+    private int refinarComOrientacao(int x, int y, int rastreada) {
+        int b = (y / BLOCO) * blocosX + x / BLOCO;
+        int campo = Angulos.deRadianos(orientacao[b]);
+        int oposto = (campo + 128) & 0xFF;
+        int melhor = Angulos.diferenca(campo, rastreada) <= Angulos.diferenca(oposto, rastreada) ? campo : oposto;
+        return Angulos.diferenca(melhor, rastreada) <= 32 ? melhor : rastreada;
+    }
+
+    private TemplateMinucias montarTemplate(int periodoDecimos, int classe) {
+        int validas = 0;
+        for (int m = 0; m < total; m++) {
+            if (!removida[m]) {
+                validas++;
+            }
+        }
+        int quantidade = Math.min(validas, MAXIMO_MINUCIAS);
+        int limiarQualidade = -1;
+        if (validas > quantidade) {
+            // Descarta as de menor qualidade
+            int[] qualidades = new int[validas];
+            for (int m = 0, k = 0; m < total; m++) {
+                if (!removida[m]) {
+                    qualidades[k++] = mQualidade[m];
+                }
+            }
+            Arrays.sort(qualidades);
+            limiarQualidade = qualidades[validas - quantidade];
+        }
+        int[] x = new int[quantidade];
+        int[] y = new int[quantidade];
+        int[] angulo = new int[quantidade];
+        int[] tipo = new int[quantidade];
+        int[] qualidade = new int[quantidade];
+        int k = 0;
+        // Primeiro as acima do limiar, depois as iguais a ele até completar
+        for (int passada = 0; passada < 2 && k < quantidade; passada++) {
+            for (int m = 0; m < total && k < quantidade; m++) {
+                if (removida[m]) {
+                    continue;
+                }
+                boolean aceita = passada == 0 ? mQualidade[m] > limiarQualidade : mQualidade[m] == limiarQualidade;
+                if (aceita) {
+                    x[k] = mx[m];
+                    y[k] = my[m];
+                    angulo[k] = mAngulo[m];
+                    tipo[k] = mTipo[m];
+                    qualidade[k] = mQualidade[m];
+                    k++;
+                }
+            }
+        }
+        return new TemplateMinucias(largura, altura, periodoDecimos, classe, quantidade, x, y, angulo, tipo, qualidade);
+    }
+
+    private static int limitar(int v, int tamanho) {
+        return v < 0 ? 0 : (v >= tamanho ? tamanho - 1 : v);
+    }
+}
@@ -0,0 +1,268 @@
+package com.sistema.ponto.biometria.comparacao;
+
+import java.util.Arrays;
+
+/**
+ * Template de minúcias em arrays primitivos, imutável depois de criado (pode
+ * ser compartilhado entre threads).
+ * <p>
+ * Ângulos em unidades de 1/256 de volta (0 a 255), medidos no sistema da
+ * imagem (x para a direita, y para baixo). Além das minúcias o template guarda,
+ * calculados uma vez na criação, os {@value #VIZINHOS} vizinhos mais próximos
+ * de cada minúcia (distância, direção relativa e diferença de ângulo), que o
+ * {@link ComparadorMinucias} usa para achar alinhamentos sem testar todos os pares.
+ * <p>
+ * Formato serializado (big-endian): "RLMT", versão, largura, altura (shorts),
+ * período das cristas em décimos de pixel (short), quantidade (byte), classe
+ * do padrão (byte, a partir da versão 2) e 6 bytes por minúcia: x, y (shorts),
+ * ângulo, tipo (bit 7) e qualidade (bits 0-6). Templates da versão 1 são lidos
+ * com classe {@link #CLASSE_DESCONHECIDA}.
+ */
+public final class TemplateMinucias {
+
+    public static final int TERMINACAO = 0;
+    public static final int BIFURCACAO = 1;
+
+    /** Classe do padrão pelos pontos singulares do campo de orientação. */
+    public static final int CLASSE_DESCONHECIDA = 0;
+    public static final int CLASSE_ARCO = 1;
+    public static final int CLASSE_PRESILHA = 2;
+    public static final int CLASSE_VERTICILO = 3;
+
+    public static final int MAXIMO_MINUCIAS = 255;
+    public static final int VIZINHOS = 5;
+
+    static final int VERSAO = 2;
+    static final int TAMANHO_CABECALHO = 13;
+    private static final int TAMANHO_CABECALHO_V1 = 12;
+    static final int BYTES_POR_MINUCIA = 6;
+    private static final byte[] MAGICO = {'R', 'L', 'M', 'T'};
+
+    final int largura;
+    final int altura;
+    final int periodoDecimos;
+    final int classe;
+    final int quantidade;
+    final int[] x;
+    final int[] y;
+    final int[] angulo;
+    final int[] tipo;
+    final int[] qualidade;
+
+    /**
+     * Estrutura local: {@link #vizinhosPorMinucia} entradas por minúcia, em ordem
+     * de distância, cada uma num int: distância (bits 16+), direção do vizinho
+     * relativa ao ângulo da minúcia (bits 8-15) e diferença de ângulo (bits 0-7).
+     */
+    final int[] estruturaLocal;
+    final int vizinhosPorMinucia;
+
+    TemplateMinucias(int largura, int altura, int periodoDecimos, int classe, int quantidade,
+                     int[] x, int[] y, int[] angulo, int[] tipo, int[] qualidade) {
+        this.largura = largura;
+        this.altura = altura;
+        this.periodoDecimos = periodoDecimos;
+        this.classe = classe;
+        this.quantidade = quantidade;
+        this.x = x;
+        this.y = y;
+        this.angulo = angulo;
+        this.tipo = tipo;
+        this.qualidade = qualidade;
+        this.vizinhosPorMinucia = Math.min(VIZINHOS, Math.max(0, quantidade - 1));
+        this.estruturaLocal = new int[quantidade * vizinhosPorMinucia];
+        calcularVizinhos();
+    }
+
+    private void calcularVizinhos() {
+        int k = vizinhosPorMinucia;
+        if (k == 0) {
+            return;
+        }
+        int[] melhores = new int[k];
+        int[] distancias = new int[k];
+        for (int i = 0; i < quantidade; i++) {
+            int encontrados = 0;
+            for (int j = 0; j < quantidade; j++) {
+                if (j == i) {
+                    continue;
+                }
+                int dx = x[j] - x[i];
+                int dy = y[j] - y[i];
+                int d2 = dx * dx + dy * dy;
+                // Inserção ordenada nos k mais próximos
+                int pos = encontrados < k ? encontrados++ : k;
+                while (pos > 0 && distancias[pos - 1] > d2) {
+                    if (pos < k) {
+                        distancias[pos] = distancias[pos - 1];
+                        melhores[pos] = melhores[pos - 1];
+                    }
+                    pos--;
+                }
+                if (pos < k) {
+                    distancias[pos] = d2;
+                    melhores[pos] = j;
+                }
+            }
+            for (int n = 0; n < k; n++) {
+                int j = melhores[n];
+                int distancia = (int) Math.round(Math.sqrt(distancias[n]));
+                int direcao = (Angulos.atan2(y[j] - y[i], x[j] - x[i]) - angulo[i]) & 0xFF;
+                int diferenca = (angulo[j] - angulo[i]) & 0xFF;
+                estruturaLocal[i * k + n] = (distancia << 16) | (direcao << 8) | diferenca;
+            }
+        }
+    }
+
+    public int getQuantidade() {
+        return quantidade;
+    }
+
+    public int getLargura() {
+        return largura;
+    }
+
+    public int getAltura() {
+        return altura;
+    }
+
+    /**
+     * Período médio das cristas em pixels (distância entre cristas vizinhas).
+     */
+    public float getPeriodoCristas() {
+        return periodoDecimos / 10.0f;
+    }
+
+    /**
+     * Classe do padrão ({@link #CLASSE_ARCO}, {@link #CLASSE_PRESILHA},
+     * {@link #CLASSE_VERTICILO} ou {@link #CLASSE_DESCONHECIDA}).
+     */
+    public int getClasse() {
+        return classe;
+    }
+
+    public int getX(int i) {
+        return x[i];
+    }
+
+    public int getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * Ângulo da minúcia em radianos (0 a 2π).
+     */
+    public double getAngulo(int i) {
+        return angulo[i] * Angulos.RADIANOS_POR_UNIDADE;
+    }
+
+    public int getTipo(int i) {
+        return tipo[i];
+    }
+
+    public int getQualidade(int i) {
+        return qualidade[i];
+    }
+
+    public byte[] serializar() {
+        byte[] dados = new byte[TAMANHO_CABECALHO + quantidade * BYTES_POR_MINUCIA];
+        System.arraycopy(MAGICO, 0, dados, 0, MAGICO.length);
+        dados[4] = (byte) VERSAO;
+        escreverShort(dados, 5, largura);
+        escreverShort(dados, 7, altura);
+        escreverShort(dados, 9, periodoDecimos);
+        dados[11] = (byte) quantidade;
+        dados[12] = (byte) classe;
+        int p = TAMANHO_CABECALHO;
+        for (int i = 0; i < quantidade; i++) {
+            escreverShort(dados, p, x[i]);
+            escreverShort(dados, p + 2, y[i]);
+            dados[p + 4] = (byte) angulo[i];
+            dados[p + 5] = (byte) ((tipo[i] << 7) | (qualidade[i] & 0x7F));
+            p += BYTES_POR_MINUCIA;
+        }
+        return dados;
+    }
+
+    /**
+     * Indica se os bytes são um template deste formato (e não do SDK nativo).
+     */
+    public static boolean isTemplate(byte[] dados) {
+        if (dados == null || dados.length < TAMANHO_CABECALHO_V1) {
+            return false;
+        }
+        for (int i = 0; i < MAGICO.length; i++) {
+            if (dados[i] != MAGICO[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @throws IllegalArgumentException se os bytes não forem um template válido
+     */
+    public static TemplateMinucias ler(byte[] dados) {
+        if (!isTemplate(dados)) {
+            throw new IllegalArgumentException("Dados não são um template de minúcias");
+        }
+        if (dados[4] != 1 && dados[4] != VERSAO) {
+            throw new IllegalArgumentException("Versão de template não suportada: " + dados[4]);
+        }
+        int cabecalho = dados[4] == 1 ? TAMANHO_CABECALHO_V1 : TAMANHO_CABECALHO;
+        int quantidade = dados[11] & 0xFF;
+        if (dados.length < cabecalho + quantidade * BYTES_POR_MINUCIA) {
+            throw new IllegalArgumentException("Template truncado");
+        }
+        int classe = dados[4] == 1 ? CLASSE_DESCONHECIDA : dados[12];
+        if (classe < CLASSE_DESCONHECIDA || classe > CLASSE_VERTICILO) {
+            throw new IllegalArgumentException("Classe de padrão inválida: " + classe);
+        }
+        int[] x = new int[quantidade];
+        int[] y = new int[quantidade];
+        int[] angulo = new int[quantidade];
+        int[] tipo = new int[quantidade];
+        int[] qualidade = new int[quantidade];
+        int p = cabecalho;
+        for (int i = 0; i < quantidade; i++) {
+            x[i] = lerShort(dados, p);
+            y[i] = lerShort(dados, p + 2);
+            angulo[i] = dados[p + 4] & 0xFF;
+            tipo[i] = (dados[p + 5] >>> 7) & 1;
+            qualidade[i] = dados[p + 5] & 0x7F;
+            p += BYTES_POR_MINUCIA;
+        }
+        return new TemplateMinucias(lerShort(dados, 5), lerShort(dados, 7), lerShort(dados, 9),
+            classe, quantidade, x, y, angulo, tipo, qualidade);
+    }
+
+    private static void escreverShort(byte[] dados, int posicao, int valor) {
+        dados[posicao] = (byte) (valor >>> 8);
+        dados[posicao + 1] = (byte) valor;
+    }
+
+    private static int lerShort(byte[] dados, int posicao) {
+        return ((dados[posicao] & 0xFF) << 8) | (dados[posicao + 1] & 0xFF);
+    }
+
+    @Override
+    public String toString() {
+        int bifurcacoes = 0;
+        for (int i = 0; i < quantidade; i++) {
+            bifurcacoes += tipo[i];
+        }
+        return "TemplateMinucias[" + largura + "x" + altura + ", " + quantidade + " minúcias ("
+            + bifurcacoes + " bifurcações), período " + getPeriodoCristas() + " px, classe " + classe + "]";
+    }
+
+    @Override
+    public boolean equals(Object outro) {
+        return outro instanceof TemplateMinucias
+            && Arrays.equals(serializar(), ((TemplateMinucias) outro).serializar());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(serializar());
+    }
+}
@@ -0,0 +1,116 @@
+package com.sistema.ponto.biometria.driver;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Abstração do driver do leitor biométrico.
+ * Os métodos espelham as funções do ZKFinger SDK (FingerprintSensorEx) para que
+ * o restante do sistema possa trocar o hardware real pelo simulador sem alterações.
+ * Os códigos de retorno seguem as mesmas convenções do SDK: 0 indica sucesso e
+ * valores negativos indicam erro.
+ */
+public interface DriverSensor {
+
+    // Códigos de parâmetros do dispositivo
+    int PARAM_LARGURA = 1;
+    int PARAM_ALTURA = 2;
+    int PARAM_SENSIBILIDADE = 4;
+    int PARAM_LED = 101;
+    int PARAM_VELOCIDADE = 2001;
+    int PARAM_BEEP = 2002;
+    // Número de série (texto ASCII): identifica o leitor físico, ao contrário
+    // do índice, que muda quando um leitor anterior da lista é desconectado
+    int PARAM_SERIAL = 1103;
+    int TAMANHO_MAXIMO_SERIAL = 64;
+
+    // Códigos de retorno (mesmos valores do FingerprintSensorErrorCode)
+    int ZKFP_ERR_OK = 0;
+    int ZKFP_ERR_INIT = -2;
+    int ZKFP_ERR_NO_DEVICE = -3;
+    int ZKFP_ERR_INVALID_PARAM = -5;
+    int ZKFP_ERR_OPEN = -6;
+    int ZKFP_ERR_INVALID_HANDLE = -7;
+    int ZKFP_ERR_CAPTURE = -8;
+    int ZKFP_ERR_EXTRACT_FP = -9;
+    int ZKFP_ERR_FAIL = -17;
+    int ZKFP_ERR_NOT_OPENED = -23;
+    int ZKFP_ERR_NOT_INIT = -24;
+
+    int init();
+
+    int terminate();
+
+    int getDeviceCount();
+
+    long openDevice(int index);
+
+    int closeDevice(long handle);
+
+    int getParameters(long handle, int parametro, byte[] valor, int[] tamanho);
+
+    int setParameters(long handle, int parametro, byte[] valor, int tamanho);
+
+    int acquireFingerprintImage(long handle, byte[] imagem);
+
+    int acquireFingerprint(long handle, byte[] imagem, byte[] template, int[] tamanhoTemplate);
+
+    long dbInit();
+
+    int dbFree(long dbHandle);
+
+    int dbAdd(long dbHandle, int fid, byte[] template);
+
+    int dbDel(long dbHandle, int fid);
+
+    int dbClear(long dbHandle);
+
+    int dbMatch(long dbHandle, byte[] template1, byte[] template2);
+
+    int dbIdentify(long dbHandle, byte[] template, int[] fid, int[] score);
+
+    /**
+     * Lê um parâmetro inteiro (little-endian, 4 bytes) do dispositivo.
+     * Retorna -1 se o SDK não conseguir ler o parâmetro.
+     */
+    default int lerParametroInt(long handle, int parametro) {
+        byte[] valor = new byte[4];
+        int[] tamanho = {4};
+        if (getParameters(handle, parametro, valor, tamanho) != ZKFP_ERR_OK) {
+            return -1;
+        }
+        return byteArrayToInt(valor);
+    }
+
+    /**
+     * Lê o número de série do leitor ({@link #PARAM_SERIAL}).
+     * Retorna null se o SDK não informar.
+     */
+    default String lerSerial(long handle) {
+        byte[] valor = new byte[TAMANHO_MAXIMO_SERIAL];
+        int[] tamanho = {valor.length};
+        if (getParameters(handle, PARAM_SERIAL, valor, tamanho) != ZKFP_ERR_OK) {
+            return null;
+        }
+        int fim = Math.min(Math.max(tamanho[0], 0), valor.length);
+        while (fim > 0 && (valor[fim - 1] == 0 || valor[fim - 1] == ' ')) {
+            fim--;
+        }
+        return fim == 0 ? null : new String(valor, 0, fim, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Escreve um parâmetro de um byte no dispositivo (LED, beep, sensibilidade...).
+     */
+    default int escreverParametro(long handle, int parametro, int valor) {
+        byte[] bytes = new byte[4];
+        bytes[0] = (byte) valor;
+        return setParameters(handle, parametro, bytes, 4);
+    }
+
+    static int byteArrayToInt(byte[] bytes) {
+        return ((bytes[3] & 0xFF) << 24) |
+               ((bytes[2] & 0xFF) << 16) |
+               ((bytes[1] & 0xFF) << 8) |
+               (bytes[0] & 0xFF);
+    }
+}
@@ -0,0 +1,91 @@
+package com.sistema.ponto.biometria.driver;
+
+import com.zkteco.biometric.FingerprintSensorEx;
+
+/**
+ * Driver que delega diretamente para o ZKFinger SDK (FingerprintSensorEx).
+ * A classe do SDK só é carregada quando este driver é utilizado, evitando
+ * o carregamento das DLLs quando o simulador está ativo.
+ */
+public class DriverZKTeco implements DriverSensor {
+
+    @Override
+    public int init() {
+        return FingerprintSensorEx.Init();
+    }
+
+    @Override
+    public int terminate() {
+        return FingerprintSensorEx.Terminate();
+    }
+
+    @Override
+    public int getDeviceCount() {
+        return FingerprintSensorEx.GetDeviceCount();
+    }
+
+    @Override
+    public long openDevice(int index) {
+        return FingerprintSensorEx.OpenDevice(index);
+    }
+
+    @Override
+    public int closeDevice(long handle) {
+        return FingerprintSensorEx.CloseDevice(handle);
+    }
+
+    @Override
+    public int getParameters(long handle, int parametro, byte[] valor, int[] tamanho) {
+        return FingerprintSensorEx.GetParameters(handle, parametro, valor, tamanho);
+    }
+
+    @Override
+    public int setParameters(long handle, int parametro, byte[] valor, int tamanho) {
+        return FingerprintSensorEx.SetParameters(handle, parametro, valor, tamanho);
+    }
+
+    @Override
+    public int acquireFingerprintImage(long handle, byte[] imagem) {
+        return FingerprintSensorEx.AcquireFingerprintImage(handle, imagem);
+    }
+
+    @Override
+    public int acquireFingerprint(long handle, byte[] imagem, byte[] template, int[] tamanhoTemplate) {
+        return FingerprintSensorEx.AcquireFingerprint(handle, imagem, template, tamanhoTemplate);
+    }
+
+    @Override
+    public long dbInit() {
+        return FingerprintSensorEx.DBInit();
+    }
+
+    @Override
+    public int dbFree(long dbHandle) {
+        return FingerprintSensorEx.DBFree(dbHandle);
+    }
+
+    @Override
+    public int dbAdd(long dbHandle, int fid, byte[] template) {
+        return FingerprintSensorEx.DBAdd(dbHandle, fid, template);
+    }
+
+    @Override
+    public int dbDel(long dbHandle, int fid) {
+        return FingerprintSensorEx.DBDel(dbHandle, fid);
+    }
+
+    @Override
+    public int dbClear(long dbHandle) {
+        return FingerprintSensorEx.DBClear(dbHandle);
+    }
+
+    @Override
+    public int dbMatch(long dbHandle, byte[] template1, byte[] template2) {
+        return FingerprintSensorEx.DBMatch(dbHandle, template1, template2);
+    }
+
+    @Override
+    public int dbIdentify(long dbHandle, byte[] template, int[] fid, int[] score) {
+        return FingerprintSensorEx.DBIdentify(dbHandle, template, fid, score);
+    }
+}
@@ -0,0 +1,44 @@
+package com.sistema.ponto.biometria.driver;
+
+import com.sistema.ponto.log.Log;
+
+/**
+ * Seleciona o driver do leitor utilizado pela aplicação.
+ * Por padrão usa o ZKFinger SDK; com -Dponto.sensor.driver=simulador usa o
+ * {@link SimuladorSensor}, permitindo executar tudo sem o leitor físico.
+ */
+public final class FabricaDriver {
+
+    private static final Log log = Log.para(FabricaDriver.class);
+
+    public static final String PROPRIEDADE_DRIVER = "ponto.sensor.driver";
+    public static final String DRIVER_ZK = "zk";
+    public static final String DRIVER_SIMULADOR = "simulador";
+
+    private static DriverSensor driver;
+
+    private FabricaDriver() {
+    }
+
+    public static synchronized DriverSensor getDriver() {
+        if (driver == null) {
+            driver = criar(System.getProperty(PROPRIEDADE_DRIVER, DRIVER_ZK));
+        }
+        return driver;
+    }
+
+    /**
+     * Substitui o driver padrão. Deve ser chamado antes de o leitor ser inicializado.
+     */
+    public static synchronized void setDriver(DriverSensor novoDriver) {
+        driver = novoDriver;
+    }
+
+    public static DriverSensor criar(String nome) {
+        if (DRIVER_SIMULADOR.equalsIgnoreCase(nome)) {
+            log.info("Usando simulador do leitor biométrico");
+            return new SimuladorSensor();
+        }
+        return new DriverZKTeco();
+    }
+}
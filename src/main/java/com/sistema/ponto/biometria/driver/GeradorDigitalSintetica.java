@@ -0,0 +1,96 @@
+package com.sistema.ponto.biometria.driver;
+
+import java.util.Random;
+
+/**
+ * Gera imagens sintéticas de impressões digitais usando um modelo de fase AM-FM:
+ * as cristas são cos(fase), onde a fase tem uma componente contínua (que define o
+ * padrão arco, presilha ou verticilo) e uma componente espiral, cujos pontos
+ * singulares produzem terminações e bifurcações de crista (minúcias).
+ * A mesma semente sempre produz o mesmo dedo.
+ */
+public class GeradorDigitalSintetica {
+
+    public static final int PADRAO_ARCO = 0;
+    public static final int PADRAO_PRESILHA = 1;
+    public static final int PADRAO_VERTICILO = 2;
+
+    private static final double DOIS_PI = Math.PI * 2;
+
+    private final int largura;
+    private final int altura;
+
+    public GeradorDigitalSintetica(int largura, int altura) {
+        this.largura = largura;
+        this.altura = altura;
+    }
+
+    /**
+     * Gera a imagem "mestre" do dedo (cristas escuras sobre vales claros), sem
+     * máscara de contato nem ruído. Valores em tons de cinza 0-255.
+     */
+    public byte[] gerar(long semente) {
+        Random rnd = new Random(semente);
+        int padrao = rnd.nextInt(3);
+
+        // Período das cristas a 500 DPI fica entre 8 e 11 pixels
+        double frequencia = 1.0 / (8.0 + rnd.nextDouble() * 3.0);
+        double cx = largura * (0.42 + rnd.nextDouble() * 0.16);
+        double cy = altura * (0.38 + rnd.nextDouble() * 0.16);
+
+        // Minúcias: pontos singulares da componente espiral
+        int totalMinucias = 25 + rnd.nextInt(20);
+        double[] mx = new double[totalMinucias];
+        double[] my = new double[totalMinucias];
+        double[] sinal = new double[totalMinucias];
+        for (int i = 0; i < totalMinucias; i++) {
+            mx[i] = largura * (0.15 + rnd.nextDouble() * 0.7);
+            my[i] = altura * (0.12 + rnd.nextDouble() * 0.76);
+            sinal[i] = rnd.nextBoolean() ? 1.0 : -1.0;
+        }
+
+        // Distorção de baixa frequência para evitar cristas perfeitamente regulares
+        double ampDistorcao = 3.0 + rnd.nextDouble() * 4.0;
+        double faseDistorcaoX = rnd.nextDouble() * DOIS_PI;
+        double faseDistorcaoY = rnd.nextDouble() * DOIS_PI;
+        double curvatura = 0.6 + rnd.nextDouble() * 0.6;
+
+        byte[] imagem = new byte[largura * altura];
+        for (int y = 0; y < altura; y++) {
+            for (int x = 0; x < largura; x++) {
+                double px = x + ampDistorcao * Math.sin(y / 37.0 + faseDistorcaoX);
+                double py = y + ampDistorcao * Math.sin(x / 41.0 + faseDistorcaoY);
+                double dx = px - cx;
+                double dy = py - cy;
+
+                double fase = DOIS_PI * frequencia * faseContinua(padrao, dx, dy, curvatura);
+                for (int i = 0; i < totalMinucias; i++) {
+                    fase += sinal[i] * Math.atan2(py - my[i], px - mx[i]);
+                }
+
+                int valor = (int) (128 + 110 * Math.cos(fase));
+                imagem[y * largura + x] = (byte) valor;
+            }
+        }
+        return imagem;
+    }
+
+    private double faseContinua(int padrao, double dx, double dy, double curvatura) {
+        switch (padrao) {
+            case PADRAO_ARCO:
+                // Cristas horizontais com uma elevação suave no centro
+                return dy + 30.0 * curvatura * Math.exp(-(dx * dx) / (2 * 60.0 * 60.0));
+            case PADRAO_VERTICILO:
+                // Cristas concêntricas levemente elípticas
+                return Math.sqrt(dx * dx + dy * dy * 0.8 * curvatura);
+            default:
+                // Presilha: circular acima do núcleo, abrindo em "U" abaixo dele
+                double r = Math.sqrt(dx * dx + dy * dy);
+                if (dy <= 0) {
+                    return r;
+                }
+                double peso = Math.min(1.0, dy / 80.0);
+                return (1 - peso) * r + peso * (Math.abs(dx) * curvatura + dy * 0.5);
+        }
+    }
+}
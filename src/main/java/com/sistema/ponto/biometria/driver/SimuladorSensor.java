@@ -0,0 +1,759 @@
+package com.sistema.ponto.biometria.driver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulador do leitor ZK4500 em Java puro.
+ * Gera quadros sintéticos com as dimensões reais do sensor, alternando entre
+ * "sem dedo" e "dedo presente" segundo tempos configuráveis, com ruído, latência
+ * e injeção de falhas. Permite medir e testar toda a cadeia de captura e
+ * comparação em máquinas sem o leitor físico.
+ */
+public class SimuladorSensor implements DriverSensor {
+
+    public static final int LARGURA_ZK4500 = 280;
+    public static final int ALTURA_ZK4500 = 360;
+    public static final int TAMANHO_TEMPLATE = 2048;
+    public static final int LIMIAR_IDENTIFICACAO = 50;
+
+    private static final int TAMANHO_CACHE_DEDOS = 16;
+    private static final byte[] MAGICO = {'S', 'I', 'M', 'T'};
+
+    private volatile int largura = LARGURA_ZK4500;
+    private volatile int altura = ALTURA_ZK4500;
+    // Leitores físicos ligados, na ordem da lista do SDK (índice -> número do leitor)
+    private volatile int[] conectados = {0};
+    private int proximoNumero = 1;
+    private volatile int quantidadeDedos = 10;
+    private volatile long semente = 4500;
+
+    private volatile long tempoDedoAusenteMs = 1500;
+    private volatile long tempoDedoPresenteMs = 1500;
+    private volatile long tempoContatoMs = 150;
+    private volatile double ruido = 6.0;
+    private volatile long latenciaMs = 0;
+    private volatile long latenciaVariacaoMs = 0;
+    private volatile double probabilidadeFalha = 0.0;
+    private volatile int codigoFalha = ZKFP_ERR_CAPTURE;
+    private volatile boolean modoManual = false;
+    private volatile boolean dedoArtificial = false;
+
+    private volatile boolean inicializado = false;
+    private final AtomicLong proximoHandle = new AtomicLong(0x5100);
+    // Array copiado a cada abertura/fechamento: a busca por handle no laço de
+    // captura não aloca (um Map<Long, ...> faria boxing do handle a cada quadro)
+    private volatile Dispositivo[] dispositivos = new Dispositivo[0];
+    private final Map<Long, Map<Integer, byte[]>> bancos = new ConcurrentHashMap<>();
+    private final Map<Long, byte[]> cacheDedos = new LinkedHashMap<Long, byte[]>(TAMANHO_CACHE_DEDOS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> maisAntigo) {
+            return size() > TAMANHO_CACHE_DEDOS;
+        }
+    };
+
+    /**
+     * Estado de um leitor simulado aberto.
+     */
+    private static class Dispositivo {
+        final long handle;
+        // Número do leitor físico: não muda quando outro leitor sai da lista
+        final int numero;
+        final long inicioNanos = System.nanoTime();
+        final Map<Integer, Integer> parametros = new HashMap<>();
+        int dedoManual = -1;
+        long dedoManualDesdeNanos;
+        int deslocamentoX;
+        int deslocamentoY;
+        int semente;
+        int dedoMestre = -1;
+        byte[] mestre;
+
+        Dispositivo(long handle, int numero) {
+            this.handle = handle;
+            this.numero = numero;
+            this.semente = 0x9E3779B9 * (numero + 1);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Configuração
+    // ---------------------------------------------------------------------
+
+    public void setDimensoes(int largura, int altura) {
+        this.largura = largura;
+        this.altura = altura;
+        descartarImagensMestre();
+    }
+
+    private void descartarImagensMestre() {
+        synchronized (cacheDedos) {
+            cacheDedos.clear();
+        }
+        for (Dispositivo d : dispositivos) {
+            synchronized (d) {
+                d.dedoMestre = -1;
+                d.mestre = null;
+            }
+        }
+    }
+
+    /**
+     * Liga os leitores 0 a quantidade - 1 (os de número maior são desconectados).
+     */
+    public synchronized void setQuantidadeDispositivos(int quantidadeDispositivos) {
+        int[] novos = new int[Math.max(0, quantidadeDispositivos)];
+        for (int i = 0; i < novos.length; i++) {
+            novos[i] = i;
+        }
+        conectados = novos;
+        proximoNumero = Math.max(proximoNumero, novos.length);
+    }
+
+    /**
+     * Desconecta o leitor na posição {@code indice} da lista do SDK; os
+     * seguintes passam a ter índice uma unidade menor, como no ZKFinger.
+     *
+     * @return número do leitor desconectado, ou -1 se o índice não existe
+     */
+    public synchronized int desconectarDispositivo(int indice) {
+        int[] atuais = conectados;
+        if (indice < 0 || indice >= atuais.length) {
+            return -1;
+        }
+        int[] novos = new int[atuais.length - 1];
+        System.arraycopy(atuais, 0, novos, 0, indice);
+        System.arraycopy(atuais, indice + 1, novos, indice, atuais.length - indice - 1);
+        conectados = novos;
+        return atuais[indice];
+    }
+
+    /**
+     * Liga um leitor no fim da lista do SDK: um leitor novo, ou o de
+     * {@code numero} de volta (mesmo número de série).
+     *
+     * @return número do leitor ligado
+     */
+    public synchronized int conectarDispositivo(int numero) {
+        if (numero < 0) {
+            numero = proximoNumero;
+        }
+        proximoNumero = Math.max(proximoNumero, numero + 1);
+        int[] atuais = conectados;
+        for (int conectado : atuais) {
+            if (conectado == numero) {
+                return numero;
+            }
+        }
+        int[] novos = Arrays.copyOf(atuais, atuais.length + 1);
+        novos[atuais.length] = numero;
+        conectados = novos;
+        return numero;
+    }
+
+    /**
+     * Handles abertos no leitor de {@code numero} (para conferir que nenhum
+     * leitor físico foi aberto duas vezes).
+     */
+    public int getHandlesAbertos(int numero) {
+        int abertos = 0;
+        for (Dispositivo d : dispositivos) {
+            if (d.numero == numero) {
+                abertos++;
+            }
+        }
+        return abertos;
+    }
+
+    public static String serial(int numero) {
+        return String.format("SIM%04d", numero);
+    }
+
+    private boolean isConectado(Dispositivo d) {
+        for (int conectado : conectados) {
+            if (conectado == d.numero) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void setQuantidadeDedos(int quantidadeDedos) {
+        this.quantidadeDedos = Math.max(1, quantidadeDedos);
+    }
+
+    public void setSemente(long semente) {
+        this.semente = semente;
+        descartarImagensMestre();
+    }
+
+    /**
+     * Define o ciclo automático: tempo sem dedo seguido de tempo com dedo no sensor.
+     */
+    public void setTemposDedo(long ausenteMs, long presenteMs) {
+        this.tempoDedoAusenteMs = ausenteMs;
+        this.tempoDedoPresenteMs = presenteMs;
+    }
+
+    /**
+     * Tempo que o dedo leva para atingir a área de contato completa.
+     */
+    public void setTempoContatoMs(long tempoContatoMs) {
+        this.tempoContatoMs = tempoContatoMs;
+    }
+
+    /**
+     * Desvio aproximado do ruído por pixel, em níveis de cinza.
+     */
+    public void setRuido(double ruido) {
+        this.ruido = ruido;
+    }
+
+    public void setLatencia(long latenciaMs, long variacaoMs) {
+        this.latenciaMs = latenciaMs;
+        this.latenciaVariacaoMs = variacaoMs;
+    }
+
+    /**
+     * Probabilidade (0 a 1) de uma captura retornar o código de erro informado.
+     */
+    public void setFalhas(double probabilidade, int codigoFalha) {
+        this.probabilidadeFalha = probabilidade;
+        this.codigoFalha = codigoFalha;
+    }
+
+    /**
+     * No modo manual o dedo só é colocado e retirado através de
+     * {@link #colocarDedo(int, int)} e {@link #retirarDedo(int)}.
+     */
+    public void setModoManual(boolean modoManual) {
+        this.modoManual = modoManual;
+    }
+
+    /**
+     * Simula uma réplica de gelatina ou silicone: cristas borradas e com pouco
+     * contraste, área de contato completa desde o primeiro quadro e nenhum
+     * movimento sobre o sensor.
+     */
+    public void setDedoArtificial(boolean dedoArtificial) {
+        this.dedoArtificial = dedoArtificial;
+        descartarImagensMestre();
+    }
+
+    /**
+     * @param numeroDispositivo número do leitor físico (igual ao índice enquanto
+     *                          nenhum leitor do meio da lista é desconectado)
+     */
+    public void colocarDedo(int numeroDispositivo, int dedo) {
+        for (Dispositivo d : dispositivos) {
+            if (d.numero == numeroDispositivo) {
+                synchronized (d) {
+                    d.dedoManual = dedo;
+                    d.dedoManualDesdeNanos = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    public void retirarDedo(int numeroDispositivo) {
+        colocarDedo(numeroDispositivo, -1);
+    }
+
+    // ---------------------------------------------------------------------
+    // SDK
+    // ---------------------------------------------------------------------
+
+    @Override
+    public synchronized int init() {
+        inicializado = true;
+        return ZKFP_ERR_OK;
+    }
+
+    @Override
+    public synchronized int terminate() {
+        inicializado = false;
+        dispositivos = new Dispositivo[0];
+        bancos.clear();
+        return ZKFP_ERR_OK;
+    }
+
+    @Override
+    public int getDeviceCount() {
+        return inicializado ? conectados.length : 0;
+    }
+
+    @Override
+    public long openDevice(int index) {
+        int[] lista = conectados;
+        if (!inicializado || index < 0 || index >= lista.length) {
+            return 0;
+        }
+        long handle = proximoHandle.incrementAndGet();
+        synchronized (this) {
+            Dispositivo[] atuais = dispositivos;
+            Dispositivo[] novos = Arrays.copyOf(atuais, atuais.length + 1);
+            novos[atuais.length] = new Dispositivo(handle, lista[index]);
+            dispositivos = novos;
+        }
+        return handle;
+    }
+
+    @Override
+    public synchronized int closeDevice(long handle) {
+        Dispositivo[] atuais = dispositivos;
+        for (int i = 0; i < atuais.length; i++) {
+            if (atuais[i].handle == handle) {
+                Dispositivo[] novos = new Dispositivo[atuais.length - 1];
+                System.arraycopy(atuais, 0, novos, 0, i);
+                System.arraycopy(atuais, i + 1, novos, i, atuais.length - i - 1);
+                dispositivos = novos;
+                return ZKFP_ERR_OK;
+            }
+        }
+        return ZKFP_ERR_INVALID_HANDLE;
+    }
+
+    private Dispositivo dispositivo(long handle) {
+        for (Dispositivo d : dispositivos) {
+            if (d.handle == handle) {
+                return d;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getParameters(long handle, int parametro, byte[] valor, int[] tamanho) {
+        Dispositivo d = dispositivo(handle);
+        if (d == null) {
+            return ZKFP_ERR_INVALID_HANDLE;
+        }
+        if (parametro == PARAM_SERIAL) {
+            byte[] texto = serial(d.numero).getBytes(StandardCharsets.US_ASCII);
+            if (valor.length < texto.length) {
+                return ZKFP_ERR_INVALID_PARAM;
+            }
+            System.arraycopy(texto, 0, valor, 0, texto.length);
+            if (tamanho != null && tamanho.length > 0) {
+                tamanho[0] = texto.length;
+            }
+            return ZKFP_ERR_OK;
+        }
+        int v;
+        if (parametro == PARAM_LARGURA) {
+            v = largura;
+        } else if (parametro == PARAM_ALTURA) {
+            v = altura;
+        } else {
+            synchronized (d) {
+                Integer armazenado = d.parametros.get(parametro);
+                v = armazenado == null ? 0 : armazenado;
+            }
+        }
+        valor[0] = (byte) v;
+        valor[1] = (byte) (v >> 8);
+        valor[2] = (byte) (v >> 16);
+        valor[3] = (byte) (v >> 24);
+        if (tamanho != null && tamanho.length > 0) {
+            tamanho[0] = 4;
+        }
+        return ZKFP_ERR_OK;
+    }
+
+    @Override
+    public int setParameters(long handle, int parametro, byte[] valor, int tamanho) {
+        Dispositivo d = dispositivo(handle);
+        if (d == null) {
+            return ZKFP_ERR_INVALID_HANDLE;
+        }
+        if (parametro == PARAM_LARGURA || parametro == PARAM_ALTURA) {
+            return ZKFP_ERR_INVALID_PARAM;
+        }
+        synchronized (d) {
+            d.parametros.put(parametro, DriverSensor.byteArrayToInt(valor));
+        }
+        return ZKFP_ERR_OK;
+    }
+
+    @Override
+    public int acquireFingerprintImage(long handle, byte[] imagem) {
+        Dispositivo d = dispositivo(handle);
+        if (d == null) {
+            return ZKFP_ERR_INVALID_HANDLE;
+        }
+        if (!isConectado(d)) {
+            return ZKFP_ERR_NO_DEVICE; // Leitor desconectado da lista
+        }
+        simularLatencia();
+        if (falhaInjetada()) {
+            return codigoFalha;
+        }
+        synchronized (d) {
+            renderizar(d, imagem, dedoAtual(d), tempoDeContatoMs(d));
+        }
+        return ZKFP_ERR_OK;
+    }
+
+    @Override
+    public int acquireFingerprint(long handle, byte[] imagem, byte[] template, int[] tamanhoTemplate) {
+        Dispositivo d = dispositivo(handle);
+        if (d == null) {
+            return ZKFP_ERR_INVALID_HANDLE;
+        }
+        if (!isConectado(d)) {
+            return ZKFP_ERR_NO_DEVICE;
+        }
+        simularLatencia();
+        if (falhaInjetada()) {
+            return codigoFalha;
+        }
+        int dedo;
+        synchronized (d) {
+            dedo = dedoAtual(d);
+            renderizar(d, imagem, dedo, tempoDeContatoMs(d));
+        }
+        if (dedo < 0) {
+            return ZKFP_ERR_CAPTURE;
+        }
+        int tamanho = escreverTemplate(template, dedo, ThreadLocalRandom.current().nextInt());
+        if (tamanhoTemplate != null && tamanhoTemplate.length > 0) {
+            tamanhoTemplate[0] = tamanho;
+        }
+        return ZKFP_ERR_OK;
+    }
+
+    @Override
+    public long dbInit() {
+        if (!inicializado) {
+            return 0;
+        }
+        long dbHandle = proximoHandle.incrementAndGet();
+        bancos.put(dbHandle, new ConcurrentHashMap<>());
+        return dbHandle;
+    }
+
+    @Override
+    public int dbFree(long dbHandle) {
+        return bancos.remove(dbHandle) != null ? ZKFP_ERR_OK : ZKFP_ERR_INVALID_HANDLE;
+    }
+
+    @Override
+    public int dbAdd(long dbHandle, int fid, byte[] template) {
+        Map<Integer, byte[]> banco = bancos.get(dbHandle);
+        if (banco == null) {
+            return ZKFP_ERR_INVALID_HANDLE;
+        }
+        if (dedoDoTemplate(template) < 0) {
+            return ZKFP_ERR_INVALID_PARAM;
+        }
+        banco.put(fid, template.clone());
+        return ZKFP_ERR_OK;
+    }
+
+    @Override
+    public int dbDel(long dbHandle, int fid) {
+        Map<Integer, byte[]> banco = bancos.get(dbHandle);
+        if (banco == null) {
+            return ZKFP_ERR_INVALID_HANDLE;
+        }
+        return banco.remove(fid) != null ? ZKFP_ERR_OK : ZKFP_ERR_FAIL;
+    }
+
+    @Override
+    public int dbClear(long dbHandle) {
+        Map<Integer, byte[]> banco = bancos.get(dbHandle);
+        if (banco == null) {
+            return ZKFP_ERR_INVALID_HANDLE;
+        }
+        banco.clear();
+        return ZKFP_ERR_OK;
+    }
+
+    @Override
+    public int dbMatch(long dbHandle, byte[] template1, byte[] template2) {
+        if (!bancos.containsKey(dbHandle)) {
+            return ZKFP_ERR_INVALID_HANDLE;
+        }
+        int dedo1 = dedoDoTemplate(template1);
+        int dedo2 = dedoDoTemplate(template2);
+        if (dedo1 < 0 || dedo2 < 0) {
+            return ZKFP_ERR_INVALID_PARAM;
+        }
+        return pontuar(dedo1, lerInt(template1, 8), dedo2, lerInt(template2, 8));
+    }
+
+    @Override
+    public int dbIdentify(long dbHandle, byte[] template, int[] fid, int[] score) {
+        Map<Integer, byte[]> banco = bancos.get(dbHandle);
+        if (banco == null) {
+            return ZKFP_ERR_INVALID_HANDLE;
+        }
+        int dedo = dedoDoTemplate(template);
+        if (dedo < 0) {
+            return ZKFP_ERR_INVALID_PARAM;
+        }
+        int nonce = lerInt(template, 8);
+        int melhorId = -1;
+        int melhorScore = -1;
+        for (Map.Entry<Integer, byte[]> entrada : banco.entrySet()) {
+            byte[] candidato = entrada.getValue();
+            int s = pontuar(dedo, nonce, dedoDoTemplate(candidato), lerInt(candidato, 8));
+            if (s > melhorScore) {
+                melhorScore = s;
+                melhorId = entrada.getKey();
+            }
+        }
+        if (melhorScore < LIMIAR_IDENTIFICACAO) {
+            return ZKFP_ERR_FAIL;
+        }
+        fid[0] = melhorId;
+        score[0] = melhorScore;
+        return ZKFP_ERR_OK;
+    }
+
+    // ---------------------------------------------------------------------
+    // Simulação
+    // ---------------------------------------------------------------------
+
+    /**
+     * Retorna o dedo atualmente no sensor, ou -1 se não houver dedo.
+     */
+    private int dedoAtual(Dispositivo d) {
+        if (modoManual) {
+            return d.dedoManual;
+        }
+        long ciclo = tempoDedoAusenteMs + tempoDedoPresenteMs;
+        if (ciclo <= 0) {
+            return -1;
+        }
+        long decorrido = (System.nanoTime() - d.inicioNanos) / 1_000_000L;
+        if (decorrido % ciclo < tempoDedoAusenteMs) {
+            return -1;
+        }
+        long colocacao = decorrido / ciclo;
+        return (int) ((colocacao + d.numero) % quantidadeDedos);
+    }
+
+    private long tempoDeContatoMs(Dispositivo d) {
+        if (modoManual) {
+            return (System.nanoTime() - d.dedoManualDesdeNanos) / 1_000_000L;
+        }
+        long ciclo = tempoDedoAusenteMs + tempoDedoPresenteMs;
+        if (ciclo <= 0) {
+            return 0;
+        }
+        long decorrido = (System.nanoTime() - d.inicioNanos) / 1_000_000L;
+        return decorrido % ciclo - tempoDedoAusenteMs;
+    }
+
+    private void renderizar(Dispositivo d, byte[] imagem, int dedo, long contatoMs) {
+        int w = largura;
+        int h = altura;
+        int total = Math.min(imagem.length, w * h);
+        int amplitudeRuido = (int) Math.round(ruido * 1.7);
+        int x32 = d.semente;
+
+        if (dedo < 0) {
+            d.deslocamentoX = 0;
+            d.deslocamentoY = 0;
+            for (int i = 0; i < total; i++) {
+                x32 ^= x32 << 13;
+                x32 ^= x32 >>> 17;
+                x32 ^= x32 << 5;
+                int v = 250 + ruidoTriangular(x32, amplitudeRuido);
+                imagem[i] = (byte) (v > 255 ? 255 : v);
+            }
+            d.semente = x32;
+            return;
+        }
+
+        if (d.dedoMestre != dedo || d.mestre == null) {
+            d.mestre = imagemDoDedo(dedo);
+            d.dedoMestre = dedo;
+        }
+        byte[] mestre = d.mestre;
+
+        // O dedo "rola" levemente sobre o sensor a cada quadro; a réplica é rígida
+        boolean artificial = dedoArtificial;
+        x32 ^= x32 << 13;
+        x32 ^= x32 >>> 17;
+        x32 ^= x32 << 5;
+        if (!artificial) {
+            d.deslocamentoX = limitar(d.deslocamentoX + passo(x32), -6, 6);
+            d.deslocamentoY = limitar(d.deslocamentoY + passo(x32 >>> 2), -6, 6);
+        }
+
+        double contato = artificial || tempoContatoMs <= 0
+            ? 1.0 : Math.min(1.0, Math.max(0, contatoMs) / (double) tempoContatoMs);
+        double escala = 0.35 + 0.65 * contato;
+        double rx = w * 0.42 * escala;
+        double ry = h * 0.45 * escala;
+        double cx = w / 2.0 + d.deslocamentoX;
+        double cy = h / 2.0 + d.deslocamentoY;
+        double invRx2 = 1.0 / (rx * rx);
+        double invRy2 = 1.0 / (ry * ry);
+
+        for (int y = 0; y < h; y++) {
+            double dy = y - cy;
+            double termoY = dy * dy * invRy2;
+            int ym = limitar(y - d.deslocamentoY, 0, h - 1) * w;
+            int linha = y * w;
+            for (int x = 0; x < w && linha + x < total; x++) {
+                x32 ^= x32 << 13;
+                x32 ^= x32 >>> 17;
+                x32 ^= x32 << 5;
+                double dx = x - cx;
+                double r = dx * dx * invRx2 + termoY;
+                int v;
+                if (r >= 1.0) {
+                    v = 250;
+                } else {
+                    int xm = limitar(x - d.deslocamentoX, 0, w - 1);
+                    v = mestre[ym + xm] & 0xFF;
+                    if (r > 0.8) {
+                        // Borda do dedo: pressão menor, cristas mais claras
+                        double peso = (r - 0.8) * 5.0;
+                        v = (int) (v * (1 - peso) + 250 * peso);
+                    }
+                }
+                v += ruidoTriangular(x32, amplitudeRuido);
+                imagem[linha + x] = (byte) (v < 0 ? 0 : (v > 255 ? 255 : v));
+            }
+        }
+        d.semente = x32;
+    }
+
+    private static int passo(int aleatorio) {
+        int bits = aleatorio & 3;
+        return bits == 0 ? -1 : (bits == 3 ? 1 : 0);
+    }
+
+    private static int ruidoTriangular(int aleatorio, int amplitude) {
+        if (amplitude == 0) {
+            return 0;
+        }
+        int a = (aleatorio & 0xFFFF) % (amplitude + 1);
+        int b = ((aleatorio >>> 16) & 0xFFFF) % (amplitude + 1);
+        return a - b;
+    }
+
+    private byte[] imagemDoDedo(int dedo) {
+        long chave = semente * 31 + dedo;
+        boolean artificial = dedoArtificial;
+        synchronized (cacheDedos) {
+            byte[] mestre = cacheDedos.get(artificial ? ~chave : chave);
+            if (mestre == null) {
+                mestre = new GeradorDigitalSintetica(largura, altura).gerar(chave);
+                if (artificial) {
+                    mestre = moldar(mestre, largura, altura);
+                }
+                cacheDedos.put(artificial ? ~chave : chave, mestre);
+            }
+            return mestre;
+        }
+    }
+
+    /**
+     * Réplica moldada a partir da digital: média 3x3 (perde o detalhe fino) e
+     * contraste crista-vale reduzido.
+     */
+    private static byte[] moldar(byte[] mestre, int w, int h) {
+        byte[] copia = new byte[mestre.length];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int soma = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    int linha = limitar(y + dy, 0, h - 1) * w;
+                    for (int dx = -1; dx <= 1; dx++) {
+                        soma += mestre[linha + limitar(x + dx, 0, w - 1)] & 0xFF;
+                    }
+                }
+                copia[y * w + x] = (byte) (128 + (soma / 9 - 128) * 55 / 100);
+            }
+        }
+        return copia;
+    }
+
+    private void simularLatencia() {
+        long espera = latenciaMs;
+        if (latenciaVariacaoMs > 0) {
+            espera += ThreadLocalRandom.current().nextLong(latenciaVariacaoMs + 1);
+        }
+        if (espera > 0) {
+            try {
+                Thread.sleep(espera);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean falhaInjetada() {
+        return probabilidadeFalha > 0 && ThreadLocalRandom.current().nextDouble() < probabilidadeFalha;
+    }
+
+    // ---------------------------------------------------------------------
+    // Templates simulados: "SIMT" + dedo + nonce da captura
+    // ---------------------------------------------------------------------
+
+    /**
+     * Cria um template simulado para o dedo informado, útil para popular bancos
+     * de teste sem passar pela captura.
+     */
+    public static byte[] criarTemplate(int dedo, int nonce) {
+        byte[] template = new byte[12];
+        escreverTemplate(template, dedo, nonce);
+        return template;
+    }
+
+    private static int escreverTemplate(byte[] template, int dedo, int nonce) {
+        System.arraycopy(MAGICO, 0, template, 0, MAGICO.length);
+        escreverInt(template, 4, dedo);
+        escreverInt(template, 8, nonce);
+        return 12;
+    }
+
+    private static int dedoDoTemplate(byte[] template) {
+        if (template == null || template.length < 12) {
+            return -1;
+        }
+        for (int i = 0; i < MAGICO.length; i++) {
+            if (template[i] != MAGICO[i]) {
+                return -1;
+            }
+        }
+        return lerInt(template, 4);
+    }
+
+    private static int pontuar(int dedo1, int nonce1, int dedo2, int nonce2) {
+        int mistura = (nonce1 * 31 + nonce2) & 0x7FFFFFFF;
+        if (dedo1 == dedo2) {
+            return 60 + mistura % 36;
+        }
+        return mistura % 20;
+    }
+
+    private static void escreverInt(byte[] destino, int posicao, int valor) {
+        destino[posicao] = (byte) valor;
+        destino[posicao + 1] = (byte) (valor >> 8);
+        destino[posicao + 2] = (byte) (valor >> 16);
+        destino[posicao + 3] = (byte) (valor >> 24);
+    }
+
+    private static int lerInt(byte[] origem, int posicao) {
+        return (origem[posicao] & 0xFF) |
+               ((origem[posicao + 1] & 0xFF) << 8) |
+               ((origem[posicao + 2] & 0xFF) << 16) |
+               ((origem[posicao + 3] & 0xFF) << 24);
+    }
+
+    private static int limitar(int valor, int minimo, int maximo) {
+        return valor < minimo ? minimo : (valor > maximo ? maximo : valor);
+    }
+}
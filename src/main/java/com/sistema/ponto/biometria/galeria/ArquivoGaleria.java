@@ -0,0 +1,255 @@
+package com.sistema.ponto.biometria.galeria;
+
+import com.sistema.ponto.log.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Armazenamento local da galeria: um snapshot com todos os templates e um
+ * diário com as alterações feitas depois dele.
+ * <p>
+ * Snapshot (big-endian): "RLGS", versão, quantidade, registros (fid, tamanho,
+ * bytes) e o CRC32 de tudo no final. É lido de uma vez e gravado num arquivo
+ * temporário renomeado por cima do anterior, então uma queda durante a
+ * gravação deixa o snapshot antigo intacto.
+ * <p>
+ * Diário: registros (operação, fid, tamanho, bytes) anexados a cada alteração.
+ * A leitura para no primeiro registro incompleto (queda no meio da escrita) ou
+ * inválido (operação desconhecida, final zerado de um arquivo pré-alocado): o
+ * snapshot e os registros anteriores valem e o diário é cortado ali.
+ * Não é thread-safe; o {@link GerenciadorGaleria} serializa o acesso.
+ */
+final class ArquivoGaleria {
+
+    private static final Log log = Log.para(ArquivoGaleria.class);
+
+    static final String NOME_SNAPSHOT = "galeria.snap";
+    static final String NOME_DIARIO = "galeria.diario";
+    static final int OPERACAO_ADICIONAR = 1;
+    static final int OPERACAO_REMOVER = 2;
+
+    private static final int MAGICO = 0x524C4753; // "RLGS"
+    private static final int VERSAO = 1;
+    private static final int TAMANHO_MAXIMO_TEMPLATE = 64 * 1024;
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+
+    private final Path pasta;
+    private final Path snapshot;
+    private final Path diario;
+    private DataOutputStream saidaDiario;
+    private int registrosDiario;
+
+    ArquivoGaleria(Path pasta) {
+        this.pasta = pasta;
+        this.snapshot = pasta.resolve(NOME_SNAPSHOT);
+        this.diario = pasta.resolve(NOME_DIARIO);
+    }
+
+    Path getPasta() {
+        return pasta;
+    }
+
+    int getRegistrosDiario() {
+        return registrosDiario;
+    }
+
+    /**
+     * Estado salvo: snapshot com o diário aplicado por cima, na ordem do
+     * snapshot. Um snapshot corrompido é renomeado (para não ser sobrescrito
+     * pelo próximo) e tratado como vazio.
+     */
+    Map<Integer, byte[]> ler() throws IOException {
+        Map<Integer, byte[]> templates = new LinkedHashMap<>();
+        if (Files.exists(snapshot)) {
+            try {
+                lerSnapshot(Files.readAllBytes(snapshot), templates);
+            } catch (IOException e) {
+                Path corrompido = pasta.resolve(NOME_SNAPSHOT + ".corrompido");
+                Files.move(snapshot, corrompido, StandardCopyOption.REPLACE_EXISTING);
+                log.erro("Snapshot da galeria inválido ({}), movido para {}", e.getMessage(), corrompido);
+                templates.clear();
+            }
+        }
+        if (Files.exists(diario)) {
+            byte[] dados = Files.readAllBytes(diario);
+            int validos = aplicarDiario(dados, templates);
+            if (validos < dados.length) {
+                // Corta o resto para as próximas alterações não ficarem depois dele
+                log.aviso("Diário da galeria cortado em {} de {} bytes ({} registros válidos)",
+                    validos, dados.length, registrosDiario);
+                try (FileChannel canal = FileChannel.open(diario, StandardOpenOption.WRITE)) {
+                    canal.truncate(validos);
+                }
+            }
+        }
+        return templates;
+    }
+
+    private static void lerSnapshot(byte[] dados, Map<Integer, byte[]> templates) throws IOException {
+        if (dados.length < 16) {
+            throw new IOException("arquivo truncado");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(dados, 0, dados.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(dados, dados.length - 4, 4).getInt()) {
+            throw new IOException("CRC não confere");
+        }
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(dados, 0, dados.length - 4));
+        if (entrada.readInt() != MAGICO) {
+            throw new IOException("não é um snapshot de galeria");
+        }
+        int versao = entrada.readInt();
+        if (versao != VERSAO) {
+            throw new IOException("versão não suportada: " + versao);
+        }
+        int quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            int fid = entrada.readInt();
+            templates.put(fid, lerTemplate(entrada));
+        }
+    }
+
+    /**
+     * Aplica os registros até o fim do diário ou até o primeiro incompleto ou
+     * inválido, que é tratado como fim.
+     *
+     * @return bytes do diário até o último registro válido
+     */
+    private int aplicarDiario(byte[] dados, Map<Integer, byte[]> templates) {
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(dados));
+        int validos = 0;
+        registrosDiario = 0;
+        try {
+            while (true) {
+                int operacao = entrada.readUnsignedByte();
+                if (operacao != OPERACAO_ADICIONAR && operacao != OPERACAO_REMOVER) {
+                    log.aviso("Operação desconhecida no diário da galeria ({}) no byte {}", operacao, validos);
+                    break;
+                }
+                int fid = entrada.readInt();
+                byte[] template = lerTemplate(entrada);
+                if (operacao == OPERACAO_ADICIONAR) {
+                    templates.put(fid, template);
+                } else {
+                    templates.remove(fid);
+                }
+                registrosDiario++;
+                validos = dados.length - entrada.available();
+            }
+        } catch (EOFException e) {
+            // Fim do diário (ou registro incompleto da última escrita)
+        } catch (IOException e) {
+            log.aviso("Registro inválido no diário da galeria no byte {}: {}", validos, e.getMessage());
+        }
+        return validos;
+    }
+
+    private static byte[] lerTemplate(DataInputStream entrada) throws IOException {
+        int tamanho = entrada.readInt();
+        if (tamanho < 0 || tamanho > TAMANHO_MAXIMO_TEMPLATE) {
+            throw new IOException("tamanho de template inválido: " + tamanho);
+        }
+        byte[] template = new byte[tamanho];
+        entrada.readFully(template);
+        return template;
+    }
+
+    void anexar(int operacao, int fid, byte[] template) throws IOException {
+        if (saidaDiario == null) {
+            Files.createDirectories(pasta);
+            saidaDiario = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(diario,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), TAMANHO_BUFFER));
+        }
+        saidaDiario.writeByte(operacao);
+        saidaDiario.writeInt(fid);
+        if (template == null) {
+            saidaDiario.writeInt(0);
+        } else {
+            saidaDiario.writeInt(template.length);
+            saidaDiario.write(template);
+        }
+        saidaDiario.flush();
+        registrosDiario++;
+    }
+
+    /**
+     * Grava um snapshot novo com os templates e esvazia o diário.
+     */
+    void gravarSnapshot(Map<Integer, byte[]> templates) throws IOException {
+        Files.createDirectories(pasta);
+        Path temporario = pasta.resolve(NOME_SNAPSHOT + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream saidaCanal = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int inicio, int tamanho) throws IOException {
+                    crc.update(b, inicio, tamanho);
+                    ByteBuffer buffer = ByteBuffer.wrap(b, inicio, tamanho);
+                    while (buffer.hasRemaining()) {
+                        canal.write(buffer);
+                    }
+                }
+            };
+            DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(saidaCanal, TAMANHO_BUFFER));
+            saida.writeInt(MAGICO);
+            saida.writeInt(VERSAO);
+            saida.writeInt(templates.size());
+            for (Map.Entry<Integer, byte[]> entrada : templates.entrySet()) {
+                saida.writeInt(entrada.getKey());
+                saida.writeInt(entrada.getValue().length);
+                saida.write(entrada.getValue());
+            }
+            saida.flush();
+            ByteBuffer rodape = ByteBuffer.allocate(4).putInt(0, (int) crc.getValue());
+            while (rodape.hasRemaining()) {
+                canal.write(rodape);
+            }
+            canal.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporario);
+            throw e;
+        }
+        Files.move(temporario, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        fecharDiario();
+        Files.deleteIfExists(diario);
+        registrosDiario = 0;
+    }
+
+    void fechar() {
+        try {
+            fecharDiario();
+        } catch (IOException e) {
+            log.erro("Falha ao fechar diário da galeria: {}", e.getMessage(), e);
+        }
+    }
+
+    private void fecharDiario() throws IOException {
+        if (saidaDiario != null) {
+            DataOutputStream saida = saidaDiario;
+            saidaDiario = null;
+            saida.close();
+        }
+    }
+}
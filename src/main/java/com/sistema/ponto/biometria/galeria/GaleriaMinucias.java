@@ -0,0 +1,357 @@
+package com.sistema.ponto.biometria.galeria;
+
+import com.sistema.ponto.biometria.comparacao.ComparadorMinucias;
+import com.sistema.ponto.biometria.comparacao.TemplateMinucias;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Templates Java da galeria, separados em compartimentos por características
+ * grosseiras do dedo: classe do padrão, faixa do período das cristas e faixa
+ * da quantidade de minúcias.
+ * <p>
+ * A identificação compara a sonda primeiro só com os compartimentos próximos
+ * do dela (distância até {@link #TOLERANCIA}) e só varre o resto quando nenhum
+ * candidato atinge {@link ComparadorMinucias#LIMIAR_COMPATIVEL}. Um dedo cujas
+ * características mudaram entre o cadastro e a captura continua sendo achado,
+ * só que pelo caminho lento.
+ * <p>
+ * A identificação não trava: lê um retrato (compartimentos e seus arrays)
+ * publicado num campo volatile. Inclusões escrevem depois da quantidade
+ * publicada e publicam um retrato novo; remoções copiam os arrays do
+ * compartimento, para não mexer no que uma identificação em andamento está lendo.
+ * <p>
+ * Com um executor, os compartimentos escolhidos são repartidos em grupos de
+ * tamanho parecido comparados em paralelo (um na thread que chamou).
+ */
+final class GaleriaMinucias {
+
+    /** Largura da faixa de período, em décimos de pixel. */
+    static final int FAIXA_PERIODO = 5;
+    /** Largura da faixa de quantidade de minúcias. */
+    static final int FAIXA_QUANTIDADE = 6;
+    /** Soma máxima das diferenças (classe e faixas) de um compartimento vizinho. */
+    static final int TOLERANCIA = 2;
+
+    private static final int CAPACIDADE_INICIAL = 16;
+    /** Abaixo disso por parte, dividir custa mais do que compara. */
+    private static final int MINIMO_POR_PARTE = 128;
+
+    private static final class Compartimento {
+        final int chave;
+        final int[] fids;
+        final TemplateMinucias[] templates;
+        final int quantidade;
+
+        Compartimento(int chave, int[] fids, TemplateMinucias[] templates, int quantidade) {
+            this.chave = chave;
+            this.fids = fids;
+            this.templates = templates;
+            this.quantidade = quantidade;
+        }
+    }
+
+    private static final class Retrato {
+        final Compartimento[] compartimentos;
+        final int total;
+
+        Retrato(Compartimento[] compartimentos, int total) {
+            this.compartimentos = compartimentos;
+            this.total = total;
+        }
+    }
+
+    private volatile Retrato retrato = new Retrato(new Compartimento[0], 0);
+    private volatile boolean filtroAtivo = true;
+    // fid -> chave do compartimento e posição dentro dele
+    private final Map<Integer, Integer> chaves = new HashMap<>();
+    private final Map<Integer, Integer> posicoes = new HashMap<>();
+    private final Map<Integer, TemplateMinucias> porFid = new HashMap<>();
+
+    // Métricas
+    private final AtomicLong identificacoes = new AtomicLong();
+    private final AtomicLong varredurasCompletas = new AtomicLong();
+    private final AtomicLong comparacoes = new AtomicLong();
+    private final AtomicLong tamanhoGaleriaSomado = new AtomicLong();
+
+    static int chave(TemplateMinucias template) {
+        int faixaPeriodo = Math.min(255, Math.round(template.getPeriodoCristas() * 10) / FAIXA_PERIODO);
+        int faixaQuantidade = Math.min(255, template.getQuantidade() / FAIXA_QUANTIDADE);
+        return (template.getClasse() << 16) | (faixaPeriodo << 8) | faixaQuantidade;
+    }
+
+    /**
+     * Classes vizinhas na ordem arco, presilha, verticilo ficam a 1; a classe
+     * desconhecida fica a 0 de todas.
+     */
+    static int distancia(int chaveA, int chaveB) {
+        int classeA = chaveA >>> 16;
+        int classeB = chaveB >>> 16;
+        int classe = classeA == TemplateMinucias.CLASSE_DESCONHECIDA || classeB == TemplateMinucias.CLASSE_DESCONHECIDA
+            ? 0 : Math.abs(classeA - classeB);
+        return classe
+            + Math.abs(((chaveA >>> 8) & 0xFF) - ((chaveB >>> 8) & 0xFF))
+            + Math.abs((chaveA & 0xFF) - (chaveB & 0xFF));
+    }
+
+    synchronized void adicionar(int fid, TemplateMinucias template) {
+        int chave = chave(template);
+        Integer chaveAnterior = chaves.get(fid);
+        if (chaveAnterior != null) {
+            if (chaveAnterior == chave) {
+                porFid.put(fid, template);
+                Compartimento compartimento = retrato.compartimentos[indiceCompartimento(retrato, chave)];
+                compartimento.templates[posicoes.get(fid)] = template;
+                return;
+            }
+            remover(fid);
+        }
+        Retrato atual = retrato;
+        int indice = indiceCompartimento(atual, chave);
+        Compartimento[] compartimentos;
+        Compartimento compartimento;
+        if (indice < 0) {
+            compartimentos = Arrays.copyOf(atual.compartimentos, atual.compartimentos.length + 1);
+            indice = compartimentos.length - 1;
+            compartimento = new Compartimento(chave, new int[CAPACIDADE_INICIAL],
+                new TemplateMinucias[CAPACIDADE_INICIAL], 0);
+        } else {
+            compartimentos = atual.compartimentos.clone();
+            compartimento = compartimentos[indice];
+        }
+        int[] fids = compartimento.fids;
+        TemplateMinucias[] templates = compartimento.templates;
+        int quantidade = compartimento.quantidade;
+        if (quantidade == fids.length) {
+            fids = Arrays.copyOf(fids, quantidade * 2);
+            templates = Arrays.copyOf(templates, quantidade * 2);
+        }
+        fids[quantidade] = fid;
+        templates[quantidade] = template;
+        chaves.put(fid, chave);
+        posicoes.put(fid, quantidade);
+        porFid.put(fid, template);
+        compartimentos[indice] = new Compartimento(chave, fids, templates, quantidade + 1);
+        retrato = new Retrato(compartimentos, atual.total + 1);
+    }
+
+    synchronized boolean remover(int fid) {
+        Integer chave = chaves.remove(fid);
+        if (chave == null) {
+            return false;
+        }
+        int posicao = posicoes.remove(fid);
+        porFid.remove(fid);
+        Retrato atual = retrato;
+        int indice = indiceCompartimento(atual, chave);
+        Compartimento compartimento = atual.compartimentos[indice];
+        int ultimo = compartimento.quantidade - 1;
+        int[] fids = compartimento.fids.clone();
+        TemplateMinucias[] templates = compartimento.templates.clone();
+        if (posicao != ultimo) {
+            fids[posicao] = fids[ultimo];
+            templates[posicao] = templates[ultimo];
+            posicoes.put(fids[posicao], posicao);
+        }
+        templates[ultimo] = null;
+        Compartimento[] compartimentos = atual.compartimentos.clone();
+        compartimentos[indice] = new Compartimento(chave, fids, templates, ultimo);
+        retrato = new Retrato(compartimentos, atual.total - 1);
+        return true;
+    }
+
+    synchronized TemplateMinucias obter(int fid) {
+        return porFid.get(fid);
+    }
+
+    private static int indiceCompartimento(Retrato retrato, int chave) {
+        Compartimento[] compartimentos = retrato.compartimentos;
+        for (int i = 0; i < compartimentos.length; i++) {
+            if (compartimentos[i].chave == chave) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return fid do melhor candidato com score compatível, ou -1
+     */
+    int identificar(TemplateMinucias sonda, ComparadorMinucias comparador, int[] score) {
+        return identificar(sonda, comparador, score, null, 1);
+    }
+
+    /**
+     * @param executor roda as partes além da primeira (null compara tudo na thread que chamou)
+     * @param partes   máximo de partes comparadas em paralelo
+     * @return fid do melhor candidato com score compatível, ou -1
+     */
+    int identificar(TemplateMinucias sonda, ComparadorMinucias comparador, int[] score,
+                    Executor executor, int partes) {
+        Retrato atual = retrato;
+        int chaveSonda = chave(sonda);
+        int[] resultado = {-1, 0};
+        int comparados = 0;
+        boolean filtrar = filtroAtivo;
+        List<Compartimento> proximos = new ArrayList<>();
+        List<Compartimento> restantes = new ArrayList<>();
+        for (Compartimento compartimento : atual.compartimentos) {
+            if (filtrar && distancia(compartimento.chave, chaveSonda) <= TOLERANCIA) {
+                proximos.add(compartimento);
+            } else {
+                restantes.add(compartimento);
+            }
+        }
+        if (filtrar) {
+            comparados += compararEmPartes(sonda, proximos, comparador, executor, partes, resultado);
+        }
+        if (resultado[0] < 0) {
+            // Nenhum candidato próximo serviu: varre os compartimentos restantes
+            comparados += compararEmPartes(sonda, restantes, comparador, executor, partes, resultado);
+            varredurasCompletas.incrementAndGet();
+        }
+        identificacoes.incrementAndGet();
+        comparacoes.addAndGet(comparados);
+        tamanhoGaleriaSomado.addAndGet(atual.total);
+        if (score != null && score.length > 0) {
+            score[0] = resultado[1];
+        }
+        return resultado[0];
+    }
+
+    /**
+     * Reparte os compartimentos em grupos (o maior vai para o grupo com menos
+     * templates), compara os grupos em paralelo e junta os resultados.
+     *
+     * @return templates comparados
+     */
+    private static int compararEmPartes(TemplateMinucias sonda, List<Compartimento> compartimentos,
+                                        ComparadorMinucias comparador, Executor executor, int partes,
+                                        int[] resultado) {
+        int total = 0;
+        for (Compartimento compartimento : compartimentos) {
+            total += compartimento.quantidade;
+        }
+        int grupos = executor == null ? 1 : Math.min(Math.min(partes, compartimentos.size()), total / MINIMO_POR_PARTE);
+        if (grupos <= 1) {
+            compararGrupo(sonda, compartimentos, comparador, resultado);
+            return total;
+        }
+        List<List<Compartimento>> divisao = new ArrayList<>(grupos);
+        int[] tamanhos = new int[grupos];
+        for (int i = 0; i < grupos; i++) {
+            divisao.add(new ArrayList<>());
+        }
+        List<Compartimento> ordenados = new ArrayList<>(compartimentos);
+        ordenados.sort((a, b) -> Integer.compare(b.quantidade, a.quantidade));
+        for (Compartimento compartimento : ordenados) {
+            int menor = 0;
+            for (int i = 1; i < grupos; i++) {
+                if (tamanhos[i] < tamanhos[menor]) {
+                    menor = i;
+                }
+            }
+            divisao.get(menor).add(compartimento);
+            tamanhos[menor] += compartimento.quantidade;
+        }
+        List<CompletableFuture<int[]>> outros = new ArrayList<>(grupos - 1);
+        for (int i = 1; i < grupos; i++) {
+            List<Compartimento> grupo = divisao.get(i);
+            outros.add(CompletableFuture.supplyAsync(() -> {
+                int[] parcial = {-1, 0};
+                compararGrupo(sonda, grupo, comparador, parcial);
+                return parcial;
+            }, executor));
+        }
+        compararGrupo(sonda, divisao.get(0), comparador, resultado);
+        for (CompletableFuture<int[]> outro : outros) {
+            juntar(outro.join(), resultado);
+        }
+        return total;
+    }
+
+    private static void compararGrupo(TemplateMinucias sonda, List<Compartimento> grupo,
+                                      ComparadorMinucias comparador, int[] resultado) {
+        int[] score = new int[1];
+        for (Compartimento compartimento : grupo) {
+            comparar(sonda, compartimento, comparador, score, resultado);
+        }
+    }
+
+    /**
+     * Mesma regra de {@link #comparar}: o fid só muda com um score maior.
+     */
+    private static void juntar(int[] parcial, int[] resultado) {
+        if (parcial[1] > resultado[1]) {
+            resultado[1] = parcial[1];
+            if (parcial[0] >= 0) {
+                resultado[0] = parcial[0];
+            }
+        }
+    }
+
+    /**
+     * Compara com um compartimento e guarda em resultado o melhor fid
+     * compatível e o maior score vistos até agora.
+     */
+    private static void comparar(TemplateMinucias sonda, Compartimento compartimento,
+                                 ComparadorMinucias comparador, int[] score, int[] resultado) {
+        int indice = comparador.identificar(sonda, compartimento.templates, compartimento.quantidade, score);
+        if (score[0] > resultado[1]) {
+            resultado[1] = score[0];
+            if (indice >= 0) {
+                resultado[0] = compartimento.fids[indice];
+            }
+        }
+    }
+
+    void setFiltroAtivo(boolean filtroAtivo) {
+        this.filtroAtivo = filtroAtivo;
+    }
+
+    boolean isFiltroAtivo() {
+        return filtroAtivo;
+    }
+
+    int getQuantidade() {
+        return retrato.total;
+    }
+
+    int getCompartimentos() {
+        return retrato.compartimentos.length;
+    }
+
+    long getIdentificacoes() {
+        return identificacoes.get();
+    }
+
+    /**
+     * Fração média da galeria comparada por identificação (1 = varredura completa).
+     */
+    double getTaxaPenetracao() {
+        long tamanho = tamanhoGaleriaSomado.get();
+        return tamanho > 0 ? comparacoes.get() / (double) tamanho : 1.0;
+    }
+
+    /**
+     * Fração das identificações que precisaram varrer a galeria inteira.
+     */
+    double getTaxaVarreduraCompleta() {
+        long total = identificacoes.get();
+        return total > 0 ? varredurasCompletas.get() / (double) total : 0.0;
+    }
+
+    void zerarMetricas() {
+        identificacoes.set(0);
+        varredurasCompletas.set(0);
+        comparacoes.set(0);
+        tamanhoGaleriaSomado.set(0);
+    }
+}
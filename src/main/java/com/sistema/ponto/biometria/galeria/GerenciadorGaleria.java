@@ -0,0 +1,724 @@
+package com.sistema.ponto.biometria.galeria;
+
+import com.sistema.ponto.biometria.LeitorBiometrico;
+import com.sistema.ponto.biometria.comparacao.ComparadorMinucias;
+import com.sistema.ponto.biometria.comparacao.TemplateMinucias;
+import com.sistema.ponto.biometria.driver.DriverSensor;
+import com.sistema.ponto.log.Log;
+import com.sistema.ponto.metricas.Histograma;
+import com.sistema.ponto.metricas.RegistroMetricas;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Galeria de templates dos funcionários usada na identificação 1:N.
+ * <p>
+ * Na partida {@link #iniciarCarga} lê o armazenamento local ({@link ArquivoGaleria}:
+ * snapshot mais diário) e carrega os templates em lotes paralelos numa thread
+ * de fundo; o leitor já pode ser usado e identifica contra o que já foi carregado.
+ * Templates do SDK vão para o banco do leitor (DBAdd); templates Java
+ * ({@link TemplateMinucias}) vão para a galeria do {@link ComparadorMinucias}.
+ * <p>
+ * A galeria fica também em memória: quando o leitor reconecta e o SDK cria um
+ * banco novo e vazio, ela é reenviada dali, sem ler o disco nem falar com o
+ * sistema web. {@link #adicionar} e {@link #remover} aplicam as alterações
+ * incrementais e as anotam no diário, que é consolidado num snapshot novo ao
+ * passar de {@link #LIMITE_DIARIO} registros e no {@link #encerrar}.
+ * <p>
+ * Na identificação com templates Java a galeria compara primeiro só os
+ * candidatos com características grosseiras parecidas com as da sonda
+ * ({@link GaleriaMinucias}); {@link #getTaxaPenetracao} e
+ * {@link #getTaxaVarreduraCompleta} mostram quanto isso poupa. Templates do SDK
+ * são opacos e continuam na busca exaustiva do DBIdentify.
+ * <p>
+ * Antes da galeria inteira a identificação tenta os funcionários identificados
+ * há pouco e os escalados para o turno atual ({@link #definirTurno}), e aceita
+ * logo o primeiro com score de {@link #LIMIAR_ACEITACAO_ANTECIPADA} ou mais;
+ * na troca de turno quase todo mundo é achado ali.
+ * <p>
+ * Os templates do SDK ficam divididos entre vários bancos ({@link PoolComparadores}):
+ * o DBIdentify roda em todos ao mesmo tempo e verificações 1:1 simultâneas
+ * ({@link #comparar}) usam bancos diferentes. A quantidade vem da propriedade
+ * {@code ponto.galeria.pool} ou de {@link #setTamanhoPool}; a identificação
+ * Java divide os compartimentos no mesmo número de partes.
+ */
+public class GerenciadorGaleria implements LeitorBiometrico.BancoListener {
+
+    private static final Log log = Log.para(GerenciadorGaleria.class);
+
+    public static final String PROPRIEDADE_PASTA = "ponto.galeria.pasta";
+    public static final String PASTA_PADRAO = "galeria";
+    public static final int TAMANHO_LOTE = 256;
+    public static final int LIMITE_DIARIO = 1000;
+    /** Score (escala 0-100) que encerra a busca nos prioritários sem olhar a galeria. */
+    public static final int LIMIAR_ACEITACAO_ANTECIPADA = 80;
+
+    private static GerenciadorGaleria instance;
+
+    private static final Histograma LATENCIA_IDENTIFICACAO = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_galeria_identificacao_segundos", "Duração da identificação 1:N");
+    private static final Histograma LATENCIA_COMPARACAO = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_galeria_comparacao_segundos", "Duração da verificação 1:1");
+
+    private static final class Entrada {
+        final int fid;
+        final byte[] template;
+        TemplateMinucias minucias;
+
+        Entrada(int fid, byte[] template) {
+            this.fid = fid;
+            this.template = template;
+        }
+    }
+
+    private final LeitorBiometrico leitor;
+    private final DriverSensor driver;
+    private final ArquivoGaleria arquivo;
+    private final ComparadorMinucias comparador = new ComparadorMinucias();
+    private final GaleriaMinucias galeriaMinucias = new GaleriaMinucias();
+    private final OrdemBusca ordemBusca = new OrdemBusca();
+    private volatile boolean ordenacaoAtiva = true;
+    private volatile int limiarAceitacaoAntecipada = LIMIAR_ACEITACAO_ANTECIPADA;
+    private final ExecutorService executor;
+
+    // Alterações (diário e galeria Java); adquirida antes da trava de um fragmento do pool
+    private final Object travaAlteracoes = new Object();
+    // Mapa em memória; o valor de um fid muda só com a trava do fragmento dele
+    private final Map<Integer, byte[]> templates = new ConcurrentHashMap<>();
+    private final PoolComparadores pool;
+
+    // fids alterados pelo sistema web enquanto a carga roda: a carga não os sobrescreve
+    private final Set<Integer> alteradosDuranteCarga = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean consolidando = new AtomicBoolean();
+    private CompletableFuture<Void> carga;
+    private volatile boolean carregada;
+    // A carga falhou: a galeria em memória não representa o que está salvo, então
+    // nenhum snapshot é gravado por cima do existente (as alterações vão para o diário)
+    private volatile boolean cargaFalhou;
+
+    // Métricas
+    private final AtomicInteger falhasBanco = new AtomicInteger();
+    private volatile long tempoCargaMs = -1;
+    private volatile long tempoRestauracaoMs = -1;
+
+    private GerenciadorGaleria() {
+        leitor = LeitorBiometrico.getInstance();
+        driver = leitor.getDriver();
+        pool = new PoolComparadores(driver, PoolComparadores.tamanhoPadrao());
+        arquivo = new ArquivoGaleria(Paths.get(System.getProperty(PROPRIEDADE_PASTA, PASTA_PADRAO)));
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        AtomicInteger contador = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, tarefa -> {
+            Thread thread = new Thread(tarefa, "galeria-" + contador.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        RegistroMetricas.getInstance().medidor("ponto_galeria_templates",
+            "Templates na galeria", this::getQuantidade);
+        leitor.adicionarBancoListener(this);
+        if (leitor.isInitialized()) {
+            onBancoInicializado(leitor.getDBHandle());
+        }
+    }
+
+    public static synchronized GerenciadorGaleria getInstance() {
+        if (instance == null) {
+            instance = new GerenciadorGaleria();
+        }
+        return instance;
+    }
+
+    /**
+     * Começa a carga do armazenamento local em segundo plano (só na primeira chamada).
+     */
+    public synchronized CompletableFuture<Void> iniciarCarga() {
+        if (carga == null) {
+            long inicio = System.nanoTime();
+            carga = CompletableFuture.supplyAsync(this::lerArmazenamento, executor)
+                .thenCompose(this::carregarEmLotes)
+                .whenComplete((resultado, erro) -> {
+                    if (erro != null) {
+                        cargaFalhou = true;
+                        log.erro("Falha ao carregar galeria: {}", erro.getMessage(), erro);
+                    }
+                    tempoCargaMs = (System.nanoTime() - inicio) / 1_000_000;
+                    alteradosDuranteCarga.clear();
+                    carregada = true;
+                    log.info("Galeria carregada: {} templates em {} ms ({} no comparador Java)",
+                        templates.size(), tempoCargaMs, galeriaMinucias.getQuantidade());
+                });
+        }
+        return carga;
+    }
+
+    /**
+     * Espera a carga inicial terminar.
+     *
+     * @return false se o tempo acabou antes
+     */
+    public boolean aguardarCarga(long tempoMs) {
+        try {
+            iniciarCarga().get(tempoMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            // Já registrado no término da carga
+            return true;
+        }
+    }
+
+    private List<Entrada> lerArmazenamento() {
+        Map<Integer, byte[]> salvos;
+        synchronized (travaAlteracoes) {
+            try {
+                salvos = arquivo.ler();
+            } catch (IOException e) {
+                cargaFalhou = true;
+                log.erro("Falha ao ler galeria em {}: {}", arquivo.getPasta(), e.getMessage(), e);
+                return Collections.emptyList();
+            }
+        }
+        List<Entrada> entradas = new ArrayList<>(salvos.size());
+        for (Map.Entry<Integer, byte[]> salvo : salvos.entrySet()) {
+            entradas.add(new Entrada(salvo.getKey(), salvo.getValue()));
+        }
+        return entradas;
+    }
+
+    private CompletableFuture<Void> carregarEmLotes(List<Entrada> entradas) {
+        List<CompletableFuture<Void>> lotes = new ArrayList<>();
+        for (int inicio = 0; inicio < entradas.size(); inicio += TAMANHO_LOTE) {
+            List<Entrada> lote = entradas.subList(inicio, Math.min(entradas.size(), inicio + TAMANHO_LOTE));
+            lotes.add(CompletableFuture.runAsync(() -> carregarLote(lote), executor));
+        }
+        return CompletableFuture.allOf(lotes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Decodifica o lote fora das travas (é a parte que roda em paralelo) e depois
+     * aplica tudo de uma vez.
+     */
+    private void carregarLote(List<Entrada> lote) {
+        for (Entrada entrada : lote) {
+            if (TemplateMinucias.isTemplate(entrada.template)) {
+                try {
+                    entrada.minucias = TemplateMinucias.ler(entrada.template);
+                } catch (IllegalArgumentException e) {
+                    log.erro("Template inválido na galeria (fid {}): {}", entrada.fid, e.getMessage());
+                }
+            }
+        }
+        synchronized (travaAlteracoes) {
+            for (Entrada entrada : lote) {
+                if (alteradosDuranteCarga.contains(entrada.fid)
+                    || (entrada.minucias == null && TemplateMinucias.isTemplate(entrada.template))) {
+                    continue;
+                }
+                PoolComparadores.Fragmento fragmento = pool.travar(entrada.fid);
+                try {
+                    templates.put(entrada.fid, entrada.template);
+                    if (entrada.minucias == null) {
+                        incluirNoBanco(fragmento, entrada.fid, entrada.template);
+                    }
+                } finally {
+                    pool.liberar(fragmento);
+                }
+            }
+            for (Entrada entrada : lote) {
+                if (entrada.minucias != null && !alteradosDuranteCarga.contains(entrada.fid)) {
+                    galeriaMinucias.adicionar(entrada.fid, entrada.minucias);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inclui ou substitui o template de um funcionário e anota no diário.
+     *
+     * @throws IllegalArgumentException se o template estiver no formato Java e for inválido
+     */
+    public void adicionar(int fid, byte[] template) {
+        TemplateMinucias minucias = TemplateMinucias.isTemplate(template) ? TemplateMinucias.ler(template) : null;
+        byte[] copia = template.clone();
+        synchronized (travaAlteracoes) {
+            if (!carregada) {
+                alteradosDuranteCarga.add(fid);
+            }
+            anotar(ArquivoGaleria.OPERACAO_ADICIONAR, fid, copia);
+            ordemBusca.invalidar(fid);
+            byte[] anterior;
+            PoolComparadores.Fragmento fragmento = pool.travar(fid);
+            try {
+                anterior = templates.put(fid, copia);
+                if (anterior != null && !TemplateMinucias.isTemplate(anterior) && fragmento.getHandle() != 0) {
+                    driver.dbDel(fragmento.getHandle(), fid);
+                }
+                if (minucias == null) {
+                    incluirNoBanco(fragmento, fid, copia);
+                }
+            } finally {
+                pool.liberar(fragmento);
+            }
+            if (minucias != null) {
+                galeriaMinucias.adicionar(fid, minucias);
+            } else if (anterior != null && TemplateMinucias.isTemplate(anterior)) {
+                galeriaMinucias.remover(fid);
+            }
+        }
+        consolidarSeNecessario();
+    }
+
+    /**
+     * @return false se o funcionário não estava na galeria
+     */
+    public boolean remover(int fid) {
+        byte[] anterior;
+        synchronized (travaAlteracoes) {
+            if (!carregada) {
+                alteradosDuranteCarga.add(fid);
+            }
+            PoolComparadores.Fragmento fragmento = pool.travar(fid);
+            try {
+                anterior = templates.remove(fid);
+                if (anterior != null && !TemplateMinucias.isTemplate(anterior) && fragmento.getHandle() != 0) {
+                    driver.dbDel(fragmento.getHandle(), fid);
+                }
+            } finally {
+                pool.liberar(fragmento);
+            }
+            ordemBusca.invalidar(fid);
+            if (anterior != null || !carregada) {
+                // Durante a carga o fid pode ainda não ter chegado do snapshot
+                anotar(ArquivoGaleria.OPERACAO_REMOVER, fid, null);
+            }
+            galeriaMinucias.remover(fid);
+        }
+        consolidarSeNecessario();
+        return anterior != null;
+    }
+
+    /**
+     * Identificação 1:N: primeiro os prioritários ({@link OrdemBusca}), depois a
+     * galeria inteira. Templates Java usam o comparador Java e os do SDK usam
+     * DBMatch nos prioritários e DBIdentify na galeria.
+     *
+     * @param score recebe o score do melhor candidato em score[0] (pode ser null)
+     * @return fid do funcionário ou -1
+     */
+    public int identificar(byte[] template, int[] score) {
+        long inicioIdentificacao = System.nanoTime();
+        try {
+            return identificarTemplate(template, score);
+        } finally {
+            LATENCIA_IDENTIFICACAO.registrarDesde(inicioIdentificacao);
+        }
+    }
+
+    private int identificarTemplate(byte[] template, int[] score) {
+        TemplateMinucias sonda = null;
+        if (TemplateMinucias.isTemplate(template)) {
+            try {
+                sonda = TemplateMinucias.ler(template);
+            } catch (IllegalArgumentException e) {
+                log.erro("Template inválido: {}", e.getMessage());
+                return -1;
+            }
+        }
+        int[] pontuacao = score != null ? score : new int[1];
+        if (!ordenacaoAtiva) {
+            return identificarNaGaleria(template, sonda, pontuacao);
+        }
+        long inicio = System.nanoTime();
+        OrdemBusca.Prioritarios prioritarios = ordemBusca.candidatos();
+        int[] comparados = new int[1];
+        int posicao = compararPrioritarios(template, sonda, prioritarios.fids, comparados, pontuacao);
+        int fid;
+        if (posicao >= 0) {
+            fid = prioritarios.fids[posicao];
+        } else {
+            fid = identificarNaGaleria(template, sonda, pontuacao);
+        }
+        ordemBusca.registrar(prioritarios, posicao, comparados[0], System.nanoTime() - inicio);
+        if (fid >= 0) {
+            ordemBusca.lembrar(fid);
+        }
+        return fid;
+    }
+
+    /**
+     * @return posição do primeiro prioritário com score de aceitação antecipada, ou -1
+     */
+    private int compararPrioritarios(byte[] template, TemplateMinucias sonda, int[] fids,
+                                     int[] comparados, int[] score) {
+        int limiar = limiarAceitacaoAntecipada;
+        if (sonda != null) {
+            int chaveSonda = GaleriaMinucias.chave(sonda);
+            for (int i = 0; i < fids.length; i++) {
+                TemplateMinucias candidato = galeriaMinucias.obter(fids[i]);
+                // Fora dos compartimentos vizinhos quase nunca é o mesmo dedo; a galeria o pega se for
+                if (candidato == null
+                    || GaleriaMinucias.distancia(GaleriaMinucias.chave(candidato), chaveSonda) > GaleriaMinucias.TOLERANCIA) {
+                    continue;
+                }
+                comparados[0]++;
+                int s = comparador.comparar(sonda, candidato);
+                if (s >= limiar) {
+                    score[0] = s;
+                    return i;
+                }
+            }
+            return -1;
+        }
+        // DBMatch não depende do conteúdo do banco: qualquer fragmento livre serve
+        PoolComparadores.Fragmento fragmento = pool.travarLivre();
+        try {
+            if (fragmento.getHandle() == 0) {
+                return -1;
+            }
+            for (int i = 0; i < fids.length; i++) {
+                byte[] candidato = templates.get(fids[i]);
+                if (candidato == null || TemplateMinucias.isTemplate(candidato)) {
+                    continue;
+                }
+                comparados[0]++;
+                int s = driver.dbMatch(fragmento.getHandle(), template, candidato);
+                if (s >= limiar) {
+                    score[0] = s;
+                    return i;
+                }
+            }
+        } finally {
+            pool.liberar(fragmento);
+        }
+        return -1;
+    }
+
+    private int identificarNaGaleria(byte[] template, TemplateMinucias sonda, int[] score) {
+        if (sonda != null) {
+            return galeriaMinucias.identificar(sonda, comparador, score, pool.getExecutor(), pool.getTamanho());
+        }
+        return pool.identificar(template, score);
+    }
+
+    /**
+     * Verificação 1:1 de dois templates do SDK (DBMatch num banco livre do pool).
+     *
+     * @return score (escala 0-100), ou código de erro negativo
+     */
+    public int comparar(byte[] template1, byte[] template2) {
+        long inicio = System.nanoTime();
+        try {
+            return pool.comparar(template1, template2);
+        } finally {
+            LATENCIA_COMPARACAO.registrarDesde(inicio);
+        }
+    }
+
+    /**
+     * Quantidade de bancos do SDK (e de partes da identificação Java). Com o
+     * leitor aberto, os bancos são recriados e a galeria é reenviada em segundo plano.
+     *
+     * @throws IllegalArgumentException fora de 1 a 16
+     */
+    public void setTamanhoPool(int tamanho) {
+        int geracao = pool.redimensionar(tamanho);
+        if (geracao >= 0) {
+            executor.execute(() -> restaurarBanco(geracao));
+        }
+    }
+
+    public int getTamanhoPool() {
+        return pool.getTamanho();
+    }
+
+    /**
+     * Escala do funcionário, para ele ser tentado primeiro perto da entrada e da
+     * saída. Fica só em memória; o sistema web reenvia a escala ao conectar.
+     */
+    public void definirTurno(int fid, LocalTime entrada, LocalTime saida) {
+        ordemBusca.definirTurno(fid, entrada, saida);
+    }
+
+    public void removerTurno(int fid) {
+        ordemBusca.removerTurno(fid);
+    }
+
+    public void limparTurnos() {
+        ordemBusca.limparTurnos();
+    }
+
+    /**
+     * Relógio usado para achar o turno atual (para testes e simulações).
+     */
+    public void setRelogio(Clock relogio) {
+        ordemBusca.setRelogio(relogio);
+    }
+
+    public void setCapacidadeRecentes(int capacidade) {
+        ordemBusca.setCapacidadeRecentes(capacidade);
+    }
+
+    /**
+     * Máximo de prioritários (recentes mais escalados) comparados antes da galeria.
+     */
+    public void setMaximoPrioritarios(int maximo) {
+        ordemBusca.setMaximoPrioritarios(maximo);
+    }
+
+    public void setLimiarAceitacaoAntecipada(int limiar) {
+        if (limiar < ComparadorMinucias.LIMIAR_COMPATIVEL || limiar > 100) {
+            throw new IllegalArgumentException("Limiar deve ficar entre "
+                + ComparadorMinucias.LIMIAR_COMPATIVEL + " e 100: " + limiar);
+        }
+        this.limiarAceitacaoAntecipada = limiar;
+    }
+
+    /**
+     * Liga ou desliga a busca nos prioritários (desligada, toda identificação vai
+     * direto à galeria).
+     */
+    public void setOrdenacaoAtiva(boolean ativa) {
+        this.ordenacaoAtiva = ativa;
+    }
+
+    public boolean isOrdenacaoAtiva() {
+        return ordenacaoAtiva;
+    }
+
+    private void incluirNoBanco(PoolComparadores.Fragmento fragmento, int fid, byte[] template) {
+        if (fragmento.getHandle() == 0) {
+            return;
+        }
+        int ret = driver.dbAdd(fragmento.getHandle(), fid, template);
+        if (ret != 0) {
+            falhasBanco.incrementAndGet();
+            log.erro("DBAdd falhou para fid {}: {}", fid, ret);
+        }
+    }
+
+    private void anotar(int operacao, int fid, byte[] template) {
+        try {
+            arquivo.anexar(operacao, fid, template);
+        } catch (IOException e) {
+            // A alteração vale em memória e entra no próximo snapshot
+            log.erro("Falha ao gravar diário da galeria: {}", e.getMessage());
+        }
+    }
+
+    private void consolidarSeNecessario() {
+        if (carregada && !cargaFalhou && arquivo.getRegistrosDiario() >= LIMITE_DIARIO && consolidando.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    salvarSnapshot();
+                } finally {
+                    consolidando.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Grava o snapshot com a galeria atual e esvazia o diário. Não faz nada antes
+     * da carga terminar nem depois de uma carga com falha (o snapshot sairia
+     * incompleto e substituiria o bom).
+     */
+    public boolean salvarSnapshot() {
+        if (!carregada) {
+            return false;
+        }
+        if (cargaFalhou) {
+            log.aviso("Carga da galeria falhou; snapshot em {} mantido", arquivo.getPasta());
+            return false;
+        }
+        synchronized (travaAlteracoes) {
+            long inicio = System.nanoTime();
+            try {
+                arquivo.gravarSnapshot(new HashMap<>(templates));
+                log.info("Snapshot da galeria gravado: {} templates em {} ms",
+                    templates.size(), (System.nanoTime() - inicio) / 1_000_000);
+                return true;
+            } catch (IOException e) {
+                log.erro("Falha ao gravar snapshot da galeria: {}", e.getMessage(), e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Banco novo do SDK (inicialização ou reconexão do leitor): cria os outros
+     * bancos do pool e reenvia a galeria em memória em lotes, em segundo plano.
+     */
+    @Override
+    public void onBancoInicializado(long novoHandle) {
+        int geracao = pool.abrir(novoHandle);
+        if (templates.isEmpty()) {
+            return;
+        }
+        executor.execute(() -> restaurarBanco(geracao));
+    }
+
+    @Override
+    public void onBancoLiberado(long handleLiberado) {
+        // Espera as operações em andamento; nada mais usa os handles depois disso
+        pool.fechar(handleLiberado);
+    }
+
+    private void restaurarBanco(int geracao) {
+        long inicio = System.nanoTime();
+        int enviados = pool.restaurar(geracao, templates, TAMANHO_LOTE, falhasBanco);
+        if (enviados < 0) {
+            return; // Leitor reconectou ou o pool mudou de novo; a restauração nova assume
+        }
+        tempoRestauracaoMs = (System.nanoTime() - inicio) / 1_000_000;
+        log.info("Banco do leitor restaurado: {} templates em {} bancos, {} ms",
+            enviados, pool.getTamanho(), tempoRestauracaoMs);
+    }
+
+    /**
+     * Grava o snapshot se houver alterações no diário e para as threads da galeria.
+     */
+    public void encerrar() {
+        if (arquivo.getRegistrosDiario() > 0) {
+            salvarSnapshot();
+        }
+        executor.shutdown();
+        pool.encerrar();
+        synchronized (travaAlteracoes) {
+            arquivo.fechar();
+        }
+    }
+
+    public boolean contem(int fid) {
+        return templates.containsKey(fid);
+    }
+
+    public int getQuantidade() {
+        return templates.size();
+    }
+
+    public boolean isCarregada() {
+        return carregada;
+    }
+
+    /**
+     * Duração da carga inicial em ms (-1 enquanto não termina).
+     */
+    public long getTempoCargaMs() {
+        return tempoCargaMs;
+    }
+
+    /**
+     * Duração da última restauração do banco do leitor em ms (-1 se não houve).
+     */
+    public long getTempoRestauracaoMs() {
+        return tempoRestauracaoMs;
+    }
+
+    /**
+     * Liga ou desliga o pré-filtro de candidatos da identificação Java (desligado,
+     * toda identificação varre a galeria inteira; útil para conferir que os
+     * resultados não mudam).
+     */
+    public void setFiltroCandidatos(boolean ativo) {
+        galeriaMinucias.setFiltroAtivo(ativo);
+    }
+
+    public boolean isFiltroCandidatos() {
+        return galeriaMinucias.isFiltroAtivo();
+    }
+
+    /**
+     * Fração média da galeria Java comparada por identificação (1 = busca exaustiva).
+     */
+    public double getTaxaPenetracao() {
+        return galeriaMinucias.getTaxaPenetracao();
+    }
+
+    /**
+     * Comparações poupadas pelo pré-filtro: tamanho da galeria dividido pelas
+     * comparações feitas, em média.
+     */
+    public double getAceleracao() {
+        double penetracao = galeriaMinucias.getTaxaPenetracao();
+        return penetracao > 0 ? 1.0 / penetracao : 1.0;
+    }
+
+    /**
+     * Fração das identificações Java em que nenhum candidato próximo serviu e a
+     * galeria inteira foi varrida.
+     */
+    public double getTaxaVarreduraCompleta() {
+        return galeriaMinucias.getTaxaVarreduraCompleta();
+    }
+
+    public long getIdentificacoesJava() {
+        return galeriaMinucias.getIdentificacoes();
+    }
+
+    public void zerarMetricasIdentificacao() {
+        galeriaMinucias.zerarMetricas();
+    }
+
+    /**
+     * Fração das identificações resolvidas nos prioritários (recentes ou turno).
+     */
+    public double getTaxaAcertoPrioritarios() {
+        return ordemBusca.getTaxaAcerto();
+    }
+
+    public long getAcertosRecentes() {
+        return ordemBusca.getAcertosRecentes();
+    }
+
+    public long getAcertosTurno() {
+        return ordemBusca.getAcertosTurno();
+    }
+
+    /**
+     * Latência média, em ms, das identificações resolvidas nos prioritários.
+     */
+    public double getLatenciaMediaAcertoMs() {
+        return ordemBusca.getLatenciaMediaAcertoMs();
+    }
+
+    /**
+     * Latência média, em ms, das identificações que caíram na galeria inteira
+     * (inclui as comparações com os prioritários antes da queda).
+     */
+    public double getLatenciaMediaQuedaMs() {
+        return ordemBusca.getLatenciaMediaQuedaMs();
+    }
+
+    public double getComparacoesPrioritariasMedias() {
+        return ordemBusca.getComparacoesPrioritariasMedias();
+    }
+
+    public void zerarMetricasOrdenacao() {
+        ordemBusca.zerarMetricas();
+    }
+
+    public int getFalhasBanco() {
+        return falhasBanco.get();
+    }
+}
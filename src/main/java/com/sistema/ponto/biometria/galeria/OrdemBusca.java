@@ -0,0 +1,223 @@
+package com.sistema.ponto.biometria.galeria;
+
+import java.time.Clock;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ordem em que a identificação tenta os funcionários antes da galeria inteira:
+ * primeiro os identificados há pouco (LRU limitado, o mais recente primeiro) e
+ * depois os escalados para um turno que começa ou termina perto da hora atual.
+ * <p>
+ * Guarda só os fids: o template comparado é sempre o atual da galeria, e
+ * {@link #invalidar} tira da lista quem foi recadastrado ou removido.
+ * Thread-safe.
+ */
+final class OrdemBusca {
+
+    static final int CAPACIDADE_RECENTES_PADRAO = 256;
+    static final int MAXIMO_PRIORITARIOS_PADRAO = 512;
+    /** Minutos antes e depois da entrada e da saída em que o turno conta como atual. */
+    static final int JANELA_TURNO_MINUTOS = 60;
+
+    private static final int MINUTOS_DIA = 24 * 60;
+
+    /** Candidatos de uma busca; os {@code recentes} primeiros vieram do LRU. */
+    static final class Prioritarios {
+        final int[] fids;
+        final int recentes;
+
+        Prioritarios(int[] fids, int recentes) {
+            this.fids = fids;
+            this.recentes = recentes;
+        }
+    }
+
+    private int capacidadeRecentes = CAPACIDADE_RECENTES_PADRAO;
+    private int maximoPrioritarios = MAXIMO_PRIORITARIOS_PADRAO;
+    private final LinkedHashMap<Integer, Boolean> recentes = new LinkedHashMap<>(64, 0.75f, true);
+
+    // fid -> {entrada, saída} em minutos do dia
+    private final Map<Integer, int[]> turnos = new HashMap<>();
+    private Clock relogio = Clock.systemDefaultZone();
+    private int minutoCalculado = -1;
+    private int[] escalados = new int[0];
+
+    // Métricas
+    private final AtomicLong identificacoes = new AtomicLong();
+    private final AtomicLong acertosRecentes = new AtomicLong();
+    private final AtomicLong acertosTurno = new AtomicLong();
+    private final AtomicLong nanosAcertos = new AtomicLong();
+    private final AtomicLong nanosQuedas = new AtomicLong();
+    private final AtomicLong comparacoesPrioritarias = new AtomicLong();
+
+    synchronized Prioritarios candidatos() {
+        int[] fids = new int[Math.min(maximoPrioritarios, recentes.size() + escaladosAgora().length)];
+        int n = 0;
+        // Iteração do LinkedHashMap vai do menos para o mais recente
+        Integer[] ordemRecentes = recentes.keySet().toArray(new Integer[0]);
+        for (int i = ordemRecentes.length - 1; i >= 0 && n < fids.length; i--) {
+            fids[n++] = ordemRecentes[i];
+        }
+        int quantidadeRecentes = n;
+        for (int fid : escalados) {
+            if (n == fids.length) {
+                break;
+            }
+            if (!recentes.containsKey(fid)) {
+                fids[n++] = fid;
+            }
+        }
+        return new Prioritarios(n == fids.length ? fids : Arrays.copyOf(fids, n), quantidadeRecentes);
+    }
+
+    /**
+     * Escalados para um turno com entrada ou saída dentro da janela da hora
+     * atual; recalculado quando o minuto muda ou a escala é alterada.
+     */
+    private int[] escaladosAgora() {
+        LocalTime agora = LocalTime.now(relogio);
+        int minuto = agora.getHour() * 60 + agora.getMinute();
+        if (minuto != minutoCalculado) {
+            List<Integer> lista = new ArrayList<>();
+            for (Map.Entry<Integer, int[]> turno : turnos.entrySet()) {
+                if (perto(turno.getValue()[0], minuto) || perto(turno.getValue()[1], minuto)) {
+                    lista.add(turno.getKey());
+                }
+            }
+            escalados = new int[lista.size()];
+            for (int i = 0; i < escalados.length; i++) {
+                escalados[i] = lista.get(i);
+            }
+            minutoCalculado = minuto;
+        }
+        return escalados;
+    }
+
+    private static boolean perto(int minutoTurno, int minuto) {
+        int diferenca = Math.abs(minutoTurno - minuto);
+        return Math.min(diferenca, MINUTOS_DIA - diferenca) <= JANELA_TURNO_MINUTOS;
+    }
+
+    synchronized void lembrar(int fid) {
+        recentes.put(fid, Boolean.TRUE);
+        if (recentes.size() > capacidadeRecentes) {
+            Iterator<Integer> maisAntigo = recentes.keySet().iterator();
+            maisAntigo.next();
+            maisAntigo.remove();
+        }
+    }
+
+    synchronized void invalidar(int fid) {
+        recentes.remove(fid);
+    }
+
+    synchronized void definirTurno(int fid, LocalTime entrada, LocalTime saida) {
+        turnos.put(fid, new int[] {
+            entrada.getHour() * 60 + entrada.getMinute(),
+            saida.getHour() * 60 + saida.getMinute()
+        });
+        minutoCalculado = -1;
+    }
+
+    synchronized void removerTurno(int fid) {
+        turnos.remove(fid);
+        minutoCalculado = -1;
+    }
+
+    synchronized void limparTurnos() {
+        turnos.clear();
+        minutoCalculado = -1;
+    }
+
+    synchronized void setRelogio(Clock relogio) {
+        this.relogio = relogio;
+        minutoCalculado = -1;
+    }
+
+    synchronized void setCapacidadeRecentes(int capacidade) {
+        if (capacidade < 0) {
+            throw new IllegalArgumentException("Capacidade inválida: " + capacidade);
+        }
+        capacidadeRecentes = capacidade;
+        while (recentes.size() > capacidadeRecentes) {
+            Iterator<Integer> maisAntigo = recentes.keySet().iterator();
+            maisAntigo.next();
+            maisAntigo.remove();
+        }
+    }
+
+    synchronized void setMaximoPrioritarios(int maximo) {
+        if (maximo < 0) {
+            throw new IllegalArgumentException("Máximo inválido: " + maximo);
+        }
+        maximoPrioritarios = maximo;
+    }
+
+    /**
+     * @param posicao posição do fid aceito em {@link Prioritarios#fids}, ou -1 se
+     *                a busca caiu na galeria inteira
+     */
+    void registrar(Prioritarios prioritarios, int posicao, int comparados, long nanos) {
+        identificacoes.incrementAndGet();
+        comparacoesPrioritarias.addAndGet(comparados);
+        if (posicao < 0) {
+            nanosQuedas.addAndGet(nanos);
+        } else {
+            nanosAcertos.addAndGet(nanos);
+            if (posicao < prioritarios.recentes) {
+                acertosRecentes.incrementAndGet();
+            } else {
+                acertosTurno.incrementAndGet();
+            }
+        }
+    }
+
+    long getIdentificacoes() {
+        return identificacoes.get();
+    }
+
+    long getAcertosRecentes() {
+        return acertosRecentes.get();
+    }
+
+    long getAcertosTurno() {
+        return acertosTurno.get();
+    }
+
+    double getTaxaAcerto() {
+        long total = identificacoes.get();
+        return total > 0 ? (acertosRecentes.get() + acertosTurno.get()) / (double) total : 0.0;
+    }
+
+    double getLatenciaMediaAcertoMs() {
+        long acertos = acertosRecentes.get() + acertosTurno.get();
+        return acertos > 0 ? nanosAcertos.get() / 1e6 / acertos : 0.0;
+    }
+
+    double getLatenciaMediaQuedaMs() {
+        long quedas = identificacoes.get() - acertosRecentes.get() - acertosTurno.get();
+        return quedas > 0 ? nanosQuedas.get() / 1e6 / quedas : 0.0;
+    }
+
+    double getComparacoesPrioritariasMedias() {
+        long total = identificacoes.get();
+        return total > 0 ? comparacoesPrioritarias.get() / (double) total : 0.0;
+    }
+
+    void zerarMetricas() {
+        identificacoes.set(0);
+        acertosRecentes.set(0);
+        acertosTurno.set(0);
+        nanosAcertos.set(0);
+        nanosQuedas.set(0);
+        comparacoesPrioritarias.set(0);
+    }
+}
@@ -0,0 +1,386 @@
+package com.sistema.ponto.biometria.galeria;
+
+import com.sistema.ponto.biometria.comparacao.TemplateMinucias;
+import com.sistema.ponto.biometria.driver.DriverSensor;
+import com.sistema.ponto.log.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bancos do SDK usados pela galeria, divididos em fragmentos: o banco do leitor
+ * e mais {@code tamanho - 1} criados com DBInit. O funcionário fica no
+ * fragmento {@code fid % tamanho}.
+ * <p>
+ * O DBIdentify roda em todos os fragmentos ao mesmo tempo (o da thread que
+ * chamou e os outros no executor) e fica o maior score. O DBMatch de uma
+ * verificação 1:1 usa qualquer fragmento livre, então verificações simultâneas
+ * não esperam umas pelas outras.
+ * <p>
+ * Cada fragmento tem sua trava; inclusões e remoções de um fid travam só o
+ * fragmento dele. Abrir, fechar e redimensionar travam o pool inteiro e esperam
+ * as operações em andamento.
+ */
+final class PoolComparadores {
+
+    private static final Log log = Log.para(PoolComparadores.class);
+
+    static final String PROPRIEDADE_TAMANHO = "ponto.galeria.pool";
+    static final int TAMANHO_MAXIMO = 16;
+
+    /** Banco do SDK de um fragmento; {@link #getHandle} é 0 com o banco fechado. */
+    static final class Fragmento {
+        private final ReentrantLock trava = new ReentrantLock();
+        // Criado pelo pool com DBInit (o do leitor é liberado pelo LeitorBiometrico)
+        private boolean proprio;
+        private volatile long handle;
+
+        long getHandle() {
+            return handle;
+        }
+    }
+
+    private final DriverSensor driver;
+    private final ReentrantReadWriteLock estrutura = new ReentrantReadWriteLock();
+    private final ExecutorService executor;
+    private final AtomicInteger proximoLivre = new AtomicInteger();
+    private volatile Fragmento[] fragmentos;
+    // Muda a cada abertura, fechamento ou redimensionamento; a restauração antiga para
+    private int geracao;
+
+    PoolComparadores(DriverSensor driver, int tamanho) {
+        this.driver = driver;
+        this.fragmentos = criarFragmentos(validar(tamanho));
+        AtomicInteger contador = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(TAMANHO_MAXIMO, TAMANHO_MAXIMO, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), tarefa -> {
+                Thread thread = new Thread(tarefa, "comparador-" + contador.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    /**
+     * Tamanho da propriedade {@link #PROPRIEDADE_TAMANHO}, ou um fragmento por
+     * processador (até 8).
+     */
+    static int tamanhoPadrao() {
+        String valor = System.getProperty(PROPRIEDADE_TAMANHO);
+        if (valor != null) {
+            try {
+                return validar(Integer.parseInt(valor.trim()));
+            } catch (IllegalArgumentException e) {
+                log.erro("{} inválido ({}), usando o padrão", PROPRIEDADE_TAMANHO, valor);
+            }
+        }
+        return Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static int validar(int tamanho) {
+        if (tamanho < 1 || tamanho > TAMANHO_MAXIMO) {
+            throw new IllegalArgumentException("Tamanho do pool deve ficar entre 1 e " + TAMANHO_MAXIMO + ": " + tamanho);
+        }
+        return tamanho;
+    }
+
+    private static Fragmento[] criarFragmentos(int tamanho) {
+        Fragmento[] novos = new Fragmento[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            novos[i] = new Fragmento();
+        }
+        return novos;
+    }
+
+    int getTamanho() {
+        return fragmentos.length;
+    }
+
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    boolean isAberto() {
+        return fragmentos[0].handle != 0;
+    }
+
+    /**
+     * Usa o banco do leitor como primeiro fragmento e cria os outros. Se o SDK
+     * não criar algum, o pool fica só com o banco do leitor.
+     *
+     * @return geração para {@link #restaurar}
+     */
+    int abrir(long handleLeitor) {
+        estrutura.writeLock().lock();
+        try {
+            liberarProprios();
+            abrirFragmentos(handleLeitor);
+            return ++geracao;
+        } finally {
+            estrutura.writeLock().unlock();
+        }
+    }
+
+    private void abrirFragmentos(long handleLeitor) {
+        Fragmento[] atuais = fragmentos;
+        atuais[0].handle = handleLeitor;
+        for (int i = 1; i < atuais.length; i++) {
+            long handle = driver.dbInit();
+            if (handle == 0) {
+                log.erro("DBInit falhou para o fragmento {} do pool; usando só o banco do leitor", i);
+                liberarProprios();
+                fragmentos = criarFragmentos(1);
+                fragmentos[0].handle = handleLeitor;
+                return;
+            }
+            atuais[i].handle = handle;
+            atuais[i].proprio = true;
+        }
+    }
+
+    /**
+     * Zera os handles e libera os bancos criados pelo pool. Não faz nada se o
+     * handle do leitor não for o do pool (o leitor já reconectou).
+     */
+    void fechar(long handleLeitor) {
+        estrutura.writeLock().lock();
+        try {
+            if (fragmentos[0].handle != handleLeitor) {
+                return;
+            }
+            liberarProprios();
+            geracao++;
+        } finally {
+            estrutura.writeLock().unlock();
+        }
+    }
+
+    private void liberarProprios() {
+        for (Fragmento fragmento : fragmentos) {
+            if (fragmento.proprio && fragmento.handle != 0) {
+                driver.dbFree(fragmento.handle);
+            }
+            fragmento.proprio = false;
+            fragmento.handle = 0;
+        }
+    }
+
+    /**
+     * Troca a quantidade de fragmentos. Com o banco aberto, esvazia o do leitor
+     * e cria os novos; a galeria precisa ser reenviada com {@link #restaurar}.
+     *
+     * @return geração para {@link #restaurar}, ou -1 se o banco está fechado ou
+     *         o tamanho não mudou
+     */
+    int redimensionar(int tamanho) {
+        validar(tamanho);
+        estrutura.writeLock().lock();
+        try {
+            if (tamanho == fragmentos.length) {
+                return -1;
+            }
+            long handleLeitor = fragmentos[0].handle;
+            liberarProprios();
+            fragmentos = criarFragmentos(tamanho);
+            geracao++;
+            if (handleLeitor == 0) {
+                return -1;
+            }
+            driver.dbClear(handleLeitor);
+            abrirFragmentos(handleLeitor);
+            return geracao;
+        } finally {
+            estrutura.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Trava o fragmento do fid (e o pool contra fechamento) até {@link #liberar}.
+     * O handle do fragmento pode ser 0.
+     */
+    Fragmento travar(int fid) {
+        estrutura.readLock().lock();
+        Fragmento[] atuais = fragmentos;
+        Fragmento fragmento = atuais[Math.floorMod(fid, atuais.length)];
+        fragmento.trava.lock();
+        return fragmento;
+    }
+
+    /**
+     * Trava o primeiro fragmento livre, ou espera por um se todos estiverem em uso.
+     */
+    Fragmento travarLivre() {
+        estrutura.readLock().lock();
+        Fragmento[] atuais = fragmentos;
+        int inicio = Math.floorMod(proximoLivre.getAndIncrement(), atuais.length);
+        for (int i = 0; i < atuais.length; i++) {
+            Fragmento fragmento = atuais[(inicio + i) % atuais.length];
+            if (fragmento.trava.tryLock()) {
+                return fragmento;
+            }
+        }
+        atuais[inicio].trava.lock();
+        return atuais[inicio];
+    }
+
+    void liberar(Fragmento fragmento) {
+        fragmento.trava.unlock();
+        estrutura.readLock().unlock();
+    }
+
+    /**
+     * DBIdentify em todos os fragmentos em paralelo.
+     *
+     * @return fid com o maior score, ou -1
+     */
+    int identificar(byte[] template, int[] score) {
+        estrutura.readLock().lock();
+        try {
+            Fragmento[] atuais = fragmentos;
+            if (atuais[0].handle == 0) {
+                return -1;
+            }
+            List<CompletableFuture<int[]>> outros = new ArrayList<>(atuais.length - 1);
+            for (int i = 1; i < atuais.length; i++) {
+                Fragmento fragmento = atuais[i];
+                outros.add(CompletableFuture.supplyAsync(() -> identificar(fragmento, template), executor));
+            }
+            int[] melhor = identificar(atuais[0], template);
+            for (CompletableFuture<int[]> outro : outros) {
+                int[] resultado = outro.join();
+                if (resultado != null && (melhor == null || resultado[1] > melhor[1])) {
+                    melhor = resultado;
+                }
+            }
+            if (melhor == null) {
+                return -1;
+            }
+            score[0] = melhor[1];
+            return melhor[0];
+        } finally {
+            estrutura.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return {fid, score}, ou null se o fragmento não tem candidato compatível
+     */
+    private int[] identificar(Fragmento fragmento, byte[] template) {
+        int[] fid = new int[1];
+        int[] score = new int[1];
+        fragmento.trava.lock();
+        try {
+            if (fragmento.handle == 0 || driver.dbIdentify(fragmento.handle, template, fid, score) < 0) {
+                return null;
+            }
+        } finally {
+            fragmento.trava.unlock();
+        }
+        return new int[] {fid[0], score[0]};
+    }
+
+    /**
+     * DBMatch num fragmento livre.
+     *
+     * @return score, ou código de erro negativo
+     */
+    int comparar(byte[] template1, byte[] template2) {
+        Fragmento fragmento = travarLivre();
+        try {
+            if (fragmento.handle == 0) {
+                return DriverSensor.ZKFP_ERR_NOT_INIT;
+            }
+            return driver.dbMatch(fragmento.handle, template1, template2);
+        } finally {
+            liberar(fragmento);
+        }
+    }
+
+    /**
+     * Reenvia os templates do SDK do mapa a cada fragmento, todos em paralelo, em
+     * lotes de {@code tamanhoLote}. Os templates são lidos com a trava do
+     * fragmento, então alterações feitas durante a restauração não se perdem.
+     *
+     * @return templates enviados, ou -1 se o pool mudou no meio (a restauração
+     *         da geração nova assume)
+     */
+    int restaurar(int geracaoRestaurada, Map<Integer, byte[]> templates, int tamanhoLote, AtomicInteger falhas) {
+        Fragmento[] atuais;
+        estrutura.readLock().lock();
+        try {
+            if (geracao != geracaoRestaurada) {
+                return -1;
+            }
+            atuais = fragmentos;
+        } finally {
+            estrutura.readLock().unlock();
+        }
+        List<List<Integer>> fidsPorFragmento = new ArrayList<>(atuais.length);
+        for (int i = 0; i < atuais.length; i++) {
+            fidsPorFragmento.add(new ArrayList<>());
+        }
+        for (Integer fid : templates.keySet()) {
+            fidsPorFragmento.get(Math.floorMod(fid, atuais.length)).add(fid);
+        }
+        List<CompletableFuture<Integer>> restauracoes = new ArrayList<>(atuais.length);
+        for (int i = 0; i < atuais.length; i++) {
+            Fragmento fragmento = atuais[i];
+            List<Integer> fids = fidsPorFragmento.get(i);
+            restauracoes.add(CompletableFuture.supplyAsync(
+                () -> restaurar(geracaoRestaurada, fragmento, fids, templates, tamanhoLote, falhas), executor));
+        }
+        int enviados = 0;
+        for (CompletableFuture<Integer> restauracao : restauracoes) {
+            int parcial = restauracao.join();
+            if (parcial < 0) {
+                return -1;
+            }
+            enviados += parcial;
+        }
+        return enviados;
+    }
+
+    private int restaurar(int geracaoRestaurada, Fragmento fragmento, List<Integer> fids,
+                          Map<Integer, byte[]> templates, int tamanhoLote, AtomicInteger falhas) {
+        int enviados = 0;
+        for (int i = 0; i < fids.size(); i += tamanhoLote) {
+            estrutura.readLock().lock();
+            fragmento.trava.lock();
+            try {
+                if (geracao != geracaoRestaurada) {
+                    return -1;
+                }
+                for (int j = i; j < Math.min(fids.size(), i + tamanhoLote); j++) {
+                    byte[] template = templates.get(fids.get(j));
+                    if (template != null && !TemplateMinucias.isTemplate(template)) {
+                        int ret = driver.dbAdd(fragmento.handle, fids.get(j), template);
+                        if (ret != 0) {
+                            falhas.incrementAndGet();
+                            log.erro("DBAdd falhou para fid {}: {}", fids.get(j), ret);
+                        } else {
+                            enviados++;
+                        }
+                    }
+                }
+            } finally {
+                fragmento.trava.unlock();
+                estrutura.readLock().unlock();
+            }
+        }
+        return enviados;
+    }
+
+    void encerrar() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,74 @@
+package com.sistema.ponto.biometria.persistencia;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Formato bruto de quadro: cabeçalho de 22 bytes seguido dos pixels, sem compressão.
+ * <pre>
+ *   "RLPB"  assinatura
+ *   byte    versão (1)
+ *   byte    formato do pixel (0 = cinza 8 bits)
+ *   int     largura
+ *   int     altura
+ *   long    momento da captura (ms desde a época)
+ *   byte[]  largura * altura pixels
+ * </pre>
+ * Inteiros em big-endian. É o caminho mais rápido para gravar rajadas de cadastro.
+ */
+public final class ArquivoBruto {
+
+    public static final String EXTENSAO = "raw";
+    public static final int TAMANHO_CABECALHO = 22;
+
+    private static final byte[] ASSINATURA = {'R', 'L', 'P', 'B'};
+    private static final int VERSAO = 1;
+    private static final int PIXEL_CINZA_8 = 0;
+
+    private ArquivoBruto() {
+    }
+
+    public static void escrever(byte[] pixels, int largura, int altura, long momentoMs, OutputStream saida)
+            throws IOException {
+        DataOutputStream dados = new DataOutputStream(saida);
+        dados.write(ASSINATURA);
+        dados.writeByte(VERSAO);
+        dados.writeByte(PIXEL_CINZA_8);
+        dados.writeInt(largura);
+        dados.writeInt(altura);
+        dados.writeLong(momentoMs);
+        dados.write(pixels, 0, largura * altura);
+        dados.flush();
+    }
+
+    /**
+     * Lê um quadro gravado por {@link #escrever} como imagem em tons de cinza.
+     */
+    public static BufferedImage ler(InputStream entrada) throws IOException {
+        DataInputStream dados = new DataInputStream(entrada);
+        byte[] assinatura = new byte[ASSINATURA.length];
+        dados.readFully(assinatura);
+        for (int i = 0; i < assinatura.length; i++) {
+            if (assinatura[i] != ASSINATURA[i]) {
+                throw new IOException("Arquivo não é um quadro bruto");
+            }
+        }
+        int versao = dados.readUnsignedByte();
+        int formato = dados.readUnsignedByte();
+        if (versao != VERSAO || formato != PIXEL_CINZA_8) {
+            throw new IOException("Versão/formato não suportado: " + versao + "/" + formato);
+        }
+        int largura = dados.readInt();
+        int altura = dados.readInt();
+        dados.readLong();
+
+        BufferedImage imagem = new BufferedImage(largura, altura, BufferedImage.TYPE_BYTE_GRAY);
+        dados.readFully(((DataBufferByte) imagem.getRaster().getDataBuffer()).getData());
+        return imagem;
+    }
+}
@@ -0,0 +1,112 @@
+package com.sistema.ponto.biometria.persistencia;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Codificador PNG mínimo para quadros em tons de cinza de 8 bits.
+ * <p>
+ * O ImageIO do Java 8 não permite escolher o nível de compressão do PNG e cria
+ * um escritor por imagem. Aqui o nível do deflate é configurável (o padrão,
+ * {@link Deflater#BEST_SPEED}, grava bem mais rápido com arquivos pouco maiores)
+ * e os buffers e o {@link Deflater} são reaproveitados entre imagens.
+ * Não é thread-safe: use uma instância por thread.
+ */
+public class CodificadorPng {
+
+    private static final byte[] ASSINATURA = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+    };
+    private static final byte[] TIPO_IHDR = {'I', 'H', 'D', 'R'};
+    private static final byte[] TIPO_IDAT = {'I', 'D', 'A', 'T'};
+    private static final byte[] TIPO_IEND = {'I', 'E', 'N', 'D'};
+    private static final int TAMANHO_IDAT = 32 * 1024;
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] saidaDeflate = new byte[TAMANHO_IDAT];
+    private final byte[] cabecalho = new byte[13];
+    private final byte[] inteiro = new byte[4];
+    private byte[] linhas = new byte[0];
+
+    public CodificadorPng() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param nivel nível do deflate, de 0 (sem compressão) a 9 (máxima)
+     */
+    public CodificadorPng(int nivel) {
+        if (nivel < Deflater.NO_COMPRESSION || nivel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Nível de compressão inválido: " + nivel);
+        }
+        this.deflater = new Deflater(nivel);
+    }
+
+    public void codificar(byte[] pixels, int largura, int altura, OutputStream saida) throws IOException {
+        if (pixels.length < largura * altura) {
+            throw new IllegalArgumentException("Buffer menor que " + largura + "x" + altura);
+        }
+        saida.write(ASSINATURA);
+
+        escreverInt(cabecalho, 0, largura);
+        escreverInt(cabecalho, 4, altura);
+        cabecalho[8] = 8;   // bits por amostra
+        cabecalho[9] = 0;   // tons de cinza
+        cabecalho[10] = 0;  // deflate
+        cabecalho[11] = 0;  // filtros adaptativos padrão
+        cabecalho[12] = 0;  // sem entrelaçamento
+        escreverBloco(saida, TIPO_IHDR, cabecalho, cabecalho.length);
+
+        // Cada linha leva um byte de filtro; filtro 0 (nenhum) mantém o custo baixo
+        int tamanhoLinhas = (largura + 1) * altura;
+        if (linhas.length < tamanhoLinhas) {
+            linhas = new byte[tamanhoLinhas];
+        }
+        for (int y = 0, origem = 0, destino = 0; y < altura; y++, origem += largura, destino += largura + 1) {
+            linhas[destino] = 0;
+            System.arraycopy(pixels, origem, linhas, destino + 1, largura);
+        }
+
+        deflater.reset();
+        deflater.setInput(linhas, 0, tamanhoLinhas);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(saidaDeflate);
+            if (n > 0) {
+                escreverBloco(saida, TIPO_IDAT, saidaDeflate, n);
+            }
+        }
+
+        escreverBloco(saida, TIPO_IEND, saidaDeflate, 0);
+    }
+
+    /**
+     * Libera a memória nativa do deflater.
+     */
+    public void fechar() {
+        deflater.end();
+    }
+
+    private void escreverBloco(OutputStream saida, byte[] tipo, byte[] dados, int tamanho) throws IOException {
+        escreverInt(inteiro, 0, tamanho);
+        saida.write(inteiro);
+        saida.write(tipo);
+        saida.write(dados, 0, tamanho);
+
+        crc.reset();
+        crc.update(tipo);
+        crc.update(dados, 0, tamanho);
+        escreverInt(inteiro, 0, (int) crc.getValue());
+        saida.write(inteiro);
+    }
+
+    private static void escreverInt(byte[] destino, int posicao, int valor) {
+        destino[posicao] = (byte) (valor >>> 24);
+        destino[posicao + 1] = (byte) (valor >>> 16);
+        destino[posicao + 2] = (byte) (valor >>> 8);
+        destino[posicao + 3] = (byte) valor;
+    }
+}
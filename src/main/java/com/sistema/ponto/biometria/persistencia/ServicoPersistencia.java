@@ -0,0 +1,308 @@
+package com.sistema.ponto.biometria.persistencia;
+
+import com.sistema.ponto.biometria.captura.Quadro;
+import com.sistema.ponto.biometria.wsq.CodificadorWsq;
+import com.sistema.ponto.log.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Grava capturas em disco numa thread própria, fora da thread da interface.
+ * <p>
+ * {@link #salvar} copia os pixels, coloca o pedido numa fila limitada e retorna
+ * na hora um {@link CompletableFuture} com o arquivo gerado. A thread de gravação
+ * retira os pedidos em lotes (uma rajada de cadastro vira um único ciclo de
+ * gravação, reaproveitando o codificador) e completa cada futuro ao terminar.
+ * Com a fila cheia o futuro falha com {@link RejectedExecutionException}: quem
+ * chama nunca espera pelo disco.
+ * <p>
+ * Os nomes levam data, hora com milissegundos e um número sequencial, e o arquivo
+ * é criado com CREATE_NEW; se o nome já existir, o próximo número é usado.
+ * Os callbacks dos futuros rodam na thread de gravação.
+ */
+public class ServicoPersistencia {
+
+    private static final Log log = Log.para(ServicoPersistencia.class);
+
+    public enum Formato {
+        /** PNG com nível de deflate configurável. */
+        PNG("png"),
+        /** Pixels sem compressão com cabeçalho pequeno ({@link ArquivoBruto}). */
+        BRUTO(ArquivoBruto.EXTENSAO),
+        /** WSQ com perda, na taxa de {@link #setTaxaWsq}. */
+        WSQ("wsq");
+
+        private final String extensao;
+
+        Formato(String extensao) {
+            this.extensao = extensao;
+        }
+
+        public String getExtensao() {
+            return extensao;
+        }
+    }
+
+    public static final int CAPACIDADE_PADRAO = 64;
+    public static final int TAMANHO_LOTE_PADRAO = 16;
+
+    private static final DateTimeFormatter FORMATO_NOME = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
+    private static final int TAMANHO_BUFFER_ARQUIVO = 64 * 1024;
+    private static final int TENTATIVAS_NOME = 100;
+
+    private static final class Pedido {
+        final byte[] pixels;
+        final int largura;
+        final int altura;
+        final String prefixo;
+        final long momentoMs;
+        final CompletableFuture<File> resultado = new CompletableFuture<>();
+
+        Pedido(byte[] pixels, int largura, int altura, String prefixo, long momentoMs) {
+            this.pixels = pixels;
+            this.largura = largura;
+            this.altura = altura;
+            this.prefixo = prefixo;
+            this.momentoMs = momentoMs;
+        }
+    }
+
+    private final Path pasta;
+    private final Formato formato;
+    private final int tamanhoLote;
+    private final ArrayBlockingQueue<Pedido> fila;
+    private final CodificadorPng codificadorPng;
+    private CodificadorWsq codificadorWsq;
+    private volatile float taxaWsq = CodificadorWsq.TAXA_PADRAO;
+    private final Thread threadGravacao;
+    private final AtomicLong sequencia = new AtomicLong();
+    private volatile boolean aceitando = true;
+
+    // Métricas
+    private final AtomicLong rejeitados = new AtomicLong();
+    private volatile long salvos;
+    private volatile long falhas;
+    private volatile long lotes;
+    private volatile long maiorLote;
+    private volatile long tempoGravacaoTotalNanos;
+
+    public ServicoPersistencia(File pasta) {
+        this(pasta, Formato.PNG, Deflater.BEST_SPEED, CAPACIDADE_PADRAO, TAMANHO_LOTE_PADRAO);
+    }
+
+    /**
+     * @param nivelPng nível do deflate usado no formato PNG (0 a 9)
+     */
+    public ServicoPersistencia(File pasta, Formato formato, int nivelPng, int capacidade, int tamanhoLote) {
+        this.pasta = pasta.toPath();
+        this.formato = formato;
+        this.tamanhoLote = Math.max(1, tamanhoLote);
+        this.fila = new ArrayBlockingQueue<>(capacidade);
+        this.codificadorPng = new CodificadorPng(nivelPng);
+        this.threadGravacao = new Thread(this::executar, "persistencia-digitais");
+        this.threadGravacao.setDaemon(true);
+        this.threadGravacao.start();
+    }
+
+    /**
+     * Agenda a gravação de uma cópia do quadro. O quadro pode ser devolvido ao
+     * pool assim que este método retornar.
+     */
+    public CompletableFuture<File> salvar(Quadro quadro, String prefixo) {
+        byte[] copia = new byte[quadro.getLargura() * quadro.getAltura()];
+        System.arraycopy(quadro.getPixels(), 0, copia, 0, copia.length);
+        return salvar(copia, quadro.getLargura(), quadro.getAltura(), prefixo);
+    }
+
+    /**
+     * Agenda a gravação de um buffer de pixels; o serviço passa a ser dono do array.
+     */
+    public CompletableFuture<File> salvar(byte[] pixels, int largura, int altura, String prefixo) {
+        Pedido pedido = new Pedido(pixels, largura, altura, prefixo, System.currentTimeMillis());
+        if (!aceitando) {
+            pedido.resultado.completeExceptionally(new RejectedExecutionException("Serviço de gravação encerrado"));
+        } else if (!fila.offer(pedido)) {
+            rejeitados.incrementAndGet();
+            pedido.resultado.completeExceptionally(new RejectedExecutionException(
+                "Fila de gravação cheia (" + fila.size() + " pendentes)"));
+        } else if (!aceitando && fila.remove(pedido)) {
+            // Encerrado entre a verificação e a inserção. Se a thread de gravação
+            // já retirou o pedido, o remove falha e ela mesma completa o futuro
+            pedido.resultado.completeExceptionally(new RejectedExecutionException("Serviço de gravação encerrado"));
+        }
+        return pedido.resultado;
+    }
+
+    /**
+     * Para de aceitar pedidos e espera a gravação dos pendentes.
+     *
+     * @return false se o tempo acabou antes de gravar tudo
+     */
+    public boolean encerrar(long tempoMs) {
+        aceitando = false;
+        try {
+            threadGravacao.join(tempoMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !threadGravacao.isAlive();
+    }
+
+    private void executar() {
+        List<Pedido> lote = new ArrayList<>(tamanhoLote);
+        try {
+            while (aceitando || !fila.isEmpty()) {
+                Pedido primeiro = fila.poll(100, TimeUnit.MILLISECONDS);
+                if (primeiro == null) {
+                    continue;
+                }
+                lote.add(primeiro);
+                fila.drainTo(lote, tamanhoLote - 1);
+                gravarLote(lote);
+                lote.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            codificadorPng.fechar();
+            // Pedidos que chegaram durante o encerramento
+            Pedido pendente;
+            while ((pendente = fila.poll()) != null) {
+                pendente.resultado.completeExceptionally(new RejectedExecutionException("Serviço de gravação encerrado"));
+            }
+        }
+    }
+
+    private void gravarLote(List<Pedido> lote) {
+        long inicio = System.nanoTime();
+        for (Pedido pedido : lote) {
+            try {
+                File arquivo = gravar(pedido);
+                salvos++;
+                pedido.resultado.complete(arquivo);
+            } catch (Exception e) {
+                falhas++;
+                log.erro("Falha ao gravar digital: {}", e.getMessage());
+                pedido.resultado.completeExceptionally(e);
+            }
+        }
+        tempoGravacaoTotalNanos += System.nanoTime() - inicio;
+        lotes++;
+        if (lote.size() > maiorLote) {
+            maiorLote = lote.size();
+        }
+    }
+
+    private File gravar(Pedido pedido) throws IOException {
+        Files.createDirectories(pasta);
+        String momento = LocalDateTime.ofInstant(Instant.ofEpochMilli(pedido.momentoMs), ZoneId.systemDefault())
+            .format(FORMATO_NOME);
+
+        for (int tentativa = 0; tentativa < TENTATIVAS_NOME; tentativa++) {
+            String nome = String.format("%s_%s_%06d.%s", pedido.prefixo, momento,
+                sequencia.incrementAndGet(), formato.getExtensao());
+            Path destino = pasta.resolve(nome);
+            OutputStream saida;
+            try {
+                saida = Files.newOutputStream(destino, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                continue;
+            }
+            try (OutputStream buffer = new BufferedOutputStream(saida, TAMANHO_BUFFER_ARQUIVO)) {
+                if (formato == Formato.PNG) {
+                    codificadorPng.codificar(pedido.pixels, pedido.largura, pedido.altura, buffer);
+                } else if (formato == Formato.WSQ) {
+                    codificadorWsq().codificar(pedido.pixels, pedido.largura, pedido.altura, buffer);
+                } else {
+                    ArquivoBruto.escrever(pedido.pixels, pedido.largura, pedido.altura, pedido.momentoMs, buffer);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Não deixa arquivo pela metade
+                Files.deleteIfExists(destino);
+                throw e;
+            }
+            return destino.toFile();
+        }
+        throw new IOException("Não foi possível gerar um nome livre em " + pasta);
+    }
+
+    /**
+     * Codificador da thread de gravação; recriado só quando a taxa muda.
+     */
+    private CodificadorWsq codificadorWsq() {
+        float taxa = taxaWsq;
+        if (codificadorWsq == null || codificadorWsq.getTaxaBits() != taxa) {
+            codificadorWsq = new CodificadorWsq(taxa);
+        }
+        return codificadorWsq;
+    }
+
+    public Formato getFormato() {
+        return formato;
+    }
+
+    public float getTaxaWsq() {
+        return taxaWsq;
+    }
+
+    /**
+     * Taxa em bits por pixel do formato WSQ; vale para as próximas gravações.
+     */
+    public void setTaxaWsq(float taxaWsq) {
+        if (taxaWsq <= 0) {
+            throw new IllegalArgumentException("Taxa de bits inválida: " + taxaWsq);
+        }
+        this.taxaWsq = taxaWsq;
+    }
+
+    public int getPendentes() {
+        return fila.size();
+    }
+
+    public long getSalvos() {
+        return salvos;
+    }
+
+    public long getFalhas() {
+        return falhas;
+    }
+
+    public long getRejeitados() {
+        return rejeitados.get();
+    }
+
+    public long getLotes() {
+        return lotes;
+    }
+
+    public long getMaiorLote() {
+        return maiorLote;
+    }
+
+    /**
+     * Tempo médio de gravação por arquivo, em milissegundos.
+     */
+    public double getTempoMedioGravacaoMs() {
+        long total = salvos + falhas;
+        return total == 0 ? 0 : tempoGravacaoTotalNanos / (double) total / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,343 @@
+package com.sistema.ponto.biometria.processamento;
+
+import com.sistema.ponto.metricas.Histograma;
+import com.sistema.ponto.metricas.RegistroMetricas;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Análise por blocos ({@link #TAMANHO_BLOCO}x{@link #TAMANHO_BLOCO}) que
+ * preenche um {@link MapaQualidade}. Para cada bloco:
+ * <ul>
+ *   <li>orientação e coerência pelo tensor de gradientes (Gxx, Gyy, Gxy);</li>
+ *   <li>frequência das cristas pela assinatura de tons ao longo da normal às
+ *       cristas (janela de {@link #COMPRIMENTO_ASSINATURA} pixels centrada no bloco);</li>
+ *   <li>contraste (desvio padrão) e primeiro plano
+ *       ({@link AnalisadorQuadro#VARIANCIA_PRIMEIRO_PLANO}).</li>
+ * </ul>
+ * A pontuação do quadro pondera a qualidade dos blocos pela distância ao
+ * centro do sensor: um núcleo borrado pesa mais que uma borda ruim, e uma
+ * digital limpa mas parcial perde os blocos que faltam.
+ * <p>
+ * As linhas de blocos são divididas entre as threads de um {@link ForkJoinPool}
+ * próprio; cada thread usa seu próprio rascunho. Com paralelismo 1 tudo roda
+ * na thread de quem chama. Pode ser compartilhado entre threads.
+ */
+public class AnalisadorBlocos {
+
+    public static final int TAMANHO_BLOCO = AnalisadorQuadro.TAMANHO_BLOCO_PADRAO;
+    public static final int COMPRIMENTO_ASSINATURA = 32;
+
+    // Amostras ao longo da crista somadas em cada ponto da assinatura
+    private static final int LARGURA_ASSINATURA = 8;
+    // Período das cristas aceito, em pixels (ZK4500, 500 dpi: 7 a 12)
+    private static final float PERIODO_MINIMO = 4f;
+    private static final float PERIODO_MAXIMO = 20f;
+
+    // Rampas da qualidade do bloco (0 no primeiro valor, 1 no segundo)
+    private static final float COERENCIA_MINIMA = 0.2f;
+    private static final float COERENCIA_PLENA = 0.7f;
+    private static final float CONTRASTE_MINIMO = 20f;
+    private static final float CONTRASTE_PLENO = 50f;
+    private static final float PESO_COERENCIA = 0.5f;
+    private static final float PESO_CONTRASTE = 0.3f;
+    private static final float PESO_FREQUENCIA = 0.2f;
+
+    // Agregação: peso gaussiano a partir do centro do sensor
+    private static final float SIGMA_CENTRO = 0.22f;
+    // Fração dos blocos coberta por um dedo inteiro no ZK4500; abaixo disso a
+    // pontuação cai na proporção, senão um núcleo limpo bastaria
+    private static final float AREA_PLENA = 0.5f;
+    private static final float AREA_MINIMA = 0.3f;
+    private static final float DESLOCAMENTO_MAXIMO = 0.2f;
+    // Contraste médio dos blocos de dedo abaixo disto: contato fraco, não sujeira
+    private static final float CONTRASTE_CONTATO = 30f;
+    private static final int PONTUACAO_ACEITAVEL = 50;
+
+    private static final Histograma DURACAO = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_qualidade_mapa_segundos", "Tempo do mapa de qualidade por quadro");
+
+    private static final AtomicInteger CONTADOR_THREADS = new AtomicInteger();
+
+    /**
+     * Rascunho de cada thread: a assinatura de um bloco.
+     */
+    private static final class Rascunho {
+        final float[] assinatura = new float[COMPRIMENTO_ASSINATURA];
+    }
+
+    private final int paralelismo;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Rascunho> rascunho = ThreadLocal.withInitial(Rascunho::new);
+
+    /**
+     * Uma thread por processador.
+     */
+    public AnalisadorBlocos() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public AnalisadorBlocos(int paralelismo) {
+        this.paralelismo = Math.max(1, paralelismo);
+        this.pool = this.paralelismo == 1 ? null : new ForkJoinPool(this.paralelismo, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("qualidade-" + CONTADOR_THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    public MapaQualidade analisar(byte[] imagem, int largura, int altura, MapaQualidade mapa) {
+        long inicio = System.nanoTime();
+        mapa.preparar(largura, altura, TAMANHO_BLOCO);
+        if (pool == null) {
+            analisarLinhas(imagem, mapa, 0, mapa.blocosY);
+        } else {
+            // Algumas tarefas por thread equilibram linhas com mais ou menos dedo
+            int minimo = Math.max(1, mapa.blocosY / (paralelismo * 4));
+            pool.invoke(new TarefaLinhas(imagem, mapa, 0, mapa.blocosY, minimo));
+        }
+        agregar(mapa);
+        mapa.duracaoNanos = System.nanoTime() - inicio;
+        DURACAO.registrar(mapa.duracaoNanos);
+        return mapa;
+    }
+
+    public int getParalelismo() {
+        return paralelismo;
+    }
+
+    /**
+     * Encerra as threads do pool; a instância não deve mais ser usada.
+     */
+    public void encerrar() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private final class TarefaLinhas extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] imagem;
+        private final MapaQualidade mapa;
+        private final int inicio;
+        private final int fim;
+        private final int minimo;
+
+        TarefaLinhas(byte[] imagem, MapaQualidade mapa, int inicio, int fim, int minimo) {
+            this.imagem = imagem;
+            this.mapa = mapa;
+            this.inicio = inicio;
+            this.fim = fim;
+            this.minimo = minimo;
+        }
+
+        @Override
+        protected void compute() {
+            if (fim - inicio <= minimo) {
+                analisarLinhas(imagem, mapa, inicio, fim);
+                return;
+            }
+            int meio = (inicio + fim) >>> 1;
+            invokeAll(new TarefaLinhas(imagem, mapa, inicio, meio, minimo),
+                new TarefaLinhas(imagem, mapa, meio, fim, minimo));
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Blocos
+    // ---------------------------------------------------------------------
+
+    private void analisarLinhas(byte[] imagem, MapaQualidade mapa, int inicio, int fim) {
+        Rascunho r = rascunho.get();
+        for (int by = inicio; by < fim; by++) {
+            for (int bx = 0; bx < mapa.blocosX; bx++) {
+                analisarBloco(imagem, mapa, bx, by, r);
+            }
+        }
+    }
+
+    private void analisarBloco(byte[] imagem, MapaQualidade mapa, int bx, int by, Rascunho r) {
+        int w = mapa.largura;
+        int h = mapa.altura;
+        int x0 = bx * TAMANHO_BLOCO;
+        int y0 = by * TAMANHO_BLOCO;
+        int x1 = Math.min(x0 + TAMANHO_BLOCO, w);
+        int y1 = Math.min(y0 + TAMANHO_BLOCO, h);
+
+        long soma = 0;
+        long somaQuadrado = 0;
+        long gxx = 0;
+        long gyy = 0;
+        long gxy = 0;
+        for (int y = y0; y < y1; y++) {
+            int linha = y * w;
+            int acima = Math.max(y - 1, 0) * w;
+            int abaixo = Math.min(y + 1, h - 1) * w;
+            for (int x = x0; x < x1; x++) {
+                int v = imagem[linha + x] & 0xFF;
+                soma += v;
+                somaQuadrado += v * v;
+                // Diferença central, repetindo a borda da imagem
+                int gx = (imagem[linha + Math.min(x + 1, w - 1)] & 0xFF) - (imagem[linha + Math.max(x - 1, 0)] & 0xFF);
+                int gy = (imagem[abaixo + x] & 0xFF) - (imagem[acima + x] & 0xFF);
+                gxx += gx * gx;
+                gyy += gy * gy;
+                gxy += gx * gy;
+            }
+        }
+
+        int i = by * mapa.blocosX + bx;
+        int n = (x1 - x0) * (y1 - y0);
+        float media = soma / (float) n;
+        float variancia = Math.max(0, somaQuadrado / (float) n - media * media);
+        float desvio = (float) Math.sqrt(variancia);
+        mapa.contraste[i] = desvio;
+        mapa.primeiroPlano[i] = variancia >= AnalisadorQuadro.VARIANCIA_PRIMEIRO_PLANO;
+        if (!mapa.primeiroPlano[i]) {
+            mapa.orientacao[i] = 0;
+            mapa.coerencia[i] = 0;
+            mapa.frequencia[i] = 0;
+            mapa.qualidade[i] = 0;
+            return;
+        }
+
+        double diferenca = gxx - gyy;
+        double total = gxx + gyy;
+        float coerencia = total == 0 ? 0 : (float) (Math.sqrt(diferenca * diferenca + 4.0 * gxy * gxy) / total);
+        // Direção dominante do gradiente: a normal às cristas
+        double normal = 0.5 * Math.atan2(2.0 * gxy, diferenca);
+        double crista = normal + Math.PI / 2;
+        if (crista >= Math.PI) {
+            crista -= Math.PI;
+        }
+        mapa.orientacao[i] = (float) crista;
+        mapa.coerencia[i] = coerencia;
+
+        float frequencia = medirFrequencia(imagem, w, h, (x0 + x1) * 0.5f, (y0 + y1) * 0.5f,
+            (float) Math.cos(normal), (float) Math.sin(normal), r.assinatura);
+        mapa.frequencia[i] = frequencia;
+
+        float q = PESO_COERENCIA * rampa(coerencia, COERENCIA_MINIMA, COERENCIA_PLENA)
+            + PESO_CONTRASTE * rampa(desvio, CONTRASTE_MINIMO, CONTRASTE_PLENO)
+            + PESO_FREQUENCIA * (frequencia > 0 ? 1 : 0);
+        mapa.qualidade[i] = (byte) Math.round(q * 100);
+    }
+
+    /**
+     * Tons médios ao longo da normal às cristas; o período é a distância média
+     * entre cruzamentos da média multiplicada por 2.
+     *
+     * @return cristas por pixel, ou 0 fora da faixa aceita
+     */
+    private static float medirFrequencia(byte[] imagem, int w, int h, float cx, float cy,
+                                         float nx, float ny, float[] assinatura) {
+        float media = 0;
+        for (int k = 0; k < COMPRIMENTO_ASSINATURA; k++) {
+            float t = k - COMPRIMENTO_ASSINATURA / 2f + 0.5f;
+            int soma = 0;
+            for (int j = 0; j < LARGURA_ASSINATURA; j++) {
+                float u = j - LARGURA_ASSINATURA / 2f + 0.5f;
+                int x = limitar(Math.round(cx + t * nx - u * ny), 0, w - 1);
+                int y = limitar(Math.round(cy + t * ny + u * nx), 0, h - 1);
+                soma += imagem[y * w + x] & 0xFF;
+            }
+            assinatura[k] = soma / (float) LARGURA_ASSINATURA;
+            media += assinatura[k];
+        }
+        media /= COMPRIMENTO_ASSINATURA;
+
+        int cruzamentos = 0;
+        int primeiro = -1;
+        int ultimo = -1;
+        boolean acima = assinatura[0] > media;
+        for (int k = 1; k < COMPRIMENTO_ASSINATURA; k++) {
+            boolean agora = assinatura[k] > media;
+            if (agora != acima) {
+                cruzamentos++;
+                if (primeiro < 0) {
+                    primeiro = k;
+                }
+                ultimo = k;
+                acima = agora;
+            }
+        }
+        if (cruzamentos < 3) {
+            return 0;
+        }
+        float periodo = 2f * (ultimo - primeiro) / (cruzamentos - 1);
+        return periodo < PERIODO_MINIMO || periodo > PERIODO_MAXIMO ? 0 : 1f / periodo;
+    }
+
+    // ---------------------------------------------------------------------
+    // Quadro
+    // ---------------------------------------------------------------------
+
+    private static void agregar(MapaQualidade mapa) {
+        float centroX = (mapa.blocosX - 1) / 2f;
+        float centroY = (mapa.blocosY - 1) / 2f;
+        float sigma = SIGMA_CENTRO * Math.min(mapa.blocosX, mapa.blocosY);
+        float inverso = 1f / (2 * sigma * sigma);
+
+        double somaPesos = 0;
+        double somaQualidade = 0;
+        double somaContraste = 0;
+        int dedo = 0;
+        long somaX = 0;
+        long somaY = 0;
+        for (int by = 0; by < mapa.blocosY; by++) {
+            float dy = by - centroY;
+            for (int bx = 0; bx < mapa.blocosX; bx++) {
+                float dx = bx - centroX;
+                int i = by * mapa.blocosX + bx;
+                double peso = Math.exp(-(dx * dx + dy * dy) * inverso);
+                float q = mapa.qualidade[i] / 100f;
+                somaPesos += peso;
+                somaQualidade += peso * q;
+                if (mapa.primeiroPlano[i]) {
+                    dedo++;
+                    somaX += bx;
+                    somaY += by;
+                    somaContraste += mapa.contraste[i];
+                }
+            }
+        }
+        mapa.blocosPrimeiroPlano = dedo;
+        int blocos = mapa.blocosX * mapa.blocosY;
+        double cobertura = Math.min(1.0, dedo / (AREA_PLENA * blocos));
+        mapa.pontuacao = somaPesos == 0 ? 0 : (int) Math.round(100 * cobertura * somaQualidade / somaPesos);
+
+        // Dica: primeiro a área, depois a posição e a pressão; com o dedo bem
+        // colocado o que sobra para um núcleo ruim é sujeira ou umidade
+        if (dedo == 0 || mapa.pontuacao >= PONTUACAO_ACEITAVEL) {
+            mapa.dica = MapaQualidade.Dica.NENHUMA;
+        } else if (dedo < AREA_MINIMA * blocos) {
+            mapa.dica = MapaQualidade.Dica.PRESSIONAR;
+        } else if (Math.abs(somaX / (float) dedo - centroX) > DESLOCAMENTO_MAXIMO * mapa.blocosX
+                || Math.abs(somaY / (float) dedo - centroY) > DESLOCAMENTO_MAXIMO * mapa.blocosY) {
+            mapa.dica = MapaQualidade.Dica.CENTRALIZAR;
+        } else if (somaContraste / dedo < CONTRASTE_CONTATO) {
+            mapa.dica = MapaQualidade.Dica.PRESSIONAR;
+        } else {
+            mapa.dica = MapaQualidade.Dica.LIMPAR;
+        }
+    }
+
+    private static float rampa(float valor, float minimo, float pleno) {
+        if (valor <= minimo) {
+            return 0;
+        }
+        if (valor >= pleno) {
+            return 1;
+        }
+        return (valor - minimo) / (pleno - minimo);
+    }
+
+    private static int limitar(int valor, int minimo, int maximo) {
+        return valor < minimo ? minimo : (valor > maximo ? maximo : valor);
+    }
+}
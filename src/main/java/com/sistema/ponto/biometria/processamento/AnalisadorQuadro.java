@@ -0,0 +1,104 @@
+package com.sistema.ponto.biometria.processamento;
+
+/**
+ * Kernel de análise de quadro em passada única: histograma, pixels escuros,
+ * energia de gradiente horizontal e vertical e variância por bloco.
+ * Não guarda estado entre chamadas (pode ser compartilhado entre threads);
+ * todo o resultado vai para o {@link EstatisticasQuadro} informado.
+ */
+public class AnalisadorQuadro {
+
+    public static final int TAMANHO_BLOCO_PADRAO = 16;
+    /** Variância mínima (desvio ~20 níveis) para um bloco ser considerado dedo. */
+    public static final float VARIANCIA_PRIMEIRO_PLANO = 400f;
+
+    private final int tamanhoBloco;
+
+    public AnalisadorQuadro() {
+        this(TAMANHO_BLOCO_PADRAO);
+    }
+
+    public AnalisadorQuadro(int tamanhoBloco) {
+        this.tamanhoBloco = tamanhoBloco;
+    }
+
+    public EstatisticasQuadro analisar(byte[] imagem, int largura, int altura, EstatisticasQuadro resultado) {
+        resultado.preparar(largura, altura, tamanhoBloco);
+        int[] histograma = resultado.histograma;
+        long[] soma = resultado.somaBloco;
+        long[] somaQuadrado = resultado.somaQuadradoBloco;
+        long energiaH = 0;
+        long energiaV = 0;
+        int inicioLinhaBloco = 0;
+        int ultimo = largura - 1;
+
+        for (int y = 0; y < altura; y++) {
+            int linha = y * largura;
+            // Na última linha a diferença vertical é feita com a própria linha (zero)
+            int abaixo = y < altura - 1 ? linha + largura : linha;
+            // Acumuladores int por linha (máx. 255 * largura), somados em long por quadro
+            int linhaH = 0;
+            int linhaV = 0;
+
+            for (int bx = 0, x0 = 0; x0 < largura; bx++, x0 += tamanhoBloco) {
+                // O último pixel da linha não tem vizinho à direita: tratado fora do laço
+                // para que o laço interno fique sem desvios
+                int x1 = Math.min(x0 + tamanhoBloco, ultimo);
+                int s = 0;
+                int sq = 0;
+                for (int x = x0; x < x1; x++) {
+                    int v = imagem[linha + x] & 0xFF;
+                    histograma[v]++;
+                    s += v;
+                    sq += v * v;
+                    linhaH += Math.abs(v - (imagem[linha + x + 1] & 0xFF));
+                    linhaV += Math.abs(v - (imagem[abaixo + x] & 0xFF));
+                }
+                if (x0 + tamanhoBloco >= largura) {
+                    int v = imagem[linha + ultimo] & 0xFF;
+                    histograma[v]++;
+                    s += v;
+                    sq += v * v;
+                    linhaV += Math.abs(v - (imagem[abaixo + ultimo] & 0xFF));
+                }
+                soma[bx] += s;
+                somaQuadrado[bx] += sq;
+            }
+            energiaH += linhaH;
+            energiaV += linhaV;
+
+            if ((y + 1) % tamanhoBloco == 0 || y == altura - 1) {
+                fecharLinhaDeBlocos(resultado, y / tamanhoBloco, y + 1 - inicioLinhaBloco);
+                inicioLinhaBloco = y + 1;
+            }
+        }
+
+        int escuros = 0;
+        for (int i = 0; i < EstatisticasQuadro.LIMIAR_PIXEL_ESCURO; i++) {
+            escuros += histograma[i];
+        }
+        resultado.pixelsEscuros = escuros;
+        resultado.energiaHorizontal = energiaH;
+        resultado.energiaVertical = energiaV;
+        return resultado;
+    }
+
+    private void fecharLinhaDeBlocos(EstatisticasQuadro resultado, int by, int alturaBloco) {
+        long[] soma = resultado.somaBloco;
+        long[] somaQuadrado = resultado.somaQuadradoBloco;
+        float[] variancias = resultado.variancias;
+        int base = by * resultado.blocosX;
+        for (int bx = 0; bx < resultado.blocosX; bx++) {
+            int larguraBloco = Math.min(tamanhoBloco, resultado.largura - bx * tamanhoBloco);
+            double n = larguraBloco * (double) alturaBloco;
+            double media = soma[bx] / n;
+            float variancia = (float) (somaQuadrado[bx] / n - media * media);
+            variancias[base + bx] = variancia;
+            if (variancia >= VARIANCIA_PRIMEIRO_PLANO) {
+                resultado.blocosPrimeiroPlano++;
+            }
+            soma[bx] = 0;
+            somaQuadrado[bx] = 0;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.sistema.ponto.biometria.processamento;
+
+/**
+ * Medidas de vivacidade (dedo vivo ou réplica de gelatina/silicone) ao longo
+ * da sequência de quadros de uma mesma colocação do dedo:
+ * <ul>
+ *   <li>textura: energia de detalhe fino (poros, bordas das cristas) acima do
+ *       ruído do sensor, relativa ao contraste das cristas. Réplicas moldadas
+ *       perdem esse detalhe;</li>
+ *   <li>contraste crista-vale: diferença entre os tons médios de cristas e vales
+ *       em cada bloco do dedo. Gelatina e silicone dão cristas lavadas;</li>
+ *   <li>deformação: a pele chega ao sensor aos poucos (a área de contato cresce)
+ *       e não fica parada (tons dos blocos mudam de um quadro para o outro);
+ *       uma réplica rígida aparece inteira e estática.</li>
+ * </ul>
+ * Uso por quadro: {@link #marcarBlocos(byte[], int, int)} e depois, em qualquer ordem,
+ * {@link #medirTextura(byte[])}, {@link #medirContraste(byte[])} e
+ * {@link #medirDeformacao()}. Cada medida é independente, para quem chama poder
+ * parar entre elas quando o prazo acabar.
+ * <p>
+ * Guarda o estado da sequência ({@link #reiniciar()} a cada colocação): uma
+ * instância por thread. Os arrays só são alocados quando as dimensões mudam.
+ */
+public class AnalisadorVivacidade {
+
+    public static final int TAMANHO_BLOCO = AnalisadorQuadro.TAMANHO_BLOCO_PADRAO;
+
+    // Faixas das rampas de pontuação (0 abaixo do primeiro valor, 1 acima do segundo)
+    public static final float TEXTURA_MINIMA = 0.04f;
+    public static final float TEXTURA_PLENA = 0.10f;
+    public static final float CONTRASTE_MINIMO = 70f;
+    public static final float CONTRASTE_PLENO = 110f;
+    public static final float CRESCIMENTO_MINIMO = 0.05f;
+    public static final float CRESCIMENTO_PLENO = 0.25f;
+    public static final float MOVIMENTO_MINIMO = 1.0f;
+    public static final float MOVIMENTO_PLENO = 3.0f;
+
+    private static final float PESO_TEXTURA = 0.3f;
+    private static final float PESO_CONTRASTE = 0.3f;
+    private static final float PESO_DEFORMACAO = 0.4f;
+    /** Blocos claros e lisos (acima disso, sem dedo) usados para medir o ruído. */
+    private static final int MEDIA_FUNDO = 200;
+
+    private int largura;
+    private int altura;
+    private int blocosX;
+    private int blocosY;
+    private float[] medias = new float[0];
+    private float[] mediasAnteriores = new float[0];
+    private boolean[] primeiroPlano = new boolean[0];
+    private boolean[] primeiroPlanoAnterior = new boolean[0];
+
+    // Quadro atual
+    private int blocosDedo;
+    private float ruido;
+
+    // Sequência
+    private int quadros;
+    private int quadrosTextura;
+    private double somaTextura;
+    private int quadrosContraste;
+    private double somaContraste;
+    private int primeiraArea = -1;
+    private int maiorArea;
+    private int comparacoes;
+    private double somaMovimento;
+    private boolean temAnterior;
+
+    /**
+     * Começa uma nova sequência (dedo colocado).
+     */
+    public void reiniciar() {
+        quadros = 0;
+        quadrosTextura = 0;
+        somaTextura = 0;
+        quadrosContraste = 0;
+        somaContraste = 0;
+        primeiraArea = -1;
+        maiorArea = 0;
+        comparacoes = 0;
+        somaMovimento = 0;
+        temAnterior = false;
+    }
+
+    /**
+     * Primeira etapa de cada quadro: média e variância por bloco, separando os
+     * blocos do dedo ({@link AnalisadorQuadro#VARIANCIA_PRIMEIRO_PLANO}) e
+     * estimando o ruído do sensor nos blocos de fundo.
+     *
+     * @return quantos blocos têm dedo
+     */
+    public int marcarBlocos(byte[] imagem, int largura, int altura) {
+        preparar(largura, altura);
+        // O quadro anterior vira referência para a deformação
+        float[] trocaMedias = mediasAnteriores;
+        mediasAnteriores = medias;
+        medias = trocaMedias;
+        boolean[] trocaPlano = primeiroPlanoAnterior;
+        primeiroPlanoAnterior = primeiroPlano;
+        primeiroPlano = trocaPlano;
+
+        long somaRuido = 0;
+        int pixelsRuido = 0;
+        blocosDedo = 0;
+        for (int by = 0; by < blocosY; by++) {
+            int y0 = by * TAMANHO_BLOCO;
+            int y1 = Math.min(y0 + TAMANHO_BLOCO, altura);
+            for (int bx = 0; bx < blocosX; bx++) {
+                int x0 = bx * TAMANHO_BLOCO;
+                int x1 = Math.min(x0 + TAMANHO_BLOCO, largura);
+                long soma = 0;
+                long somaQuadrado = 0;
+                for (int y = y0; y < y1; y++) {
+                    int linha = y * largura;
+                    for (int x = x0; x < x1; x++) {
+                        int v = imagem[linha + x] & 0xFF;
+                        soma += v;
+                        somaQuadrado += v * v;
+                    }
+                }
+                int n = (x1 - x0) * (y1 - y0);
+                float media = soma / (float) n;
+                float variancia = somaQuadrado / (float) n - media * media;
+                int b = by * blocosX + bx;
+                medias[b] = media;
+                primeiroPlano[b] = variancia >= AnalisadorQuadro.VARIANCIA_PRIMEIRO_PLANO;
+                if (primeiroPlano[b]) {
+                    blocosDedo++;
+                } else if (media > MEDIA_FUNDO) {
+                    somaRuido += detalheFino(imagem, x0, x1, y0, y1);
+                    pixelsRuido += (x1 - x0 - 2) * (y1 - y0 - 2);
+                }
+            }
+        }
+        // Sem fundo visível (dedo cobrindo tudo) fica o ruído do quadro anterior
+        if (pixelsRuido > 0) {
+            ruido = somaRuido / (float) pixelsRuido;
+        }
+        if (blocosDedo > 0) {
+            quadros++;
+        }
+        return blocosDedo;
+    }
+
+    /**
+     * Soma de |2p - vizinhos| na horizontal e na vertical, em metade, sem as bordas do bloco.
+     */
+    private long detalheFino(byte[] imagem, int x0, int x1, int y0, int y1) {
+        long soma = 0;
+        int largura = this.largura;
+        for (int y = y0 + 1; y < y1 - 1; y++) {
+            int linha = y * largura;
+            for (int x = x0 + 1; x < x1 - 1; x++) {
+                int p = (imagem[linha + x] & 0xFF) << 1;
+                int h = p - (imagem[linha + x - 1] & 0xFF) - (imagem[linha + x + 1] & 0xFF);
+                int v = p - (imagem[linha + x - largura] & 0xFF) - (imagem[linha + x + largura] & 0xFF);
+                soma += (Math.abs(h) + Math.abs(v)) >> 1;
+            }
+        }
+        return soma;
+    }
+
+    /**
+     * Detalhe fino acima do ruído do sensor, dividido pelo contraste crista-vale,
+     * média dos blocos do dedo.
+     */
+    public void medirTextura(byte[] imagem) {
+        if (blocosDedo == 0) {
+            return;
+        }
+        double soma = 0;
+        int blocos = 0;
+        for (int by = 0; by < blocosY; by++) {
+            int y0 = by * TAMANHO_BLOCO;
+            int y1 = Math.min(y0 + TAMANHO_BLOCO, altura);
+            for (int bx = 0; bx < blocosX; bx++) {
+                int b = by * blocosX + bx;
+                if (!primeiroPlano[b]) {
+                    continue;
+                }
+                int x0 = bx * TAMANHO_BLOCO;
+                int x1 = Math.min(x0 + TAMANHO_BLOCO, largura);
+                int pixels = (x1 - x0 - 2) * (y1 - y0 - 2);
+                float contraste = contrasteBloco(imagem, x0, x1, y0, y1, medias[b]);
+                if (pixels <= 0 || contraste <= 0) {
+                    continue;
+                }
+                float detalhe = detalheFino(imagem, x0, x1, y0, y1) / (float) pixels - ruido;
+                soma += Math.max(0, detalhe) / contraste;
+                blocos++;
+            }
+        }
+        if (blocos > 0) {
+            somaTextura += soma / blocos;
+            quadrosTextura++;
+        }
+    }
+
+    /**
+     * Contraste crista-vale médio dos blocos do dedo.
+     */
+    public void medirContraste(byte[] imagem) {
+        if (blocosDedo == 0) {
+            return;
+        }
+        double soma = 0;
+        for (int by = 0; by < blocosY; by++) {
+            int y0 = by * TAMANHO_BLOCO;
+            int y1 = Math.min(y0 + TAMANHO_BLOCO, altura);
+            for (int bx = 0; bx < blocosX; bx++) {
+                int b = by * blocosX + bx;
+                if (primeiroPlano[b]) {
+                    int x0 = bx * TAMANHO_BLOCO;
+                    soma += contrasteBloco(imagem, x0, Math.min(x0 + TAMANHO_BLOCO, largura), y0, y1, medias[b]);
+                }
+            }
+        }
+        somaContraste += soma / blocosDedo;
+        quadrosContraste++;
+    }
+
+    /**
+     * Tom médio dos vales (acima da média do bloco) menos o das cristas.
+     */
+    private float contrasteBloco(byte[] imagem, int x0, int x1, int y0, int y1, float media) {
+        long somaCristas = 0;
+        int cristas = 0;
+        long somaVales = 0;
+        int vales = 0;
+        for (int y = y0; y < y1; y++) {
+            int linha = y * largura;
+            for (int x = x0; x < x1; x++) {
+                int v = imagem[linha + x] & 0xFF;
+                if (v < media) {
+                    somaCristas += v;
+                    cristas++;
+                } else {
+                    somaVales += v;
+                    vales++;
+                }
+            }
+        }
+        if (cristas == 0 || vales == 0) {
+            return 0;
+        }
+        return somaVales / (float) vales - somaCristas / (float) cristas;
+    }
+
+    /**
+     * Área de contato e variação dos tons dos blocos em relação ao quadro anterior.
+     */
+    public void medirDeformacao() {
+        if (blocosDedo == 0) {
+            temAnterior = false;
+            return;
+        }
+        if (primeiraArea < 0) {
+            primeiraArea = blocosDedo;
+        }
+        maiorArea = Math.max(maiorArea, blocosDedo);
+        if (temAnterior) {
+            double soma = 0;
+            int comuns = 0;
+            for (int b = 0; b < medias.length; b++) {
+                if (primeiroPlano[b] && primeiroPlanoAnterior[b]) {
+                    soma += Math.abs(medias[b] - mediasAnteriores[b]);
+                    comuns++;
+                }
+            }
+            if (comuns > 0) {
+                somaMovimento += soma / comuns;
+                comparacoes++;
+            }
+        }
+        temAnterior = true;
+    }
+
+    private void preparar(int largura, int altura) {
+        int novosBlocosX = (largura + TAMANHO_BLOCO - 1) / TAMANHO_BLOCO;
+        int novosBlocosY = (altura + TAMANHO_BLOCO - 1) / TAMANHO_BLOCO;
+        if (medias.length != novosBlocosX * novosBlocosY) {
+            medias = new float[novosBlocosX * novosBlocosY];
+            mediasAnteriores = new float[medias.length];
+            primeiroPlano = new boolean[medias.length];
+            primeiroPlanoAnterior = new boolean[medias.length];
+            temAnterior = false;
+        }
+        this.largura = largura;
+        this.altura = altura;
+        this.blocosX = novosBlocosX;
+        this.blocosY = novosBlocosY;
+    }
+
+    // ---------------------------------------------------------------------
+    // Resultado da sequência
+    // ---------------------------------------------------------------------
+
+    /**
+     * Quadros com dedo vistos na sequência.
+     */
+    public int getQuadros() {
+        return quadros;
+    }
+
+    public float getTextura() {
+        return quadrosTextura == 0 ? 0 : (float) (somaTextura / quadrosTextura);
+    }
+
+    public float getContraste() {
+        return quadrosContraste == 0 ? 0 : (float) (somaContraste / quadrosContraste);
+    }
+
+    /**
+     * Quanto a área de contato cresceu desde o primeiro quadro (0 a 1).
+     */
+    public float getCrescimento() {
+        return maiorArea == 0 ? 0 : 1f - primeiraArea / (float) maiorArea;
+    }
+
+    /**
+     * Variação média do tom dos blocos entre quadros seguidos.
+     */
+    public float getMovimento() {
+        return comparacoes == 0 ? 0 : (float) (somaMovimento / comparacoes);
+    }
+
+    /**
+     * De 0 (réplica) a 1 (vivo); sem medida, 0,5.
+     */
+    public float pontuarTextura() {
+        return quadrosTextura == 0 ? 0.5f : rampa(getTextura(), TEXTURA_MINIMA, TEXTURA_PLENA);
+    }
+
+    public float pontuarContraste() {
+        return quadrosContraste == 0 ? 0.5f : rampa(getContraste(), CONTRASTE_MINIMO, CONTRASTE_PLENO);
+    }
+
+    /**
+     * Basta um dos sinais de pele: crescimento da área ou movimento.
+     */
+    public float pontuarDeformacao() {
+        if (comparacoes == 0) {
+            return 0.5f;
+        }
+        return Math.max(rampa(getCrescimento(), CRESCIMENTO_MINIMO, CRESCIMENTO_PLENO),
+            rampa(getMovimento(), MOVIMENTO_MINIMO, MOVIMENTO_PLENO));
+    }
+
+    /**
+     * Média ponderada das três pontuações (0 a 1).
+     */
+    public float getPontuacao() {
+        return PESO_TEXTURA * pontuarTextura() + PESO_CONTRASTE * pontuarContraste()
+            + PESO_DEFORMACAO * pontuarDeformacao();
+    }
+
+    private static float rampa(float valor, float minimo, float pleno) {
+        if (valor <= minimo) {
+            return 0;
+        }
+        if (valor >= pleno) {
+            return 1;
+        }
+        return (valor - minimo) / (pleno - minimo);
+    }
+}
@@ -0,0 +1,142 @@
+package com.sistema.ponto.biometria.processamento;
+
+/**
+ * Resultado reutilizável da análise de um quadro pelo {@link AnalisadorQuadro}.
+ * Os arrays são alocados apenas quando as dimensões do quadro mudam, de forma
+ * que o laço de captura não gera lixo por quadro.
+ */
+public class EstatisticasQuadro {
+
+    public static final int LIMIAR_PIXEL_ESCURO = 128;
+    public static final int MINIMO_PIXELS_ESCUROS = 1000;
+
+    final int[] histograma = new int[256];
+    long[] somaBloco = new long[0];
+    long[] somaQuadradoBloco = new long[0];
+    float[] variancias = new float[0];
+
+    int largura;
+    int altura;
+    int tamanhoBloco;
+    int blocosX;
+    int blocosY;
+    int totalPixels;
+    int pixelsEscuros;
+    long energiaHorizontal;
+    long energiaVertical;
+    int blocosPrimeiroPlano;
+
+    void preparar(int largura, int altura, int tamanhoBloco) {
+        int novosBlocosX = (largura + tamanhoBloco - 1) / tamanhoBloco;
+        int novosBlocosY = (altura + tamanhoBloco - 1) / tamanhoBloco;
+        if (somaBloco.length != novosBlocosX) {
+            somaBloco = new long[novosBlocosX];
+            somaQuadradoBloco = new long[novosBlocosX];
+        }
+        if (variancias.length != novosBlocosX * novosBlocosY) {
+            variancias = new float[novosBlocosX * novosBlocosY];
+        }
+        this.largura = largura;
+        this.altura = altura;
+        this.tamanhoBloco = tamanhoBloco;
+        this.blocosX = novosBlocosX;
+        this.blocosY = novosBlocosY;
+        this.totalPixels = largura * altura;
+        for (int i = 0; i < histograma.length; i++) {
+            histograma[i] = 0;
+        }
+        for (int i = 0; i < novosBlocosX; i++) {
+            somaBloco[i] = 0;
+            somaQuadradoBloco[i] = 0;
+        }
+        pixelsEscuros = 0;
+        energiaHorizontal = 0;
+        energiaVertical = 0;
+        blocosPrimeiroPlano = 0;
+    }
+
+    /**
+     * Há dedo no sensor quando o quadro tem mais de {@link #MINIMO_PIXELS_ESCUROS} pixels escuros.
+     */
+    public boolean temDedo() {
+        return pixelsEscuros > MINIMO_PIXELS_ESCUROS;
+    }
+
+    /**
+     * Qualidade de 0 a 100: pixels escuros (40%) e contraste horizontal (60%),
+     * a mesma pontuação usada até então pelo GerenciadorDigital.
+     */
+    public int getQualidade() {
+        if (totalPixels == 0) {
+            return 0;
+        }
+        double percentualEscuro = (pixelsEscuros * 100.0) / totalPixels;
+        double percentualContraste = (energiaHorizontal * 100.0) / (totalPixels * 255.0);
+
+        int pontuacaoEscuro = (int) (percentualEscuro > 15 ? 40 : (percentualEscuro * 40 / 15));
+        int pontuacaoContraste = (int) (percentualContraste > 30 ? 60 : (percentualContraste * 60 / 30));
+
+        return Math.min(100, pontuacaoEscuro + pontuacaoContraste);
+    }
+
+    public double getRazaoEscuro() {
+        return totalPixels == 0 ? 0 : pixelsEscuros / (double) totalPixels;
+    }
+
+    /**
+     * Soma de |p(x) - p(x+1)| ao longo das linhas.
+     */
+    public long getEnergiaHorizontal() {
+        return energiaHorizontal;
+    }
+
+    /**
+     * Soma de |p(y) - p(y+1)| ao longo das colunas.
+     */
+    public long getEnergiaVertical() {
+        return energiaVertical;
+    }
+
+    public int[] getHistograma() {
+        return histograma;
+    }
+
+    /**
+     * Variância de cada bloco, em ordem de linhas (blocosX * blocosY).
+     */
+    public float[] getVariancias() {
+        return variancias;
+    }
+
+    public int getBlocosX() {
+        return blocosX;
+    }
+
+    public int getBlocosY() {
+        return blocosY;
+    }
+
+    public int getTamanhoBloco() {
+        return tamanhoBloco;
+    }
+
+    public int getBlocosPrimeiroPlano() {
+        return blocosPrimeiroPlano;
+    }
+
+    public int getPixelsEscuros() {
+        return pixelsEscuros;
+    }
+
+    public int getTotalPixels() {
+        return totalPixels;
+    }
+
+    public int getLargura() {
+        return largura;
+    }
+
+    public int getAltura() {
+        return altura;
+    }
+}
@@ -0,0 +1,188 @@
+package com.sistema.ponto.biometria.processamento;
+
+/**
+ * Mapa de qualidade por bloco de um quadro, preenchido pelo
+ * {@link AnalisadorBlocos}: para cada bloco a orientação das cristas, a
+ * coerência dessa orientação, a frequência das cristas, o contraste e se é
+ * dedo; e, para o quadro, uma pontuação agregada no estilo NFIQ e uma
+ * {@link Dica} para quem está com o dedo no sensor.
+ * <p>
+ * Reutilizável como o {@link EstatisticasQuadro}: os arrays só são alocados
+ * quando as dimensões mudam.
+ */
+public class MapaQualidade {
+
+    /**
+     * O que pedir a quem está no sensor quando a qualidade não basta.
+     */
+    public enum Dica {
+        NENHUMA(null),
+        PRESSIONAR("Pressione mais o dedo no leitor"),
+        CENTRALIZAR("Centralize o dedo no leitor"),
+        LIMPAR("Limpe o dedo e o leitor");
+
+        private final String mensagem;
+
+        Dica(String mensagem) {
+            this.mensagem = mensagem;
+        }
+
+        public String getMensagem() {
+            return mensagem;
+        }
+    }
+
+    int largura;
+    int altura;
+    int tamanhoBloco;
+    int blocosX;
+    int blocosY;
+
+    float[] orientacao = new float[0];
+    float[] coerencia = new float[0];
+    float[] frequencia = new float[0];
+    float[] contraste = new float[0];
+    boolean[] primeiroPlano = new boolean[0];
+    byte[] qualidade = new byte[0];
+
+    int blocosPrimeiroPlano;
+    int pontuacao;
+    Dica dica = Dica.NENHUMA;
+    long duracaoNanos;
+
+    void preparar(int largura, int altura, int tamanhoBloco) {
+        int novosBlocosX = (largura + tamanhoBloco - 1) / tamanhoBloco;
+        int novosBlocosY = (altura + tamanhoBloco - 1) / tamanhoBloco;
+        int blocos = novosBlocosX * novosBlocosY;
+        if (qualidade.length != blocos) {
+            orientacao = new float[blocos];
+            coerencia = new float[blocos];
+            frequencia = new float[blocos];
+            contraste = new float[blocos];
+            primeiroPlano = new boolean[blocos];
+            qualidade = new byte[blocos];
+        }
+        this.largura = largura;
+        this.altura = altura;
+        this.tamanhoBloco = tamanhoBloco;
+        this.blocosX = novosBlocosX;
+        this.blocosY = novosBlocosY;
+    }
+
+    /**
+     * Marca o mapa como vazio (quadro sem dedo ou não analisado).
+     */
+    public void limpar() {
+        blocosX = 0;
+        blocosY = 0;
+        blocosPrimeiroPlano = 0;
+        pontuacao = 0;
+        dica = Dica.NENHUMA;
+        duracaoNanos = 0;
+    }
+
+    public boolean isVazio() {
+        return blocosX == 0;
+    }
+
+    /**
+     * Pontuação do quadro de 0 a 100 (mesma escala da qualidade do quadro).
+     */
+    public int getPontuacao() {
+        return pontuacao;
+    }
+
+    /**
+     * Nível no estilo NFIQ: 1 (excelente) a 5 (inutilizável).
+     */
+    public int getNivelNfiq() {
+        if (pontuacao >= 80) {
+            return 1;
+        } else if (pontuacao >= 60) {
+            return 2;
+        } else if (pontuacao >= 40) {
+            return 3;
+        } else if (pontuacao >= 20) {
+            return 4;
+        }
+        return 5;
+    }
+
+    public Dica getDica() {
+        return dica;
+    }
+
+    /**
+     * Qualidade de cada bloco (0 a 100), em ordem de linhas: o mapa compacto.
+     */
+    public byte[] getQualidades() {
+        return qualidade;
+    }
+
+    public int getQualidade(int bx, int by) {
+        return qualidade[by * blocosX + bx];
+    }
+
+    /**
+     * Direção das cristas em radianos, de 0 a pi.
+     */
+    public float[] getOrientacoes() {
+        return orientacao;
+    }
+
+    /**
+     * Coerência da orientação (0 = sem direção, 1 = cristas paralelas).
+     */
+    public float[] getCoerencias() {
+        return coerencia;
+    }
+
+    /**
+     * Cristas por pixel (1 / período); 0 quando não deu para medir.
+     */
+    public float[] getFrequencias() {
+        return frequencia;
+    }
+
+    /**
+     * Desvio padrão dos tons do bloco.
+     */
+    public float[] getContrastes() {
+        return contraste;
+    }
+
+    public boolean[] getPrimeiroPlano() {
+        return primeiroPlano;
+    }
+
+    public int getBlocosPrimeiroPlano() {
+        return blocosPrimeiroPlano;
+    }
+
+    public int getBlocosX() {
+        return blocosX;
+    }
+
+    public int getBlocosY() {
+        return blocosY;
+    }
+
+    public int getTamanhoBloco() {
+        return tamanhoBloco;
+    }
+
+    public int getLargura() {
+        return largura;
+    }
+
+    public int getAltura() {
+        return altura;
+    }
+
+    /**
+     * Tempo gasto pelo {@link AnalisadorBlocos} neste quadro.
+     */
+    public long getDuracaoNanos() {
+        return duracaoNanos;
+    }
+}
@@ -0,0 +1,306 @@
+package com.sistema.ponto.biometria.wsq;
+
+/**
+ * Árvores de decomposição do WSQ para uma dimensão de imagem.
+ * <ul>
+ *   <li>W: as 20 regiões divididas pela transformada (cada uma vira 4), com as
+ *   flags de inversão espectral por linha e por coluna;</li>
+ *   <li>Q: as 64 subbandas resultantes, na ordem em que são quantizadas e codificadas.</li>
+ * </ul>
+ * Regiões vindas de um filtro passa-alta têm o espectro invertido, por isso a
+ * metade passa-baixa delas fica com o menor tamanho quando o comprimento é ímpar.
+ */
+final class ArvoresWsq {
+
+    final int largura;
+    final int altura;
+
+    final int[] wx = new int[ConstantesWsq.W_TREELEN];
+    final int[] wy = new int[ConstantesWsq.W_TREELEN];
+    final int[] wLarg = new int[ConstantesWsq.W_TREELEN];
+    final int[] wAlt = new int[ConstantesWsq.W_TREELEN];
+    final boolean[] invLinha = new boolean[ConstantesWsq.W_TREELEN];
+    final boolean[] invColuna = new boolean[ConstantesWsq.W_TREELEN];
+
+    final int[] qx = new int[ConstantesWsq.Q_TREELEN];
+    final int[] qy = new int[ConstantesWsq.Q_TREELEN];
+    final int[] qLarg = new int[ConstantesWsq.Q_TREELEN];
+    final int[] qAlt = new int[ConstantesWsq.Q_TREELEN];
+
+    ArvoresWsq(int largura, int altura) {
+        this.largura = largura;
+        this.altura = altura;
+        construirW();
+        construirQ();
+    }
+
+    boolean isCompativel(int largura, int altura) {
+        return this.largura == largura && this.altura == altura;
+    }
+
+    private void construirW() {
+        for (int no : new int[] {2, 4, 7, 9, 11, 13, 16, 18}) {
+            invLinha[no] = true;
+        }
+        for (int no : new int[] {3, 5, 8, 9, 12, 13, 17, 18}) {
+            invColuna[no] = true;
+        }
+
+        wTree4(0, 1, largura, altura, 0, 0, true);
+
+        int lenx;
+        int lenx2;
+        if (wLarg[1] % 2 == 0) {
+            lenx = wLarg[1] / 2;
+            lenx2 = lenx;
+        } else {
+            lenx = (wLarg[1] + 1) / 2;
+            lenx2 = lenx - 1;
+        }
+        int leny;
+        int leny2;
+        if (wAlt[1] % 2 == 0) {
+            leny = wAlt[1] / 2;
+            leny2 = leny;
+        } else {
+            leny = (wAlt[1] + 1) / 2;
+            leny2 = leny - 1;
+        }
+
+        wTree4(4, 6, lenx2, leny, lenx, 0, false);
+        wTree4(5, 10, lenx, leny2, 0, leny, false);
+        wTree4(14, 15, lenx, leny, 0, 0, false);
+
+        wx[19] = 0;
+        wy[19] = 0;
+        wLarg[19] = (wLarg[15] % 2 == 0) ? wLarg[15] / 2 : (wLarg[15] + 1) / 2;
+        wAlt[19] = (wAlt[15] % 2 == 0) ? wAlt[15] / 2 : (wAlt[15] + 1) / 2;
+    }
+
+    /**
+     * Registra a região {@code p1} e os quatro quadrantes dela a partir de {@code p2}.
+     * Com {@code parar}, o quarto quadrante (passa-alta nas duas direções) não é registrado.
+     */
+    private void wTree4(int p1, int p2, int lenx, int leny, int x, int y, boolean parar) {
+        boolean xPar = lenx % 2 == 0;
+        boolean yPar = leny % 2 == 0;
+
+        wx[p1] = x;
+        wy[p1] = y;
+        wLarg[p1] = lenx;
+        wAlt[p1] = leny;
+
+        wx[p2] = x;
+        wx[p2 + 2] = x;
+        wy[p2] = y;
+        wy[p2 + 1] = y;
+
+        if (xPar) {
+            wLarg[p2] = lenx / 2;
+            wLarg[p2 + 1] = wLarg[p2];
+        } else if (p1 == 4) {
+            wLarg[p2] = (lenx - 1) / 2;
+            wLarg[p2 + 1] = wLarg[p2] + 1;
+        } else {
+            wLarg[p2] = (lenx + 1) / 2;
+            wLarg[p2 + 1] = wLarg[p2] - 1;
+        }
+        wx[p2 + 1] = wLarg[p2] + x;
+        if (!parar) {
+            wLarg[p2 + 3] = wLarg[p2 + 1];
+            wx[p2 + 3] = wx[p2 + 1];
+        }
+        wLarg[p2 + 2] = wLarg[p2];
+
+        if (yPar) {
+            wAlt[p2] = leny / 2;
+            wAlt[p2 + 2] = wAlt[p2];
+        } else if (p1 == 5) {
+            wAlt[p2] = (leny - 1) / 2;
+            wAlt[p2 + 2] = wAlt[p2] + 1;
+        } else {
+            wAlt[p2] = (leny + 1) / 2;
+            wAlt[p2 + 2] = wAlt[p2] - 1;
+        }
+        wy[p2 + 2] = wAlt[p2] + y;
+        if (!parar) {
+            wAlt[p2 + 3] = wAlt[p2 + 2];
+            wy[p2 + 3] = wy[p2 + 2];
+        }
+        wAlt[p2 + 1] = wAlt[p2];
+    }
+
+    private void construirQ() {
+        qTree16(3, wLarg[14], wAlt[14], wx[14], wy[14], false, false);
+        qTree16(19, wLarg[4], wAlt[4], wx[4], wy[4], false, true);
+        qTree16(48, wLarg[0], wAlt[0], wx[0], wy[0], false, false);
+        qTree16(35, wLarg[5], wAlt[5], wx[5], wy[5], true, false);
+        qTree4(0, wLarg[19], wAlt[19], wx[19], wy[19]);
+    }
+
+    /**
+     * Divide uma região em 16 subbandas (dois níveis), quatro por quadrante.
+     * {@code invX}/{@code invY} indicam região com espectro invertido na direção.
+     */
+    private void qTree16(int p, int lenx, int leny, int x, int y, boolean invY, boolean invX) {
+        int tempx;
+        int temp2x;
+        if (lenx % 2 == 0) {
+            tempx = lenx / 2;
+            temp2x = tempx;
+        } else if (invX) {
+            temp2x = (lenx + 1) / 2;
+            tempx = temp2x - 1;
+        } else {
+            tempx = (lenx + 1) / 2;
+            temp2x = tempx - 1;
+        }
+
+        int tempy;
+        int temp2y;
+        if (leny % 2 == 0) {
+            tempy = leny / 2;
+            temp2y = tempy;
+        } else if (invY) {
+            temp2y = (leny + 1) / 2;
+            tempy = temp2y - 1;
+        } else {
+            tempy = (leny + 1) / 2;
+            temp2y = tempy - 1;
+        }
+
+        // Quadrante superior esquerdo (passa-baixa nas duas direções)
+        qx[p] = x;
+        qx[p + 2] = x;
+        qy[p] = y;
+        qy[p + 1] = y;
+        if (tempx % 2 == 0) {
+            qLarg[p] = tempx / 2;
+            qLarg[p + 1] = qLarg[p];
+        } else {
+            qLarg[p] = (tempx + 1) / 2;
+            qLarg[p + 1] = qLarg[p] - 1;
+        }
+        qLarg[p + 2] = qLarg[p];
+        qLarg[p + 3] = qLarg[p + 1];
+        qx[p + 1] = x + qLarg[p];
+        qx[p + 3] = qx[p + 1];
+        if (tempy % 2 == 0) {
+            qAlt[p] = tempy / 2;
+            qAlt[p + 2] = qAlt[p];
+        } else {
+            qAlt[p] = (tempy + 1) / 2;
+            qAlt[p + 2] = qAlt[p] - 1;
+        }
+        qAlt[p + 1] = qAlt[p];
+        qAlt[p + 3] = qAlt[p + 2];
+        qy[p + 2] = y + qAlt[p];
+        qy[p + 3] = qy[p + 2];
+
+        // Quadrante superior direito (invertido em x)
+        qx[p + 4] = x + tempx;
+        qx[p + 6] = qx[p + 4];
+        qy[p + 4] = y;
+        qy[p + 5] = y;
+        qy[p + 6] = qy[p + 2];
+        qy[p + 7] = qy[p + 2];
+        qAlt[p + 4] = qAlt[p];
+        qAlt[p + 5] = qAlt[p];
+        qAlt[p + 6] = qAlt[p + 2];
+        qAlt[p + 7] = qAlt[p + 2];
+        if (temp2x % 2 == 0) {
+            qLarg[p + 4] = temp2x / 2;
+            qLarg[p + 5] = qLarg[p + 4];
+        } else {
+            qLarg[p + 5] = (temp2x + 1) / 2;
+            qLarg[p + 4] = qLarg[p + 5] - 1;
+        }
+        qLarg[p + 6] = qLarg[p + 4];
+        qLarg[p + 7] = qLarg[p + 5];
+        qx[p + 5] = qx[p + 4] + qLarg[p + 4];
+        qx[p + 7] = qx[p + 5];
+
+        // Quadrante inferior esquerdo (invertido em y)
+        qx[p + 8] = x;
+        qx[p + 9] = qx[p + 1];
+        qx[p + 10] = x;
+        qx[p + 11] = qx[p + 1];
+        qy[p + 8] = y + tempy;
+        qy[p + 9] = qy[p + 8];
+        qLarg[p + 8] = qLarg[p];
+        qLarg[p + 9] = qLarg[p + 1];
+        qLarg[p + 10] = qLarg[p];
+        qLarg[p + 11] = qLarg[p + 1];
+        if (temp2y % 2 == 0) {
+            qAlt[p + 8] = temp2y / 2;
+            qAlt[p + 10] = qAlt[p + 8];
+        } else {
+            qAlt[p + 10] = (temp2y + 1) / 2;
+            qAlt[p + 8] = qAlt[p + 10] - 1;
+        }
+        qAlt[p + 9] = qAlt[p + 8];
+        qAlt[p + 11] = qAlt[p + 10];
+        qy[p + 10] = qy[p + 8] + qAlt[p + 8];
+        qy[p + 11] = qy[p + 10];
+
+        // Quadrante inferior direito (invertido nas duas direções)
+        qx[p + 12] = qx[p + 4];
+        qx[p + 13] = qx[p + 5];
+        qx[p + 14] = qx[p + 4];
+        qx[p + 15] = qx[p + 5];
+        qy[p + 12] = qy[p + 8];
+        qy[p + 13] = qy[p + 8];
+        qy[p + 14] = qy[p + 10];
+        qy[p + 15] = qy[p + 10];
+        qLarg[p + 12] = qLarg[p + 4];
+        qLarg[p + 13] = qLarg[p + 5];
+        qLarg[p + 14] = qLarg[p + 4];
+        qLarg[p + 15] = qLarg[p + 5];
+        qAlt[p + 12] = qAlt[p + 8];
+        qAlt[p + 13] = qAlt[p + 8];
+        qAlt[p + 14] = qAlt[p + 10];
+        qAlt[p + 15] = qAlt[p + 10];
+    }
+
+    /**
+     * Divide a menor região (passa-baixa de maior nível) nas quatro primeiras subbandas.
+     */
+    private void qTree4(int p, int lenx, int leny, int x, int y) {
+        qx[p] = x;
+        qx[p + 2] = x;
+        qy[p] = y;
+        qy[p + 1] = y;
+        if (lenx % 2 == 0) {
+            qLarg[p] = lenx / 2;
+            qLarg[p + 1] = qLarg[p];
+        } else {
+            qLarg[p] = (lenx + 1) / 2;
+            qLarg[p + 1] = qLarg[p] - 1;
+        }
+        qLarg[p + 2] = qLarg[p];
+        qLarg[p + 3] = qLarg[p + 1];
+        qx[p + 1] = x + qLarg[p];
+        qx[p + 3] = qx[p + 1];
+        if (leny % 2 == 0) {
+            qAlt[p] = leny / 2;
+            qAlt[p + 2] = qAlt[p];
+        } else {
+            qAlt[p] = (leny + 1) / 2;
+            qAlt[p + 2] = qAlt[p] - 1;
+        }
+        qAlt[p + 1] = qAlt[p];
+        qAlt[p + 3] = qAlt[p + 2];
+        qy[p + 2] = y + qAlt[p];
+        qy[p + 3] = qy[p + 2];
+    }
+
+    /**
+     * Bloco de codificação (0, 1 ou 2) a que a subbanda pertence.
+     */
+    static int bloco(int subbanda) {
+        if (subbanda < ConstantesWsq.STRT_SUBBAND_2) {
+            return 0;
+        }
+        return subbanda < ConstantesWsq.STRT_SUBBAND_3 ? 1 : 2;
+    }
+}
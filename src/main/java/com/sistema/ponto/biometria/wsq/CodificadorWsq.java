@@ -0,0 +1,472 @@
+package com.sistema.ponto.biometria.wsq;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Codificador WSQ (Wavelet Scalar Quantization) em Java puro para quadros em
+ * tons de cinza de 8 bits, como os de {@code AcquireFingerprintImage}.
+ * <p>
+ * Etapas: normalização pela média, transformada 9/7 em 64 subbandas,
+ * quantização escalar por subbanda com passo calculado a partir da variância
+ * para atingir a taxa de bits pedida, e Huffman em três blocos. A saída segue a
+ * estrutura de marcadores do padrão (SOI, DTT, DQT, DHT, SOF, SOB, EOI).
+ * <p>
+ * Taxas usuais: 0,75 bit/pixel (~15:1, o padrão) e 2,25 bits/pixel (~5:1).
+ * Todos os buffers são reaproveitados entre chamadas; use uma instância por thread.
+ */
+public class CodificadorWsq {
+
+    public static final float TAXA_PADRAO = 0.75f;
+
+    private final float taxaBits;
+
+    private ArvoresWsq arvores;
+    private final TransformadaWsq transformada = new TransformadaWsq();
+    private float[] coeficientes = new float[0];
+    private int[] quantizados = new int[0];
+    private final int[] tamanhoBloco = new int[ConstantesWsq.BLOCOS];
+    private final int[] inicioBloco = new int[ConstantesWsq.BLOCOS + 1];
+
+    // Quantização
+    private final float[] variancias = new float[ConstantesWsq.Q_TREELEN];
+    private final float[] passo = new float[ConstantesWsq.Q_TREELEN];
+    private final float[] zonaMorta = new float[ConstantesWsq.Q_TREELEN];
+    private final boolean[] ativa = new boolean[ConstantesWsq.Q_TREELEN];
+
+    // Huffman
+    private final HuffmanWsq tabela0 = new HuffmanWsq();
+    private final HuffmanWsq tabela1 = new HuffmanWsq();
+    private final int[] contagens = new int[ConstantesWsq.MAX_SIMBOLOS];
+    private final HuffmanWsq.EscritorBits saida = new HuffmanWsq.EscritorBits();
+
+    public CodificadorWsq() {
+        this(TAXA_PADRAO);
+    }
+
+    /**
+     * @param taxaBits taxa alvo em bits por pixel (menor = arquivo menor e mais perda)
+     */
+    public CodificadorWsq(float taxaBits) {
+        if (taxaBits <= 0) {
+            throw new IllegalArgumentException("Taxa de bits inválida: " + taxaBits);
+        }
+        this.taxaBits = taxaBits;
+    }
+
+    public float getTaxaBits() {
+        return taxaBits;
+    }
+
+    /**
+     * Codifica e retorna um novo array com o arquivo WSQ.
+     */
+    public byte[] codificar(byte[] pixels, int largura, int altura) {
+        codificarInterno(pixels, largura, altura);
+        return Arrays.copyOf(saida.getBuffer(), saida.getTamanho());
+    }
+
+    /**
+     * Codifica direto no stream, sem alocar. Retorna o número de bytes escritos.
+     */
+    public int codificar(byte[] pixels, int largura, int altura, OutputStream destino) throws IOException {
+        codificarInterno(pixels, largura, altura);
+        destino.write(saida.getBuffer(), 0, saida.getTamanho());
+        return saida.getTamanho();
+    }
+
+    private void codificarInterno(byte[] pixels, int largura, int altura) {
+        if (largura < ConstantesWsq.DIMENSAO_MINIMA || altura < ConstantesWsq.DIMENSAO_MINIMA) {
+            throw new IllegalArgumentException("Imagem pequena demais para WSQ: " + largura + "x" + altura);
+        }
+        int total = largura * altura;
+        if (pixels.length < total) {
+            throw new IllegalArgumentException("Buffer menor que " + largura + "x" + altura);
+        }
+        if (arvores == null || !arvores.isCompativel(largura, altura)) {
+            arvores = new ArvoresWsq(largura, altura);
+            coeficientes = new float[total];
+            quantizados = new int[total];
+        }
+
+        // Normalização: centra na média e escala para aproximadamente [-128, 128]
+        long soma = 0;
+        int minimo = 255;
+        int maximo = 0;
+        for (int i = 0; i < total; i++) {
+            int p = pixels[i] & 0xFF;
+            soma += p;
+            if (p < minimo) {
+                minimo = p;
+            }
+            if (p > maximo) {
+                maximo = p;
+            }
+        }
+        double media = soma / (double) total;
+        double escala = Math.max(media - minimo, maximo - media) / 128.0;
+        // O decodificador usa os valores arredondados do cabeçalho
+        float deslocamento = ConstantesWsq.arredondarUshort(media);
+        float fatorEscala = ConstantesWsq.arredondarUshort(escala > 0 ? escala : 1.0);
+        float inverso = 1.0f / fatorEscala;
+        for (int i = 0; i < total; i++) {
+            coeficientes[i] = ((pixels[i] & 0xFF) - deslocamento) * inverso;
+        }
+
+        transformada.decompor(coeficientes, arvores);
+        calcularVariancias();
+        calcularPassos();
+        quantizar();
+
+        saida.reiniciar();
+        escreverMarcador(ConstantesWsq.SOI);
+        escreverTabelaTransformada();
+        escreverTabelaQuantizacao();
+
+        contar(0, 1);
+        tabela0.gerar(contagens);
+        escreverTabelaHuffman(0, tabela0);
+        escreverCabecalhoQuadro(largura, altura, deslocamento, fatorEscala);
+        escreverBloco(0, tabela0, 0);
+
+        contar(1, 3);
+        tabela1.gerar(contagens);
+        escreverTabelaHuffman(1, tabela1);
+        escreverBloco(1, tabela1, 1);
+        escreverBloco(2, tabela1, 1);
+        escreverMarcador(ConstantesWsq.EOI);
+    }
+
+    // ---------------------------------------------------------------------
+    // Quantização
+    // ---------------------------------------------------------------------
+
+    private void calcularVariancias() {
+        int largura = arvores.largura;
+        double somaVariancias = 0;
+        for (int s = 0; s < ConstantesWsq.NUM_SUBBANDS; s++) {
+            // Só a parte central da subbanda, onde fica a digital
+            int x0 = arvores.qx[s] + arvores.qLarg[s] / 8;
+            int y0 = arvores.qy[s] + (9 * arvores.qAlt[s]) / 32;
+            int lenx = (3 * arvores.qLarg[s]) / 4;
+            int leny = (7 * arvores.qAlt[s]) / 16;
+            variancias[s] = variancia(largura, x0, y0, lenx, leny);
+            somaVariancias += variancias[s];
+        }
+        if (somaVariancias < 20000.0) {
+            // Imagem com pouca energia no centro: usa as subbandas inteiras
+            for (int s = 0; s < ConstantesWsq.NUM_SUBBANDS; s++) {
+                variancias[s] = variancia(largura, arvores.qx[s], arvores.qy[s], arvores.qLarg[s], arvores.qAlt[s]);
+            }
+        }
+    }
+
+    private float variancia(int largura, int x0, int y0, int lenx, int leny) {
+        int n = lenx * leny;
+        if (n < 2) {
+            return 0;
+        }
+        double soma = 0;
+        double somaQuadrados = 0;
+        for (int y = 0; y < leny; y++) {
+            int p = (y0 + y) * largura + x0;
+            for (int x = 0; x < lenx; x++, p++) {
+                float v = coeficientes[p];
+                soma += v;
+                somaQuadrados += v * v;
+            }
+        }
+        return (float) ((somaQuadrados - soma * soma / n) / (n - 1.0));
+    }
+
+    /**
+     * Passo de quantização por subbanda: proporcional a 1/log(variância), com o
+     * fator global {@code q} resolvido para a taxa de bits alvo. Subbandas cujo
+     * passo ficaria grande demais para a variância são descartadas e o cálculo
+     * é refeito sem elas.
+     */
+    private void calcularPassos() {
+        Arrays.fill(passo, 0);
+        Arrays.fill(zonaMorta, 0);
+        Arrays.fill(ativa, false);
+        for (int s = 0; s < ConstantesWsq.NUM_SUBBANDS; s++) {
+            if (variancias[s] >= ConstantesWsq.VARIANCIA_MINIMA) {
+                passo[s] = s < ConstantesWsq.STRT_SIZE_REGION_2
+                    ? 1.0f
+                    : (float) (10.0 / (ponderacao(s) * Math.log(variancias[s])));
+                ativa[s] = true;
+            }
+        }
+
+        double q;
+        while (true) {
+            double somaAreas = 0;
+            double logProduto = 0;
+            for (int s = 0; s < ConstantesWsq.NUM_SUBBANDS; s++) {
+                if (ativa[s]) {
+                    double area = areaRelativa(s);
+                    somaAreas += area;
+                    logProduto += area * Math.log(Math.sqrt(variancias[s]) / passo[s]);
+                }
+            }
+            if (somaAreas == 0) {
+                q = 1;
+                break;
+            }
+            q = (Math.pow(2, taxaBits / somaAreas - 1.0) / 2.5) / Math.exp(logProduto / somaAreas);
+
+            boolean removeu = false;
+            for (int s = 0; s < ConstantesWsq.NUM_SUBBANDS; s++) {
+                if (ativa[s] && passo[s] / q >= 5.0 * Math.sqrt(variancias[s])) {
+                    ativa[s] = false;
+                    removeu = true;
+                }
+            }
+            if (!removeu) {
+                break;
+            }
+        }
+
+        for (int s = 0; s < ConstantesWsq.NUM_SUBBANDS; s++) {
+            if (ativa[s]) {
+                // Arredonda como o DQT vai registrar, para codificar e decodificar iguais
+                passo[s] = ConstantesWsq.arredondarUshort(passo[s] / q);
+                zonaMorta[s] = ConstantesWsq.arredondarUshort(1.2 * passo[s]);
+                if (passo[s] == 0) {
+                    ativa[s] = false;
+                    zonaMorta[s] = 0;
+                }
+            } else {
+                passo[s] = 0;
+            }
+        }
+    }
+
+    /**
+     * Peso das subbandas do terceiro bloco (maior frequência) no passo de quantização.
+     */
+    private static double ponderacao(int subbanda) {
+        switch (subbanda) {
+            case 52:
+            case 56:
+                return 1.32;
+            case 54:
+            case 57:
+                return 1.42;
+            case 53:
+            case 55:
+            case 58:
+            case 59:
+                return 1.08;
+            default:
+                return 1.0;
+        }
+    }
+
+    private static double areaRelativa(int subbanda) {
+        if (subbanda < ConstantesWsq.STRT_SIZE_REGION_2) {
+            return 1.0 / 1024.0;
+        }
+        return subbanda < ConstantesWsq.STRT_SIZE_REGION_3 ? 1.0 / 256.0 : 1.0 / 16.0;
+    }
+
+    private void quantizar() {
+        int largura = arvores.largura;
+        int n = 0;
+        Arrays.fill(tamanhoBloco, 0);
+        for (int s = 0; s < ConstantesWsq.NUM_SUBBANDS; s++) {
+            if (!ativa[s]) {
+                continue;
+            }
+            float q = passo[s];
+            float meiaZona = zonaMorta[s] / 2.0f;
+            for (int y = 0; y < arvores.qAlt[s]; y++) {
+                int p = (arvores.qy[s] + y) * largura + arvores.qx[s];
+                for (int x = 0; x < arvores.qLarg[s]; x++, p++) {
+                    float c = coeficientes[p];
+                    int v;
+                    if (c >= -meiaZona && c <= meiaZona) {
+                        v = 0;
+                    } else if (c > 0) {
+                        v = (int) ((c - meiaZona) / q + 1.0f);
+                    } else {
+                        v = (int) ((c + meiaZona) / q - 1.0f);
+                    }
+                    quantizados[n++] = Math.max(-0xFFFF, Math.min(0xFFFF, v));
+                }
+            }
+            tamanhoBloco[ArvoresWsq.bloco(s)] += arvores.qLarg[s] * arvores.qAlt[s];
+        }
+        // Subbandas em ordem: os blocos ficam contíguos
+        inicioBloco[0] = 0;
+        inicioBloco[1] = tamanhoBloco[0];
+        inicioBloco[2] = tamanhoBloco[0] + tamanhoBloco[1];
+        inicioBloco[3] = n;
+    }
+
+    // ---------------------------------------------------------------------
+    // Entropia
+    // ---------------------------------------------------------------------
+
+    private void contar(int primeiroBloco, int fimBlocos) {
+        Arrays.fill(contagens, 0);
+        for (int b = primeiroBloco; b < fimBlocos; b++) {
+            percorrerBloco(b, null);
+        }
+    }
+
+    /**
+     * Converte os coeficientes do bloco em símbolos: conta (tabela null) ou escreve.
+     */
+    private void percorrerBloco(int bloco, HuffmanWsq tabela) {
+        int inicio = inicioBloco[bloco];
+        int fim = inicio + tamanhoBloco[bloco];
+        int zeros = 0;
+        for (int i = inicio; i < fim; i++) {
+            int v = quantizados[i];
+            if (v == 0) {
+                if (++zeros == 0xFFFF) {
+                    emitirZeros(zeros, tabela);
+                    zeros = 0;
+                }
+                continue;
+            }
+            if (zeros > 0) {
+                emitirZeros(zeros, tabela);
+                zeros = 0;
+            }
+            emitirCoeficiente(v, tabela);
+        }
+        if (zeros > 0) {
+            emitirZeros(zeros, tabela);
+        }
+    }
+
+    private void emitirZeros(int zeros, HuffmanWsq tabela) {
+        if (zeros <= ConstantesWsq.MAX_ZRUN) {
+            emitir(zeros, tabela);
+        } else if (zeros <= 0xFF) {
+            emitir(ConstantesWsq.ESC_ZRUN_8, tabela);
+            extra(zeros, 8, tabela);
+        } else {
+            emitir(ConstantesWsq.ESC_ZRUN_16, tabela);
+            extra(zeros, 16, tabela);
+        }
+    }
+
+    private void emitirCoeficiente(int v, HuffmanWsq tabela) {
+        if (v > ConstantesWsq.MAX_COEF) {
+            if (v > 0xFF) {
+                emitir(ConstantesWsq.ESC_POSITIVO_16, tabela);
+                extra(v, 16, tabela);
+            } else {
+                emitir(ConstantesWsq.ESC_POSITIVO_8, tabela);
+                extra(v, 8, tabela);
+            }
+        } else if (v < 1 - ConstantesWsq.MAX_COEF) {
+            if (-v > 0xFF) {
+                emitir(ConstantesWsq.ESC_NEGATIVO_16, tabela);
+                extra(-v, 16, tabela);
+            } else {
+                emitir(ConstantesWsq.ESC_NEGATIVO_8, tabela);
+                extra(-v, 8, tabela);
+            }
+        } else {
+            emitir(v + ConstantesWsq.DESLOCAMENTO_COEF, tabela);
+        }
+    }
+
+    private void emitir(int simbolo, HuffmanWsq tabela) {
+        if (tabela == null) {
+            contagens[simbolo]++;
+        } else {
+            saida.escrever(tabela.codigo[simbolo], tabela.tamanho[simbolo]);
+        }
+    }
+
+    private void extra(int valor, int bits, HuffmanWsq tabela) {
+        if (tabela != null) {
+            saida.escrever(valor, bits);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Segmentos
+    // ---------------------------------------------------------------------
+
+    private void escreverMarcador(int marcador) {
+        saida.escreverShort(marcador);
+    }
+
+    private void escreverTabelaTransformada() {
+        double[] baixo = ConstantesWsq.FILTRO_BAIXO;
+        double[] alto = ConstantesWsq.FILTRO_ALTO;
+        escreverMarcador(ConstantesWsq.DTT);
+        saida.escreverShort(2 + 2 + 6 * ((baixo.length + 1) / 2 + (alto.length + 1) / 2));
+        saida.escreverByte(baixo.length);
+        saida.escreverByte(alto.length);
+        for (int i = baixo.length / 2; i < baixo.length; i++) {
+            escreverCoeficienteFiltro(baixo[i]);
+        }
+        for (int i = alto.length / 2; i < alto.length; i++) {
+            escreverCoeficienteFiltro(alto[i]);
+        }
+    }
+
+    private void escreverCoeficienteFiltro(double valor) {
+        saida.escreverByte(valor < 0 ? 1 : 0);
+        long[] e = ConstantesWsq.escalar(Math.abs(valor), 0xFFFFFFFFL);
+        saida.escreverByte((int) e[0]);
+        saida.escreverInt(e[1]);
+    }
+
+    private void escreverTabelaQuantizacao() {
+        escreverMarcador(ConstantesWsq.DQT);
+        saida.escreverShort(2 + 3 + 6 * ConstantesWsq.Q_TREELEN);
+        escreverUshortEscalado(ConstantesWsq.CENTRO_BIN);
+        for (int s = 0; s < ConstantesWsq.Q_TREELEN; s++) {
+            escreverUshortEscalado(passo[s]);
+            escreverUshortEscalado(zonaMorta[s]);
+        }
+    }
+
+    private void escreverUshortEscalado(double valor) {
+        long[] e = ConstantesWsq.escalar(valor, 0xFFFF);
+        saida.escreverByte((int) e[0]);
+        saida.escreverShort((int) e[1]);
+    }
+
+    private void escreverTabelaHuffman(int id, HuffmanWsq tabela) {
+        escreverMarcador(ConstantesWsq.DHT);
+        saida.escreverShort(2 + 1 + ConstantesWsq.MAX_BITS_HUFFMAN + tabela.totalValores);
+        saida.escreverByte(id);
+        for (int t = 1; t <= ConstantesWsq.MAX_BITS_HUFFMAN; t++) {
+            saida.escreverByte(tabela.bits[t]);
+        }
+        for (int i = 0; i < tabela.totalValores; i++) {
+            saida.escreverByte(tabela.valores[i]);
+        }
+    }
+
+    private void escreverCabecalhoQuadro(int largura, int altura, float deslocamento, float fatorEscala) {
+        escreverMarcador(ConstantesWsq.SOF);
+        saida.escreverShort(17);
+        saida.escreverByte(0);    // preto
+        saida.escreverByte(255);  // branco
+        saida.escreverShort(altura);
+        saida.escreverShort(largura);
+        escreverUshortEscalado(deslocamento);
+        escreverUshortEscalado(fatorEscala);
+        saida.escreverByte(ConstantesWsq.ENCODER_WSQ);
+        saida.escreverShort(0);   // software
+    }
+
+    private void escreverBloco(int bloco, HuffmanWsq tabela, int idTabela) {
+        escreverMarcador(ConstantesWsq.SOB);
+        saida.escreverShort(3);
+        saida.escreverByte(idTabela);
+        percorrerBloco(bloco, tabela);
+        saida.alinhar();
+    }
+}
@@ -0,0 +1,107 @@
+package com.sistema.ponto.biometria.wsq;
+
+/**
+ * Constantes do formato WSQ (FBI, IAFIS-IC-0110): marcadores, divisão em
+ * subbandas, filtros 9/7 e símbolos do código de Huffman.
+ */
+final class ConstantesWsq {
+
+    // Marcadores
+    static final int SOI = 0xFFA0;
+    static final int EOI = 0xFFA1;
+    static final int SOF = 0xFFA2;
+    static final int SOB = 0xFFA3;
+    static final int DTT = 0xFFA4;
+    static final int DQT = 0xFFA5;
+    static final int DHT = 0xFFA6;
+    static final int DRT = 0xFFA7;
+    static final int COM = 0xFFA8;
+
+    // Subbandas: 64 no total, as 4 últimas (maior frequência) nunca são codificadas
+    static final int W_TREELEN = 20;
+    static final int Q_TREELEN = 64;
+    static final int NUM_SUBBANDS = 60;
+    static final int STRT_SUBBAND_2 = 19;
+    static final int STRT_SUBBAND_3 = 52;
+    static final int STRT_SIZE_REGION_2 = 4;
+    static final int STRT_SIZE_REGION_3 = 51;
+    static final int BLOCOS = 3;
+
+    static final float VARIANCIA_MINIMA = 1.01f;
+    static final float CENTRO_BIN = 0.44f;
+
+    // Filtros de análise (metade de cada um é gravada no DTT)
+    static final double[] FILTRO_BAIXO = {
+        0.03782845550726404, -0.02384946501955685, -0.11062440441843718, 0.37740285561283066,
+        0.85269867900889385,
+        0.37740285561283066, -0.11062440441843718, -0.02384946501955685, 0.03782845550726404
+    };
+    static final double[] FILTRO_ALTO = {
+        0.06453888262869706, -0.04068941760916406, -0.41809227322161724,
+        0.7884856164055829,
+        -0.41809227322161724, -0.04068941760916406, 0.06453888262869706
+    };
+
+    // Símbolos de Huffman: 1-100 sequências de zeros, 101-106 escapes,
+    // 107-254 coeficientes de -73 a 74 (símbolo = coeficiente + 180)
+    static final int MAX_COEF = 74;
+    static final int MAX_ZRUN = 100;
+    static final int DESLOCAMENTO_COEF = 180;
+    static final int ESC_POSITIVO_8 = 101;
+    static final int ESC_NEGATIVO_8 = 102;
+    static final int ESC_POSITIVO_16 = 103;
+    static final int ESC_NEGATIVO_16 = 104;
+    static final int ESC_ZRUN_8 = 105;
+    static final int ESC_ZRUN_16 = 106;
+
+    static final int MAX_BITS_HUFFMAN = 16;
+    static final int MAX_SIMBOLOS = 256;
+
+    static final int ENCODER_WSQ = 2;
+
+    /**
+     * Menor dimensão aceita: cinco níveis de decomposição precisam de pelo menos
+     * dois pixels por linha/coluna na menor região filtrada.
+     */
+    static final int DIMENSAO_MINIMA = 32;
+
+    private ConstantesWsq() {
+    }
+
+    /**
+     * Representa um valor positivo como inteiro escalado por 10^-escala, com a
+     * maior precisão que cabe em {@code maximo}. Retorna {escala, inteiro}.
+     */
+    static long[] escalar(double valor, long maximo) {
+        if (valor <= 0) {
+            return new long[] {0, 0};
+        }
+        int escala = 0;
+        double v = valor;
+        while (v * 10 <= maximo && escala < 255) {
+            v *= 10;
+            escala++;
+        }
+        long inteiro = Math.round(v);
+        if (inteiro > maximo) {
+            inteiro = maximo;
+        }
+        return new long[] {escala, inteiro};
+    }
+
+    static double desescalar(int escala, long inteiro) {
+        double v = inteiro;
+        for (int i = 0; i < escala; i++) {
+            v /= 10;
+        }
+        return v;
+    }
+
+    /**
+     * Valor que o decodificador vai ler depois do arredondamento do cabeçalho.
+     */
+    static float arredondarUshort(double valor) {
+        long[] e = escalar(valor, 0xFFFF);
+        return (float) desescalar((int) e[0], e[1]);
+    }
+}
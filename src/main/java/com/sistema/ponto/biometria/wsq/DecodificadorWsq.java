@@ -0,0 +1,309 @@
+package com.sistema.ponto.biometria.wsq;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decodificador dos arquivos gerados por {@link CodificadorWsq}: lê os
+ * segmentos, decodifica os três blocos de Huffman, reconstrói os coeficientes
+ * (com o centro de bin do DQT) e aplica a transformada inversa.
+ * Reaproveita os buffers entre chamadas; use uma instância por thread.
+ */
+public class DecodificadorWsq {
+
+    private ArvoresWsq arvores;
+    private final TransformadaWsq transformada = new TransformadaWsq();
+    private float[] coeficientes = new float[0];
+    private int[] quantizados = new int[0];
+
+    private final HuffmanWsq[] tabelas = {new HuffmanWsq(), new HuffmanWsq(), new HuffmanWsq(), new HuffmanWsq()};
+    private final boolean[] tabelaDefinida = new boolean[tabelas.length];
+    private final HuffmanWsq.LeitorBits leitor = new HuffmanWsq.LeitorBits();
+
+    private final float[] passo = new float[ConstantesWsq.Q_TREELEN];
+    private final float[] zonaMorta = new float[ConstantesWsq.Q_TREELEN];
+    private float centroBin;
+    private boolean quantizacaoDefinida;
+
+    private byte[] dados;
+    private int posicao;
+    private int fim;
+
+    public BufferedImage decodificar(byte[] arquivo) throws IOException {
+        return decodificar(arquivo, 0, arquivo.length);
+    }
+
+    public BufferedImage decodificar(byte[] arquivo, int inicio, int tamanho) throws IOException {
+        dados = arquivo;
+        posicao = inicio;
+        fim = inicio + tamanho;
+        quantizacaoDefinida = false;
+        Arrays.fill(tabelaDefinida, false);
+
+        if (lerShort() != ConstantesWsq.SOI) {
+            throw new IOException("Arquivo não começa com SOI do WSQ");
+        }
+
+        int largura = 0;
+        int altura = 0;
+        float deslocamento = 0;
+        float fatorEscala = 1;
+        int bloco = 0;
+        int[] inicioBloco = new int[ConstantesWsq.BLOCOS];
+        int[] tamanhoBloco = new int[ConstantesWsq.BLOCOS];
+
+        while (true) {
+            int marcador = lerShort();
+            if (marcador == ConstantesWsq.EOI) {
+                break;
+            }
+            switch (marcador) {
+                case ConstantesWsq.DTT:
+                    lerTabelaTransformada();
+                    break;
+                case ConstantesWsq.DQT:
+                    lerTabelaQuantizacao();
+                    break;
+                case ConstantesWsq.DHT:
+                    lerTabelasHuffman();
+                    break;
+                case ConstantesWsq.SOF:
+                    lerShort();
+                    lerByte(); // preto
+                    lerByte(); // branco
+                    altura = lerShort();
+                    largura = lerShort();
+                    deslocamento = lerUshortEscalado();
+                    fatorEscala = lerUshortEscalado();
+                    lerByte();  // encoder
+                    lerShort(); // software
+                    prepararDimensoes(largura, altura, inicioBloco, tamanhoBloco);
+                    break;
+                case ConstantesWsq.SOB:
+                    lerShort();
+                    int id = lerByte();
+                    if (arvores == null || !quantizacaoDefinida) {
+                        throw new IOException("Bloco antes do SOF/DQT");
+                    }
+                    if (bloco >= ConstantesWsq.BLOCOS) {
+                        throw new IOException("Blocos demais no arquivo WSQ");
+                    }
+                    if (id >= tabelas.length || !tabelaDefinida[id]) {
+                        throw new IOException("Tabela de Huffman " + id + " não definida");
+                    }
+                    decodificarBloco(tabelas[id], inicioBloco[bloco], tamanhoBloco[bloco]);
+                    bloco++;
+                    break;
+                case ConstantesWsq.DRT:
+                    if (lerShort() != 4 || lerShort() != 0) {
+                        throw new IOException("Intervalo de reinício não suportado");
+                    }
+                    break;
+                default:
+                    if (marcador == ConstantesWsq.COM || (marcador & 0xFF00) == 0xFF00) {
+                        // Comentário ou segmento desconhecido: pula
+                        posicao += lerShort() - 2;
+                        break;
+                    }
+                    throw new IOException("Marcador inválido: " + Integer.toHexString(marcador));
+            }
+        }
+        if (arvores == null) {
+            throw new IOException("Arquivo WSQ sem SOF");
+        }
+
+        desquantizar();
+        transformada.reconstruir(coeficientes, arvores);
+
+        BufferedImage imagem = new BufferedImage(largura, altura, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) imagem.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            int v = Math.round(coeficientes[i] * fatorEscala + deslocamento);
+            pixels[i] = (byte) (v < 0 ? 0 : (v > 255 ? 255 : v));
+        }
+        return imagem;
+    }
+
+    private void prepararDimensoes(int largura, int altura, int[] inicioBloco, int[] tamanhoBloco) throws IOException {
+        if (largura < ConstantesWsq.DIMENSAO_MINIMA || altura < ConstantesWsq.DIMENSAO_MINIMA) {
+            throw new IOException("Dimensões inválidas: " + largura + "x" + altura);
+        }
+        if (!quantizacaoDefinida) {
+            throw new IOException("SOF antes do DQT");
+        }
+        if (arvores == null || !arvores.isCompativel(largura, altura)) {
+            arvores = new ArvoresWsq(largura, altura);
+            coeficientes = new float[largura * altura];
+            quantizados = new int[largura * altura];
+        }
+        Arrays.fill(tamanhoBloco, 0);
+        for (int s = 0; s < ConstantesWsq.NUM_SUBBANDS; s++) {
+            if (passo[s] != 0) {
+                tamanhoBloco[ArvoresWsq.bloco(s)] += arvores.qLarg[s] * arvores.qAlt[s];
+            }
+        }
+        inicioBloco[0] = 0;
+        inicioBloco[1] = tamanhoBloco[0];
+        inicioBloco[2] = tamanhoBloco[0] + tamanhoBloco[1];
+    }
+
+    private void decodificarBloco(HuffmanWsq tabela, int inicio, int quantidade) throws IOException {
+        leitor.iniciar(dados, posicao, fim);
+        int i = inicio;
+        int limite = inicio + quantidade;
+        while (i < limite) {
+            int simbolo = tabela.decodificar(leitor);
+            int zeros = 0;
+            int valor = 0;
+            if (simbolo > 0 && simbolo <= ConstantesWsq.MAX_ZRUN) {
+                zeros = simbolo;
+            } else if (simbolo > ConstantesWsq.ESC_ZRUN_16 && simbolo < ConstantesWsq.MAX_SIMBOLOS) {
+                valor = simbolo - ConstantesWsq.DESLOCAMENTO_COEF;
+            } else {
+                switch (simbolo) {
+                    case ConstantesWsq.ESC_POSITIVO_8:
+                        valor = leitor.lerBits(8);
+                        break;
+                    case ConstantesWsq.ESC_NEGATIVO_8:
+                        valor = -leitor.lerBits(8);
+                        break;
+                    case ConstantesWsq.ESC_POSITIVO_16:
+                        valor = leitor.lerBits(16);
+                        break;
+                    case ConstantesWsq.ESC_NEGATIVO_16:
+                        valor = -leitor.lerBits(16);
+                        break;
+                    case ConstantesWsq.ESC_ZRUN_8:
+                        zeros = leitor.lerBits(8);
+                        break;
+                    case ConstantesWsq.ESC_ZRUN_16:
+                        zeros = leitor.lerBits(16);
+                        break;
+                    default:
+                        throw new IOException("Símbolo de Huffman inválido: " + simbolo);
+                }
+            }
+            if (zeros > 0) {
+                if (i + zeros > limite) {
+                    throw new IOException("Sequência de zeros além do fim do bloco");
+                }
+                Arrays.fill(quantizados, i, i + zeros, 0);
+                i += zeros;
+            } else {
+                quantizados[i++] = valor;
+            }
+        }
+        posicao = leitor.alinhar();
+    }
+
+    private void desquantizar() {
+        Arrays.fill(coeficientes, 0);
+        int largura = arvores.largura;
+        int n = 0;
+        for (int s = 0; s < ConstantesWsq.NUM_SUBBANDS; s++) {
+            float q = passo[s];
+            if (q == 0) {
+                continue;
+            }
+            float meiaZona = zonaMorta[s] / 2.0f;
+            for (int y = 0; y < arvores.qAlt[s]; y++) {
+                int p = (arvores.qy[s] + y) * largura + arvores.qx[s];
+                for (int x = 0; x < arvores.qLarg[s]; x++, p++) {
+                    int v = quantizados[n++];
+                    if (v > 0) {
+                        coeficientes[p] = q * (v - centroBin) + meiaZona;
+                    } else if (v < 0) {
+                        coeficientes[p] = q * (v + centroBin) - meiaZona;
+                    }
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Segmentos
+    // ---------------------------------------------------------------------
+
+    private void lerTabelaTransformada() throws IOException {
+        int tamanho = lerShort();
+        int fimSegmento = posicao + tamanho - 2;
+        int tamanhoBaixo = lerByte();
+        int tamanhoAlto = lerByte();
+        boolean compativel = tamanhoBaixo == ConstantesWsq.FILTRO_BAIXO.length
+            && tamanhoAlto == ConstantesWsq.FILTRO_ALTO.length;
+        for (int i = tamanhoBaixo / 2; compativel && i < tamanhoBaixo; i++) {
+            compativel = Math.abs(lerCoeficienteFiltro() - ConstantesWsq.FILTRO_BAIXO[i]) < 1e-6;
+        }
+        for (int i = tamanhoAlto / 2; compativel && i < tamanhoAlto; i++) {
+            compativel = Math.abs(lerCoeficienteFiltro() - ConstantesWsq.FILTRO_ALTO[i]) < 1e-6;
+        }
+        if (!compativel) {
+            throw new IOException("Filtros da transformada diferentes do 9/7 padrão");
+        }
+        posicao = fimSegmento;
+    }
+
+    private double lerCoeficienteFiltro() throws IOException {
+        int sinal = lerByte();
+        int escala = lerByte();
+        long inteiro = ((long) lerShort() << 16) | lerShort();
+        double v = ConstantesWsq.desescalar(escala, inteiro);
+        return sinal != 0 ? -v : v;
+    }
+
+    private void lerTabelaQuantizacao() throws IOException {
+        lerShort();
+        centroBin = lerUshortEscalado();
+        for (int s = 0; s < ConstantesWsq.Q_TREELEN; s++) {
+            passo[s] = lerUshortEscalado();
+            zonaMorta[s] = lerUshortEscalado();
+        }
+        quantizacaoDefinida = true;
+    }
+
+    private void lerTabelasHuffman() throws IOException {
+        int tamanho = lerShort();
+        int fimSegmento = posicao + tamanho - 2;
+        while (posicao < fimSegmento) {
+            int id = lerByte();
+            if (id >= tabelas.length) {
+                throw new IOException("Tabela de Huffman inválida: " + id);
+            }
+            HuffmanWsq tabela = tabelas[id];
+            int total = 0;
+            for (int t = 1; t <= ConstantesWsq.MAX_BITS_HUFFMAN; t++) {
+                tabela.bits[t] = lerByte();
+                total += tabela.bits[t];
+            }
+            if (total > ConstantesWsq.MAX_SIMBOLOS) {
+                throw new IOException("Tabela de Huffman com símbolos demais");
+            }
+            for (int i = 0; i < total; i++) {
+                tabela.valores[i] = lerByte();
+            }
+            tabela.totalValores = total;
+            tabela.gerarCodigos();
+            tabelaDefinida[id] = true;
+        }
+        posicao = fimSegmento;
+    }
+
+    private float lerUshortEscalado() throws IOException {
+        int escala = lerByte();
+        int inteiro = lerShort();
+        return (float) ConstantesWsq.desescalar(escala, inteiro);
+    }
+
+    private int lerByte() throws IOException {
+        if (posicao >= fim) {
+            throw new IOException("Fim inesperado do arquivo WSQ");
+        }
+        return dados[posicao++] & 0xFF;
+    }
+
+    private int lerShort() throws IOException {
+        return (lerByte() << 8) | lerByte();
+    }
+}
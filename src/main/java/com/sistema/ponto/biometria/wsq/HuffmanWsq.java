@@ -0,0 +1,283 @@
+package com.sistema.ponto.biometria.wsq;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tabelas de Huffman do WSQ (mesmo procedimento do JPEG, anexo K.2): códigos
+ * de no máximo 16 bits, canônicos, descritos por {@code bits[1..16]} e pela
+ * lista de símbolos em ordem de tamanho de código.
+ */
+final class HuffmanWsq {
+
+    /** Quantidade de códigos de cada tamanho (índice 1 a 16). */
+    final int[] bits = new int[ConstantesWsq.MAX_BITS_HUFFMAN + 1];
+    /** Símbolos em ordem crescente de tamanho de código. */
+    final int[] valores = new int[ConstantesWsq.MAX_SIMBOLOS];
+    int totalValores;
+
+    // Codificação
+    final int[] codigo = new int[ConstantesWsq.MAX_SIMBOLOS];
+    final int[] tamanho = new int[ConstantesWsq.MAX_SIMBOLOS];
+
+    // Decodificação
+    private final int[] maiorCodigo = new int[ConstantesWsq.MAX_BITS_HUFFMAN + 2];
+    private final int[] menorCodigo = new int[ConstantesWsq.MAX_BITS_HUFFMAN + 1];
+    private final int[] indiceValor = new int[ConstantesWsq.MAX_BITS_HUFFMAN + 1];
+
+    // Trabalho da geração, reaproveitado
+    private final int[] frequencia = new int[ConstantesWsq.MAX_SIMBOLOS + 1];
+    private final int[] tamanhoCodigo = new int[ConstantesWsq.MAX_SIMBOLOS + 1];
+    private final int[] proximo = new int[ConstantesWsq.MAX_SIMBOLOS + 1];
+    private final int[] contagemTamanhos = new int[33];
+
+    /**
+     * Gera a tabela ótima para as contagens de símbolos informadas.
+     */
+    void gerar(int[] contagens) {
+        System.arraycopy(contagens, 0, frequencia, 0, ConstantesWsq.MAX_SIMBOLOS);
+        // Símbolo reservado garante que nenhum código seja só de bits 1
+        frequencia[ConstantesWsq.MAX_SIMBOLOS] = 1;
+        Arrays.fill(tamanhoCodigo, 0);
+        Arrays.fill(proximo, -1);
+
+        while (true) {
+            int c1 = -1;
+            int c2 = -1;
+            long menor = Long.MAX_VALUE;
+            for (int i = 0; i <= ConstantesWsq.MAX_SIMBOLOS; i++) {
+                if (frequencia[i] > 0 && frequencia[i] <= menor) {
+                    menor = frequencia[i];
+                    c1 = i;
+                }
+            }
+            menor = Long.MAX_VALUE;
+            for (int i = 0; i <= ConstantesWsq.MAX_SIMBOLOS; i++) {
+                if (frequencia[i] > 0 && frequencia[i] <= menor && i != c1) {
+                    menor = frequencia[i];
+                    c2 = i;
+                }
+            }
+            if (c2 < 0) {
+                break;
+            }
+            frequencia[c1] += frequencia[c2];
+            frequencia[c2] = 0;
+            tamanhoCodigo[c1]++;
+            while (proximo[c1] >= 0) {
+                c1 = proximo[c1];
+                tamanhoCodigo[c1]++;
+            }
+            proximo[c1] = c2;
+            tamanhoCodigo[c2]++;
+            while (proximo[c2] >= 0) {
+                c2 = proximo[c2];
+                tamanhoCodigo[c2]++;
+            }
+        }
+
+        Arrays.fill(contagemTamanhos, 0);
+        for (int i = 0; i <= ConstantesWsq.MAX_SIMBOLOS; i++) {
+            if (tamanhoCodigo[i] > 0) {
+                contagemTamanhos[tamanhoCodigo[i]]++;
+            }
+        }
+        // Limita os códigos a 16 bits
+        for (int i = 32; i > ConstantesWsq.MAX_BITS_HUFFMAN; i--) {
+            while (contagemTamanhos[i] > 0) {
+                int j = i - 2;
+                while (contagemTamanhos[j] == 0) {
+                    j--;
+                }
+                contagemTamanhos[i] -= 2;
+                contagemTamanhos[i - 1]++;
+                contagemTamanhos[j + 1] += 2;
+                contagemTamanhos[j]--;
+            }
+        }
+        // Remove o símbolo reservado (o código mais longo)
+        int i = ConstantesWsq.MAX_BITS_HUFFMAN;
+        while (i > 0 && contagemTamanhos[i] == 0) {
+            i--;
+        }
+        if (i > 0) {
+            contagemTamanhos[i]--;
+        }
+        System.arraycopy(contagemTamanhos, 0, bits, 0, bits.length);
+
+        totalValores = 0;
+        for (int t = 1; t <= 32; t++) {
+            for (int s = 0; s < ConstantesWsq.MAX_SIMBOLOS; s++) {
+                if (tamanhoCodigo[s] == t) {
+                    valores[totalValores++] = s;
+                }
+            }
+        }
+        gerarCodigos();
+    }
+
+    /**
+     * Monta os códigos canônicos a partir de {@link #bits} e {@link #valores}.
+     */
+    void gerarCodigos() {
+        Arrays.fill(tamanho, 0);
+        int c = 0;
+        int k = 0;
+        for (int t = 1; t <= ConstantesWsq.MAX_BITS_HUFFMAN; t++) {
+            indiceValor[t] = k;
+            menorCodigo[t] = c;
+            for (int n = 0; n < bits[t]; n++) {
+                codigo[valores[k]] = c;
+                tamanho[valores[k]] = t;
+                k++;
+                c++;
+            }
+            maiorCodigo[t] = bits[t] > 0 ? c - 1 : -1;
+            c <<= 1;
+        }
+        maiorCodigo[ConstantesWsq.MAX_BITS_HUFFMAN + 1] = Integer.MAX_VALUE;
+    }
+
+    int decodificar(LeitorBits leitor) throws IOException {
+        int c = leitor.lerBit();
+        int t = 1;
+        while (t <= ConstantesWsq.MAX_BITS_HUFFMAN && c > maiorCodigo[t]) {
+            c = (c << 1) | leitor.lerBit();
+            t++;
+        }
+        if (t > ConstantesWsq.MAX_BITS_HUFFMAN) {
+            throw new IOException("Código de Huffman inválido");
+        }
+        return valores[indiceValor[t] + c - menorCodigo[t]];
+    }
+
+    /**
+     * Escreve bits do mais significativo para o menos, com byte 0x00 após cada
+     * 0xFF para não confundir o dado com um marcador.
+     */
+    static final class EscritorBits {
+        private byte[] buffer = new byte[64 * 1024];
+        private int posicao;
+        private int acumulador;
+        private int bitsNoAcumulador;
+
+        void reiniciar() {
+            posicao = 0;
+            acumulador = 0;
+            bitsNoAcumulador = 0;
+        }
+
+        void escrever(int valor, int quantidade) {
+            for (int i = quantidade - 1; i >= 0; i--) {
+                acumulador = (acumulador << 1) | ((valor >>> i) & 1);
+                if (++bitsNoAcumulador == 8) {
+                    emitir(acumulador);
+                    acumulador = 0;
+                    bitsNoAcumulador = 0;
+                }
+            }
+        }
+
+        /**
+         * Completa o último byte com bits 1.
+         */
+        void alinhar() {
+            if (bitsNoAcumulador > 0) {
+                int faltam = 8 - bitsNoAcumulador;
+                emitir((acumulador << faltam) | ((1 << faltam) - 1));
+                acumulador = 0;
+                bitsNoAcumulador = 0;
+            }
+        }
+
+        private void emitir(int b) {
+            garantir(2);
+            buffer[posicao++] = (byte) b;
+            if (b == 0xFF) {
+                buffer[posicao++] = 0;
+            }
+        }
+
+        void escreverByte(int b) {
+            garantir(1);
+            buffer[posicao++] = (byte) b;
+        }
+
+        void escreverShort(int v) {
+            escreverByte(v >>> 8);
+            escreverByte(v);
+        }
+
+        void escreverInt(long v) {
+            escreverShort((int) (v >>> 16) & 0xFFFF);
+            escreverShort((int) v & 0xFFFF);
+        }
+
+        private void garantir(int n) {
+            if (posicao + n > buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+
+        byte[] getBuffer() {
+            return buffer;
+        }
+
+        int getTamanho() {
+            return posicao;
+        }
+    }
+
+    /**
+     * Lê bits de um segmento codificado, descartando o 0x00 inserido após 0xFF.
+     */
+    static final class LeitorBits {
+        private byte[] dados;
+        private int posicao;
+        private int fim;
+        private int atual;
+        private int bitsRestantes;
+
+        void iniciar(byte[] dados, int posicao, int fim) {
+            this.dados = dados;
+            this.posicao = posicao;
+            this.fim = fim;
+            this.bitsRestantes = 0;
+        }
+
+        int lerBit() throws IOException {
+            if (bitsRestantes == 0) {
+                if (posicao >= fim) {
+                    throw new IOException("Fim inesperado dos dados WSQ");
+                }
+                atual = dados[posicao++] & 0xFF;
+                if (atual == 0xFF) {
+                    int seguinte = posicao < fim ? dados[posicao] & 0xFF : -1;
+                    if (seguinte != 0) {
+                        throw new IOException("Marcador inesperado no meio do bloco");
+                    }
+                    posicao++;
+                }
+                bitsRestantes = 8;
+            }
+            bitsRestantes--;
+            return (atual >>> bitsRestantes) & 1;
+        }
+
+        int lerBits(int quantidade) throws IOException {
+            int v = 0;
+            for (int i = 0; i < quantidade; i++) {
+                v = (v << 1) | lerBit();
+            }
+            return v;
+        }
+
+        /**
+         * Descarta o restante do byte atual e retorna a posição do próximo.
+         */
+        int alinhar() {
+            bitsRestantes = 0;
+            return posicao;
+        }
+    }
+}
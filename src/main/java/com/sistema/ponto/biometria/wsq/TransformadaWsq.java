@@ -0,0 +1,212 @@
+package com.sistema.ponto.biometria.wsq;
+
+/**
+ * Transformada wavelet 9/7 do WSQ sobre um array de floats, no lugar.
+ * <p>
+ * Usa o esquema de lifting da CDF 9/7 com extensão simétrica sem repetir a
+ * borda, que dá exatamente a mesma saída da convolução com os filtros do DTT
+ * ({@link ConstantesWsq#FILTRO_BAIXO}/{@link ConstantesWsq#FILTRO_ALTO}) com
+ * menos da metade das multiplicações, e tem reconstrução exata por construção.
+ * Em regiões com espectro invertido a fase de subamostragem troca: as amostras
+ * passa-baixa ficam nas posições ímpares.
+ * <p>
+ * As colunas são filtradas todas juntas, linha a linha da região: cada passo
+ * de lifting vira uma soma de vetores contíguos, que o JIT vetoriza, em vez de
+ * percorrer a memória com salto de uma linha por amostra.
+ * <p>
+ * Reaproveita os buffers entre chamadas; não é thread-safe.
+ */
+final class TransformadaWsq {
+
+    private static final float ALFA = -1.586134342059924f;
+    private static final float BETA = -0.052980118572961f;
+    private static final float GAMA = 0.882911075530934f;
+    private static final float DELTA = 0.443506852043971f;
+    // Normalização que iguala o lifting aos filtros do padrão
+    private static final float K = 1.149604398860241f;
+
+    private float[] linha = new float[0];
+    private float[] regiao = new float[0];
+
+    /**
+     * Aplica as 20 divisões da árvore W, cada uma por linhas e depois por colunas.
+     */
+    void decompor(float[] dados, ArvoresWsq arvores) {
+        garantirBuffers(arvores);
+        int largura = arvores.largura;
+        for (int no = 0; no < ConstantesWsq.W_TREELEN; no++) {
+            int base = arvores.wy[no] * largura + arvores.wx[no];
+            int lenx = arvores.wLarg[no];
+            int leny = arvores.wAlt[no];
+            for (int y = 0; y < leny; y++) {
+                analisar(dados, base + y * largura, lenx, arvores.invLinha[no]);
+            }
+            analisarColunas(dados, base, largura, lenx, leny, arvores.invColuna[no]);
+        }
+    }
+
+    /**
+     * Desfaz {@link #decompor} percorrendo a árvore ao contrário.
+     */
+    void reconstruir(float[] dados, ArvoresWsq arvores) {
+        garantirBuffers(arvores);
+        int largura = arvores.largura;
+        for (int no = ConstantesWsq.W_TREELEN - 1; no >= 0; no--) {
+            int base = arvores.wy[no] * largura + arvores.wx[no];
+            int lenx = arvores.wLarg[no];
+            int leny = arvores.wAlt[no];
+            sintetizarColunas(dados, base, largura, lenx, leny, arvores.invColuna[no]);
+            for (int y = 0; y < leny; y++) {
+                sintetizar(dados, base + y * largura, lenx, arvores.invLinha[no]);
+            }
+        }
+    }
+
+    /**
+     * Filtra {@code n} amostras contíguas e grava as passa-baixa seguidas das
+     * passa-alta nas mesmas posições.
+     */
+    private void analisar(float[] dados, int inicio, int n, boolean invertido) {
+        float[] x = linha;
+        System.arraycopy(dados, inicio, x, 0, n);
+        if (n > 1) {
+            int fase = invertido ? 1 : 0;
+            levantar(x, n, 1 - fase, ALFA);
+            levantar(x, n, fase, BETA);
+            levantar(x, n, 1 - fase, GAMA);
+            levantar(x, n, fase, DELTA);
+        }
+
+        int p = inicio;
+        int baixo = invertido ? 1 : 0;
+        for (int i = baixo; i < n; i += 2, p++) {
+            dados[p] = x[i] * K;
+        }
+        for (int i = 1 - baixo; i < n; i += 2, p++) {
+            dados[p] = x[i] / K;
+        }
+    }
+
+    private void sintetizar(float[] dados, int inicio, int n, boolean invertido) {
+        float[] x = linha;
+        int p = inicio;
+        int baixo = invertido ? 1 : 0;
+        for (int i = baixo; i < n; i += 2, p++) {
+            x[i] = dados[p] / K;
+        }
+        for (int i = 1 - baixo; i < n; i += 2, p++) {
+            x[i] = dados[p] * K;
+        }
+        if (n > 1) {
+            int fase = baixo;
+            levantar(x, n, fase, -DELTA);
+            levantar(x, n, 1 - fase, -GAMA);
+            levantar(x, n, fase, -BETA);
+            levantar(x, n, 1 - fase, -ALFA);
+        }
+        System.arraycopy(x, 0, dados, inicio, n);
+    }
+
+    /**
+     * Versão por colunas de {@link #analisar}: a região é copiada para um buffer
+     * contíguo, o lifting atua sobre linhas inteiras e as linhas passa-baixa e
+     * passa-alta são gravadas de volta já separadas.
+     */
+    private void analisarColunas(float[] dados, int base, int largura, int lenx, int leny, boolean invertido) {
+        float[] r = regiao;
+        for (int y = 0; y < leny; y++) {
+            System.arraycopy(dados, base + y * largura, r, y * lenx, lenx);
+        }
+        if (leny > 1) {
+            int fase = invertido ? 1 : 0;
+            levantarLinhas(r, lenx, leny, 1 - fase, ALFA);
+            levantarLinhas(r, lenx, leny, fase, BETA);
+            levantarLinhas(r, lenx, leny, 1 - fase, GAMA);
+            levantarLinhas(r, lenx, leny, fase, DELTA);
+        }
+        int destino = base;
+        int baixo = invertido ? 1 : 0;
+        for (int i = baixo; i < leny; i += 2, destino += largura) {
+            escalarLinha(r, i * lenx, dados, destino, lenx, K);
+        }
+        for (int i = 1 - baixo; i < leny; i += 2, destino += largura) {
+            escalarLinha(r, i * lenx, dados, destino, lenx, 1.0f / K);
+        }
+    }
+
+    private void sintetizarColunas(float[] dados, int base, int largura, int lenx, int leny, boolean invertido) {
+        float[] r = regiao;
+        int origem = base;
+        int baixo = invertido ? 1 : 0;
+        for (int i = baixo; i < leny; i += 2, origem += largura) {
+            escalarLinha(dados, origem, r, i * lenx, lenx, 1.0f / K);
+        }
+        for (int i = 1 - baixo; i < leny; i += 2, origem += largura) {
+            escalarLinha(dados, origem, r, i * lenx, lenx, K);
+        }
+        if (leny > 1) {
+            int fase = baixo;
+            levantarLinhas(r, lenx, leny, fase, -DELTA);
+            levantarLinhas(r, lenx, leny, 1 - fase, -GAMA);
+            levantarLinhas(r, lenx, leny, fase, -BETA);
+            levantarLinhas(r, lenx, leny, 1 - fase, -ALFA);
+        }
+        for (int y = 0; y < leny; y++) {
+            System.arraycopy(r, y * lenx, dados, base + y * largura, lenx);
+        }
+    }
+
+    private static void escalarLinha(float[] origem, int de, float[] destino, int para, int n, float fator) {
+        for (int i = 0; i < n; i++) {
+            destino[para + i] = origem[de + i] * fator;
+        }
+    }
+
+    /**
+     * Um passo de lifting: soma aos elementos da paridade {@code primeiro} os
+     * vizinhos multiplicados pelo coeficiente, espelhando nas bordas.
+     */
+    private static void levantar(float[] x, int n, int primeiro, float coeficiente) {
+        int i = primeiro;
+        if (i == 0) {
+            // x[-1] espelha em x[1]
+            x[0] += coeficiente * 2 * x[1];
+            i = 2;
+        }
+        int ultimoInterno = n - 2;
+        for (; i <= ultimoInterno; i += 2) {
+            x[i] += coeficiente * (x[i - 1] + x[i + 1]);
+        }
+        if (i == n - 1) {
+            // x[n] espelha em x[n - 2]
+            x[i] += coeficiente * 2 * x[i - 1];
+        }
+    }
+
+    /**
+     * Mesmo passo de {@link #levantar}, aplicado às linhas {@code y} da paridade
+     * {@code primeiro} de uma região com {@code n} linhas de {@code lenx} amostras.
+     */
+    private static void levantarLinhas(float[] r, int lenx, int n, int primeiro, float coeficiente) {
+        for (int y = primeiro; y < n; y += 2) {
+            int atual = y * lenx;
+            // Espelha nas bordas: a linha -1 é a 1 e a linha n é a n - 2
+            int anterior = (y == 0 ? 1 : y - 1) * lenx;
+            int seguinte = (y == n - 1 ? n - 2 : y + 1) * lenx;
+            for (int x = 0; x < lenx; x++) {
+                r[atual + x] += coeficiente * (r[anterior + x] + r[seguinte + x]);
+            }
+        }
+    }
+
+    private void garantirBuffers(ArvoresWsq arvores) {
+        int maior = Math.max(arvores.largura, arvores.altura);
+        if (linha.length < maior) {
+            linha = new float[maior];
+        }
+        int area = arvores.largura * arvores.altura;
+        if (regiao.length < area) {
+            regiao = new float[area];
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.sistema.ponto.envio;
+
+import com.sistema.ponto.log.Log;
+import com.sistema.ponto.metricas.Contador;
+import com.sistema.ponto.metricas.Histograma;
+import com.sistema.ponto.metricas.RegistroMetricas;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leva os registros do {@link SpoolEnvio} ao sistema web em lotes, com até
+ * {@link #setConcorrencia(int) N} requisições em voo.
+ * <p>
+ * Um lote junta o que estiver na fila (até {@link #setLoteMaximo(int)}
+ * registros ou {@link #setBytesMaximo(int)} bytes); com a fila curta, o
+ * primeiro registro espera no máximo {@link #setEsperaLoteMs(long)} por
+ * companhia. No troca de turno isso vira poucas requisições grandes em vez de
+ * uma por batida atrás da outra.
+ * <p>
+ * Corpo do POST:
+ * <pre>
+ * {"origem":"&lt;id do spool&gt;","registros":[{"chave":"&lt;id&gt;-&lt;sequência&gt;","dados":{...}}, ...]}
+ * </pre>
+ * com o cabeçalho {@code Idempotency-Key} do lote. A chave de cada registro
+ * nunca muda, então o sistema web descarta os reenviados (repetição depois de
+ * timeout ou de uma queda antes da confirmação).
+ * <p>
+ * Respostas: 2xx confirma o lote inteiro. 408, 429, 5xx e falhas de rede
+ * devolvem o lote ao início da fila e todos os envios esperam (backoff
+ * exponencial com metade aleatória, ou o {@code Retry-After}). 400, 409, 413
+ * e 422 indicam dado recusado: um lote é desfeito e os registros vão um a um;
+ * um registro sozinho recusado vai para {@code rejeitados.jsonl} e é
+ * confirmado, para não travar a fila. Os outros 4xx (401, 403, 404...) são
+ * problema de configuração ou do servidor, não do registro: o lote fica no
+ * spool com backoff e o erro é logado e contado em
+ * {@code ponto_envio_alertas_total} até o envio voltar.
+ */
+public class EnviadorLotes {
+
+    private static final Log log = Log.para(EnviadorLotes.class);
+
+    public static final int LOTE_MAXIMO = 200;
+    public static final int BYTES_MAXIMO = 256 * 1024;
+    public static final int CONCORRENCIA = 4;
+    public static final long ESPERA_LOTE_MS = 20;
+    public static final long ESPERA_BASE_MS = 500;
+    public static final long ESPERA_MAXIMA_MS = 60_000;
+    public static final int TEMPO_CONEXAO_MS = 5000;
+    public static final int TEMPO_LEITURA_MS = 15_000;
+
+    private static final long INTERVALO_CONFIRMACAO_MS = 1000;
+
+    private static final Contador REGISTROS = RegistroMetricas.getInstance().contador(
+        "ponto_envio_registros_total", "Registros gravados no spool para envio");
+    private static final Contador CONFIRMADOS = RegistroMetricas.getInstance().contador(
+        "ponto_envio_confirmados_total", "Registros confirmados pelo sistema web");
+    private static final Contador LOTES = RegistroMetricas.getInstance().contador(
+        "ponto_envio_lotes_total", "Requisições de lote enviadas");
+    private static final Contador FALHAS = RegistroMetricas.getInstance().contador(
+        "ponto_envio_falhas_total", "Lotes que falharam e voltaram para a fila");
+    private static final Contador REJEITADOS = RegistroMetricas.getInstance().contador(
+        "ponto_envio_rejeitados_total", "Registros recusados pelo sistema web");
+    private static final Contador ALERTAS = RegistroMetricas.getInstance().contador(
+        "ponto_envio_alertas_total", "Lotes recusados por autenticação, endereço ou outro 4xx que não é do dado");
+    private static final Histograma LATENCIA = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_envio_latencia_segundos", "Da gravação no spool à confirmação do sistema web");
+    private static final Histograma LATENCIA_LOTE = RegistroMetricas.getInstance().histogramaTempo(
+        "ponto_envio_requisicao_segundos", "Duração de cada requisição de lote");
+    private static final Histograma TAMANHO_LOTE = RegistroMetricas.getInstance().histograma(
+        "ponto_envio_lote_registros", "Registros por lote enviado", 1);
+
+    /** Resultado de uma requisição. */
+    private static final class Resposta {
+        final int status;
+        final long esperarMs;
+        final String erro;
+
+        Resposta(int status, long esperarMs, String erro) {
+            this.status = status;
+            this.esperarMs = esperarMs;
+            this.erro = erro;
+        }
+
+        boolean sucesso() {
+            return status >= 200 && status < 300;
+        }
+
+        /**
+         * O sistema web recusou o conteúdo; repetir o mesmo registro não adianta.
+         */
+        boolean recusado() {
+            return status == 400 || status == 409 || status == 413 || status == 422;
+        }
+
+        /**
+         * 4xx que não é do conteúdo (token, URL, permissão): repetir depois de
+         * corrigida a configuração.
+         */
+        boolean alerta() {
+            return status >= 400 && status < 500 && status != 408 && status != 429 && !recusado();
+        }
+    }
+
+    private final SpoolEnvio spool;
+    private final URL destino;
+
+    private int loteMaximo = LOTE_MAXIMO;
+    private int bytesMaximo = BYTES_MAXIMO;
+    private int concorrencia = CONCORRENCIA;
+    private long esperaLoteNanos = TimeUnit.MILLISECONDS.toNanos(ESPERA_LOTE_MS);
+    private String token;
+
+    // Com a trava do enviador
+    private final ArrayDeque<Registro> fila = new ArrayDeque<>();
+    private int falhasSeguidas;
+    // Último status alertado, para logar uma vez por problema; 0 sem alerta
+    private int statusAlertado;
+    private long esperarAteNanos;
+    private int emVoo;
+
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean rodando;
+
+    public EnviadorLotes(SpoolEnvio spool, URL destino) {
+        this.spool = spool;
+        this.destino = destino;
+        RegistroMetricas.getInstance().medidor("ponto_envio_pendentes",
+            "Registros esperando confirmação do sistema web", this::getPendentes);
+    }
+
+    public void setLoteMaximo(int loteMaximo) {
+        this.loteMaximo = Math.max(1, loteMaximo);
+    }
+
+    public void setBytesMaximo(int bytesMaximo) {
+        this.bytesMaximo = bytesMaximo;
+    }
+
+    /**
+     * Requisições simultâneas. Vale a partir do próximo {@link #iniciar()}.
+     */
+    public void setConcorrencia(int concorrencia) {
+        this.concorrencia = Math.max(1, concorrencia);
+    }
+
+    public void setEsperaLoteMs(long esperaLoteMs) {
+        this.esperaLoteNanos = TimeUnit.MILLISECONDS.toNanos(esperaLoteMs);
+    }
+
+    /**
+     * Enviado como {@code Authorization: Bearer <token>}.
+     */
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    /**
+     * Começa a enviar, primeiro os registros que sobraram da execução anterior.
+     */
+    public synchronized void iniciar() {
+        if (rodando) {
+            return;
+        }
+        fila.addAll(spool.retirarRecuperados());
+        rodando = true;
+        for (int i = 1; i <= concorrencia; i++) {
+            threads.add(iniciarThread(this::executarEnvio, "envio-" + i));
+        }
+        threads.add(iniciarThread(this::executarConfirmacao, "envio-confirmacao"));
+    }
+
+    private static Thread iniciarThread(Runnable tarefa, String nome) {
+        Thread thread = new Thread(tarefa, nome);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Para os envios; os lotes em voo têm até {@code tempoMs} para terminar. O
+     * que não foi confirmado continua no spool.
+     */
+    public void parar(long tempoMs) {
+        List<Thread> ativas;
+        synchronized (this) {
+            rodando = false;
+            notifyAll();
+            ativas = new ArrayList<>(threads);
+            threads.clear();
+        }
+        long limite = System.currentTimeMillis() + tempoMs;
+        for (Thread thread : ativas) {
+            try {
+                thread.join(Math.max(1, limite - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    synchronized void adicionar(Registro registro) {
+        REGISTROS.incrementar();
+        fila.addLast(registro);
+        notifyAll();
+    }
+
+    /**
+     * Registros na fila mais os em voo.
+     */
+    public long getPendentes() {
+        return spool.getUltimaSequencia() - spool.getConfirmada();
+    }
+
+    private void executarEnvio() {
+        while (rodando) {
+            List<Registro> lote;
+            try {
+                lote = proximoLote();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (lote == null) {
+                return;
+            }
+            try {
+                enviar(lote);
+            } catch (RuntimeException | IOException e) {
+                log.erro("Erro ao enviar lote: {}", e.getMessage(), e);
+                devolver(lote, 0);
+            } finally {
+                synchronized (this) {
+                    emVoo--;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private synchronized List<Registro> proximoLote() throws InterruptedException {
+        while (rodando) {
+            long agora = System.nanoTime();
+            if (fila.isEmpty()) {
+                wait();
+                continue;
+            }
+            if (agora < esperarAteNanos) {
+                TimeUnit.NANOSECONDS.timedWait(this, esperarAteNanos - agora);
+                continue;
+            }
+            Registro primeiro = fila.peekFirst();
+            if (!primeiro.isolado && fila.size() < loteMaximo) {
+                long prazo = primeiro.gravadoNanos + esperaLoteNanos;
+                if (agora < prazo) {
+                    TimeUnit.NANOSECONDS.timedWait(this, prazo - agora);
+                    continue;
+                }
+            }
+            List<Registro> lote = new ArrayList<>(Math.min(fila.size(), loteMaximo));
+            lote.add(fila.pollFirst());
+            int bytes = primeiro.dados.length;
+            while (!primeiro.isolado && lote.size() < loteMaximo && !fila.isEmpty()) {
+                Registro proximo = fila.peekFirst();
+                if (proximo.isolado || bytes + proximo.dados.length > bytesMaximo) {
+                    break;
+                }
+                lote.add(fila.pollFirst());
+                bytes += proximo.dados.length;
+            }
+            emVoo++;
+            return lote;
+        }
+        return null;
+    }
+
+    private void enviar(List<Registro> lote) throws IOException {
+        long inicio = System.nanoTime();
+        Resposta resposta = postar(lote);
+        LATENCIA_LOTE.registrarDesde(inicio);
+        LOTES.incrementar();
+        TAMANHO_LOTE.registrar(lote.size());
+
+        if (resposta.sucesso()) {
+            long agora = System.nanoTime();
+            for (Registro registro : lote) {
+                spool.confirmar(registro.sequencia);
+                LATENCIA.registrar(agora - registro.gravadoNanos);
+            }
+            CONFIRMADOS.somar(lote.size());
+            synchronized (this) {
+                if (falhasSeguidas > 0) {
+                    log.info("Envio ao sistema web restabelecido");
+                }
+                falhasSeguidas = 0;
+                esperarAteNanos = 0;
+                statusAlertado = 0;
+            }
+        } else if (resposta.recusado()) {
+            if (lote.size() > 1) {
+                log.aviso("Lote de {} registros recusado ({}), reenviando um a um", lote.size(), resposta.status);
+                synchronized (this) {
+                    for (Registro registro : lote) {
+                        registro.isolado = true;
+                    }
+                }
+                devolver(lote, -1);
+            } else {
+                Registro registro = lote.get(0);
+                log.erro("Registro {} recusado pelo sistema web ({}), movido para {}", registro.sequencia,
+                    resposta.status, SpoolEnvio.NOME_REJEITADOS);
+                spool.rejeitar(registro, "HTTP " + resposta.status);
+                REJEITADOS.incrementar();
+            }
+        } else if (resposta.alerta()) {
+            FALHAS.incrementar();
+            ALERTAS.incrementar();
+            boolean novo;
+            synchronized (this) {
+                novo = statusAlertado != resposta.status;
+                statusAlertado = resposta.status;
+            }
+            if (novo) {
+                log.erro("Sistema web respondeu HTTP {} para {}; verifique ponto.envio.url e ponto.envio.token."
+                    + " Os registros continuam no spool", resposta.status, destino);
+            }
+            devolver(lote, 0);
+        } else {
+            FALHAS.incrementar();
+            devolver(lote, resposta.esperarMs);
+            log.aviso("Falha ao enviar lote de {} registros ({}), tentando de novo",
+                lote.size(), resposta.erro != null ? resposta.erro : "HTTP " + resposta.status);
+        }
+    }
+
+    /**
+     * Devolve o lote ao início da fila, na ordem original.
+     *
+     * @param esperarMs espera pedida pelo servidor, 0 para o backoff ou -1
+     *                  para reenviar já
+     */
+    private synchronized void devolver(Collection<Registro> lote, long esperarMs) {
+        List<Registro> ordem = new ArrayList<>(lote);
+        for (int i = ordem.size() - 1; i >= 0; i--) {
+            fila.addFirst(ordem.get(i));
+        }
+        if (esperarMs >= 0) {
+            long espera = esperarMs > 0 ? esperarMs : calcularEspera(falhasSeguidas);
+            falhasSeguidas++;
+            esperarAteNanos = Math.max(esperarAteNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(espera));
+        }
+        notifyAll();
+    }
+
+    /**
+     * Espera antes da tentativa {@code tentativa + 1}: metade fixa e metade
+     * aleatória de {@code base * 2^tentativa}, limitada a {@link #ESPERA_MAXIMA_MS}.
+     */
+    static long calcularEspera(int tentativa) {
+        long teto = ESPERA_BASE_MS << Math.min(tentativa, 16);
+        teto = Math.min(teto, ESPERA_MAXIMA_MS);
+        return teto / 2 + ThreadLocalRandom.current().nextLong(teto / 2 + 1);
+    }
+
+    byte[] montarCorpo(List<Registro> lote) {
+        String id = spool.getId();
+        int tamanho = 64;
+        for (Registro registro : lote) {
+            tamanho += registro.dados.length + id.length() + 40;
+        }
+        ByteArrayOutputStream corpo = new ByteArrayOutputStream(tamanho);
+        escrever(corpo, "{\"origem\":\"" + id + "\",\"registros\":[");
+        for (int i = 0; i < lote.size(); i++) {
+            Registro registro = lote.get(i);
+            escrever(corpo, (i > 0 ? ",{\"chave\":\"" : "{\"chave\":\"") + id + "-" + registro.sequencia
+                + "\",\"dados\":");
+            corpo.write(registro.dados, 0, registro.dados.length);
+            corpo.write('}');
+        }
+        escrever(corpo, "]}");
+        return corpo.toByteArray();
+    }
+
+    private static void escrever(ByteArrayOutputStream saida, String texto) {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        saida.write(bytes, 0, bytes.length);
+    }
+
+    private Resposta postar(List<Registro> lote) {
+        byte[] corpo = montarCorpo(lote);
+        HttpURLConnection conexao = null;
+        try {
+            conexao = (HttpURLConnection) destino.openConnection();
+            conexao.setRequestMethod("POST");
+            conexao.setDoOutput(true);
+            conexao.setConnectTimeout(TEMPO_CONEXAO_MS);
+            conexao.setReadTimeout(TEMPO_LEITURA_MS);
+            conexao.setFixedLengthStreamingMode(corpo.length);
+            conexao.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            conexao.setRequestProperty("Idempotency-Key", spool.getId() + "-" + lote.get(0).sequencia
+                + "-" + lote.get(lote.size() - 1).sequencia + "-" + lote.size());
+            if (token != null) {
+                conexao.setRequestProperty("Authorization", "Bearer " + token);
+            }
+            try (OutputStream saida = conexao.getOutputStream()) {
+                saida.write(corpo);
+            }
+            int status = conexao.getResponseCode();
+            long esperarMs = 0;
+            if (status == 429 || status == 503) {
+                esperarMs = lerRetryAfter(conexao.getHeaderField("Retry-After"));
+            }
+            descartarResposta(conexao, status);
+            return new Resposta(status, esperarMs, null);
+        } catch (IOException e) {
+            if (conexao != null) {
+                conexao.disconnect();
+            }
+            return new Resposta(-1, 0, e.toString());
+        }
+    }
+
+    private static long lerRetryAfter(String valor) {
+        if (valor == null) {
+            return 0;
+        }
+        try {
+            return Math.min(TimeUnit.SECONDS.toMillis(Long.parseLong(valor.trim())), ESPERA_MAXIMA_MS);
+        } catch (NumberFormatException e) {
+            // Formato de data: fica com o backoff
+            return 0;
+        }
+    }
+
+    /**
+     * Lê a resposta até o fim para a conexão voltar ao keep-alive.
+     */
+    private static void descartarResposta(HttpURLConnection conexao, int status) throws IOException {
+        InputStream entrada = status < 400 ? conexao.getInputStream() : conexao.getErrorStream();
+        if (entrada == null) {
+            return;
+        }
+        try (InputStream corpo = entrada) {
+            byte[] buffer = new byte[1024];
+            while (corpo.read(buffer) >= 0) {
+                // Descartado
+            }
+        }
+    }
+
+    private void executarConfirmacao() {
+        while (rodando) {
+            try {
+                synchronized (this) {
+                    wait(INTERVALO_CONFIRMACAO_MS);
+                }
+                spool.gravarConfirmacao();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                log.erro("Falha ao gravar a confirmação do spool: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.sistema.ponto.envio;
+
+/**
+ * Um registro do {@link SpoolEnvio}: JSON já gravado em disco, esperando o
+ * sistema web confirmar.
+ */
+final class Registro {
+
+    final long sequencia;
+    final byte[] dados;
+    // Quando entrou na fila de envio (gravação ou recuperação na partida)
+    final long gravadoNanos;
+    // Recusado dentro de um lote: vai sozinho para achar o culpado
+    boolean isolado;
+
+    Registro(long sequencia, byte[] dados, long gravadoNanos) {
+        this.sequencia = sequencia;
+        this.dados = dados;
+        this.gravadoNanos = gravadoNanos;
+    }
+}
@@ -0,0 +1,162 @@
+package com.sistema.ponto.envio;
+
+import com.sistema.ponto.log.Log;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Saída para o sistema web: batidas e capturas vão primeiro para o
+ * {@link SpoolEnvio} (durável) e daí, em lotes, pelo {@link EnviadorLotes}.
+ * Quem registra só espera o fsync, nunca a rede.
+ * <p>
+ * {@link #lerPropriedades()} monta o serviço a partir das propriedades
+ * {@code ponto.envio.*}; sem {@code ponto.envio.url} não há envio.
+ */
+public class ServicoEnvio {
+
+    private static final Log log = Log.para(ServicoEnvio.class);
+
+    public static final String PROPRIEDADE_URL = "ponto.envio.url";
+    public static final String PROPRIEDADE_PASTA = "ponto.envio.pasta";
+    public static final String PROPRIEDADE_TOKEN = "ponto.envio.token";
+    public static final String PROPRIEDADE_CONCORRENCIA = "ponto.envio.concorrencia";
+    public static final String PROPRIEDADE_LOTE = "ponto.envio.lote";
+    public static final String PASTA_PADRAO = "spool";
+
+    private final SpoolEnvio spool;
+    private final EnviadorLotes enviador;
+
+    public ServicoEnvio(Path pasta, URL destino) throws IOException {
+        spool = new SpoolEnvio(pasta);
+        enviador = new EnviadorLotes(spool, destino);
+    }
+
+    /**
+     * @return o serviço configurado pelas propriedades do sistema, ou null se
+     * {@code ponto.envio.url} não foi definida
+     */
+    public static ServicoEnvio lerPropriedades() throws IOException {
+        String url = System.getProperty(PROPRIEDADE_URL);
+        if (url == null || url.trim().isEmpty()) {
+            return null;
+        }
+        URL destino;
+        try {
+            destino = new URL(url.trim());
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("URL de envio inválida: " + url, e);
+        }
+        ServicoEnvio servico = new ServicoEnvio(
+            Paths.get(System.getProperty(PROPRIEDADE_PASTA, PASTA_PADRAO)), destino);
+        EnviadorLotes enviador = servico.getEnviador();
+        enviador.setToken(System.getProperty(PROPRIEDADE_TOKEN));
+        enviador.setConcorrencia(Integer.getInteger(PROPRIEDADE_CONCORRENCIA, EnviadorLotes.CONCORRENCIA));
+        enviador.setLoteMaximo(Integer.getInteger(PROPRIEDADE_LOTE, EnviadorLotes.LOTE_MAXIMO));
+        return servico;
+    }
+
+    /**
+     * Começa a enviar, a começar pelo que ficou pendente da última execução.
+     */
+    public void iniciar() {
+        enviador.iniciar();
+    }
+
+    /**
+     * Grava o objeto JSON no spool e o entrega ao enviador. Volta depois do
+     * fsync: se voltou sem exceção, o registro chega ao sistema web mesmo que
+     * o processo caia em seguida.
+     *
+     * @return a sequência do registro no spool
+     */
+    public long enviar(String json) throws IOException {
+        Registro registro = spool.gravar(json.getBytes(StandardCharsets.UTF_8));
+        enviador.adicionar(registro);
+        return registro.sequencia;
+    }
+
+    /**
+     * Batida de ponto de um funcionário identificado.
+     */
+    public long registrarBatida(int fid, String dispositivo, int pontuacao) throws IOException {
+        return enviar("{\"tipo\":\"batida\",\"fid\":" + fid
+            + ",\"dispositivo\":\"" + escapar(dispositivo)
+            + "\",\"pontuacao\":" + pontuacao
+            + ",\"instante\":\"" + Instant.now() + "\"}");
+    }
+
+    /**
+     * Captura (template) para cadastro ou conferência no sistema web.
+     */
+    public long registrarCaptura(byte[] template, int qualidade) throws IOException {
+        return enviar("{\"tipo\":\"captura\",\"template\":\"" + Base64.getEncoder().encodeToString(template)
+            + "\",\"qualidade\":" + qualidade
+            + ",\"instante\":\"" + Instant.now() + "\"}");
+    }
+
+    private static String escapar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        StringBuilder saida = new StringBuilder(texto.length());
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '"' || c == '\\') {
+                saida.append('\\').append(c);
+            } else if (c < 0x20) {
+                saida.append(String.format("\\u%04x", (int) c));
+            } else {
+                saida.append(c);
+            }
+        }
+        return saida.toString();
+    }
+
+    /**
+     * Espera até {@code tempoMs} que tudo o que foi gravado seja confirmado.
+     *
+     * @return true se não sobrou nada pendente
+     */
+    public boolean aguardarEnvio(long tempoMs) throws InterruptedException {
+        long limite = System.currentTimeMillis() + tempoMs;
+        while (enviador.getPendentes() > 0) {
+            if (System.currentTimeMillis() >= limite) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Para o envio (os lotes em voo têm até {@code tempoMs}) e fecha o spool.
+     * O que não foi confirmado vai na próxima execução.
+     */
+    public void parar(long tempoMs) {
+        enviador.parar(tempoMs);
+        spool.fechar();
+        long pendentes = enviador.getPendentes();
+        if (pendentes > 0) {
+            log.info("{} registros ficam no spool para o próximo envio", pendentes);
+        }
+    }
+
+    public long getPendentes() {
+        return enviador.getPendentes();
+    }
+
+    public SpoolEnvio getSpool() {
+        return spool;
+    }
+
+    public EnviadorLotes getEnviador() {
+        return enviador;
+    }
+}
@@ -0,0 +1,435 @@
+package com.sistema.ponto.envio;
+
+import com.sistema.ponto.log.Log;
+import com.sistema.ponto.metricas.Contador;
+import com.sistema.ponto.metricas.RegistroMetricas;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Diário local (write-ahead) de tudo o que vai para o sistema web. Nada é
+ * enviado antes de estar no disco, e nada sai do disco antes de o sistema web
+ * confirmar; depois de uma queda do processo ou da rede, o que não foi
+ * confirmado é enviado de novo.
+ * <p>
+ * Segmentos {@code envio-<primeira sequência>.spool}, só anexados, girados a
+ * cada {@link #TAMANHO_SEGMENTO}. Registro (big-endian): tamanho, CRC32 da
+ * sequência e dos dados, sequência, dados. Um registro incompleto no fim do
+ * último segmento (queda no meio da escrita) é cortado na abertura.
+ * <p>
+ * {@link #gravar(byte[])} só volta depois do fsync, mas as gravações
+ * simultâneas dividem o mesmo fsync: quem chega enquanto outro sincroniza
+ * espera e, na sua vez, quase sempre já está no disco.
+ * <p>
+ * As confirmações chegam fora de ordem (vários lotes em voo); a maior
+ * sequência com todas as anteriores confirmadas vai para
+ * {@code envio.confirmado} e os segmentos inteiros abaixo dela são apagados.
+ * Perder essa marca numa queda só faz alguns registros serem reenviados, o que
+ * o sistema web descarta pela chave de idempotência ({@link #getId()} e a
+ * sequência): sem ela, os segmentos já apagados contam como confirmados e a
+ * confirmação recomeça antes do primeiro registro que sobrou. A última
+ * sequência vem também do nome dos segmentos, para um segmento vazio (girado
+ * logo antes da queda) não fazer sequências já usadas serem gravadas de novo.
+ */
+public class SpoolEnvio {
+
+    private static final Log log = Log.para(SpoolEnvio.class);
+
+    public static final long TAMANHO_SEGMENTO = 8L * 1024 * 1024;
+    public static final int TAMANHO_MAXIMO_REGISTRO = 1024 * 1024;
+
+    static final String PREFIXO_SEGMENTO = "envio-";
+    static final String SUFIXO_SEGMENTO = ".spool";
+    static final String NOME_CONFIRMADO = "envio.confirmado";
+    static final String NOME_ID = "envio.id";
+    static final String NOME_REJEITADOS = "rejeitados.jsonl";
+
+    // tamanho, CRC, sequência
+    private static final int CABECALHO = 4 + 4 + 8;
+
+    private static final Contador SINCRONIZACOES = RegistroMetricas.getInstance().contador(
+        "ponto_envio_fsync_total", "fsyncs do spool de envio (cada um cobre várias gravações)");
+
+    private final Path pasta;
+    private final String id;
+
+    // Segmentos por primeira sequência; o último é o ativo. Com a trava do spool
+    private final TreeMap<Long, Path> segmentos = new TreeMap<>();
+    private FileChannel canal;
+    private long tamanhoAtual;
+    private long ultimaSequencia;
+    private final List<Registro> recuperados = new ArrayList<>();
+
+    private final Object travaSincronizacao = new Object();
+    private final AtomicLong sincronizada = new AtomicLong();
+
+    private final Object travaConfirmacao = new Object();
+    private long confirmada;
+    private final TreeSet<Long> confirmadasForaDeOrdem = new TreeSet<>();
+    private long confirmadaGravada;
+
+    private final Object travaRejeitados = new Object();
+
+    /**
+     * Abre (ou cria) o spool e separa os registros não confirmados para reenvio
+     * ({@link #retirarRecuperados()}).
+     */
+    public SpoolEnvio(Path pasta) throws IOException {
+        this.pasta = pasta;
+        Files.createDirectories(pasta);
+        this.id = lerId();
+        long marca = lerConfirmada();
+        confirmada = Math.max(0, marca);
+        ultimaSequencia = confirmada;
+        recuperar();
+        if (marca < 0) {
+            confirmada = recuperados.isEmpty() ? ultimaSequencia : recuperados.get(0).sequencia - 1;
+        }
+        // Sem marca válida, a próxima gravação da confirmação a recria
+        confirmadaGravada = marca < 0 ? -1 : confirmada;
+        abrirSegmento();
+        if (!recuperados.isEmpty()) {
+            log.info("Spool de envio: {} registros não confirmados serão reenviados", recuperados.size());
+        }
+    }
+
+    private String lerId() throws IOException {
+        Path arquivo = pasta.resolve(NOME_ID);
+        if (Files.exists(arquivo)) {
+            return new String(Files.readAllBytes(arquivo), StandardCharsets.UTF_8).trim();
+        }
+        // Spool novo, chaves novas: sequências reiniciadas não colidem com as antigas
+        String novo = UUID.randomUUID().toString();
+        Path temporario = pasta.resolve(NOME_ID + ".tmp");
+        Files.write(temporario, novo.getBytes(StandardCharsets.UTF_8));
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return novo;
+    }
+
+    /**
+     * @return a sequência confirmada, ou -1 sem marca (ou marca inválida)
+     */
+    private long lerConfirmada() throws IOException {
+        Path arquivo = pasta.resolve(NOME_CONFIRMADO);
+        if (!Files.exists(arquivo)) {
+            return -1;
+        }
+        byte[] dados = Files.readAllBytes(arquivo);
+        if (dados.length == 12) {
+            CRC32 crc = new CRC32();
+            crc.update(dados, 0, 8);
+            ByteBuffer buffer = ByteBuffer.wrap(dados);
+            if ((int) crc.getValue() == buffer.getInt(8)) {
+                return buffer.getLong(0);
+            }
+        }
+        // Sem a marca tudo é reenviado; o sistema web descarta os repetidos
+        log.erro("{} inválido, reenviando todo o spool", arquivo);
+        return -1;
+    }
+
+    private void recuperar() throws IOException {
+        TreeMap<Long, Path> encontrados = new TreeMap<>();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(pasta,
+                 PREFIXO_SEGMENTO + "*" + SUFIXO_SEGMENTO)) {
+            for (Path arquivo : arquivos) {
+                String nome = arquivo.getFileName().toString();
+                try {
+                    encontrados.put(Long.parseLong(nome.substring(PREFIXO_SEGMENTO.length(),
+                        nome.length() - SUFIXO_SEGMENTO.length())), arquivo);
+                } catch (NumberFormatException e) {
+                    log.aviso("Arquivo estranho no spool ignorado: {}", nome);
+                }
+            }
+        }
+        long agora = System.nanoTime();
+        for (Map.Entry<Long, Path> segmento : encontrados.entrySet()) {
+            ultimaSequencia = Math.max(ultimaSequencia, segmento.getKey() - 1);
+            boolean ultimo = segmento.getKey().equals(encontrados.lastKey());
+            boolean pendente = lerSegmento(segmento.getValue(), ultimo, agora);
+            if (pendente) {
+                segmentos.put(segmento.getKey(), segmento.getValue());
+            } else {
+                Files.delete(segmento.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return true se o segmento tem registros não confirmados
+     */
+    private boolean lerSegmento(Path arquivo, boolean ultimo, long agora) throws IOException {
+        byte[] dados = Files.readAllBytes(arquivo);
+        ByteBuffer buffer = ByteBuffer.wrap(dados);
+        CRC32 crc = new CRC32();
+        boolean pendente = false;
+        int posicao = 0;
+        while (posicao + CABECALHO <= dados.length) {
+            int tamanho = buffer.getInt(posicao);
+            if (tamanho < 0 || tamanho > TAMANHO_MAXIMO_REGISTRO || posicao + CABECALHO + tamanho > dados.length) {
+                break;
+            }
+            crc.reset();
+            crc.update(dados, posicao + 8, 8 + tamanho);
+            if ((int) crc.getValue() != buffer.getInt(posicao + 4)) {
+                break;
+            }
+            long sequencia = buffer.getLong(posicao + 8);
+            if (sequencia > confirmada) {
+                byte[] registro = new byte[tamanho];
+                System.arraycopy(dados, posicao + CABECALHO, registro, 0, tamanho);
+                recuperados.add(new Registro(sequencia, registro, agora));
+                pendente = true;
+            }
+            ultimaSequencia = Math.max(ultimaSequencia, sequencia);
+            posicao += CABECALHO + tamanho;
+        }
+        if (posicao < dados.length) {
+            if (ultimo) {
+                log.aviso("Registro incompleto no fim de {} descartado ({} bytes)", arquivo.getFileName(),
+                    dados.length - posicao);
+                try (FileChannel truncar = FileChannel.open(arquivo, StandardOpenOption.WRITE)) {
+                    truncar.truncate(posicao);
+                }
+            } else {
+                log.erro("Segmento {} corrompido na posição {}; registros seguintes perdidos",
+                    arquivo.getFileName(), posicao);
+            }
+        }
+        return pendente;
+    }
+
+    // Com a trava do spool
+    private void abrirSegmento() throws IOException {
+        long primeira = ultimaSequencia + 1;
+        Path arquivo = pasta.resolve(String.format("%s%020d%s", PREFIXO_SEGMENTO, primeira, SUFIXO_SEGMENTO));
+        canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+        tamanhoAtual = canal.size();
+        segmentos.put(primeira, arquivo);
+        sincronizarPasta();
+    }
+
+    /**
+     * Garante que o arquivo novo aparece na pasta depois de uma queda de
+     * energia. Só funciona em sistemas que deixam abrir diretórios (não no
+     * Windows, onde não é necessário).
+     */
+    private void sincronizarPasta() {
+        try (FileChannel diretorio = FileChannel.open(pasta, StandardOpenOption.READ)) {
+            diretorio.force(true);
+        } catch (IOException e) {
+            // Sem suporte
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Path getPasta() {
+        return pasta;
+    }
+
+    public synchronized long getUltimaSequencia() {
+        return ultimaSequencia;
+    }
+
+    public long getConfirmada() {
+        synchronized (travaConfirmacao) {
+            return confirmada;
+        }
+    }
+
+    /**
+     * Registros não confirmados encontrados na abertura, em ordem. Só a
+     * primeira chamada recebe a lista.
+     */
+    synchronized List<Registro> retirarRecuperados() {
+        List<Registro> lista = new ArrayList<>(recuperados);
+        recuperados.clear();
+        return lista;
+    }
+
+    /**
+     * Anexa os dados e espera o fsync.
+     */
+    Registro gravar(byte[] dados) throws IOException {
+        if (dados.length > TAMANHO_MAXIMO_REGISTRO) {
+            throw new IllegalArgumentException("Registro grande demais para o spool: " + dados.length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(CABECALHO + dados.length);
+        Registro registro;
+        synchronized (this) {
+            if (canal == null) {
+                throw new ClosedChannelException();
+            }
+            if (tamanhoAtual >= TAMANHO_SEGMENTO) {
+                girar();
+            }
+            long sequencia = ultimaSequencia + 1;
+            buffer.putInt(dados.length).putInt(0).putLong(sequencia).put(dados);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 8, 8 + dados.length);
+            buffer.putInt(4, (int) crc.getValue());
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    canal.write(buffer);
+                }
+            } catch (IOException e) {
+                // Não deixa meio registro antes dos próximos
+                canal.truncate(tamanhoAtual);
+                throw e;
+            }
+            tamanhoAtual += buffer.limit();
+            ultimaSequencia = sequencia;
+            registro = new Registro(sequencia, dados, System.nanoTime());
+        }
+        sincronizar(registro.sequencia);
+        return registro;
+    }
+
+    private void sincronizar(long sequencia) throws IOException {
+        synchronized (travaSincronizacao) {
+            if (sincronizada.get() >= sequencia) {
+                return;
+            }
+            FileChannel atual;
+            long alvo;
+            synchronized (this) {
+                atual = canal;
+                alvo = ultimaSequencia;
+            }
+            try {
+                atual.force(false);
+            } catch (ClosedChannelException e) {
+                // Girado no meio: o giro já sincronizou
+                if (sincronizada.get() >= sequencia) {
+                    return;
+                }
+                throw e;
+            }
+            sincronizada.accumulateAndGet(alvo, Math::max);
+            SINCRONIZACOES.incrementar();
+        }
+    }
+
+    // Com a trava do spool
+    private void girar() throws IOException {
+        canal.force(false);
+        sincronizada.accumulateAndGet(ultimaSequencia, Math::max);
+        canal.close();
+        abrirSegmento();
+    }
+
+    void confirmar(long sequencia) {
+        synchronized (travaConfirmacao) {
+            if (sequencia <= confirmada) {
+                return;
+            }
+            if (sequencia != confirmada + 1) {
+                confirmadasForaDeOrdem.add(sequencia);
+                return;
+            }
+            confirmada = sequencia;
+            while (!confirmadasForaDeOrdem.isEmpty() && confirmadasForaDeOrdem.first() == confirmada + 1) {
+                confirmada = confirmadasForaDeOrdem.pollFirst();
+            }
+        }
+    }
+
+    /**
+     * Guarda o registro recusado pelo sistema web em {@code rejeitados.jsonl}
+     * (para correção manual) e o dá por confirmado.
+     */
+    void rejeitar(Registro registro, String motivo) throws IOException {
+        StringBuilder linha = new StringBuilder(registro.dados.length + 96);
+        linha.append("{\"sequencia\":").append(registro.sequencia)
+            .append(",\"motivo\":\"").append(motivo.replace("\\", "\\\\").replace("\"", "\\\""))
+            .append("\",\"dados\":").append(new String(registro.dados, StandardCharsets.UTF_8)).append("}\n");
+        synchronized (travaRejeitados) {
+            try (FileChannel rejeitados = FileChannel.open(pasta.resolve(NOME_REJEITADOS),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(linha.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    rejeitados.write(buffer);
+                }
+                rejeitados.force(false);
+            }
+        }
+        confirmar(registro.sequencia);
+    }
+
+    /**
+     * Grava a marca de confirmação (se mudou) e apaga os segmentos já todos
+     * confirmados. Chamado periodicamente pelo {@link EnviadorLotes}.
+     */
+    void gravarConfirmacao() throws IOException {
+        long valor = getConfirmada();
+        if (valor == confirmadaGravada) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(12).putLong(0, valor);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, 8);
+        buffer.putInt(8, (int) crc.getValue());
+        Path temporario = pasta.resolve(NOME_CONFIRMADO + ".tmp");
+        Files.write(temporario, buffer.array());
+        Files.move(temporario, pasta.resolve(NOME_CONFIRMADO), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        confirmadaGravada = valor;
+
+        List<Path> apagar = new ArrayList<>();
+        synchronized (this) {
+            // O ativo (último) fica sempre
+            while (segmentos.size() > 1) {
+                long primeira = segmentos.firstKey();
+                if (segmentos.higherKey(primeira) - 1 > valor) {
+                    break;
+                }
+                apagar.add(segmentos.remove(primeira));
+            }
+        }
+        for (Path segmento : apagar) {
+            Files.deleteIfExists(segmento);
+        }
+    }
+
+    public void fechar() {
+        synchronized (this) {
+            if (canal == null) {
+                return;
+            }
+            try {
+                canal.force(false);
+                canal.close();
+            } catch (IOException e) {
+                log.erro("Falha ao fechar o spool de envio: {}", e.getMessage(), e);
+            }
+            canal = null;
+        }
+        try {
+            gravarConfirmacao();
+        } catch (IOException e) {
+            log.erro("Falha ao gravar a confirmação do spool: {}", e.getMessage(), e);
+        }
+    }
+}
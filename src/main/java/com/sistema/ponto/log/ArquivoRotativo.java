@@ -0,0 +1,73 @@
+package com.sistema.ponto.log;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@code ponto.log} numa pasta, girado ao passar do tamanho máximo:
+ * {@code ponto.log} vira {@code ponto.log.1}, o {@code .1} vira {@code .2} e
+ * assim por diante até {@code quantidade}; o mais antigo é apagado. Usado só
+ * pela thread do {@link DespachanteLog}.
+ */
+final class ArquivoRotativo {
+
+    static final String NOME = "ponto.log";
+
+    private final Path pasta;
+    private final long tamanhoMaximo;
+    private final int quantidade;
+    private Writer saida;
+    private long tamanho;
+
+    ArquivoRotativo(Path pasta, long tamanhoMaximo, int quantidade) throws IOException {
+        this.pasta = pasta;
+        this.tamanhoMaximo = tamanhoMaximo;
+        this.quantidade = quantidade;
+        Files.createDirectories(pasta);
+        abrir();
+    }
+
+    private void abrir() throws IOException {
+        Path arquivo = pasta.resolve(NOME);
+        tamanho = Files.exists(arquivo) ? Files.size(arquivo) : 0;
+        saida = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(arquivo,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    void escrever(CharSequence linha) throws IOException {
+        if (tamanho > 0 && tamanho + linha.length() > tamanhoMaximo) {
+            girar();
+        }
+        saida.append(linha);
+        // Aproximado (caracteres, não bytes); só decide quando girar
+        tamanho += linha.length();
+    }
+
+    private void girar() throws IOException {
+        saida.close();
+        Files.deleteIfExists(pasta.resolve(NOME + "." + quantidade));
+        for (int i = quantidade - 1; i >= 1; i--) {
+            Path anterior = pasta.resolve(NOME + "." + i);
+            if (Files.exists(anterior)) {
+                Files.move(anterior, pasta.resolve(NOME + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(pasta.resolve(NOME), pasta.resolve(NOME + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        abrir();
+    }
+
+    void descarregar() throws IOException {
+        saida.flush();
+    }
+
+    void fechar() throws IOException {
+        saida.close();
+    }
+}
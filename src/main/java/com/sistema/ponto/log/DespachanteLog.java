@@ -0,0 +1,305 @@
+package com.sistema.ponto.log;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fila única de todas as mensagens de log, num anel de {@link Evento}s criados
+ * na partida, esvaziado por uma thread própria que formata e escreve no console
+ * e no {@link ArquivoRotativo}.
+ * <p>
+ * Quem registra só reserva uma posição por CAS, preenche os campos e publica a
+ * sequência; nunca espera por E/S nem pelo {@code System.out} sincronizado. Com
+ * o anel cheio a mensagem é descartada e contada (o escritor informa quantas).
+ * <p>
+ * Configuração (propriedades do sistema):
+ * <ul>
+ *   <li>{@code ponto.log.nivel}: DEPURACAO, INFO (padrão), AVISO ou ERRO;</li>
+ *   <li>{@code ponto.log.console}: false desliga o console;</li>
+ *   <li>{@code ponto.log.pasta}: pasta do arquivo (padrão {@code logs}; vazio desliga);</li>
+ *   <li>{@code ponto.log.tamanhoMaximoMb} e {@code ponto.log.arquivos}: rotação (10 MB, 5 arquivos);</li>
+ *   <li>{@code ponto.log.limitePorSegundo}: repetições de um formato por segundo (20).</li>
+ * </ul>
+ */
+public final class DespachanteLog {
+
+    public static final String PROPRIEDADE_NIVEL = "ponto.log.nivel";
+    public static final String PROPRIEDADE_CONSOLE = "ponto.log.console";
+    public static final String PROPRIEDADE_PASTA = "ponto.log.pasta";
+    public static final String PROPRIEDADE_TAMANHO_MAXIMO_MB = "ponto.log.tamanhoMaximoMb";
+    public static final String PROPRIEDADE_ARQUIVOS = "ponto.log.arquivos";
+    public static final String PROPRIEDADE_LIMITE = "ponto.log.limitePorSegundo";
+
+    public static final int CAPACIDADE = 8192;
+
+    private static final long ESPERA_OCIOSA_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int TAMANHO_LOTE = 16 * 1024;
+    private static final DateTimeFormatter FORMATO_SEGUNDO =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private static DespachanteLog instance;
+
+    private final Evento[] eventos = new Evento[CAPACIDADE];
+    private final int mascara = CAPACIDADE - 1;
+    // Próxima sequência a reservar pelos produtores
+    private final AtomicLong proximo = new AtomicLong();
+    // Próxima sequência a escrever; só o escritor altera
+    private volatile long consumido;
+    // Até onde já foi entregue ao console e ao arquivo
+    private volatile long gravado;
+    private volatile boolean esperando;
+    private final LongAdder descartados = new LongAdder();
+    private long descartadosInformados;
+
+    private volatile int nivelMinimo;
+    private volatile int limitePorSegundo;
+    private final boolean console;
+    private ArquivoRotativo arquivo;
+    private final Thread escritor;
+
+    // Usados só pelo escritor
+    private final StringBuilder lote = new StringBuilder(TAMANHO_LOTE);
+    private final StringBuilder linha = new StringBuilder(256);
+    private long segundoPrefixo = Long.MIN_VALUE;
+    private String prefixo;
+
+    private DespachanteLog() {
+        for (int i = 0; i < eventos.length; i++) {
+            eventos[i] = new Evento();
+        }
+        nivelMinimo = lerNivel(System.getProperty(PROPRIEDADE_NIVEL, Nivel.INFO.name())).ordinal();
+        limitePorSegundo = Integer.getInteger(PROPRIEDADE_LIMITE, 20);
+        console = Boolean.parseBoolean(System.getProperty(PROPRIEDADE_CONSOLE, "true"));
+        String pasta = System.getProperty(PROPRIEDADE_PASTA, "logs");
+        if (!pasta.isEmpty()) {
+            try {
+                arquivo = new ArquivoRotativo(Paths.get(pasta),
+                    Long.getLong(PROPRIEDADE_TAMANHO_MAXIMO_MB, 10) * 1024 * 1024,
+                    Integer.getInteger(PROPRIEDADE_ARQUIVOS, 5));
+            } catch (IOException e) {
+                System.out.println("Aviso: log só no console, não foi possível abrir " + pasta + ": " + e.getMessage());
+            }
+        }
+        escritor = new Thread(this::executar, "log-escritor");
+        escritor.setDaemon(true);
+        escritor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> descarregar(2000), "log-encerramento"));
+    }
+
+    public static synchronized DespachanteLog getInstance() {
+        if (instance == null) {
+            instance = new DespachanteLog();
+        }
+        return instance;
+    }
+
+    private static Nivel lerNivel(String nome) {
+        try {
+            return Nivel.valueOf(nome.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Nivel.INFO;
+        }
+    }
+
+    public boolean isAtivo(Nivel nivel) {
+        return nivel.ordinal() >= nivelMinimo;
+    }
+
+    public void setNivel(Nivel nivel) {
+        nivelMinimo = nivel.ordinal();
+    }
+
+    public Nivel getNivel() {
+        return Nivel.values()[nivelMinimo];
+    }
+
+    public int getLimitePorSegundo() {
+        return limitePorSegundo;
+    }
+
+    public void setLimitePorSegundo(int limitePorSegundo) {
+        this.limitePorSegundo = limitePorSegundo;
+    }
+
+    /**
+     * Mensagens perdidas com o anel cheio.
+     */
+    public long getDescartados() {
+        return descartados.sum();
+    }
+
+    void publicar(Nivel nivel, long instante, String origem, String formato, int quantidade,
+                  Object argumento1, Object argumento2, Object argumento3, Object[] argumentos, int suprimidas) {
+        long sequencia;
+        do {
+            sequencia = proximo.get();
+            if (sequencia - consumido >= CAPACIDADE) {
+                descartados.increment();
+                return;
+            }
+        } while (!proximo.compareAndSet(sequencia, sequencia + 1));
+
+        Evento evento = eventos[(int) sequencia & mascara];
+        evento.nivel = nivel;
+        evento.instante = instante;
+        evento.thread = Thread.currentThread().getName();
+        evento.origem = origem;
+        evento.formato = formato;
+        evento.quantidadeArgumentos = quantidade;
+        evento.argumento1 = argumento1;
+        evento.argumento2 = argumento2;
+        evento.argumento3 = argumento3;
+        evento.argumentos = argumentos;
+        evento.suprimidas = suprimidas;
+        evento.sequencia = sequencia;
+        if (esperando) {
+            LockSupport.unpark(escritor);
+        }
+    }
+
+    /**
+     * Espera o escritor gravar tudo o que foi registrado até agora.
+     *
+     * @return false se o tempo acabou antes
+     */
+    public boolean descarregar(long tempoMs) {
+        long alvo = proximo.get();
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(tempoMs);
+        while (gravado < alvo) {
+            if (System.nanoTime() > limite) {
+                return false;
+            }
+            LockSupport.unpark(escritor);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    private void executar() {
+        while (true) {
+            long sequencia = consumido;
+            Evento evento = eventos[(int) sequencia & mascara];
+            if (evento.sequencia == sequencia) {
+                try {
+                    formatar(evento);
+                } catch (RuntimeException e) {
+                    // toString() de um argumento com erro não derruba o escritor
+                    linha.append(" [erro ao formatar: ").append(e).append("]\n");
+                }
+                evento.limpar();
+                consumido = sequencia + 1;
+                escrever();
+                continue;
+            }
+            informarDescartados();
+            esvaziarLote();
+            if (sequencia != proximo.get()) {
+                // Reservada e ainda sendo preenchida
+                Thread.yield();
+                continue;
+            }
+            esperando = true;
+            if (sequencia == proximo.get()) {
+                LockSupport.parkNanos(this, ESPERA_OCIOSA_NANOS);
+            }
+            esperando = false;
+        }
+    }
+
+    private void formatar(Evento evento) {
+        linha.setLength(0);
+        long segundo = evento.instante / 1000;
+        if (segundo != segundoPrefixo) {
+            segundoPrefixo = segundo;
+            prefixo = FORMATO_SEGUNDO.format(Instant.ofEpochSecond(segundo));
+        }
+        int milis = (int) (evento.instante % 1000);
+        linha.append(prefixo).append('.');
+        if (milis < 100) {
+            linha.append('0');
+        }
+        if (milis < 10) {
+            linha.append('0');
+        }
+        linha.append(milis).append(' ').append(evento.nivel.name());
+        for (int i = evento.nivel.name().length(); i < 9; i++) {
+            linha.append(' ');
+        }
+        linha.append('[').append(evento.thread).append("] ").append(evento.origem).append(" - ");
+
+        String formato = evento.formato;
+        int usados = 0;
+        int inicio = 0;
+        int marcador;
+        while (usados < evento.quantidadeArgumentos && (marcador = formato.indexOf("{}", inicio)) >= 0) {
+            linha.append(formato, inicio, marcador).append(evento.argumento(usados++));
+            inicio = marcador + 2;
+        }
+        linha.append(formato, inicio, formato.length());
+        if (evento.suprimidas > 0) {
+            linha.append(" (+").append(evento.suprimidas).append(" repetidas suprimidas)");
+        }
+        linha.append('\n');
+        if (usados < evento.quantidadeArgumentos) {
+            Object ultimo = evento.argumento(evento.quantidadeArgumentos - 1);
+            if (ultimo instanceof Throwable) {
+                StringWriter pilha = new StringWriter();
+                ((Throwable) ultimo).printStackTrace(new PrintWriter(pilha));
+                linha.append(pilha);
+            }
+        }
+    }
+
+    private void escrever() {
+        if (console) {
+            lote.append(linha);
+        }
+        if (arquivo != null) {
+            try {
+                arquivo.escrever(linha);
+            } catch (IOException e) {
+                System.out.println("Aviso: erro ao gravar log, continuando só no console: " + e.getMessage());
+                arquivo = null;
+            }
+        }
+        if (lote.length() >= TAMANHO_LOTE) {
+            esvaziarLote();
+        }
+    }
+
+    private void esvaziarLote() {
+        if (lote.length() > 0) {
+            System.out.print(lote);
+            System.out.flush();
+            lote.setLength(0);
+        }
+        if (arquivo != null) {
+            try {
+                arquivo.descarregar();
+            } catch (IOException e) {
+                // Tenta de novo no próximo lote
+            }
+        }
+        gravado = consumido;
+    }
+
+    private void informarDescartados() {
+        long total = descartados.sum();
+        if (total != descartadosInformados) {
+            linha.setLength(0);
+            linha.append("[log] ").append(total - descartadosInformados)
+                .append(" mensagens descartadas (buffer cheio)\n");
+            descartadosInformados = total;
+            escrever();
+        }
+    }
+}
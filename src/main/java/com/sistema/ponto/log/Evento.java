@@ -0,0 +1,41 @@
+package com.sistema.ponto.log;
+
+/**
+ * Posição do anel do {@link DespachanteLog}. Criada uma vez e reaproveitada:
+ * o produtor preenche os campos e publica com {@link #sequencia}; o escritor
+ * formata e limpa as referências.
+ */
+final class Evento {
+
+    // Sequência publicada nesta posição; -1 antes da primeira volta
+    volatile long sequencia = -1;
+
+    Nivel nivel;
+    long instante;
+    String thread;
+    String origem;
+    String formato;
+    int quantidadeArgumentos;
+    Object argumento1;
+    Object argumento2;
+    Object argumento3;
+    Object[] argumentos;
+    int suprimidas;
+
+    Object argumento(int indice) {
+        if (argumentos != null) {
+            return argumentos[indice];
+        }
+        return indice == 0 ? argumento1 : indice == 1 ? argumento2 : argumento3;
+    }
+
+    void limpar() {
+        thread = null;
+        origem = null;
+        formato = null;
+        argumento1 = null;
+        argumento2 = null;
+        argumento3 = null;
+        argumentos = null;
+    }
+}
@@ -0,0 +1,195 @@
+package com.sistema.ponto.log;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Logger de uma classe:
+ * {@code private static final Log log = Log.para(GerenciadorDigital.class);}
+ * <p>
+ * As mensagens usam {@code {}} no lugar dos argumentos e só são formatadas na
+ * thread do {@link DespachanteLog}; abaixo do nível ativo a chamada volta antes
+ * de montar qualquer String. Com até três argumentos nada é alocado além do
+ * boxing de primitivos. Os argumentos são lidos depois, então passe valores
+ * que não mudam (números, Strings), não buffers reaproveitados. Um
+ * {@link Throwable} como último argumento sem {@code {}} correspondente sai
+ * com a pilha.
+ * <p>
+ * Cada formato de mensagem de cada logger sai no máximo
+ * {@link DespachanteLog#getLimitePorSegundo()} vezes por segundo; as
+ * suprimidas são contadas e informadas na próxima que sair.
+ */
+public final class Log {
+
+    private static final long JANELA_MS = 1000;
+    // Formatos montados com concatenação não se repetem; não deixa o mapa crescer
+    private static final int MAXIMO_JANELAS = 512;
+
+    /**
+     * Contagem de um formato na janela de um segundo atual.
+     */
+    private static final class Janela {
+        private long inicio;
+        private int contagem;
+        private int suprimidas;
+
+        /**
+         * @return -1 se a mensagem deve ser suprimida, senão quantas foram
+         *         suprimidas desde a última que saiu
+         */
+        synchronized int permitir(long agora, int limite) {
+            if (agora - inicio >= JANELA_MS) {
+                inicio = agora;
+                contagem = 0;
+            }
+            if (++contagem > limite) {
+                suprimidas++;
+                return -1;
+            }
+            int anteriores = suprimidas;
+            suprimidas = 0;
+            return anteriores;
+        }
+    }
+
+    private final String nome;
+    private final DespachanteLog despachante;
+    private final Map<String, Janela> janelas = new ConcurrentHashMap<>();
+
+    private Log(String nome, DespachanteLog despachante) {
+        this.nome = nome;
+        this.despachante = despachante;
+    }
+
+    public static Log para(Class<?> classe) {
+        return new Log(classe.getSimpleName(), DespachanteLog.getInstance());
+    }
+
+    public static Log para(String nome) {
+        return new Log(nome, DespachanteLog.getInstance());
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public boolean isAtivo(Nivel nivel) {
+        return despachante.isAtivo(nivel);
+    }
+
+    public void depuracao(String mensagem) {
+        registrar(Nivel.DEPURACAO, mensagem, 0, null, null, null);
+    }
+
+    public void depuracao(String formato, Object argumento) {
+        registrar(Nivel.DEPURACAO, formato, 1, argumento, null, null);
+    }
+
+    public void depuracao(String formato, Object argumento1, Object argumento2) {
+        registrar(Nivel.DEPURACAO, formato, 2, argumento1, argumento2, null);
+    }
+
+    public void depuracao(String formato, Object argumento1, Object argumento2, Object argumento3) {
+        registrar(Nivel.DEPURACAO, formato, 3, argumento1, argumento2, argumento3);
+    }
+
+    public void depuracao(String formato, Object... argumentos) {
+        registrar(Nivel.DEPURACAO, formato, argumentos);
+    }
+
+    public void info(String mensagem) {
+        registrar(Nivel.INFO, mensagem, 0, null, null, null);
+    }
+
+    public void info(String formato, Object argumento) {
+        registrar(Nivel.INFO, formato, 1, argumento, null, null);
+    }
+
+    public void info(String formato, Object argumento1, Object argumento2) {
+        registrar(Nivel.INFO, formato, 2, argumento1, argumento2, null);
+    }
+
+    public void info(String formato, Object argumento1, Object argumento2, Object argumento3) {
+        registrar(Nivel.INFO, formato, 3, argumento1, argumento2, argumento3);
+    }
+
+    public void info(String formato, Object... argumentos) {
+        registrar(Nivel.INFO, formato, argumentos);
+    }
+
+    public void aviso(String mensagem) {
+        registrar(Nivel.AVISO, mensagem, 0, null, null, null);
+    }
+
+    public void aviso(String formato, Object argumento) {
+        registrar(Nivel.AVISO, formato, 1, argumento, null, null);
+    }
+
+    public void aviso(String formato, Object argumento1, Object argumento2) {
+        registrar(Nivel.AVISO, formato, 2, argumento1, argumento2, null);
+    }
+
+    public void aviso(String formato, Object argumento1, Object argumento2, Object argumento3) {
+        registrar(Nivel.AVISO, formato, 3, argumento1, argumento2, argumento3);
+    }
+
+    public void aviso(String formato, Object... argumentos) {
+        registrar(Nivel.AVISO, formato, argumentos);
+    }
+
+    public void erro(String mensagem) {
+        registrar(Nivel.ERRO, mensagem, 0, null, null, null);
+    }
+
+    public void erro(String formato, Object argumento) {
+        registrar(Nivel.ERRO, formato, 1, argumento, null, null);
+    }
+
+    public void erro(String formato, Object argumento1, Object argumento2) {
+        registrar(Nivel.ERRO, formato, 2, argumento1, argumento2, null);
+    }
+
+    public void erro(String formato, Object argumento1, Object argumento2, Object argumento3) {
+        registrar(Nivel.ERRO, formato, 3, argumento1, argumento2, argumento3);
+    }
+
+    public void erro(String formato, Object... argumentos) {
+        registrar(Nivel.ERRO, formato, argumentos);
+    }
+
+    private void registrar(Nivel nivel, String formato, int quantidade, Object argumento1, Object argumento2,
+                           Object argumento3) {
+        if (!despachante.isAtivo(nivel)) {
+            return;
+        }
+        long agora = System.currentTimeMillis();
+        int suprimidas = permitir(formato, agora);
+        if (suprimidas >= 0) {
+            despachante.publicar(nivel, agora, nome, formato, quantidade, argumento1, argumento2, argumento3,
+                null, suprimidas);
+        }
+    }
+
+    private void registrar(Nivel nivel, String formato, Object[] argumentos) {
+        if (!despachante.isAtivo(nivel)) {
+            return;
+        }
+        long agora = System.currentTimeMillis();
+        int suprimidas = permitir(formato, agora);
+        if (suprimidas >= 0) {
+            despachante.publicar(nivel, agora, nome, formato, argumentos.length, null, null, null,
+                argumentos, suprimidas);
+        }
+    }
+
+    private int permitir(String formato, long agora) {
+        Janela janela = janelas.get(formato);
+        if (janela == null) {
+            if (janelas.size() >= MAXIMO_JANELAS) {
+                janelas.clear();
+            }
+            janela = janelas.computeIfAbsent(formato, f -> new Janela());
+        }
+        return janela.permitir(agora, despachante.getLimitePorSegundo());
+    }
+}
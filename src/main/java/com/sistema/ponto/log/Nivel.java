@@ -0,0 +1,8 @@
+package com.sistema.ponto.log;
+
+public enum Nivel {
+    DEPURACAO,
+    INFO,
+    AVISO,
+    ERRO
+}
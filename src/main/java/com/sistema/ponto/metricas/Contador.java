@@ -0,0 +1,35 @@
+package com.sistema.ponto.metricas;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contador só crescente, sem trava (LongAdder): várias threads incrementam sem
+ * disputar a mesma linha de cache.
+ */
+public class Contador extends Metrica implements ContadorMBean {
+
+    private final LongAdder valor = new LongAdder();
+
+    Contador(String nome, String ajuda) {
+        super(nome, ajuda);
+    }
+
+    public void incrementar() {
+        valor.increment();
+    }
+
+    public void somar(long quantidade) {
+        valor.add(quantidade);
+    }
+
+    @Override
+    public long getValor() {
+        return valor.sum();
+    }
+
+    @Override
+    void escrever(StringBuilder saida) {
+        escreverCabecalho(saida, getNome(), "counter");
+        saida.append(getNome()).append(' ').append(getValor()).append('\n');
+    }
+}
@@ -0,0 +1,7 @@
+package com.sistema.ponto.metricas;
+
+public interface ContadorMBean {
+    long getValor();
+
+    String getAjuda();
+}
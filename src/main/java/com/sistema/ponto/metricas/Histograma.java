@@ -0,0 +1,194 @@
+package com.sistema.ponto.metricas;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma log-linear no estilo do HdrHistogram: cada potência de 2 é
+ * dividida em {@link #SUB_FAIXAS} faixas iguais, então o erro relativo de
+ * qualquer percentil fica abaixo de 1/{@code SUB_FAIXAS} (~3%) de 1 ns a
+ * ~73 minutos, com um vetor fixo de contadores. Valores abaixo de
+ * {@code 2 * SUB_FAIXAS} são exatos (notas de qualidade 0-100 quase todas).
+ * <p>
+ * {@link #registrar(long)} não aloca nem trava: um incremento atômico na faixa,
+ * uma soma num LongAdder e um CAS só quando o máximo muda. Os percentis são
+ * acumulados desde a criação (ou o último {@link #zerar()}).
+ */
+public class Histograma extends Metrica implements HistogramaMBean {
+
+    static final int BITS_SUB_FAIXA = 5;
+    static final int SUB_FAIXAS = 1 << BITS_SUB_FAIXA;
+    static final int BITS_MAXIMO = 42;
+    static final long VALOR_MAXIMO = (1L << BITS_MAXIMO) - 1;
+
+    private static final double[] QUANTIS = {0.5, 0.9, 0.99, 0.999};
+
+    private final double divisor;
+    private final AtomicLongArray faixas = new AtomicLongArray(indice(VALOR_MAXIMO) + 1);
+    private final LongAdder soma = new LongAdder();
+    private final AtomicLong maximo = new AtomicLong();
+
+    /**
+     * @param divisor divide os valores registrados na exportação (1e9 para
+     *                registrar em ns e exportar em segundos)
+     */
+    Histograma(String nome, String ajuda, double divisor) {
+        super(nome, ajuda);
+        this.divisor = divisor;
+    }
+
+    public void registrar(long valor) {
+        if (valor < 0) {
+            valor = 0;
+        } else if (valor > VALOR_MAXIMO) {
+            valor = VALOR_MAXIMO;
+        }
+        faixas.incrementAndGet(indice(valor));
+        soma.add(valor);
+        long atual = maximo.get();
+        while (valor > atual && !maximo.compareAndSet(atual, valor)) {
+            atual = maximo.get();
+        }
+    }
+
+    /**
+     * Registra o tempo decorrido desde {@code inicioNanos} (de System.nanoTime()).
+     */
+    public void registrarDesde(long inicioNanos) {
+        registrar(System.nanoTime() - inicioNanos);
+    }
+
+    static int indice(long valor) {
+        if (valor < 2 * SUB_FAIXAS) {
+            return (int) valor;
+        }
+        int deslocamento = 63 - Long.numberOfLeadingZeros(valor) - BITS_SUB_FAIXA;
+        return deslocamento * SUB_FAIXAS + (int) (valor >>> deslocamento);
+    }
+
+    static long menorValor(int indice) {
+        if (indice < 2 * SUB_FAIXAS) {
+            return indice;
+        }
+        int deslocamento = indice / SUB_FAIXAS - 1;
+        return (long) (indice - deslocamento * SUB_FAIXAS) << deslocamento;
+    }
+
+    static long maiorValor(int indice) {
+        return menorValor(indice + 1) - 1;
+    }
+
+    @Override
+    public long getContagem() {
+        long total = 0;
+        for (int i = 0; i < faixas.length(); i++) {
+            total += faixas.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Soma dos valores registrados, na unidade de exportação.
+     */
+    public double getSoma() {
+        return soma.sum() / divisor;
+    }
+
+    @Override
+    public double getMedia() {
+        long contagem = getContagem();
+        return contagem == 0 ? 0 : getSoma() / contagem;
+    }
+
+    @Override
+    public double getMaximo() {
+        return maximo.get() / divisor;
+    }
+
+    /**
+     * @param quantil de 0 a 1
+     * @return valor na unidade de exportação (meio da faixa), ou 0 sem registros
+     */
+    public double getPercentil(double quantil) {
+        return percentis(new double[] {quantil})[0];
+    }
+
+    /**
+     * Vários percentis numa só passada pelas faixas (quantis em ordem crescente).
+     */
+    double[] percentis(double[] quantis) {
+        long[] copia = new long[faixas.length()];
+        long total = 0;
+        for (int i = 0; i < copia.length; i++) {
+            copia[i] = faixas.get(i);
+            total += copia[i];
+        }
+        double[] resultado = new double[quantis.length];
+        if (total == 0) {
+            return resultado;
+        }
+        long acumulado = 0;
+        int q = 0;
+        for (int i = 0; i < copia.length && q < quantis.length; i++) {
+            acumulado += copia[i];
+            while (q < quantis.length && acumulado >= Math.max(1, (long) Math.ceil(quantis[q] * total))) {
+                long meio = menorValor(i) + (maiorValor(i) - menorValor(i)) / 2;
+                resultado[q++] = Math.min(meio, maximo.get()) / divisor;
+            }
+        }
+        return resultado;
+    }
+
+    @Override
+    public double getP50() {
+        return getPercentil(0.5);
+    }
+
+    @Override
+    public double getP90() {
+        return getPercentil(0.9);
+    }
+
+    @Override
+    public double getP99() {
+        return getPercentil(0.99);
+    }
+
+    @Override
+    public double getP999() {
+        return getPercentil(0.999);
+    }
+
+    /**
+     * Zera os contadores. Registros concorrentes podem ficar pela metade
+     * (contados na faixa e não na soma, por exemplo).
+     */
+    @Override
+    public void zerar() {
+        for (int i = 0; i < faixas.length(); i++) {
+            faixas.set(i, 0);
+        }
+        soma.reset();
+        maximo.set(0);
+    }
+
+    @Override
+    void escrever(StringBuilder saida) {
+        double[] valores = percentis(QUANTIS);
+        escreverCabecalho(saida, getNome(), "summary");
+        for (int i = 0; i < QUANTIS.length; i++) {
+            saida.append(getNome()).append("{quantile=\"").append(QUANTIS[i]).append("\"} ");
+            escreverValor(saida, valores[i]);
+            saida.append('\n');
+        }
+        saida.append(getNome()).append("_sum ");
+        escreverValor(saida, getSoma());
+        saida.append('\n');
+        saida.append(getNome()).append("_count ").append(getContagem()).append('\n');
+        escreverCabecalho(saida, getNome() + "_max", "gauge");
+        saida.append(getNome()).append("_max ");
+        escreverValor(saida, getMaximo());
+        saida.append('\n');
+    }
+}
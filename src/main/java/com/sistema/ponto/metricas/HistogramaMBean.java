@@ -0,0 +1,21 @@
+package com.sistema.ponto.metricas;
+
+public interface HistogramaMBean {
+    long getContagem();
+
+    double getMedia();
+
+    double getP50();
+
+    double getP90();
+
+    double getP99();
+
+    double getP999();
+
+    double getMaximo();
+
+    String getAjuda();
+
+    void zerar();
+}
@@ -0,0 +1,30 @@
+package com.sistema.ponto.metricas;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Valor instantâneo lido na hora da coleta (tamanho da galeria, leitores
+ * conectados...). Não custa nada no caminho quente.
+ */
+public class Medidor extends Metrica implements MedidorMBean {
+
+    private final DoubleSupplier fonte;
+
+    Medidor(String nome, String ajuda, DoubleSupplier fonte) {
+        super(nome, ajuda);
+        this.fonte = fonte;
+    }
+
+    @Override
+    public double getValor() {
+        return fonte.getAsDouble();
+    }
+
+    @Override
+    void escrever(StringBuilder saida) {
+        escreverCabecalho(saida, getNome(), "gauge");
+        saida.append(getNome()).append(' ');
+        escreverValor(saida, getValor());
+        saida.append('\n');
+    }
+}
@@ -0,0 +1,7 @@
+package com.sistema.ponto.metricas;
+
+public interface MedidorMBean {
+    double getValor();
+
+    String getAjuda();
+}
@@ -0,0 +1,42 @@
+package com.sistema.ponto.metricas;
+
+/**
+ * Métrica com nome no formato do Prometheus ({@code ponto_captura_quadros_total})
+ * e texto de ajuda. Criada e registrada pelo {@link RegistroMetricas}.
+ */
+public abstract class Metrica {
+
+    private final String nome;
+    private final String ajuda;
+
+    Metrica(String nome, String ajuda) {
+        this.nome = nome;
+        this.ajuda = ajuda;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public String getAjuda() {
+        return ajuda;
+    }
+
+    /**
+     * Acrescenta a métrica no formato texto do Prometheus (0.0.4).
+     */
+    abstract void escrever(StringBuilder saida);
+
+    void escreverCabecalho(StringBuilder saida, String nomeSerie, String tipo) {
+        saida.append("# HELP ").append(nomeSerie).append(' ').append(ajuda).append('\n');
+        saida.append("# TYPE ").append(nomeSerie).append(' ').append(tipo).append('\n');
+    }
+
+    static void escreverValor(StringBuilder saida, double valor) {
+        if (valor == (long) valor) {
+            saida.append((long) valor);
+        } else {
+            saida.append(valor);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.sistema.ponto.metricas;
+
+import com.sistema.ponto.log.Log;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Todas as métricas do processo, por nome. Cada métrica também é registrada
+ * como MBean ({@code com.sistema.ponto:type=Metricas,name=<nome>}) e aparece no
+ * {@link ServidorMetricas} no formato do Prometheus.
+ * <p>
+ * Os componentes pegam as métricas uma vez (em campos) e só incrementam no
+ * caminho quente; pedir de novo o mesmo nome devolve a mesma métrica, então
+ * vários pipelines de captura somam no mesmo contador.
+ * <p>
+ * Com {@code -Dponto.metricas.porta=<porta>} o servidor HTTP sobe junto com o
+ * registro, ouvindo só em localhost.
+ */
+public class RegistroMetricas {
+
+    private static final Log log = Log.para(RegistroMetricas.class);
+
+    public static final String PROPRIEDADE_PORTA = "ponto.metricas.porta";
+    public static final String DOMINIO_JMX = "com.sistema.ponto";
+
+    /** Divisor para histogramas registrados em ns e exportados em segundos. */
+    public static final double NANOS_POR_SEGUNDO = 1e9;
+
+    private static RegistroMetricas instance;
+
+    // Ordem de criação, para a saída sair sempre igual
+    private final Map<String, Metrica> metricas = new ConcurrentHashMap<>();
+    private final List<Metrica> ordem = new ArrayList<>();
+    private ServidorMetricas servidor;
+
+    private RegistroMetricas() {
+    }
+
+    public static synchronized RegistroMetricas getInstance() {
+        if (instance == null) {
+            instance = new RegistroMetricas();
+            String porta = System.getProperty(PROPRIEDADE_PORTA);
+            if (porta != null) {
+                instance.iniciarServidor(Integer.parseInt(porta));
+            }
+        }
+        return instance;
+    }
+
+    public Contador contador(String nome, String ajuda) {
+        return registrar(nome, Contador.class, () -> new Contador(nome, ajuda));
+    }
+
+    /**
+     * Histograma de tempos: registre em ns ({@link Histograma#registrarDesde(long)}),
+     * exportado em segundos.
+     */
+    public Histograma histogramaTempo(String nome, String ajuda) {
+        return histograma(nome, ajuda, NANOS_POR_SEGUNDO);
+    }
+
+    /**
+     * @param divisor divide os valores na exportação (1 para exportar como registrados)
+     */
+    public Histograma histograma(String nome, String ajuda, double divisor) {
+        return registrar(nome, Histograma.class, () -> new Histograma(nome, ajuda, divisor));
+    }
+
+    /**
+     * Medidor lido na coleta. Um medidor novo com o nome de um existente
+     * substitui a fonte (componente recriado).
+     */
+    public synchronized Medidor medidor(String nome, String ajuda, DoubleSupplier fonte) {
+        Metrica anterior = metricas.get(nome);
+        if (anterior != null && !(anterior instanceof Medidor)) {
+            throw new IllegalArgumentException("Métrica " + nome + " já existe com outro tipo");
+        }
+        Medidor medidor = new Medidor(nome, ajuda, fonte);
+        if (anterior != null) {
+            ordem.set(ordem.indexOf(anterior), medidor);
+            desregistrarJmx(nome);
+        } else {
+            ordem.add(medidor);
+        }
+        metricas.put(nome, medidor);
+        registrarJmx(medidor);
+        return medidor;
+    }
+
+    private interface Fabrica<T extends Metrica> {
+        T criar();
+    }
+
+    private synchronized <T extends Metrica> T registrar(String nome, Class<T> tipo, Fabrica<T> fabrica) {
+        Metrica existente = metricas.get(nome);
+        if (existente != null) {
+            if (!tipo.isInstance(existente)) {
+                throw new IllegalArgumentException("Métrica " + nome + " já existe com outro tipo");
+            }
+            return tipo.cast(existente);
+        }
+        T nova = fabrica.criar();
+        metricas.put(nome, nova);
+        ordem.add(nova);
+        registrarJmx(nova);
+        return nova;
+    }
+
+    private void registrarJmx(Metrica metrica) {
+        try {
+            MBeanServer servidorJmx = ManagementFactory.getPlatformMBeanServer();
+            ObjectName nome = nomeJmx(metrica.getNome());
+            if (!servidorJmx.isRegistered(nome)) {
+                servidorJmx.registerMBean(metrica, nome);
+            }
+        } catch (JMException e) {
+            log.aviso("Métrica {} fora do JMX: {}", metrica.getNome(), e.getMessage());
+        }
+    }
+
+    private void desregistrarJmx(String nome) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(nomeJmx(nome));
+        } catch (JMException e) {
+            // Já não estava registrada
+        }
+    }
+
+    private static ObjectName nomeJmx(String nome) throws JMException {
+        return new ObjectName(DOMINIO_JMX + ":type=Metricas,name=" + nome);
+    }
+
+    public Metrica getMetrica(String nome) {
+        return metricas.get(nome);
+    }
+
+    /**
+     * Todas as métricas no formato texto do Prometheus (0.0.4).
+     */
+    public String exportarPrometheus() {
+        List<Metrica> copia;
+        synchronized (this) {
+            copia = new ArrayList<>(ordem);
+        }
+        StringBuilder saida = new StringBuilder(4096);
+        for (Metrica metrica : copia) {
+            metrica.escrever(saida);
+        }
+        return saida.toString();
+    }
+
+    /**
+     * Sobe o servidor HTTP local (porta 0 escolhe uma livre). Não faz nada se já
+     * estiver no ar.
+     *
+     * @return porta em uso, ou -1 se não foi possível abrir
+     */
+    public synchronized int iniciarServidor(int porta) {
+        if (servidor == null) {
+            try {
+                servidor = new ServidorMetricas(this, porta);
+            } catch (IOException e) {
+                log.erro("Erro ao abrir servidor de métricas na porta {}: {}", porta, e.getMessage());
+                return -1;
+            }
+        }
+        return servidor.getPorta();
+    }
+
+    public synchronized void pararServidor() {
+        if (servidor != null) {
+            servidor.parar();
+            servidor = null;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.sistema.ponto.metricas;
+
+import com.sistema.ponto.log.Log;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Endpoint HTTP {@code /metrics} no formato texto do Prometheus, só em
+ * localhost (o coletor roda na própria máquina ou por túnel). Uma thread
+ * daemon atende as coletas; nada aqui toca o caminho de captura.
+ */
+public class ServidorMetricas {
+
+    private static final Log log = Log.para(ServidorMetricas.class);
+
+    public static final String CAMINHO = "/metrics";
+    private static final String TIPO_CONTEUDO = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final RegistroMetricas registro;
+    private final HttpServer servidor;
+    private final ExecutorService executor;
+
+    ServidorMetricas(RegistroMetricas registro, int porta) throws IOException {
+        this.registro = registro;
+        servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 0);
+        servidor.createContext(CAMINHO, this::atender);
+        executor = Executors.newSingleThreadExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "metricas-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        servidor.setExecutor(executor);
+        servidor.start();
+        log.info("Métricas em http://localhost:{}{}", getPorta(), CAMINHO);
+    }
+
+    private void atender(HttpExchange troca) throws IOException {
+        try {
+            if (!"GET".equals(troca.getRequestMethod())) {
+                troca.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] corpo = registro.exportarPrometheus().getBytes(StandardCharsets.UTF_8);
+            troca.getResponseHeaders().set("Content-Type", TIPO_CONTEUDO);
+            troca.sendResponseHeaders(200, corpo.length);
+            try (OutputStream saida = troca.getResponseBody()) {
+                saida.write(corpo);
+            }
+        } finally {
+            troca.close();
+        }
+    }
+
+    public int getPorta() {
+        return servidor.getAddress().getPort();
+    }
+
+    void parar() {
+        servidor.stop(0);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,223 @@
+package com.sistema.ponto.ui;
+
+import com.sistema.ponto.biometria.captura.Quadro;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+import javax.swing.UIManager;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.DisplayMode;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Insets;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Componente de preview da digital.
+ * Guarda apenas o quadro mais recente: quadros que chegam antes da próxima
+ * pintura substituem o pendente (e são contados como descartados), de forma que
+ * o EDT nunca acumula trabalho e o preview nunca fica atrasado em relação ao dedo.
+ * Há no máximo uma repintura agendada por vez, limitada à taxa do monitor, e a
+ * escala é feita no próprio paintComponent com interpolação barata.
+ * <p>
+ * Pode ser chamado de qualquer thread via {@link #exibir(Quadro)}.
+ */
+public class PainelDigital extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int TAXA_PADRAO_HZ = 60;
+
+    private final AtomicReference<Quadro> pendente = new AtomicReference<>();
+    private final AtomicBoolean repinturaAgendada = new AtomicBoolean(false);
+    private final AtomicLong quadrosRecebidos = new AtomicLong();
+    private final AtomicLong quadrosDescartados = new AtomicLong();
+    private final AtomicLong quadrosExibidos = new AtomicLong();
+    private final Timer temporizador;
+    private final long intervaloMinimoNanos;
+    private volatile long ultimaPinturaNanos;
+    private volatile boolean limparSolicitado;
+    private volatile String mensagem;
+    private volatile Object interpolacao = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+
+    // Acessados apenas no EDT
+    private BufferedImage imagem;
+    private byte[] pixelsImagem;
+
+    public PainelDigital() {
+        this(taxaDoMonitor());
+    }
+
+    public PainelDigital(int taxaMaximaHz) {
+        this.intervaloMinimoNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, taxaMaximaHz);
+        this.temporizador = new Timer(0, e -> repaint());
+        this.temporizador.setRepeats(false);
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setForeground(Color.DARK_GRAY);
+        setFont(UIManager.getFont("Label.font"));
+    }
+
+    /**
+     * Agenda a exibição do quadro. O painel assume a referência recebida e
+     * devolve o quadro ao pool depois de copiá-lo (ou ao descartá-lo).
+     */
+    public void exibir(Quadro quadro) {
+        quadrosRecebidos.incrementAndGet();
+        Quadro anterior = pendente.getAndSet(quadro);
+        if (anterior != null) {
+            anterior.devolver();
+            quadrosDescartados.incrementAndGet();
+        }
+        agendarRepintura();
+    }
+
+    /**
+     * Remove a imagem exibida e volta a mostrar a mensagem.
+     */
+    public void limpar() {
+        Quadro anterior = pendente.getAndSet(null);
+        if (anterior != null) {
+            anterior.devolver();
+        }
+        limparSolicitado = true;
+        repaint();
+    }
+
+    public void setMensagem(String mensagem) {
+        this.mensagem = mensagem;
+        repaint();
+    }
+
+    /**
+     * Interpolação usada ao escalar (RenderingHints.VALUE_INTERPOLATION_*).
+     * O padrão é vizinho mais próximo, o mais barato.
+     */
+    public void setInterpolacao(Object interpolacao) {
+        this.interpolacao = interpolacao;
+        repaint();
+    }
+
+    public long getQuadrosRecebidos() {
+        return quadrosRecebidos.get();
+    }
+
+    public long getQuadrosDescartados() {
+        return quadrosDescartados.get();
+    }
+
+    public long getQuadrosExibidos() {
+        return quadrosExibidos.get();
+    }
+
+    private void agendarRepintura() {
+        if (!repinturaAgendada.compareAndSet(false, true)) {
+            return; // já existe uma repintura pendente que vai pegar o quadro mais novo
+        }
+        long espera = ultimaPinturaNanos + intervaloMinimoNanos - System.nanoTime();
+        if (espera <= 0) {
+            repaint();
+        } else {
+            temporizador.setInitialDelay((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(espera)));
+            temporizador.restart();
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        // Libera o agendamento antes de consumir: um quadro que chegar durante a
+        // pintura agenda a próxima
+        repinturaAgendada.set(false);
+        if (limparSolicitado) {
+            limparSolicitado = false;
+            imagem = null;
+            pixelsImagem = null;
+        }
+        Quadro novo = pendente.getAndSet(null);
+        if (novo != null) {
+            try {
+                copiar(novo);
+            } finally {
+                novo.devolver();
+            }
+            quadrosExibidos.incrementAndGet();
+            ultimaPinturaNanos = System.nanoTime();
+        }
+
+        Insets margens = getInsets();
+        int largura = getWidth() - margens.left - margens.right;
+        int altura = getHeight() - margens.top - margens.bottom;
+        g.setColor(getBackground());
+        g.fillRect(margens.left, margens.top, largura, altura);
+
+        if (imagem == null) {
+            desenharMensagem(g, margens, largura, altura);
+            return;
+        }
+
+        // Mantém a proporção do sensor, centralizado
+        double escala = Math.min(largura / (double) imagem.getWidth(), altura / (double) imagem.getHeight());
+        int w = (int) (imagem.getWidth() * escala);
+        int h = (int) (imagem.getHeight() * escala);
+        int x = margens.left + (largura - w) / 2;
+        int y = margens.top + (altura - h) / 2;
+
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolacao);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        g2.drawImage(imagem, x, y, w, h, null);
+    }
+
+    private void copiar(Quadro quadro) {
+        if (imagem == null || imagem.getWidth() != quadro.getLargura() || imagem.getHeight() != quadro.getAltura()) {
+            imagem = new BufferedImage(quadro.getLargura(), quadro.getAltura(), BufferedImage.TYPE_BYTE_GRAY);
+            pixelsImagem = ((DataBufferByte) imagem.getRaster().getDataBuffer()).getData();
+        }
+        System.arraycopy(quadro.getPixels(), 0, pixelsImagem, 0, pixelsImagem.length);
+    }
+
+    private void desenharMensagem(Graphics g, Insets margens, int largura, int altura) {
+        String texto = mensagem;
+        if (texto == null) {
+            return;
+        }
+        g.setColor(getForeground());
+        g.setFont(getFont());
+        FontMetrics fm = g.getFontMetrics();
+        int x = margens.left + (largura - fm.stringWidth(texto)) / 2;
+        int y = margens.top + (altura - fm.getHeight()) / 2 + fm.getAscent();
+        g.drawString(texto, x, y);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) {
+            return super.getPreferredSize();
+        }
+        return new Dimension(300, 300);
+    }
+
+    private static int taxaDoMonitor() {
+        try {
+            if (!GraphicsEnvironment.isHeadless()) {
+                DisplayMode modo = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDisplayMode();
+                if (modo.getRefreshRate() != DisplayMode.REFRESH_RATE_UNKNOWN) {
+                    return modo.getRefreshRate();
+                }
+            }
+        } catch (Exception e) {
+            // Sem informação do monitor: usa a taxa padrão
+        }
+        return TAXA_PADRAO_HZ;
+    }
+}